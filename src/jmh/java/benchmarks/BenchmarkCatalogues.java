@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+
+import catalogue_generator.CatalogueGenerator;
+
+/**
+ * The synthetic catalogues of the benchmarks, see {@link CatalogueGenerator}
+ * @author avonva
+ *
+ */
+class BenchmarkCatalogues {
+
+	// the seed of all the catalogues, so that the runs can be compared
+	private static final long SEED = 1;
+
+	/**
+	 * Create a generator of catalogues
+	 * @param hierarchies the number of hierarchies, master excluded
+	 * @param attributes the number of attributes
+	 * @param terms the number of terms
+	 * @return
+	 */
+	static CatalogueGenerator newGenerator(int hierarchies, int attributes, int terms) {
+		CatalogueGenerator generator = new CatalogueGenerator();
+		generator.setHierarchies(hierarchies);
+		generator.setAttributes(attributes);
+		generator.setTerms(terms);
+		generator.setSeed(SEED);
+		return generator;
+	}
+
+	/**
+	 * Generate a catalogue in a temporary file, deleted at exit
+	 * @param hierarchies
+	 * @param attributes
+	 * @param terms
+	 * @return
+	 * @throws IOException
+	 * @throws XMLStreamException
+	 */
+	static File generate(int hierarchies, int attributes, int terms) throws IOException, XMLStreamException {
+
+		File file = File.createTempFile("catalogue", ".xml");
+		file.deleteOnExit();
+
+		newGenerator(hierarchies, attributes, terms).generate(file.getPath());
+
+		return file;
+	}
+}
@@ -0,0 +1,38 @@
+package benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the benchmarks with the JMH command line options (e.g. a regexp to
+ * select the benchmarks, -p size=small to select the parameters). If no
+ * result file is specified, the results are written in jmh-result.json, so
+ * that two runs can be compared (e.g. with a JMH visualizer).
+ * @author avonva
+ *
+ */
+public class BenchmarkRunner {
+
+	// the default file of the results
+	public static final String RESULT_FILE = "jmh-result.json";
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+
+		if (!commandLine.getResultFormat().hasValue())
+			options.resultFormat(ResultFormatType.JSON);
+
+		if (!commandLine.getResult().hasValue())
+			options.result(RESULT_FILE);
+
+		new Runner(options.build()).run();
+	}
+}
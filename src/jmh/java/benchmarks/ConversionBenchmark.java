@@ -0,0 +1,103 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import xml_to_excel.WorkbookOptions;
+import xml_to_excel.XmlCatalogueToExcel;
+
+/**
+ * Convert a whole synthetic catalogue into an xlsx file. Each invocation is a
+ * complete conversion, therefore the single shot time is measured.
+ * The sizes are:
+ * - small: 5 hierarchies, 10 attributes, 1000 terms
+ * - medium: 10 hierarchies, 30 attributes, 20000 terms
+ * - large: 20 hierarchies, 50 attributes, 200000 terms
+ * @author avonva
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xms1g", "-Xmx2g" })
+public class ConversionBenchmark {
+
+	@Param({ "small", "medium", "large" })
+	public String size;
+
+	// streaming workbook or direct xlsx writer
+	@Param({ "streaming", "direct" })
+	public String writer;
+
+	// parse the xml once or filter it with the xslt of each sheet
+	@Param({ "false" })
+	public boolean xslt;
+
+	private File catalogue;
+	private File output;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, XMLStreamException {
+
+		switch (size) {
+		case "small":
+			catalogue = BenchmarkCatalogues.generate(5, 10, 1000);
+			break;
+		case "medium":
+			catalogue = BenchmarkCatalogues.generate(10, 30, 20000);
+			break;
+		case "large":
+			catalogue = BenchmarkCatalogues.generate(20, 50, 200000);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown size " + size);
+		}
+
+		output = File.createTempFile("catalogue", ".xlsx");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		catalogue.delete();
+		output.delete();
+	}
+
+	/**
+	 * Convert the catalogue
+	 * @return the size of the xlsx
+	 * @throws TransformerException
+	 */
+	@Benchmark
+	public long convertXmlToExcel() throws TransformerException {
+
+		WorkbookOptions options = new WorkbookOptions();
+		options.setDirectXlsx(writer.equals("direct"));
+
+		XmlCatalogueToExcel converter = new XmlCatalogueToExcel(catalogue.getPath(), output.getPath());
+		converter.setWorkbookOptions(options);
+		converter.setUseXsltFilters(xslt);
+		converter.convertXmlToExcel();
+
+		return output.length();
+	}
+}
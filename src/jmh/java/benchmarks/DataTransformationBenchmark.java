@@ -0,0 +1,92 @@
+package benchmarks;
+
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data_transformation.DateTrimmer;
+import data_transformation.ValuesGrouper;
+
+/**
+ * The transformations of the cell values: the dates of the catalogue
+ * and the repeated values joined with $
+ * @author avonva
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataTransformationBenchmark {
+
+	/**
+	 * The formats of the dates in the catalogues
+	 * @author avonva
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class Dates {
+
+		@Param({ "2020-01-31", "2020/01/31", "2020-01-31T10:15:30" })
+		public String date;
+	}
+
+	/**
+	 * The values of a repeatable attribute
+	 * @author avonva
+	 *
+	 */
+	@State(Scope.Thread)
+	public static class Values {
+
+		@Param({ "1", "4", "16" })
+		public int values;
+
+		private String[] facets;
+		private ValuesGrouper grouper;
+
+		@Setup
+		public void setup() {
+
+			facets = new String[values];
+			for (int i = 0; i < values; i++)
+				facets[i] = "F" + (i + 1) + ".A0" + (100 + i);
+
+			grouper = new ValuesGrouper();
+		}
+	}
+
+	@Benchmark
+	public Date trimDate(Dates dates) {
+		return DateTrimmer.trimDate(dates.date);
+	}
+
+	@Benchmark
+	public LocalDate parseDate(Dates dates) {
+		return DateTrimmer.parseDate(dates.date);
+	}
+
+	@Benchmark
+	public String joinValues(Values values) {
+
+		values.grouper.reset();
+
+		for (String facet : values.facets)
+			values.grouper.addValue(facet);
+
+		return values.grouper.getCompactValues();
+	}
+}
@@ -0,0 +1,168 @@
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+import catalogue_generator.CatalogueGenerator;
+import catalogue_metadata.AttributeInfo;
+import catalogue_metadata.CatalogueInfo;
+import catalogue_metadata.CatalogueMetadata;
+import sheet_converter.SaxParsers;
+import sheet_converter.TermSheetConverter;
+import sheet_converter.XmlNodes;
+import sheet_header.SheetHeader;
+import xlsx_writer.SheetOutput;
+import xlsx_writer.WorkbookOutput;
+import xlsx_writer.XlsxRow;
+
+/**
+ * Convert the terms with the SAX handler of the {@link TermSheetConverter}
+ * and compute the term headers. The rows are discarded, so that only the
+ * parse and the conversion of the xml nodes are measured.
+ * @author avonva
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TermConverterBenchmark {
+
+	// the terms parsed by each invocation
+	private static final int TERMS = 1000;
+
+	@Param({ "5", "20" })
+	public int hierarchies;
+
+	@Param({ "10", "50" })
+	public int attributes;
+
+	private byte[] catalogue;
+	private CatalogueMetadata metadata;
+
+	@Setup(Level.Trial)
+	public void setup() throws XMLStreamException {
+
+		CatalogueGenerator generator = BenchmarkCatalogues.newGenerator(hierarchies, attributes, TERMS);
+
+		ByteArrayOutputStream xml = new ByteArrayOutputStream();
+		generator.generate(xml);
+		catalogue = xml.toByteArray();
+
+		// the metadata which the other converters collect
+		ArrayList<String> hierarchyCodes = new ArrayList<>();
+		hierarchyCodes.add(CatalogueGenerator.CATALOGUE_CODE);
+		for (int i = 0; i < hierarchies; i++)
+			hierarchyCodes.add(CatalogueGenerator.getHierarchyCode(i));
+
+		ArrayList<AttributeInfo> attributeInfos = new ArrayList<>();
+		for (int i = 0; i < attributes; i++)
+			attributeInfos.add(new AttributeInfo(CatalogueGenerator.getAttributeCode(i), "Attribute " + i,
+					generator.getAttributeType(i), generator.getAttributeCatalogueCode(i)));
+
+		metadata = new CatalogueMetadata(new CatalogueInfo(CatalogueGenerator.CATALOGUE_CODE, "Synthetic catalogue",
+				"Synthetic", "", "1.0", "2020-05-01", "2019-01-01", "PUBLISHED MAJOR"), hierarchyCodes, attributeInfos);
+	}
+
+	private TermSheetConverter newConverter() {
+		TermSheetConverter converter = new TermSheetConverter(null, XmlNodes.TERM_ROOT_NODE, metadata);
+		converter.setMasterHierarchyCode(CatalogueGenerator.CATALOGUE_CODE);
+		return converter;
+	}
+
+	/**
+	 * Parse the terms and create their rows, the time is per term
+	 * @return the number of cells
+	 * @throws SAXException
+	 * @throws IOException
+	 * @throws ParserConfigurationException
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TERMS)
+	public long convertTerms() throws SAXException, IOException, ParserConfigurationException {
+
+		DiscardOutput output = new DiscardOutput();
+
+		TermSheetConverter converter = newConverter();
+		converter.buildSheet(output, "term");
+
+		SaxParsers.newSAXParser().parse(new ByteArrayInputStream(catalogue), converter.getHandler());
+
+		return output.cells;
+	}
+
+	/**
+	 * Compute the columns of the term sheet
+	 * @return
+	 */
+	@Benchmark
+	public HashMap<String, SheetHeader> getHeaders() {
+		return newConverter().getHeaders();
+	}
+
+	/**
+	 * An output which only counts the cells of the rows
+	 * @author avonva
+	 *
+	 */
+	private static class DiscardOutput implements WorkbookOutput, SheetOutput {
+
+		private XlsxRow row = new XlsxRow();
+		private long cells = 0;
+
+		@Override
+		public SheetOutput createSheet(String sheetName) {
+			return this;
+		}
+
+		@Override
+		public XlsxRow createRow() {
+			cells += row.getPhysicalNumberOfCells();
+			row.clear();
+			return row;
+		}
+
+		@Override
+		public void appendRow(XlsxRow detached) {
+			cells += detached.getPhysicalNumberOfCells();
+		}
+
+		@Override
+		public void setSheetOrder(String sheetName, int pos) {
+		}
+
+		@Override
+		public void finish() {
+			createRow();
+		}
+
+		@Override
+		public String getName() {
+			return "term";
+		}
+	}
+}
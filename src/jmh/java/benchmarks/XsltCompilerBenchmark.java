@@ -0,0 +1,95 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import xml_to_excel.XmlCatalogueToExcel;
+import xml_to_excel.XsltCompiler;
+
+/**
+ * Filter a catalogue with each xslt of the sheets, as the xslt mode does
+ * (see {@link XmlCatalogueToExcel#setUseXsltFilters(boolean)}). The filtered
+ * xml is sent to a handler which only counts the nodes.
+ * @author avonva
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XsltCompilerBenchmark {
+
+	@Param({ XmlCatalogueToExcel.CATALOGUE_XSLT_NAME, XmlCatalogueToExcel.HIERARCHY_XSLT_NAME,
+			XmlCatalogueToExcel.ATTRIBUTE_XSLT_NAME, XmlCatalogueToExcel.TERM_XSLT_NAME,
+			XmlCatalogueToExcel.NOTES_XSLT_NAME })
+	public String stylesheet;
+
+	@Param({ "2000" })
+	public int terms;
+
+	private File catalogue;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, XMLStreamException {
+		catalogue = BenchmarkCatalogues.generate(5, 10, terms);
+	}
+
+	/**
+	 * Transform the catalogue with the cached templates of the xslt
+	 * @return the number of filtered nodes
+	 * @throws TransformerException
+	 */
+	@Benchmark
+	public long compile() throws TransformerException {
+		NodeCounter counter = new NodeCounter();
+		new XsltCompiler(catalogue.getPath(), stylesheet).compile(counter);
+		return counter.nodes;
+	}
+
+	/**
+	 * Compile the xslt without the cache of the templates
+	 * @return
+	 * @throws TransformerException
+	 */
+	@Benchmark
+	public Object compileTemplates() throws TransformerException {
+		XsltCompiler.clearCache();
+		return XsltCompiler.getTemplates(stylesheet);
+	}
+
+	/**
+	 * Count the nodes of the filtered xml
+	 * @author avonva
+	 *
+	 */
+	private static class NodeCounter extends DefaultHandler {
+
+		private long nodes = 0;
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			nodes++;
+		}
+	}
+}
@@ -0,0 +1,609 @@
+package catalogue_generator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import sheet_converter.XmlNodes;
+
+/**
+ * Generate a synthetic catalogue xml, to test the conversion with catalogues
+ * of any size. The catalogue contains all the sections of a real catalogue:
+ * the release notes with their operations, the hierarchies, the attributes
+ * (also of catalogue type with their {@link XmlNodes#ATTR_CAT_CODE}) and the
+ * terms with their hierarchy assignments and their implicit attributes,
+ * which can have more values.
+ * General notes:
+ * the content depends only on the parameters and on the seed, therefore the
+ * same catalogue can be generated again. The xml is streamed, nothing is kept
+ * in memory for the terms, so that also catalogues of some GB can be written.
+ * The parents of a term are always previous terms.
+ * @author avonva
+ *
+ */
+public class CatalogueGenerator {
+
+	private static final Logger LOGGER = LogManager.getLogger(CatalogueGenerator.class);
+
+	// the catalogue code, also the code of the master hierarchy
+	public static final String CATALOGUE_CODE = "SYNTH";
+
+	// the catalogue of the values of some catalogue attributes
+	private static final String EXTERNAL_CODE = "EXTERNAL";
+
+	// the types of the attributes which are not of catalogue type
+	private static final String[] ATTRIBUTE_TYPES = { "string", "integer", "double", "boolean" };
+
+	// log the progress every these terms
+	private static final int LOG_TERMS = 100000;
+
+	private int terms = 1000;
+	private int hierarchies = 5;
+	private int attributes = 10;
+	private int catalogueAttributes = 2;
+	private int maxAssignments = 5;
+	private int maxValues = 4;
+	private int operations = 10;
+	private long seed = 1;
+
+	/**
+	 * Set the number of terms
+	 * @param terms
+	 */
+	public void setTerms(int terms) {
+		this.terms = terms;
+	}
+
+	/**
+	 * Set the number of hierarchies, the master hierarchy excluded
+	 * @param hierarchies
+	 */
+	public void setHierarchies(int hierarchies) {
+		this.hierarchies = hierarchies;
+	}
+
+	/**
+	 * Set the number of attributes, the catalogue ones included
+	 * @param attributes
+	 */
+	public void setAttributes(int attributes) {
+		this.attributes = attributes;
+	}
+
+	/**
+	 * Set how many attributes are of catalogue type (they are the first ones).
+	 * Their values are codes of terms prefixed by a facet (e.g. F01.A00012),
+	 * see {@link #getAttributeCatalogueCode(int)}
+	 * @param catalogueAttributes
+	 */
+	public void setCatalogueAttributes(int catalogueAttributes) {
+		this.catalogueAttributes = catalogueAttributes;
+	}
+
+	/**
+	 * Set the maximum number of hierarchy assignments of a term, the master
+	 * hierarchy included (each term is assigned to the master hierarchy)
+	 * @param maxAssignments
+	 */
+	public void setMaxAssignments(int maxAssignments) {
+		this.maxAssignments = maxAssignments;
+	}
+
+	/**
+	 * Set the maximum number of values of the repeatable implicit attributes
+	 * @param maxValues
+	 */
+	public void setMaxValues(int maxValues) {
+		this.maxValues = maxValues;
+	}
+
+	/**
+	 * Set the number of operations of the release notes
+	 * @param operations
+	 */
+	public void setOperations(int operations) {
+		this.operations = operations;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public int getHierarchies() {
+		return hierarchies;
+	}
+
+	public int getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * Get the code of a hierarchy
+	 * @param index the index of the hierarchy, from 0
+	 * @return
+	 */
+	public static String getHierarchyCode(int index) {
+		return "hier" + index;
+	}
+
+	/**
+	 * Get the code of an attribute
+	 * @param index the index of the attribute, from 0
+	 * @return
+	 */
+	public static String getAttributeCode(int index) {
+		return "attr" + index;
+	}
+
+	/**
+	 * Get the type of an attribute
+	 * @param index the index of the attribute, from 0
+	 * @return
+	 */
+	public String getAttributeType(int index) {
+
+		if (index < catalogueAttributes)
+			return "catalogue";
+
+		return ATTRIBUTE_TYPES[(index - catalogueAttributes) % ATTRIBUTE_TYPES.length];
+	}
+
+	/**
+	 * Get the catalogue of the values of an attribute, as catalogueCode.hierarchyCode.
+	 * The values are terms of a hierarchy of the catalogue (a facet category)
+	 * or, for the odd attributes, of a hierarchy of another catalogue
+	 * @param index the index of the attribute, from 0
+	 * @return the code, empty if the attribute is not of catalogue type
+	 */
+	public String getAttributeCatalogueCode(int index) {
+
+		if (index >= catalogueAttributes)
+			return "";
+
+		if (index % 2 == 0 && hierarchies > 0)
+			return CATALOGUE_CODE + "." + getHierarchyCode(index % hierarchies);
+
+		return EXTERNAL_CODE + ".ext" + index;
+	}
+
+	/**
+	 * Get the alias of an attribute of catalogue type, which prefixes
+	 * its values in the implicit attributes of the terms (e.g. F01.A00012)
+	 * @param index the index of the attribute, from 0
+	 * @return
+	 */
+	public static String getAttributeAlias(int index) {
+		return String.format("F%02d", index + 1);
+	}
+
+	/**
+	 * Get the code of a term
+	 * @param index the index of the term, from 0
+	 * @return
+	 */
+	public static String getTermCode(int index) {
+		return String.format("A%05d", index);
+	}
+
+	/**
+	 * Check if an attribute can have more values (the catalogue and the
+	 * string attributes)
+	 * @param index
+	 * @return
+	 */
+	private boolean isRepeatable(int index) {
+		String type = getAttributeType(index);
+		return type.equals("catalogue") || type.equals("string");
+	}
+
+	/**
+	 * Write the catalogue in a file. The file is compressed if it ends with .gz
+	 * @param filename
+	 * @throws IOException
+	 * @throws XMLStreamException
+	 */
+	public void generate(String filename) throws IOException, XMLStreamException {
+
+		try (OutputStream file = Files.newOutputStream(Paths.get(filename));
+				OutputStream output = filename.endsWith(".gz") ? new GZIPOutputStream(file, 1 << 16)
+						: new BufferedOutputStream(file, 1 << 16);) {
+			generate(output);
+		}
+	}
+
+	/**
+	 * Write the catalogue in a stream, which is not closed
+	 * @param output
+	 * @throws XMLStreamException
+	 */
+	public void generate(OutputStream output) throws XMLStreamException {
+
+		XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(output, "UTF-8");
+
+		Random random = new Random(seed);
+
+		xml.writeStartDocument("UTF-8", "1.0");
+		xml.writeCharacters("\n");
+		xml.writeStartElement(XmlNodes.CATALOGUE_ROOT_NODE);
+		xml.writeStartElement("catalogue");
+		xml.writeCharacters("\n");
+
+		writeCatalogue(xml);
+		writeHierarchies(xml);
+		writeAttributes(xml);
+
+		xml.writeStartElement(XmlNodes.CATALOGUE_TERMS);
+		xml.writeCharacters("\n");
+
+		for (int i = 0; i < terms; i++) {
+
+			writeTerm(xml, random, i);
+
+			if ((i + 1) % LOG_TERMS == 0)
+				LOGGER.info("Generated " + (i + 1) + " terms");
+		}
+
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+
+		// the release notes are outside of the catalogue node
+		writeReleaseNotes(xml, random);
+
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+		xml.writeEndDocument();
+
+		xml.flush();
+		xml.close();
+	}
+
+	/**
+	 * Write the description, the version and the groups of the catalogue
+	 * @param xml
+	 * @throws XMLStreamException
+	 */
+	private void writeCatalogue(XMLStreamWriter xml) throws XMLStreamException {
+
+		xml.writeStartElement(XmlNodes.CATALOGUE_DESC);
+		writeElement(xml, XmlNodes.CODE, CATALOGUE_CODE);
+		writeElement(xml, XmlNodes.NAME, "Synthetic catalogue");
+		writeElement(xml, XmlNodes.LABEL, "Synthetic");
+		writeElement(xml, XmlNodes.SCOPENOTE, "Catalogue generated with seed " + seed);
+		writeElement(xml, XmlNodes.CAT_CODE_MASK, "");
+		writeElement(xml, XmlNodes.CAT_CODE_LENGTH, "6");
+		writeElement(xml, XmlNodes.CAT_MIN_CODE, getTermCode(0));
+		writeElement(xml, XmlNodes.CAT_ACCEPT_NOT_STD, "true");
+		writeElement(xml, XmlNodes.CAT_GEN_MISSING, "false");
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+
+		xml.writeStartElement(XmlNodes.CATALOGUE_VERSION);
+		writeVersion(xml, "1.0", "PUBLISHED MAJOR");
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+
+		xml.writeStartElement(XmlNodes.CAT_GROUPS);
+		writeElement(xml, XmlNodes.CAT_GROUP, "SYNTHETIC");
+		writeElement(xml, XmlNodes.CAT_GROUP, "TEST");
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+	}
+
+	/**
+	 * Write the release notes of the catalogue with their operations
+	 * @param xml
+	 * @param random
+	 * @throws XMLStreamException
+	 */
+	private void writeReleaseNotes(XMLStreamWriter xml, Random random) throws XMLStreamException {
+
+		xml.writeStartElement(XmlNodes.RELEASE_NOTES);
+		writeElement(xml, XmlNodes.NOTES_DESCRIPTION, "Synthetic release notes");
+		writeElement(xml, XmlNodes.NOTES_DATE, "2020-05-01");
+		xml.writeStartElement(XmlNodes.VERSION);
+		xml.writeAttribute(XmlNodes.NOTES_VERSION_ATTRIBUTE_NAME, "1.0.1");
+		xml.writeCharacters("1.0");
+		xml.writeEndElement();
+		writeElement(xml, XmlNodes.NOTES_NOTE, "Internal version note");
+
+		for (int i = 0; i < operations; i++) {
+
+			xml.writeStartElement(XmlNodes.OP_DETAIL);
+			xml.writeAttribute(XmlNodes.OP_NAME, "operation" + random.nextInt(5));
+			xml.writeAttribute(XmlNodes.OP_DATE, getDate(random));
+
+			// the operations are on the generated terms, or on the catalogue if it has none
+			int infos = 1 + random.nextInt(3);
+			for (int j = 0; j < infos; j++)
+				writeElement(xml, XmlNodes.OP_INFO, "Operation " + i + " on "
+						+ (terms > 0 ? getTermCode(random.nextInt(terms)) : CATALOGUE_CODE));
+
+			xml.writeEndElement();
+		}
+
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+	}
+
+	private void writeHierarchies(XMLStreamWriter xml) throws XMLStreamException {
+
+		xml.writeStartElement(XmlNodes.CATALOGUE_HIERARCHIES);
+		xml.writeCharacters("\n");
+
+		for (int i = 0; i < hierarchies; i++) {
+
+			xml.writeStartElement(XmlNodes.HIERARCHY_ROOT_NODE);
+
+			xml.writeStartElement("hierarchyDesc");
+			writeElement(xml, XmlNodes.CODE, getHierarchyCode(i));
+			writeElement(xml, XmlNodes.NAME, "Hierarchy " + i);
+			writeElement(xml, XmlNodes.LABEL, "Hierarchy " + i + " label");
+			writeElement(xml, XmlNodes.SCOPENOTE, "Scope note of the hierarchy " + i);
+			writeElement(xml, XmlNodes.HIER_APPL, i % 3 == 0 ? "reporting" : "both");
+			writeElement(xml, XmlNodes.HIER_ORDER, String.valueOf(i + 1));
+			xml.writeEndElement();
+
+			xml.writeStartElement(XmlNodes.HIER_VERSION);
+			writeVersion(xml, "1", "PUBLISHED");
+			xml.writeEndElement();
+
+			xml.writeStartElement(XmlNodes.HIER_GROUPS);
+			writeElement(xml, XmlNodes.HIER_GROUP, "group" + i % 3);
+			xml.writeEndElement();
+
+			xml.writeEndElement();
+			xml.writeCharacters("\n");
+		}
+
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+	}
+
+	private void writeAttributes(XMLStreamWriter xml) throws XMLStreamException {
+
+		xml.writeStartElement(XmlNodes.CATALOGUE_ATTRIBUTES);
+		xml.writeCharacters("\n");
+
+		for (int i = 0; i < attributes; i++) {
+
+			String type = getAttributeType(i);
+
+			xml.writeStartElement(XmlNodes.ATTRIBUTE_ROOT_NODE);
+
+			xml.writeStartElement("attributeDesc");
+			writeElement(xml, XmlNodes.CODE, getAttributeCode(i));
+			writeElement(xml, XmlNodes.NAME, "Attribute " + i);
+			writeElement(xml, XmlNodes.LABEL, "Attribute " + i + " label");
+			writeElement(xml, XmlNodes.SCOPENOTE, "Scope note of the attribute " + i);
+			xml.writeEndElement();
+
+			writeElement(xml, XmlNodes.ATTR_REPORT, "1");
+			writeElement(xml, XmlNodes.ATTR_VISIB, "1");
+			writeElement(xml, XmlNodes.ATTR_SEARCH, i % 2 == 0 ? "1" : "0");
+			writeElement(xml, XmlNodes.ATTR_ORDER, String.valueOf(i + 1));
+			writeElement(xml, XmlNodes.ATTR_TYPE, type);
+
+			switch (type) {
+			case "catalogue":
+				writeElement(xml, XmlNodes.ATTR_CAT_CODE, getAttributeCatalogueCode(i));
+				writeElement(xml, XmlNodes.ATTR_ALIAS, getAttributeAlias(i));
+				break;
+			case "string":
+				writeElement(xml, XmlNodes.ATTR_MAX_LENGTH, "200");
+				break;
+			case "double":
+				writeElement(xml, XmlNodes.ATTR_PRECISION, "10");
+				writeElement(xml, XmlNodes.ATTR_SCALE, "3");
+				break;
+			default:
+				break;
+			}
+
+			writeElement(xml, XmlNodes.ATTR_SR, isRepeatable(i) ? "repeatable" : "single");
+			writeElement(xml, XmlNodes.ATTR_INHERIT, "V");
+			writeElement(xml, XmlNodes.ATTR_UNIQUE, "false");
+
+			xml.writeStartElement("attributeVersion");
+			writeVersion(xml, "1", "PUBLISHED");
+			xml.writeEndElement();
+
+			xml.writeEndElement();
+			xml.writeCharacters("\n");
+		}
+
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+	}
+
+	/**
+	 * Write a term with its hierarchy assignments and implicit attributes
+	 * @param xml
+	 * @param random
+	 * @param index the index of the term
+	 * @throws XMLStreamException
+	 */
+	private void writeTerm(XMLStreamWriter xml, Random random, int index) throws XMLStreamException {
+
+		xml.writeStartElement(XmlNodes.TERM_ROOT_NODE);
+
+		xml.writeStartElement("termDesc");
+		writeElement(xml, XmlNodes.TERM_CODE, getTermCode(index));
+		writeElement(xml, XmlNodes.TERM_EXT_NAME, "Term " + index + " <" + random.nextInt(1000) + "> & more");
+		writeElement(xml, XmlNodes.TERM_SHORT_NAME, "Term " + index);
+		writeElement(xml, XmlNodes.TERM_SCOPENOTE, "Scope note of the term " + index + "\nwith more lines");
+		xml.writeEndElement();
+
+		xml.writeStartElement("termVersion");
+		writeElement(xml, XmlNodes.VERSION, "1");
+		writeElement(xml, XmlNodes.LAST_UPDATE, getDate(random));
+		writeElement(xml, XmlNodes.VALID_FROM, getDate(random) + "T00:00:00");
+		writeElement(xml, XmlNodes.STATUS, random.nextInt(20) == 0 ? "DEPRECATED" : "APPROVED");
+		xml.writeEndElement();
+
+		// the master hierarchy (the catalogue code) and some other hierarchies
+		xml.writeStartElement("hierarchyAssignments");
+
+		int assignments = maxAssignments > 1 ? random.nextInt(Math.min(maxAssignments, hierarchies + 1)) : 0;
+		int first = hierarchies > 0 ? random.nextInt(hierarchies) : 0;
+
+		for (int i = -1; i < assignments; i++) {
+
+			String hierarchy = i < 0 ? CATALOGUE_CODE : getHierarchyCode((first + i) % hierarchies);
+
+			// the roots do not have the parent
+			String parent = index == 0 || random.nextInt(10) == 0 ? "root" : getTermCode(random.nextInt(index));
+
+			xml.writeStartElement(XmlNodes.HIER_ASSIGNMENT);
+			writeElement(xml, XmlNodes.ASS_HIER_CODE, hierarchy);
+			writeElement(xml, XmlNodes.ASS_PARENT_CODE, parent);
+			writeElement(xml, XmlNodes.ASS_ORDER, String.valueOf(index + 1));
+			writeElement(xml, XmlNodes.ASS_REPORT, String.valueOf(random.nextBoolean()));
+			xml.writeEndElement();
+		}
+
+		xml.writeEndElement();
+
+		xml.writeStartElement("implicitAttributes");
+
+		for (int i = 0; i < attributes; i++) {
+
+			// about half of the attributes for each term
+			if (random.nextBoolean())
+				continue;
+
+			xml.writeStartElement(XmlNodes.IMPLICIT_ATTR);
+			writeElement(xml, XmlNodes.IMPLICIT_CODE, getAttributeCode(i));
+			xml.writeStartElement("attributeValues");
+
+			int values = isRepeatable(i) && maxValues > 1 ? 1 + random.nextInt(maxValues) : 1;
+			for (int j = 0; j < values; j++)
+				writeElement(xml, XmlNodes.IMPLICIT_VALUE, getAttributeValue(random, i, index));
+
+			xml.writeEndElement();
+			xml.writeEndElement();
+		}
+
+		xml.writeEndElement();
+
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+	}
+
+	/**
+	 * Get a random value for an attribute
+	 * @param random
+	 * @param attribute the index of the attribute
+	 * @param term the index of the term
+	 * @return
+	 */
+	private String getAttributeValue(Random random, int attribute, int term) {
+
+		switch (getAttributeType(attribute)) {
+		case "catalogue":
+			return getAttributeAlias(attribute) + "." + getTermCode(random.nextInt(term + 1));
+		case "integer":
+			return String.valueOf(random.nextInt(100000));
+		case "double":
+			return String.valueOf(random.nextInt(1000000) / 1000.0);
+		case "boolean":
+			return String.valueOf(random.nextBoolean());
+		default:
+			return "Value " + random.nextInt(1000) + " of " + getAttributeCode(attribute);
+		}
+	}
+
+	private static String getDate(Random random) {
+		return String.format("20%02d-%02d-%02d", 10 + random.nextInt(10), 1 + random.nextInt(12),
+				1 + random.nextInt(28));
+	}
+
+	private static void writeVersion(XMLStreamWriter xml, String version, String status) throws XMLStreamException {
+		writeElement(xml, XmlNodes.VERSION, version);
+		writeElement(xml, XmlNodes.LAST_UPDATE, "2020-05-01");
+		writeElement(xml, XmlNodes.VALID_FROM, "2019-01-01");
+		writeElement(xml, XmlNodes.STATUS, status);
+	}
+
+	private static void writeElement(XMLStreamWriter xml, String name, String value) throws XMLStreamException {
+
+		if (value.isEmpty()) {
+			xml.writeEmptyElement(name);
+			return;
+		}
+
+		xml.writeStartElement(name);
+		xml.writeCharacters(value);
+		xml.writeEndElement();
+	}
+
+	public static void main(String[] args) {
+
+		CatalogueGenerator generator = new CatalogueGenerator();
+		String output = null;
+		boolean wrongArgs = false;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+
+				if (args[i].equals("-terms") && i + 1 < args.length)
+					generator.setTerms(Integer.parseInt(args[++i]));
+				else if (args[i].equals("-hierarchies") && i + 1 < args.length)
+					generator.setHierarchies(Integer.parseInt(args[++i]));
+				else if (args[i].equals("-attributes") && i + 1 < args.length)
+					generator.setAttributes(Integer.parseInt(args[++i]));
+				else if (args[i].equals("-catalogueAttributes") && i + 1 < args.length)
+					generator.setCatalogueAttributes(Integer.parseInt(args[++i]));
+				else if (args[i].equals("-assignments") && i + 1 < args.length)
+					generator.setMaxAssignments(Integer.parseInt(args[++i]));
+				else if (args[i].equals("-values") && i + 1 < args.length)
+					generator.setMaxValues(Integer.parseInt(args[++i]));
+				else if (args[i].equals("-operations") && i + 1 < args.length)
+					generator.setOperations(Integer.parseInt(args[++i]));
+				else if (args[i].equals("-seed") && i + 1 < args.length)
+					generator.setSeed(Long.parseLong(args[++i]));
+				else if (output == null && !args[i].startsWith("-"))
+					output = args[i];
+				else
+					wrongArgs = true;
+			}
+		} catch (NumberFormatException e) {
+			wrongArgs = true;
+		}
+
+		if (wrongArgs || output == null) {
+
+			LOGGER.error("Wrong arguments. Please specify the output catalogue xml, it is compressed if it ends "
+					+ "with .gz (example: java -cp xmlToExcel.jar catalogue_generator.CatalogueGenerator "
+					+ "-terms 1000000 D:\\catalogue.xml.gz). Options: -terms n (default 1000), -hierarchies n "
+					+ "(default 5, master excluded), -attributes n (default 10), -catalogueAttributes n "
+					+ "(default 2, attributes of catalogue type), -assignments n (default 5, max hierarchy "
+					+ "assignments of a term), -values n (default 4, max values of a repeatable attribute), "
+					+ "-operations n (default 10, operations of the release notes), -seed n (default 1).");
+
+			return;
+		}
+
+		try {
+			generator.generate(output);
+		} catch (IOException | XMLStreamException e) {
+			LOGGER.error("Cannot generate the catalogue " + output, e);
+			e.printStackTrace();
+
+			// let the scripts know that the generation failed
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package catalogue_metadata;
+
+import naming_convention.SpecialValues;
+
+/**
+ * The attribute fields which are needed to create the term columns.
+ * The values are the ones of the attribute sheet, an empty string if
+ * the field is missing.
+ * @author avonva
+ *
+ */
+public class AttributeInfo {
+
+	private final String code;
+	private final String name;
+	private final String type;
+	private final String catalogueCode;
+
+	public AttributeInfo( String code, String name, String type, String catalogueCode ) {
+		this.code = code;
+		this.name = name;
+		this.type = type;
+		this.catalogueCode = catalogueCode;
+	}
+
+	public String getCode() {
+		return code;
+	}
+	public String getName() {
+		return name;
+	}
+	public String getType() {
+		return type;
+	}
+	public String getCatalogueCode() {
+		return catalogueCode;
+	}
+
+	/**
+	 * Check if the attribute values are terms of a catalogue (i.e. a facet category)
+	 * @return
+	 */
+	public boolean isCatalogueAttribute() {
+		return type.equals( SpecialValues.ATTR_CAT_TYPE );
+	}
+
+	/**
+	 * Get the hierarchy of a catalogue attribute, the attribute
+	 * catalogue code is composed as catalogueCode.hierarchyCode
+	 * @return the hierarchy code, null if not specified
+	 */
+	public String getCatalogueHierarchyCode() {
+
+		String[] split = catalogueCode.split("\\.");
+
+		if ( split.length > 1 )
+			return split[1];
+
+		return null;
+	}
+}
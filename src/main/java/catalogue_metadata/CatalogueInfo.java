@@ -0,0 +1,57 @@
+package catalogue_metadata;
+
+/**
+ * The catalogue fields which are needed by the other sheets (e.g. the
+ * master hierarchy is created with them). The values are the ones of the
+ * catalogue sheet, an empty string if the field is missing.
+ * @author avonva
+ *
+ */
+public class CatalogueInfo {
+
+	private final String code;
+	private final String name;
+	private final String label;
+	private final String scopeNote;
+	private final String version;
+	private final String lastUpdate;
+	private final String validFrom;
+	private final String status;
+
+	public CatalogueInfo( String code, String name, String label, String scopeNote, String version,
+			String lastUpdate, String validFrom, String status ) {
+		this.code = code;
+		this.name = name;
+		this.label = label;
+		this.scopeNote = scopeNote;
+		this.version = version;
+		this.lastUpdate = lastUpdate;
+		this.validFrom = validFrom;
+		this.status = status;
+	}
+
+	public String getCode() {
+		return code;
+	}
+	public String getName() {
+		return name;
+	}
+	public String getLabel() {
+		return label;
+	}
+	public String getScopeNote() {
+		return scopeNote;
+	}
+	public String getVersion() {
+		return version;
+	}
+	public String getLastUpdate() {
+		return lastUpdate;
+	}
+	public String getValidFrom() {
+		return validFrom;
+	}
+	public String getStatus() {
+		return status;
+	}
+}
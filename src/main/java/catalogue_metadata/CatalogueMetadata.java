@@ -0,0 +1,86 @@
+package catalogue_metadata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The catalogue, hierarchies and attributes data which are needed to create
+ * the term sheet. The data are collected by the converters while they parse
+ * the xml, so that the sheets are never read back (the rows of a streaming
+ * workbook are not available anymore once flushed to disk).
+ * The object is immutable and can be shared by the converters of the chunks.
+ * @author avonva
+ *
+ */
+public class CatalogueMetadata {
+
+	private final CatalogueInfo catalogue;
+	private final List<String> hierarchyCodes;
+	private final HashSet<String> hierarchies;
+	private final List<AttributeInfo> attributes;
+	private final HashMap<String, AttributeInfo> attributesByCode;
+
+	/**
+	 * Create the metadata
+	 * @param catalogue the catalogue data, null if the catalogue was not found
+	 * @param hierarchyCodes the codes of the hierarchies (master included) in sheet order
+	 * @param attributes the attributes in sheet order
+	 */
+	public CatalogueMetadata( CatalogueInfo catalogue, List<String> hierarchyCodes,
+			List<AttributeInfo> attributes ) {
+
+		this.catalogue = catalogue;
+		this.hierarchyCodes = Collections.unmodifiableList( new ArrayList<>( hierarchyCodes ) );
+		this.hierarchies = new HashSet<>( hierarchyCodes );
+		this.attributes = Collections.unmodifiableList( new ArrayList<>( attributes ) );
+		this.attributesByCode = new HashMap<>();
+
+		for ( AttributeInfo attribute : attributes )
+			attributesByCode.put( attribute.getCode(), attribute );
+	}
+
+	/**
+	 * Get the catalogue data
+	 * @return null if the catalogue was not found
+	 */
+	public CatalogueInfo getCatalogue() {
+		return catalogue;
+	}
+
+	/**
+	 * Get the codes of the hierarchies, in the order of the hierarchy sheet
+	 * @return
+	 */
+	public List<String> getHierarchyCodes() {
+		return hierarchyCodes;
+	}
+
+	/**
+	 * Check if the catalogue contains a hierarchy
+	 * @param code
+	 * @return
+	 */
+	public boolean hasHierarchy( String code ) {
+		return hierarchies.contains( code );
+	}
+
+	/**
+	 * Get the attributes, in the order of the attribute sheet
+	 * @return
+	 */
+	public List<AttributeInfo> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * Get an attribute by code
+	 * @param code
+	 * @return null if not found
+	 */
+	public AttributeInfo getAttribute( String code ) {
+		return attributesByCode.get( code );
+	}
+}
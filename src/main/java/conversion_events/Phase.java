@@ -0,0 +1,30 @@
+package conversion_events;
+
+/**
+ * The phases of a conversion which are recorded as {@link PhaseEvent}
+ * @author avonva
+ *
+ */
+public enum Phase {
+
+	/**
+	 * The conversion of a sheet with the xslt filter (ConversionPerformer.convert)
+	 */
+	CONVERSION,
+
+	/**
+	 * The xslt filter of the catalogue (XsltCompiler.compile)
+	 */
+	XSLT,
+
+	/**
+	 * The parse of the xml of a sheet (SheetConverter.parse, or a section of
+	 * the single parse of the catalogue)
+	 */
+	PARSE,
+
+	/**
+	 * The final write of the workbook
+	 */
+	WRITE
+}
@@ -0,0 +1,67 @@
+package conversion_events;
+
+/**
+ * A phase of a conversion, recorded as an event of the Java Flight Recorder
+ * to see which phase of a slow conversion is running. Use it as:
+ * <pre>
+ * PhaseEvent event = PhaseEvent.begin(Phase.PARSE, sheetName);
+ * ...
+ * event.setRows(rows).setBytes(bytes).commit();
+ * </pre>
+ * The flight recorder is not available in Java 8, therefore this version does
+ * nothing. The jar is multi-release: on Java 11 or later the version in
+ * META-INF/versions/11 (src/main/java11) records the events. The events are
+ * recorded only if they are enabled in a recording, otherwise they cost an
+ * allocation for each phase, so they can be left on.
+ * @author avonva
+ *
+ */
+public class PhaseEvent {
+
+	private static final PhaseEvent DISABLED = new PhaseEvent();
+
+	private PhaseEvent() {}
+
+	/**
+	 * Start a phase
+	 * @param phase
+	 * @param sheetName the sheet of the phase, null if the phase is
+	 * related to the whole workbook
+	 * @return the event of the phase, commit it at the end of the phase
+	 */
+	public static PhaseEvent begin(Phase phase, String sheetName) {
+		return DISABLED;
+	}
+
+	/**
+	 * Check if the event is recorded. Use it to avoid computing
+	 * values which are only needed by the event.
+	 * @return
+	 */
+	public boolean isEnabled() {
+		return false;
+	}
+
+	/**
+	 * Set the rows of the sheets, the headers included
+	 * @param rows
+	 * @return
+	 */
+	public PhaseEvent setRows(long rows) {
+		return this;
+	}
+
+	/**
+	 * Set the bytes read or written by the phase
+	 * @param bytes
+	 * @return
+	 */
+	public PhaseEvent setBytes(long bytes) {
+		return this;
+	}
+
+	/**
+	 * End the phase and record the event
+	 */
+	public void commit() {}
+}
@@ -0,0 +1,277 @@
+package csv_writer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import xlsx_writer.SheetOutput;
+import xlsx_writer.XlsxRow;
+
+/**
+ * Write the rows of a sheet in a delimited text file, encoded in utf-8.
+ * The first row is the header row, all the rows have as many fields as the
+ * headers. The fields which contain the delimiter, a quote or a new line are
+ * quoted and their quotes are doubled (RFC 4180, also for the tsv).
+ * General notes:
+ * a sheet should be written by one thread at a time. An error of the output
+ * is logged once and stops the sheet, it is thrown by {@link DelimitedWriter#finish()}.
+ * @author avonva
+ *
+ */
+public class DelimitedSheetWriter implements SheetOutput {
+
+	private static final Logger LOGGER = LogManager.getLogger(DelimitedSheetWriter.class);
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private String name;
+	private Path path;
+	private char delimiter;
+	private String lineSeparator;
+	private DateTimeFormatter dateFormat;
+
+	private Writer writer;
+	private boolean isFinished = false;
+	private IOException error;
+
+	private XlsxRow row;             // the current row, reused for all the rows
+	private boolean hasRow = false;  // true if the current row was created and not written
+	private int columns = 0;         // the number of fields of each row (the headers)
+
+	/**
+	 * Create the file of the sheet, use {@link DelimitedWriter#createSheet(String)}
+	 * @param name
+	 * @param path
+	 * @param format
+	 * @param gzip
+	 * @param dateFormat
+	 */
+	DelimitedSheetWriter( String name, Path path, DelimitedWriter.Format format,
+			boolean gzip, DateTimeFormatter dateFormat ) {
+
+		this.name = name;
+		this.path = path;
+		this.delimiter = format.getDelimiter();
+		this.lineSeparator = format.getLineSeparator();
+		this.dateFormat = dateFormat;
+		this.row = new XlsxRow();
+
+		try {
+
+			if ( gzip ) {
+				writer = new BufferedWriter( new OutputStreamWriter( new GZIPOutputStream(
+						Files.newOutputStream( path ), BUFFER_SIZE ), StandardCharsets.UTF_8 ), BUFFER_SIZE );
+			}
+			else {
+				writer = Files.newBufferedWriter( path, StandardCharsets.UTF_8 );
+			}
+
+			LOGGER.info( name + ": Writing the sheet in " + path );
+
+		} catch ( IOException e ) {
+			setError( e );
+		}
+	}
+
+	/**
+	 * Create a new row. The previous row is written and it cannot be changed anymore.
+	 * @return the row, the same object is returned for all the rows
+	 */
+	@Override
+	public XlsxRow createRow() {
+
+		writeCurrentRow();
+
+		hasRow = true;
+
+		return row;
+	}
+
+	/**
+	 * Write a row created outside the sheet (e.g. in another thread) after
+	 * the current rows
+	 * @param detached
+	 */
+	@Override
+	public void appendRow( XlsxRow detached ) {
+		writeCurrentRow();
+		writeRow( detached );
+	}
+
+	/**
+	 * Write the last row and close the file. No row can be added after this.
+	 */
+	@Override
+	public void finish() {
+
+		if ( isFinished )
+			return;
+
+		writeCurrentRow();
+
+		isFinished = true;
+
+		if ( writer == null )
+			return;
+
+		try {
+			writer.close();
+		} catch ( IOException e ) {
+			setError( e );
+		}
+	}
+
+	private void writeCurrentRow() {
+
+		if ( isFinished )
+			throw new IllegalStateException( "The sheet " + name + " is already finished" );
+
+		if ( !hasRow )
+			return;
+
+		writeRow( row );
+		row.clear();
+		hasRow = false;
+	}
+
+	/**
+	 * Write a row in the file, the missing cells are empty fields
+	 * @param row
+	 */
+	private void writeRow( XlsxRow row ) {
+
+		// the first row is the header row
+		if ( columns == 0 )
+			columns = row.getLastCellNum();
+
+		if ( error != null )
+			return;
+
+		try {
+
+			int size = Math.max( columns, row.getLastCellNum() );
+
+			for ( int column = 0; column < size; column++ ) {
+
+				if ( column > 0 )
+					writer.write( delimiter );
+
+				if ( column <= row.getLastColumn() )
+					writeField( row, column );
+			}
+
+			writer.write( lineSeparator );
+
+		} catch ( IOException e ) {
+			setError( e );
+		}
+	}
+
+	private void writeField( XlsxRow row, int column ) throws IOException {
+
+		switch ( row.getType( column ) ) {
+		case XlsxRow.STRING:
+			writeQuoted( row.getString( column ) );
+			break;
+
+		case XlsxRow.NUMBER:
+			double number = row.getNumber( column );
+			long integer = (long) number;
+			writer.write( integer == number ? Long.toString( integer ) : Double.toString( number ) );
+			break;
+
+		case XlsxRow.DATE:
+			LocalDate date = row.getDate( column );
+			if ( date != null )
+				writeQuoted( dateFormat.format( date ) );
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Write a text field, quoted only if needed
+	 * @param value
+	 * @throws IOException
+	 */
+	private void writeQuoted( String value ) throws IOException {
+
+		if ( value == null )
+			return;
+
+		if ( !needsQuotes( value ) ) {
+			writer.write( value );
+			return;
+		}
+
+		writer.write( '"' );
+
+		int start = 0;
+		int quote;
+		while ( ( quote = value.indexOf( '"', start ) ) >= 0 ) {
+			writer.write( value, start, quote + 1 - start );
+			writer.write( '"' );
+			start = quote + 1;
+		}
+
+		writer.write( value, start, value.length() - start );
+		writer.write( '"' );
+	}
+
+	private boolean needsQuotes( String value ) {
+
+		for ( int i = 0; i < value.length(); i++ ) {
+			char c = value.charAt( i );
+			if ( c == delimiter || c == '"' || c == '\n' || c == '\r' )
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Keep the first error and stop writing the sheet
+	 * @param e
+	 */
+	private void setError( IOException e ) {
+
+		LOGGER.error( "Cannot write the sheet " + name + " in " + path, e );
+		e.printStackTrace();
+
+		if ( error == null )
+			error = e;
+	}
+
+	/**
+	 * Get the error of the file, null if none
+	 * @return
+	 */
+	IOException getError() {
+		return error;
+	}
+
+	public boolean isFinished() {
+		return isFinished;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+}
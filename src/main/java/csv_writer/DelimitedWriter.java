@@ -0,0 +1,162 @@
+package csv_writer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+
+import xlsx_writer.SheetOutput;
+import xlsx_writer.WorkbookOutput;
+
+/**
+ * Write each sheet in a delimited text file (csv or tsv) of a folder, named
+ * as the sheet (e.g. term.csv). The rows are written as soon as they are
+ * complete (see {@link DelimitedSheetWriter}), no workbook is kept in memory.
+ * General notes:
+ * the files have no order, therefore {@link #setSheetOrder(String, int)}
+ * does nothing. The dates are written as text with the date format.
+ * @author avonva
+ *
+ */
+public class DelimitedWriter implements WorkbookOutput {
+
+	/**
+	 * The format of the files
+	 * @author avonva
+	 *
+	 */
+	public enum Format {
+
+		CSV( ',', "\r\n", "csv" ),
+		TSV( '\t', "\n", "tsv" );
+
+		private char delimiter;
+		private String lineSeparator;
+		private String extension;
+
+		private Format( char delimiter, String lineSeparator, String extension ) {
+			this.delimiter = delimiter;
+			this.lineSeparator = lineSeparator;
+			this.extension = extension;
+		}
+
+		public char getDelimiter() {
+			return delimiter;
+		}
+
+		public String getLineSeparator() {
+			return lineSeparator;
+		}
+
+		public String getExtension() {
+			return extension;
+		}
+
+		/**
+		 * Get the format from its extension (e.g. csv)
+		 * @param extension
+		 * @return
+		 */
+		public static Format fromExtension( String extension ) {
+
+			for ( Format format : values() ) {
+				if ( format.extension.equalsIgnoreCase( extension ) )
+					return format;
+			}
+
+			throw new IllegalArgumentException( "Unknown format " + extension );
+		}
+	}
+
+	private File folder;
+	private Format format;
+	private boolean gzip;
+	private DateTimeFormatter dateFormat;
+
+	private ArrayList<DelimitedSheetWriter> sheets;
+
+	/**
+	 * Initialize the writer, the folder is created if it does not exist
+	 * @param folder the folder which receives the files
+	 * @param format
+	 * @param gzip true to compress each file with gzip (e.g. term.csv.gz)
+	 * @param dateFormat the format of the dates (e.g. yyyy/MM/dd)
+	 * @throws IOException if the folder cannot be created
+	 */
+	public DelimitedWriter( File folder, Format format, boolean gzip, String dateFormat ) throws IOException {
+		this.folder = folder;
+		this.format = format;
+		this.gzip = gzip;
+		this.dateFormat = DateTimeFormatter.ofPattern( dateFormat );
+		this.sheets = new ArrayList<>();
+
+		Files.createDirectories( folder.toPath() );
+	}
+
+	/**
+	 * Create the file of a sheet. If the file cannot be created, the error is
+	 * logged and thrown by {@link #finish()}.
+	 * @param sheetName
+	 * @return
+	 */
+	@Override
+	public synchronized SheetOutput createSheet( String sheetName ) {
+
+		for ( DelimitedSheetWriter sheet : sheets ) {
+			if ( sheet.getName().equalsIgnoreCase( sheetName ) )
+				throw new IllegalArgumentException( "The output already contains a sheet named " + sheetName );
+		}
+
+		String filename = sheetName + "." + format.getExtension() + ( gzip ? ".gz" : "" );
+
+		DelimitedSheetWriter sheet = new DelimitedSheetWriter( sheetName,
+				new File( folder, filename ).toPath(), format, gzip, dateFormat );
+
+		sheets.add( sheet );
+
+		return sheet;
+	}
+
+	/**
+	 * The files have no order
+	 */
+	@Override
+	public void setSheetOrder( String sheetName, int pos ) {
+	}
+
+	/**
+	 * Finish and close all the files
+	 * @throws IOException the first error of the files
+	 */
+	@Override
+	public synchronized void finish() throws IOException {
+
+		IOException error = null;
+
+		// close all the files, also after an error
+		for ( DelimitedSheetWriter sheet : sheets ) {
+
+			sheet.finish();
+
+			if ( error == null )
+				error = sheet.getError();
+		}
+
+		if ( error != null )
+			throw error;
+	}
+
+	/**
+	 * Close and delete all the files, e.g. if the conversion failed
+	 * and the sheets are incomplete
+	 * @throws IOException if a file cannot be deleted
+	 */
+	public synchronized void discard() throws IOException {
+
+		for ( DelimitedSheetWriter sheet : sheets ) {
+			sheet.finish();
+			Files.deleteIfExists( sheet.getPath() );
+		}
+	}
+}
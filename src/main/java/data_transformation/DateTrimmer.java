@@ -1,22 +1,42 @@
 package data_transformation;
 
 import java.text.DateFormat;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.poi.ss.usermodel.DateUtil;
 
 /**
  * Manage date format in standard format yyyy-MM-dd
+ * The dates are parsed without exceptions and the parsed values are cached,
+ * since the catalogues repeat the same dates many times. The values which are
+ * not dates are cached too, so each of them is parsed and logged only once
+ * (until the cache is emptied). The methods are thread safe.
  * @author avonva
  *
  */
 public class DateTrimmer {
-	
+
 	private static final Logger LOGGER = LogManager.getLogger(DateTrimmer.class);
 
+	// the cache is emptied when it is full
+	private static final int CACHE_SIZE = 4096;
+	private static final ConcurrentHashMap<String, LocalDate> CACHE = new ConcurrentHashMap<>();
+
+	// cached for the values which are not dates
+	private static final LocalDate NOT_A_DATE = LocalDate.MIN;
+
+	// excel serial number of 1970-01-01 (1900 date system)
+	private static final long EXCEL_EPOCH_DAY = 25569;
+
+	// before this day the excel serial numbers count the inexistent 1900-02-29
+	private static final LocalDate EXCEL_LEAP_BUG = LocalDate.of( 1900, 3, 1 );
+
 	/**
 	 * Trim a timestamp only to year-month-day fields
 	 * @param stringDate
@@ -24,48 +44,142 @@ public class DateTrimmer {
 	 */
 	public static Date trimDate ( String stringDate ) {
 
-		if ( stringDate.isEmpty() )
+		LocalDate date = parseDate( stringDate );
+
+		if ( date == null )
+			return null;
+
+		return Date.from( date.atStartOfDay( ZoneId.systemDefault() ).toInstant() );
+	}
+
+	/**
+	 * Parse the year-month-day fields of a timestamp. The yyyy-MM-dd format
+	 * is tried first and then the yyyy/MM/dd format, the following characters
+	 * (e.g. the time) are ignored. As the previous SimpleDateFormat parsing,
+	 * months and days out of range are carried into the next fields.
+	 * @param stringDate
+	 * @return the date, null if missing or not valid
+	 */
+	public static LocalDate parseDate ( String stringDate ) {
+
+		if ( stringDate == null || stringDate.isEmpty() )
 			return null;
-		
-		// try first format
-		DateFormat format = new SimpleDateFormat( "yyyy-MM-dd" );
-		Date date;
-		try {
-			
-			date = format.parse( stringDate );
-			
+
+		LocalDate date = CACHE.get( stringDate );
+
+		if ( date != null )
+			return date != NOT_A_DATE ? date : null;
+
+		// try first format, if it did not work => try second format
+		date = parseDate( stringDate, '-' );
+
+		if ( date == null )
+			date = parseDate( stringDate, '/' );
+
+		if ( CACHE.size() >= CACHE_SIZE )
+			CACHE.clear();
+
+		if ( date != null ) {
+			CACHE.put( stringDate, date );
 			return date;
-			
-		} catch (ParseException e) {
-			
-			// if it did not work => try second format
-			
-			DateFormat format2 = new SimpleDateFormat( "yyyy/MM/dd" );
-			try {
-				date = format2.parse( stringDate );
-				return date;
-			} catch (ParseException e1) {
-				LOGGER.error("Error during date parsing ", e1);
-				e1.printStackTrace();
-			}
 		}
-		
+
+		// only the thread which caches the value logs it
+		if ( CACHE.putIfAbsent( stringDate, NOT_A_DATE ) == null )
+			LOGGER.error( "Error during date parsing, not a date: " + stringDate );
+
 		return null;
 	}
-	
+
+	/**
+	 * Parse year, month and day separated by the separator
+	 * @param value
+	 * @param separator
+	 * @return null if the value does not match
+	 */
+	private static LocalDate parseDate ( String value, char separator ) {
+
+		int length = value.length();
+		int position = 0;
+		int year = 0;
+		int month = 0;
+		int day = 0;
+
+		for ( int field = 0; field < 3; field++ ) {
+
+			if ( field > 0 ) {
+
+				if ( position >= length || value.charAt( position ) != separator )
+					return null;
+
+				position++;
+			}
+
+			int start = position;
+			int number = 0;
+
+			// at most 9 digits, to avoid overflows
+			while ( position < length && position - start < 9 ) {
+
+				char c = value.charAt( position );
+
+				if ( c < '0' || c > '9' )
+					break;
+
+				number = number * 10 + ( c - '0' );
+				position++;
+			}
+
+			if ( position == start )
+				return null;
+
+			if ( field == 0 )
+				year = number;
+			else if ( field == 1 )
+				month = number;
+			else
+				day = number;
+		}
+
+		if ( year < 1 || year > 9999 || month > 12 * 9999 || day > 366 * 9999 )
+			return null;
+
+		LocalDate date = LocalDate.of( year, 1, 1 ).plusMonths( month - 1 ).plusDays( day - 1 );
+
+		if ( date.getYear() > 9999 )
+			return null;
+
+		return date;
+	}
+
+	/**
+	 * Get the excel serial number of a date (1900 date system), to
+	 * write the date in a numeric cell
+	 * @param date
+	 * @return
+	 */
+	public static double toExcelDate ( LocalDate date ) {
+
+		if ( date.isBefore( EXCEL_LEAP_BUG ) )
+			return DateUtil.getExcelDate( Date.from( date.atStartOfDay( ZoneId.systemDefault() ).toInstant() ) );
+
+		return date.toEpochDay() + EXCEL_EPOCH_DAY;
+	}
+
 	/**
 	 * Convert a date into string with yyyy/MM/dd format
 	 * @param date
 	 * @return
 	 */
 	public static String dateToString ( Date date ) {
-		
+
 		if ( date == null )
 			return "";
-		
+
 		DateFormat format = new SimpleDateFormat( "yyyy/MM/dd" );
-		
+
 		LOGGER.debug("Date after format is: " + format.format( date ));
+
 		return format.format( date );
 	}
 }
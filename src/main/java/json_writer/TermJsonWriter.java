@@ -0,0 +1,365 @@
+package json_writer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import data_transformation.BooleanConverter;
+import data_transformation.DateTrimmer;
+import naming_convention.SpecialValues;
+import sheet_converter.XmlSymbols;
+
+/**
+ * Write the terms of a catalogue in the JSON Lines format (a json object for
+ * each line) while the xml is parsed. The handler receives the SAX events of
+ * the terms (e.g. with {@link xml_to_excel.CatalogueDemultiplexer#addListener})
+ * and writes each term as soon as it is closed, therefore only one term at a
+ * time is kept in memory. Unlike the term sheet, the nested data are not
+ * flattened into columns:
+ * {"termCode":"A0B9Z","termExtendedName":"Bovine","version":"1.0","lastUpdate":"2020-01-31",
+ *  "status":"APPROVED","deprecated":false,
+ *  "hierarchyAssignments":[{"hierarchyCode":"report","parentCode":"A0B9Y","order":3,"reportable":true}],
+ *  "implicitAttributes":{"implicitFacets":["F01.A0","F02.B0"]}}
+ * General notes:
+ * the fields of the term are its leaf nodes, named as the xml nodes. The dates
+ * are written as yyyy-MM-dd. An error of the output is logged once and stops
+ * the writing, it is thrown by {@link #finish()}.
+ * @author avonva
+ *
+ */
+public class TermJsonWriter extends DefaultHandler {
+
+	private static final Logger LOGGER = LogManager.getLogger(TermJsonWriter.class);
+
+	// the values of the assignment order which are written as json numbers
+	private static final Pattern NUMBER = Pattern.compile( "-?\\d+(\\.\\d+)?" );
+
+	private Writer writer;
+	private IOException error;
+	private long termCount = 0;
+
+	private boolean isTerm = false;                // true if we are in a term node
+	private boolean isHierarchyAssignment = false; // true if we are in a hierarchy assignment node
+	private boolean isImplicitAttribute = false;   // true if we are in an implicit attribute node
+	private boolean isLeaf = false;                // true if the current node has no child nodes
+
+	private StringBuilder text;          // the text of the current node
+	private StringBuilder fields;        // the json fields of the term
+	private StringBuilder assignments;   // the json objects of the hierarchy assignments
+	private StringBuilder assignment;    // the json fields of the current assignment
+
+	// the values of the implicit attributes, by attribute code
+	private LinkedHashMap<String, ArrayList<String>> attributes;
+	private String attributeCode;
+	private ArrayList<String> attributeValues;
+
+	/**
+	 * Initialize the writer
+	 * @param writer the output of the json lines, it is not closed
+	 */
+	public TermJsonWriter( Writer writer ) {
+		this.writer = writer;
+		this.text = new StringBuilder();
+		this.fields = new StringBuilder();
+		this.assignments = new StringBuilder();
+		this.assignment = new StringBuilder();
+		this.attributes = new LinkedHashMap<>();
+		this.attributeValues = new ArrayList<>();
+	}
+
+	@Override
+	public void startElement( String uri, String localName, String qName,
+			Attributes attributes ) throws SAXException {
+
+		text.setLength( 0 );
+		isLeaf = true;
+
+		switch ( XmlSymbols.getId( qName ) ) {
+
+		case XmlSymbols.TERM_ROOT_NODE:
+			if ( !isTerm ) {
+				isTerm = true;
+				fields.setLength( 0 );
+				assignments.setLength( 0 );
+				this.attributes.clear();
+			}
+			break;
+
+		case XmlSymbols.HIER_ASSIGNMENT:
+			isHierarchyAssignment = isTerm;
+			assignment.setLength( 0 );
+			break;
+
+		case XmlSymbols.IMPLICIT_ATTR:
+			isImplicitAttribute = isTerm;
+			attributeCode = null;
+			attributeValues.clear();
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	@Override
+	public void characters( char[] ch, int start, int length ) throws SAXException {
+		if ( isTerm )
+			text.append( ch, start, length );
+	}
+
+	@Override
+	public void endElement( String uri, String localName, String qName ) throws SAXException {
+
+		if ( !isTerm )
+			return;
+
+		int nodeId = XmlSymbols.getId( qName );
+
+		boolean wasLeaf = isLeaf;
+		isLeaf = false;
+
+		switch ( nodeId ) {
+
+		case XmlSymbols.HIER_ASSIGNMENT:
+			if ( isHierarchyAssignment ) {
+				if ( assignments.length() > 0 )
+					assignments.append( ',' );
+				assignments.append( '{' ).append( assignment ).append( '}' );
+				isHierarchyAssignment = false;
+			}
+			break;
+
+		case XmlSymbols.IMPLICIT_ATTR:
+			if ( isImplicitAttribute ) {
+
+				// the values of repeated codes are merged
+				if ( attributeCode != null ) {
+
+					ArrayList<String> values = attributes.get( attributeCode );
+
+					if ( values == null ) {
+						values = new ArrayList<>();
+						attributes.put( attributeCode, values );
+					}
+
+					values.addAll( attributeValues );
+				}
+
+				isImplicitAttribute = false;
+			}
+			break;
+
+		case XmlSymbols.TERM_ROOT_NODE:
+			writeTerm();
+			isTerm = false;
+			break;
+
+		default:
+			// only the leaf nodes have a value
+			if ( wasLeaf )
+				addValue( nodeId, qName, text.toString() );
+			break;
+		}
+	}
+
+	/**
+	 * Add the value of a leaf node to the current term
+	 * @param nodeId
+	 * @param nodeName
+	 * @param value
+	 */
+	private void addValue( int nodeId, String nodeName, String value ) {
+
+		if ( isHierarchyAssignment ) {
+
+			switch ( nodeId ) {
+			case XmlSymbols.ASS_ORDER:
+				putField( assignment, nodeName, value, NUMBER.matcher( value ).matches() );
+				break;
+			case XmlSymbols.ASS_REPORT:
+				putField( assignment, nodeName, String.valueOf( BooleanConverter.getBoolean( value ) ), true );
+				break;
+			default:
+				putField( assignment, nodeName, value, false );
+				break;
+			}
+
+			return;
+		}
+
+		if ( isImplicitAttribute ) {
+
+			if ( nodeId == XmlSymbols.IMPLICIT_CODE )
+				attributeCode = value;
+			else if ( nodeId == XmlSymbols.IMPLICIT_VALUE )
+				attributeValues.add( value );
+
+			return;
+		}
+
+		switch ( nodeId ) {
+
+		case XmlSymbols.VALID_FROM:
+		case XmlSymbols.VALID_TO:
+		case XmlSymbols.LAST_UPDATE:
+
+			// the dates without the time, as in the sheet
+			LocalDate date = DateTrimmer.parseDate( value );
+			if ( date != null )
+				putField( fields, nodeName, date.toString(), false );
+			break;
+
+		case XmlSymbols.STATUS:
+			putField( fields, nodeName, value, false );
+			putField( fields, "deprecated",
+					String.valueOf( value.equals( SpecialValues.STATUS_DEPRECATED ) ), true );
+			break;
+
+		default:
+			putField( fields, nodeName, value, false );
+			break;
+		}
+	}
+
+	/**
+	 * Write the current term in a line
+	 */
+	private void writeTerm() {
+
+		StringBuilder line = fields;
+
+		if ( line.length() > 0 )
+			line.append( ',' );
+
+		line.append( "\"hierarchyAssignments\":[" ).append( assignments ).append( "],\"implicitAttributes\":{" );
+
+		boolean isFirst = true;
+		for ( Map.Entry<String, ArrayList<String>> entry : attributes.entrySet() ) {
+
+			if ( !isFirst )
+				line.append( ',' );
+
+			putString( line, entry.getKey() );
+			line.append( ":[" );
+
+			for ( int i = 0; i < entry.getValue().size(); i++ ) {
+				if ( i > 0 )
+					line.append( ',' );
+				putString( line, entry.getValue().get( i ) );
+			}
+
+			line.append( ']' );
+			isFirst = false;
+		}
+
+		line.append( "}}\n" );
+
+		termCount++;
+
+		if ( error != null )
+			return;
+
+		try {
+			writer.write( '{' );
+			writer.append( line );
+		} catch ( IOException e ) {
+			LOGGER.error( "Cannot write the json lines of the terms", e );
+			e.printStackTrace();
+			error = e;
+		}
+	}
+
+	/**
+	 * Add a field to a json object
+	 * @param object the fields of the object
+	 * @param name
+	 * @param value
+	 * @param isLiteral true to write the value as it is (number or boolean),
+	 * false to write it as a string
+	 */
+	private static void putField( StringBuilder object, String name, String value, boolean isLiteral ) {
+
+		if ( object.length() > 0 )
+			object.append( ',' );
+
+		putString( object, name );
+		object.append( ':' );
+
+		if ( isLiteral )
+			object.append( value );
+		else
+			putString( object, value );
+	}
+
+	/**
+	 * Write a json string, escaping the quotes, the back slashes
+	 * and the control characters
+	 * @param json
+	 * @param value
+	 */
+	public static void putString( StringBuilder json, String value ) {
+
+		json.append( '"' );
+
+		for ( int i = 0; i < value.length(); i++ ) {
+
+			char c = value.charAt( i );
+
+			switch ( c ) {
+			case '"':
+				json.append( "\\\"" );
+				break;
+			case '\\':
+				json.append( "\\\\" );
+				break;
+			case '\n':
+				json.append( "\\n" );
+				break;
+			case '\r':
+				json.append( "\\r" );
+				break;
+			case '\t':
+				json.append( "\\t" );
+				break;
+			default:
+				if ( c < 0x20 )
+					json.append( String.format( "\\u%04x", (int) c ) );
+				else
+					json.append( c );
+				break;
+			}
+		}
+
+		json.append( '"' );
+	}
+
+	/**
+	 * Flush the written terms
+	 * @throws IOException the first error of the output
+	 */
+	public void finish() throws IOException {
+
+		if ( error != null )
+			throw error;
+
+		writer.flush();
+	}
+
+	/**
+	 * Get the number of terms written
+	 * @return
+	 */
+	public long getTermCount() {
+		return termCount;
+	}
+}
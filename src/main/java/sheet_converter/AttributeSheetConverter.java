@@ -1,10 +1,15 @@
 package sheet_converter;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import org.apache.poi.ss.usermodel.Row;
 import org.xml.sax.Attributes;
 
+import catalogue_metadata.AttributeInfo;
 import naming_convention.Headers;
 import sheet_header.SheetHeader;
 
@@ -15,25 +20,49 @@ import sheet_header.SheetHeader;
  */
 public class AttributeSheetConverter extends ExtendedSheetConverter {
 
+	private ArrayList<AttributeInfo> attributes;  // the attributes of the sheet
+	private String[] values;                      // the values of the current attribute, indexed by node id
+
 	public AttributeSheetConverter(String inputFilename, String rootNode ) {
 		super(inputFilename, rootNode );
+		attributes = new ArrayList<>();
+		values = new String[ XmlSymbols.count() ];
+	}
+
+	/**
+	 * Get the attributes data which are needed by the term sheet, in
+	 * the order of the sheet. The attributes already parsed are available.
+	 * @return
+	 */
+	public List<AttributeInfo> getAttributes() {
+		return Collections.unmodifiableList( attributes );
+	}
+
+	/**
+	 * Get the value of a node of the current attribute
+	 * @param nodeId
+	 * @return the value, an empty string if the node was not found
+	 */
+	private String getValue( int nodeId ) {
+		String value = values[nodeId];
+		return value != null ? value : "";
 	}
 
 	@Override
 	public void startElement(Row row, String nodeName, Attributes attr) {}
 
 	@Override
-	public void addElement(Row row, String nodeName, String value) {	
+	public void addElement(Row row, int nodeId, String nodeName, String value) {	
 		
 		// call parent add element
-		super.addElement( row, nodeName, value );
+		super.addElement( row, nodeId, nodeName, value );
 		
 		// these nodes were already processed by the parent call
-		switch ( nodeName ) {
-		case Headers.VALID_FROM:
-		case Headers.VALID_TO:
-		case Headers.LAST_UPDATE:
-		case Headers.STATUS:
+		switch ( nodeId ) {
+		case XmlSymbols.VALID_FROM:
+		case XmlSymbols.VALID_TO:
+		case XmlSymbols.LAST_UPDATE:
+		case XmlSymbols.STATUS:
 			return;
 		}
 		
@@ -41,7 +70,19 @@ public class AttributeSheetConverter extends ExtendedSheetConverter {
 		// the attributes xml nodes are all unique in the same attribute node,
 		// therefore we can simply use the xml node as identifier of the header
 
-		createCell( nodeName, row, value );
+		createNodeCell( nodeId, nodeName, row, value );
+
+		if ( nodeId != XmlSymbols.UNKNOWN )
+			values[nodeId] = value;
+
+		// the attribute is finished
+		if ( nodeId == getRootNodeId() ) {
+
+			attributes.add( new AttributeInfo( getValue( XmlSymbols.CODE ), getValue( XmlSymbols.NAME ),
+					getValue( XmlSymbols.ATTR_TYPE ), getValue( XmlSymbols.ATTR_CAT_CODE ) ) );
+
+			Arrays.fill( values, null );
+		}
 	}
 	
 	/**
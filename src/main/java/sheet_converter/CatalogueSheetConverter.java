@@ -5,6 +5,7 @@ import java.util.HashMap;
 import org.apache.poi.ss.usermodel.Row;
 import org.xml.sax.Attributes;
 
+import catalogue_metadata.CatalogueInfo;
 import data_transformation.ValuesGrouper;
 import naming_convention.Headers;
 import sheet_header.SheetHeader;
@@ -20,36 +21,84 @@ public class CatalogueSheetConverter extends ExtendedSheetConverter {
 	private boolean isGroupNode;  // if we are analyzing a catalogueGroups node or not
 	private boolean parsingNotes;  // true if we are parsing the release notes
 	private ValuesGrouper group;  // used to save multiple values into a single cell
+	private boolean hasCatalogue;  // true if the catalogue node was found
+	private String[] values;       // the values of the catalogue nodes, indexed by node id
 	
 	public CatalogueSheetConverter(String inputFilename, String rootNode ) {
 		super(inputFilename, rootNode);
 		isGroupNode = false;
 		parsingNotes = false;
+		hasCatalogue = false;
+		values = new String[ XmlSymbols.count() ];
+	}
+
+	/**
+	 * Get the catalogue data which are needed by the other sheets. The
+	 * data of the nodes which are already parsed are available.
+	 * @return the catalogue data, null if the catalogue node was not found
+	 */
+	public CatalogueInfo getCatalogueInfo() {
+
+		if ( !hasCatalogue )
+			return null;
+
+		return new CatalogueInfo( getValue( XmlSymbols.CODE ), getValue( XmlSymbols.NAME ),
+				getValue( XmlSymbols.LABEL ), getValue( XmlSymbols.SCOPENOTE ),
+				getValue( XmlSymbols.VERSION ), getValue( XmlSymbols.LAST_UPDATE ),
+				getValue( XmlSymbols.VALID_FROM ), getValue( XmlSymbols.STATUS ) );
+	}
+
+	/**
+	 * Get the value of a catalogue node
+	 * @param nodeId
+	 * @return the value, an empty string if the node was not found
+	 */
+	private String getValue( int nodeId ) {
+		String value = values[nodeId];
+		return value != null ? value : "";
+	}
+
+	/**
+	 * Save the value of a catalogue node which was written in the sheet
+	 * @param nodeId
+	 * @param value
+	 */
+	private void putValue( int nodeId, String value ) {
+		if ( nodeId != XmlSymbols.UNKNOWN )
+			values[nodeId] = value;
 	}
 	
 	@Override
 	public void startElement( Row row, String nodeName, Attributes attr ) {
+		startElement( row, XmlSymbols.getId( nodeName ), nodeName, attr );
+	}
+
+	@Override
+	public void startElement( Row row, int nodeId, String nodeName, Attributes attr ) {
+
+		if ( nodeId == getRootNodeId() )
+			hasCatalogue = true;
 
 		// if we found a catalogue groups element
-		switch ( nodeName ) {
+		switch ( nodeId ) {
 		
-		case XmlNodes.CAT_GROUPS:
+		case XmlSymbols.CAT_GROUPS:
 			isGroupNode = true;
 			group = new ValuesGrouper();
 			break;
 			
-		case XmlNodes.RELEASE_NOTES:
+		case XmlSymbols.RELEASE_NOTES:
 			parsingNotes = true;
 			break;
 			
-		case XmlNodes.VERSION:
+		case XmlSymbols.VERSION:
 			
 			// if release note version, get its attribute
 			// we need to handle the nodeName in an exceptional
 			// way, since the header "version" is already used
 			// by the catalogue version
 			if ( parsingNotes )
-				createCell( XmlNodes.NOTES_VERSION, row, attr.getValue( 
+				createNodeCell( XmlSymbols.NOTES_VERSION, row, attr.getValue( 
 						XmlNodes.NOTES_VERSION_ATTRIBUTE_NAME ) );
 
 			break;
@@ -60,56 +109,69 @@ public class CatalogueSheetConverter extends ExtendedSheetConverter {
 	
 
 	@Override
-	public void addElement(Row row, String nodeName, String value) {
+	public void addElement(Row row, int nodeId, String nodeName, String value) {
 		
 		// call parent add element
-		super.addElement( row, nodeName, value );
+		super.addElement( row, nodeId, nodeName, value );
 		
 		// these nodes were already processed by the parent call
-		switch ( nodeName ) {
-		case XmlNodes.VALID_FROM:
-		case XmlNodes.VALID_TO:
-		case XmlNodes.LAST_UPDATE:
-		case XmlNodes.STATUS:
+		switch ( nodeId ) {
+		case XmlSymbols.VALID_FROM:
+		case XmlSymbols.VALID_TO:
+		case XmlSymbols.LAST_UPDATE:
+		case XmlSymbols.STATUS:
+			putValue( nodeId, value );
 			return;
 		}
 		
 		// process node
-		switch ( nodeName ) {
-		case XmlNodes.CAT_GROUPS:
+		switch ( nodeId ) {
+		case XmlSymbols.CAT_GROUPS:
 			// add as groups all the groups which were found, $ separated
 			if ( isGroupNode )
-				createCell( nodeName, row, group.getCompactValues() );
+				createNodeCell( nodeId, row, group.getCompactValues() );
 			
 			isGroupNode = false;
 			group = null;
 			break;
 			
-		case XmlNodes.CAT_GROUP:
+		case XmlSymbols.CAT_GROUP:
 			
 			if ( isGroupNode )
 				group.addValue( value );
 			break;
 
 			// end release note parsing
-		case XmlNodes.RELEASE_NOTES:
+		case XmlSymbols.RELEASE_NOTES:
 			parsingNotes = false;
 			break;
 			
-		case XmlNodes.VERSION:
+		case XmlSymbols.VERSION:
 			// create the version cell only for the catalogue version
-			if ( !parsingNotes )
-				createCell( nodeName, row, value );
+			if ( !parsingNotes ) {
+				createNodeCell( nodeId, row, value );
+				putValue( nodeId, value );
+			}
 			break;
 			
 		default:
 			// create a cell for the current row in the right column
-			createCell( nodeName, row, value );
+			createNodeCell( nodeId, nodeName, row, value );
+			putValue( nodeId, value );
 			break;
 		}
 	}
 
 	
+	/**
+	 * The catalogue groups are grouped in a single cell, they are needed
+	 * besides the columns
+	 */
+	@Override
+	protected boolean needsContent( int nodeId, String nodeName ) {
+		return nodeId == XmlSymbols.CAT_GROUP || super.needsContent( nodeId, nodeName );
+	}
+
 	/**
 	 * Get the headers of the catalogue sheet
 	 * @return
@@ -0,0 +1,446 @@
+package sheet_converter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * SAX handler which splits the root nodes of a converter (e.g. the terms) into
+ * chunks of contiguous nodes. Each chunk is converted on the executor by a new
+ * detached converter which uses the headers of the main converter. The rows
+ * of the chunks are then appended to the sheet in the original order, therefore
+ * the sheet is the same as the one created by the main converter alone.
+ * The chunks can also be read from other xml files (e.g. byte ranges of the
+ * same file), see {@link #submitXml(Supplier)}.
+ * General notes:
+ * use this only with converters whose rows depend only on the content of the
+ * root node, since the nodes outside the root nodes are sent only to the main
+ * converter.
+ * @author avonva
+ *
+ */
+public class ChunkedSheetHandler extends DefaultHandler {
+
+	private SheetConverter converter;            // the converter which owns the sheet
+	private DefaultHandler handler;              // handler of the main converter
+	private Supplier<SheetConverter> factory;    // creates a converter for each chunk
+	private int chunkSize;                       // number of root nodes in a chunk
+	private Executor executor;
+	private int maxPendingChunks;                // chunks which can be converted at the same time
+
+	// the chunks which are being converted, in the original order
+	private ArrayDeque<CompletableFuture<ArrayList<Row>>> pending;
+
+	private Events events;            // events of the current chunk
+	private int nodesCount;           // root nodes in the current chunk
+	private int depth;                // depth of the current node
+	private int rootDepth = -1;       // depth of the current root node, -1 if outside
+
+	/**
+	 * Initialize the handler
+	 * @param converter the converter which owns the sheet, its sheet should be already built
+	 * @param factory creates a new converter of the same type of the main one,
+	 * it is called by the thread which parses the xml
+	 * @param chunkSize the number of root nodes of each chunk
+	 * @param executor the executor which converts the chunks
+	 */
+	public ChunkedSheetHandler( SheetConverter converter, Supplier<SheetConverter> factory,
+			int chunkSize, Executor executor ) {
+		this.converter = converter;
+		this.handler = converter.getHandler();
+		this.factory = factory;
+		this.chunkSize = chunkSize;
+		this.executor = executor;
+		this.maxPendingChunks = 2 * Runtime.getRuntime().availableProcessors();
+		this.pending = new ArrayDeque<>();
+		this.events = new Events();
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName,
+			Attributes attributes) throws SAXException {
+
+		depth++;
+
+		if ( rootDepth < 0 && qName.equals( converter.getRootNode() ) )
+			rootDepth = depth;
+
+		if ( rootDepth < 0 )
+			handler.startElement( uri, localName, qName, attributes );
+		else
+			events.addStart( qName, attributes );
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+
+		boolean isOutsideRoot = rootDepth < 0;
+
+		if ( !isOutsideRoot )
+			events.addEnd( qName );
+
+		// end of the root node
+		if ( depth == rootDepth ) {
+
+			rootDepth = -1;
+			nodesCount++;
+
+			if ( nodesCount >= chunkSize )
+				submitChunk();
+		}
+
+		// end of the xml sent to the handler, wait all the chunks
+		// before the handler receives the end of the xml
+		if ( depth == 1 ) {
+			submitChunk();
+			appendChunks( true );
+		}
+
+		if ( isOutsideRoot )
+			handler.endElement( uri, localName, qName );
+
+		depth--;
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+
+		if ( rootDepth < 0 )
+			handler.characters( ch, start, length );
+		else
+			events.addText( ch, start, length );
+	}
+
+	/**
+	 * Convert on the executor a chunk of root nodes which is read from another
+	 * xml instead of being received by this handler (e.g. a range of terms of
+	 * the file, which was excluded from the xml parsed with this handler).
+	 * The xml contains the root nodes inside a wrapper node, which is not sent
+	 * to the converter. The text which contains only white spaces is stripped,
+	 * as the xml received by this handler. The rows are appended to the sheet
+	 * in order with the other chunks.
+	 * @param xml opens the xml of the chunk, it is called by the executor
+	 * @throws SAXException if a chunk submitted before failed
+	 */
+	public void submitXml( Supplier<InputStream> xml ) throws SAXException {
+
+		// the nodes received until now come before
+		submitChunk();
+		submit( new XmlChunk( xml ) );
+	}
+
+	/**
+	 * Parse an xml which contains root nodes inside a wrapper node and send
+	 * the events of the root nodes to the handler in the current thread,
+	 * as the chunks of {@link #submitXml(Supplier)}
+	 * @param xml the xml, it is closed
+	 * @param handler
+	 * @throws SAXException
+	 */
+	public static void parseNodes( final InputStream xml, DefaultHandler handler ) throws SAXException {
+
+		try {
+			new XmlChunk( new Supplier<InputStream>() {
+
+				@Override
+				public InputStream get() {
+					return xml;
+				}
+			} ).send( handler );
+		} catch (IOException e) {
+			throw new SAXException( "Cannot read the nodes", e );
+		}
+	}
+
+	/**
+	 * Convert the current chunk on the executor
+	 * @throws SAXException
+	 */
+	private void submitChunk() throws SAXException {
+
+		if ( events.isEmpty() )
+			return;
+
+		Events chunk = events;
+
+		events = new Events();
+		nodesCount = 0;
+
+		submit( chunk );
+	}
+
+	/**
+	 * Convert a chunk on the executor, with a new detached converter
+	 * @param chunk
+	 * @throws SAXException
+	 */
+	private void submit( final Chunk chunk ) throws SAXException {
+
+		// create the converter here, since it can read other sheets
+		final SheetConverter chunkConverter = factory.get();
+		chunkConverter.buildDetached( converter );
+
+		pending.add( CompletableFuture.supplyAsync( new Supplier<ArrayList<Row>>() {
+
+			@Override
+			public ArrayList<Row> get() {
+
+				DefaultHandler chunkHandler = chunkConverter.getHandler();
+
+				try {
+					chunk.send( chunkHandler );
+				} catch (SAXException | IOException e) {
+					throw new CompletionException( e );
+				}
+
+				return chunkConverter.getDetachedRows();
+			}
+		}, executor ) );
+
+		// append the completed chunks, and wait if too many chunks are pending
+		appendChunks( false );
+	}
+
+	/**
+	 * Append to the sheet the rows of the converted chunks, in order
+	 * @param waitAll true to wait until all the chunks are converted
+	 * @throws SAXException
+	 */
+	private void appendChunks( boolean waitAll ) throws SAXException {
+
+		while ( !pending.isEmpty() && ( waitAll || pending.size() > maxPendingChunks
+				|| pending.peek().isDone() ) ) {
+
+			try {
+				converter.appendRows( pending.poll().join() );
+			} catch ( CompletionException e ) {
+
+				if ( e.getCause() instanceof SAXException )
+					throw (SAXException) e.getCause();
+
+				throw new SAXException( "Cannot convert chunk", e );
+			}
+		}
+	}
+
+	/**
+	 * The root nodes converted together by a detached converter
+	 * @author avonva
+	 *
+	 */
+	private interface Chunk {
+
+		/**
+		 * Send the events of the root nodes to the handler, in order
+		 * @param handler
+		 * @throws SAXException
+		 * @throws IOException
+		 */
+		public void send( DefaultHandler handler ) throws SAXException, IOException;
+	}
+
+	/**
+	 * The root nodes of a chunk read from an xml, see {@link ChunkedSheetHandler#submitXml(Supplier)}
+	 * @author avonva
+	 *
+	 */
+	private static class XmlChunk extends DefaultHandler implements Chunk {
+
+		private Supplier<InputStream> xml;
+		private DefaultHandler handler;  // receives the events of the root nodes
+
+		private int depth;               // depth of the current node, the wrapper is 1
+
+		// white spaces are not forwarded until we know that the text is not only white spaces
+		private char[] text;
+		private int textLength;
+		private boolean isBlank;
+
+		public XmlChunk( Supplier<InputStream> xml ) {
+			this.xml = xml;
+		}
+
+		@Override
+		public void send( DefaultHandler handler ) throws SAXException, IOException {
+
+			this.handler = handler;
+			this.text = new char[256];
+
+			try ( InputStream input = xml.get() ) {
+				SaxParsers.newSAXParser().parse( input, this );
+			} catch (ParserConfigurationException e) {
+				throw new SAXException( "Cannot create the xml parser", e );
+			}
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName,
+				Attributes attributes) throws SAXException {
+
+			flushText();
+
+			if ( ++depth > 1 )
+				handler.startElement( uri, localName, qName, attributes );
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+
+			flushText();
+
+			if ( depth-- > 1 )
+				handler.endElement( uri, localName, qName );
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+
+			if ( depth <= 1 )
+				return;
+
+			// the parser can split the text in several pieces, we
+			// need the whole text to know if it is only white spaces
+			if ( textLength + length > text.length )
+				text = Arrays.copyOf( text, Math.max( text.length * 2, textLength + length ) );
+
+			System.arraycopy( ch, start, text, textLength, length );
+
+			if ( textLength == 0 )
+				isBlank = true;
+
+			for ( int i = start; isBlank && i < start + length; i++ ) {
+				char c = ch[i];
+				isBlank = c == ' ' || c == '\t' || c == '\n' || c == '\r';
+			}
+
+			textLength += length;
+		}
+
+		/**
+		 * Send the buffered text to the handler, if it
+		 * does not contain only white spaces
+		 * @throws SAXException
+		 */
+		private void flushText() throws SAXException {
+
+			if ( textLength > 0 && !isBlank )
+				handler.characters( text, 0, textLength );
+
+			textLength = 0;
+		}
+	}
+
+	/**
+	 * The SAX events of the root nodes of a chunk. The events are kept in
+	 * arrays and the text of all the events in a single buffer, therefore
+	 * no object is created for each event. The node names are the strings of
+	 * the parser. The attributes are copied only if present, since the nodes
+	 * of the catalogues have none.
+	 * @author avonva
+	 *
+	 */
+	private static class Events implements Chunk {
+
+		private static final byte START = 0;
+		private static final byte END = 1;
+		private static final byte TEXT = 2;
+
+		private static final Attributes NO_ATTRIBUTES = new AttributesImpl();
+
+		private byte[] types;
+		private String[] names;              // node names, null for the text
+		private Attributes[] attributes;     // null if the node has no attributes
+		private int[] textEnds;              // end of the text of each event in the buffer
+		private int size;
+
+		private char[] text;                 // the text of all the events
+		private int textLength;
+
+		public Events() {
+			types = new byte[1024];
+			names = new String[1024];
+			attributes = new Attributes[1024];
+			textEnds = new int[1024];
+			text = new char[8192];
+		}
+
+		public boolean isEmpty() {
+			return size == 0;
+		}
+
+		public void addStart( String name, Attributes nodeAttributes ) {
+			add( START, name );
+			if ( nodeAttributes.getLength() > 0 )
+				attributes[size - 1] = new AttributesImpl( nodeAttributes );
+		}
+
+		public void addEnd( String name ) {
+			add( END, name );
+		}
+
+		public void addText( char[] ch, int start, int length ) {
+
+			if ( textLength + length > text.length )
+				text = Arrays.copyOf( text, Math.max( text.length * 2, textLength + length ) );
+
+			System.arraycopy( ch, start, text, textLength, length );
+			textLength += length;
+
+			add( TEXT, null );
+		}
+
+		private void add( byte type, String name ) {
+
+			if ( size == types.length ) {
+				int length = size * 2;
+				types = Arrays.copyOf( types, length );
+				names = Arrays.copyOf( names, length );
+				attributes = Arrays.copyOf( attributes, length );
+				textEnds = Arrays.copyOf( textEnds, length );
+			}
+
+			types[size] = type;
+			names[size] = name;
+			textEnds[size] = textLength;
+			size++;
+		}
+
+		@Override
+		public void send( DefaultHandler handler ) throws SAXException {
+
+			int textStart = 0;
+
+			for ( int i = 0; i < size; i++ ) {
+
+				switch ( types[i] ) {
+				case START:
+					handler.startElement( "", names[i], names[i],
+							attributes[i] != null ? attributes[i] : NO_ATTRIBUTES );
+					break;
+				case END:
+					handler.endElement( "", names[i], names[i] );
+					break;
+				default:
+					handler.characters( text, textStart, textEnds[i] - textStart );
+					break;
+				}
+
+				textStart = textEnds[i];
+			}
+		}
+	}
+}
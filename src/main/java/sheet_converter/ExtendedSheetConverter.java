@@ -1,12 +1,11 @@
 package sheet_converter;
 
-import java.util.Date;
+import java.time.LocalDate;
 
 import org.apache.poi.ss.usermodel.Row;
 
 import data_transformation.BooleanConverter;
 import data_transformation.DateTrimmer;
-import naming_convention.Headers;
 import naming_convention.SpecialValues;
 
 /**
@@ -25,30 +24,35 @@ public abstract class ExtendedSheetConverter extends SheetConverter {
 
 	@Override
 	public void addElement(Row row, String nodeName, String value) {
+		addElement( row, XmlSymbols.getId( nodeName ), nodeName, value );
+	}
+
+	@Override
+	public void addElement(Row row, int nodeId, String nodeName, String value) {
 		
 		// Perform checks which are common to all sheets
 		// trim dates only to year month and day
-		switch ( nodeName ) {
+		switch ( nodeId ) {
 		
-		case XmlNodes.VALID_FROM:
-		case XmlNodes.VALID_TO:
-		case XmlNodes.LAST_UPDATE:
-		case XmlNodes.NOTES_VERSION_DATE:
+		case XmlSymbols.VALID_FROM:
+		case XmlSymbols.VALID_TO:
+		case XmlSymbols.LAST_UPDATE:
+		case XmlSymbols.NOTES_VERSION_DATE:
 			
-			Date date = DateTrimmer.trimDate( value );
+			LocalDate date = DateTrimmer.parseDate( value );
 			
 			// create a cell with a date not with a string
-			createCell ( nodeName, row, date );
+			createNodeCell ( nodeId, row, date );
 			break;
 
 			// set the deprecated column according to the status
-		case XmlNodes.STATUS:
+		case XmlSymbols.STATUS:
 
 			// create the deprecated cell, if the value is DEPRECATED, then set to 1, otherwise 0
-			createCell ( Headers.DEPRECATED, row, BooleanConverter.equals( value, SpecialValues.STATUS_DEPRECATED ) );
+			createNodeCell ( XmlSymbols.DEPRECATED, row, BooleanConverter.equals( value, SpecialValues.STATUS_DEPRECATED ) );
 			
 			// create the cell for the status
-			createCell ( nodeName, row, value );
+			createNodeCell ( nodeId, row, value );
 			break;
 		}
 	}
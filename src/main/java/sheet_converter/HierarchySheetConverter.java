@@ -1,12 +1,14 @@
 package sheet_converter;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
 import org.xml.sax.Attributes;
 
+import catalogue_metadata.CatalogueInfo;
 import data_transformation.ValuesGrouper;
 import naming_convention.Headers;
 import naming_convention.SpecialValues;
@@ -21,114 +23,94 @@ public class HierarchySheetConverter extends ExtendedSheetConverter {
 
 	private boolean isGroupNode;  // true if we are in a hierarchyGroups node
 	private ValuesGrouper group;          // used to group the values of the hierarchy groups into a single one
+	private ArrayList<String> hierarchyCodes;  // the codes of the hierarchies of the sheet
+	private String hierarchyCode;         // the code of the current hierarchy
 	
 	public HierarchySheetConverter( String inputFilename, String rootNode ) {
 		super(inputFilename, rootNode );
 		isGroupNode = false;
+		hierarchyCodes = new ArrayList<>();
 	}
 	
 	/**
-	 * Add the master hierarchy using the catalogue sheet data ( standard rule of the DCF )
+	 * Add the master hierarchy using the catalogue data ( standard rule of the DCF )
 	 * In fact in the XML the master hierarchy is not present, therefore we need to create it
-	 * @param catSheet
+	 * @param catalogue the catalogue data, null if the catalogue was not found
 	 */
-	public void addMasterHierarchy ( Sheet catSheet ) {
+	public void addMasterHierarchy ( CatalogueInfo catalogue ) {
 
 		Row row = createRow( getSheet() );
 
-		// get the information from the catalogue sheet and add them to the master hierarchy
-		addCatFieldToMaster ( catSheet, row, Headers.CODE );
-		addCatFieldToMaster ( catSheet, row, Headers.NAME );
-		addCatFieldToMaster ( catSheet, row, Headers.LABEL );
-		addCatFieldToMaster ( catSheet, row, Headers.SCOPENOTE );
-		addCatFieldToMaster ( catSheet, row, Headers.VERSION );
-		addCatFieldToMaster ( catSheet, row, Headers.LAST_UPDATE );
-		addCatFieldToMaster ( catSheet, row, Headers.VALID_FROM );
-		addCatFieldToMaster ( catSheet, row, Headers.STATUS );
-
-		// here there is a differences between the names => we need to specify them
-		addCatFieldToMaster ( catSheet, row, Headers.HIER_GROUPS, XmlNodes.HIER_GROUPS, true );
+		// the master hierarchy is identified by the catalogue code
+		hierarchyCodes.add( catalogue != null ? catalogue.getCode() : "" );
+
+		// add the catalogue information to the master hierarchy
+		if ( catalogue != null ) {
+			addElement( row, XmlNodes.CODE, catalogue.getCode() );
+			addElement( row, XmlNodes.NAME, catalogue.getName() );
+			addElement( row, XmlNodes.LABEL, catalogue.getLabel() );
+			addElement( row, XmlNodes.SCOPENOTE, catalogue.getScopeNote() );
+			addElement( row, XmlNodes.VERSION, catalogue.getVersion() );
+			addElement( row, XmlNodes.LAST_UPDATE, catalogue.getLastUpdate() );
+			addElement( row, XmlNodes.VALID_FROM, catalogue.getValidFrom() );
+			addElement( row, XmlNodes.STATUS, catalogue.getStatus() );
+		}
 
 		// add default values for applicability and order
 		addElement( row, XmlNodes.HIER_APPL, SpecialValues.ATTR_APPL_BOTH );
 		addElement( row, XmlNodes.HIER_ORDER, SpecialValues.MASTER_ORDER );
-	}
 
-	/**
-	 * Add one catalogue field to the hierarchy sheet, used only with the master hierarchy
-	 * Here the name of the xml node in the hierarchy XML is equal to the name of the catalogue column
-	 * @param catSheet
-	 * @param row
-	 * @param field
-	 */
-	private void addCatFieldToMaster ( Sheet catSheet, Row row, String catColumnName ) {
-		this.addCatFieldToMaster(catSheet, row, catColumnName, catColumnName, false);
+		hierarchyCode = null;
 	}
 
 	/**
-	 * Add one catalogue field to the hierarchy field. Specify the name of the xml node which has to
-	 * be found in the XML hierarchy data and specify the name of the catalogue column from which getting the data
-	 * @param catSheet
-	 * @param row
-	 * @param catColumnName
-	 * @param XmlNodeName
+	 * Get the codes of the hierarchies, in the order of the sheet
+	 * (the master hierarchy first). The hierarchies which are
+	 * already parsed are available.
+	 * @return
 	 */
-	private void addCatFieldToMaster ( Sheet catSheet, Row row, 
-			String catColumnName, String XmlNodeName, boolean isGroup ) {
-
-		// get the values contained into the catalogue sheet for the selected header
-		ArrayList<String> values = getSheetColumn( catSheet, catColumnName );
-
-		// if the field is indeed retrieved
-		if ( !values.isEmpty() ) {
-			
-			String value = values.get(0);
-			
-			// if it is a group we need to initialize the group!
-			if ( isGroup ) {
-				this.isGroupNode = isGroup;
-				group = new ValuesGrouper();
-				group.addValue( value );
-			}
-	
-			addElement( row, XmlNodeName, value );
-		}
+	public List<String> getHierarchyCodes() {
+		return Collections.unmodifiableList( hierarchyCodes );
 	}
 
-
 	@Override
 	public void startElement(Row row, String nodeName, Attributes attr) {
+		startElement( row, XmlSymbols.getId( nodeName ), nodeName, attr );
+	}
+
+	@Override
+	public void startElement(Row row, int nodeId, String nodeName, Attributes attr) {
 
 		// if we found a hierarchy groups element
-		if ( nodeName.equals( XmlNodes.HIER_GROUPS ) ) {
+		if ( nodeId == XmlSymbols.HIER_GROUPS ) {
 			isGroupNode = true;
 			group = new ValuesGrouper();
 		}
 	}
 
 	@Override
-	public void addElement(Row row, String nodeName, String value) {
+	public void addElement(Row row, int nodeId, String nodeName, String value) {
 
 		// call parent add element
-		super.addElement( row, nodeName, value );
+		super.addElement( row, nodeId, nodeName, value );
 		
 		// these nodes were already processed by the parent call
-		switch ( nodeName ) {
-		case XmlNodes.VALID_FROM:
-		case XmlNodes.VALID_TO:
-		case XmlNodes.LAST_UPDATE:
-		case XmlNodes.STATUS:
+		switch ( nodeId ) {
+		case XmlSymbols.VALID_FROM:
+		case XmlSymbols.VALID_TO:
+		case XmlSymbols.LAST_UPDATE:
+		case XmlSymbols.STATUS:
 			return;
 		}
 		
-		switch ( nodeName ) {
+		switch ( nodeId ) {
 
 			// we are closing a hierarchy groups => we save all the 
 			// group values into the cell
-		case XmlNodes.HIER_GROUPS:
+		case XmlSymbols.HIER_GROUPS:
 			// add as groups all the groups which were found, $ separated
 			if ( isGroupNode )
-				createCell( nodeName, row, group.getCompactValues() );
+				createNodeCell( nodeId, row, group.getCompactValues() );
 
 			isGroupNode = false;
 			group = null;
@@ -136,7 +118,7 @@ public class HierarchySheetConverter extends ExtendedSheetConverter {
 
 			// if we find a hierarchyGroup node and we are indeed inside
 			// a HierarchyGroups node => add the value
-		case XmlNodes.HIER_GROUP:
+		case XmlSymbols.HIER_GROUP:
 
 			if ( isGroupNode )
 				group.addValue( value );
@@ -145,11 +127,29 @@ public class HierarchySheetConverter extends ExtendedSheetConverter {
 		default:
 			// create a cell for the current row in the right column
 			// we use the xml node name as key for identifying the related header
-			createCell( nodeName, row, value );
+			createNodeCell( nodeId, nodeName, row, value );
+
+			if ( nodeId == XmlSymbols.CODE )
+				hierarchyCode = value;
+
+			// the hierarchy is finished
+			if ( nodeId == getRootNodeId() ) {
+				hierarchyCodes.add( hierarchyCode != null ? hierarchyCode : "" );
+				hierarchyCode = null;
+			}
 			break;
 		}
 	}
 
+	/**
+	 * The hierarchy groups are grouped in a single cell, they are needed
+	 * besides the columns
+	 */
+	@Override
+	protected boolean needsContent( int nodeId, String nodeName ) {
+		return nodeId == XmlSymbols.HIER_GROUP || super.needsContent( nodeId, nodeName );
+	}
+
 	/**
 	 * Get the headers of the catalogue sheet
 	 * @return
@@ -1,6 +1,6 @@
 package sheet_converter;
 
-import java.util.Date;
+import java.time.LocalDate;
 import java.util.HashMap;
 
 import org.apache.poi.ss.usermodel.Row;
@@ -23,7 +23,7 @@ public class NotesSheetConverter extends SheetConverter {
 
 	// save the last name and date of an operation
 	private String lastName;
-	private Date lastDate;
+	private LocalDate lastDate;
 	private int groupId = 0;
 	
 	public NotesSheetConverter( String inputFilename, String rootNode ) {
@@ -40,10 +40,10 @@ public class NotesSheetConverter extends SheetConverter {
 		// create the cell in the current row for the
 		// two information (two different columns will
 		// be created
-		createCell( XmlNodes.OP_NAME, row, lastName );
-		createCell( XmlNodes.OP_DATE, row, lastDate );
-		createCell( XmlNodes.OP_INFO, row, opInfo );
-		createCell( XmlNodes.OP_GROUP, row, String.valueOf( groupId ) );
+		createNodeCell( XmlSymbols.OP_NAME, row, lastName );
+		createNodeCell( XmlSymbols.OP_DATE, row, lastDate );
+		createNodeCell( XmlSymbols.OP_INFO, row, opInfo );
+		createNodeCell( XmlSymbols.OP_GROUP, row, String.valueOf( groupId ) );
 	}
 	
 	@Override
@@ -56,24 +56,29 @@ public class NotesSheetConverter extends SheetConverter {
 			// get the node attributes
 			lastName = attr.getValue( XmlNodes.OP_NAME );
 			String opDate = attr.getValue( XmlNodes.OP_DATE );
-			lastDate = DateTrimmer.trimDate( opDate );
+			lastDate = DateTrimmer.parseDate( opDate );
 			break;
 		}
 	}
 
 	@Override
 	public void addElement(Row row, String nodeName, String value) {
+		addElement( row, XmlSymbols.getId( nodeName ), nodeName, value );
+	}
+
+	@Override
+	public void addElement(Row row, int nodeId, String nodeName, String value) {
 		
-		switch ( nodeName ) {
+		switch ( nodeId ) {
 
 			// operation info node, we group the operation info
 			// with values grouper
-		case XmlNodes.OP_INFO:
+		case XmlSymbols.OP_INFO:
 			addInfoRow( row, value );
 			break;
 			
 			// the group is finished
-		case XmlNodes.OP_DETAIL:
+		case XmlSymbols.OP_DETAIL:
 			lastDate = null;
 			lastName = null;
 			groupId++;
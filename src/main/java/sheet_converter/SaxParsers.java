@@ -0,0 +1,36 @@
+package sheet_converter;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Create the SAX parsers of the conversions. The lookup of the parser
+ * factory is done only once for each thread (the factories are not
+ * thread safe), therefore the conversions which run on the same threads
+ * (e.g. in batch mode) share the same factories.
+ * @author avonva
+ *
+ */
+public class SaxParsers {
+
+	private static final ThreadLocal<SAXParserFactory> FACTORY = new ThreadLocal<SAXParserFactory>() {
+
+		@Override
+		protected SAXParserFactory initialValue() {
+			return SAXParserFactory.newInstance();
+		}
+	};
+
+	/**
+	 * Create a new SAX parser with the factory of the current thread
+	 * @return
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 */
+	public static SAXParser newSAXParser() throws ParserConfigurationException, SAXException {
+		return FACTORY.get().newSAXParser();
+	}
+}
@@ -2,12 +2,16 @@ package sheet_converter;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -16,13 +20,20 @@ import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import conversion_events.Phase;
+import conversion_events.PhaseEvent;
 import data_transformation.DateTrimmer;
 import sheet_header.SheetHeader;
+import xlsx_writer.SheetOutput;
+import xlsx_writer.WorkbookOutput;
+import xlsx_writer.XlsxRow;
 
 
 /**
@@ -44,6 +55,9 @@ public abstract class SheetConverter {
 	
 	// print each 500 rows an echo to the console
 	private static final int printRowCount = 500;
+
+	// the format of the date cells
+	public static final String DATE_FORMAT = "yyyy/MM/dd";
 	private int printCount = 0;
 
 	// the considered fields of the xml which will be the sheet columns
@@ -52,14 +66,23 @@ public abstract class SheetConverter {
 	// the xml input file
 	private String inputFilename;
 
+	// the columns of the headers which are xml nodes, indexed
+	// by the node id (see XmlSymbols), -1 if the node has no column
+	private int[] nodeColumns;
+
 	// entry point for parsing the xml
 	private String rootNode;
+	private int rootNodeId;
 
 	// if we are analyzing a root node or not
 	private boolean isRootNode = false;
 
-	// content of the xml node
-	private StringBuilder lastContent;
+	// true if the xml has at least a node
+	private boolean hasParsedNodes = false;
+
+	// content of the xml node, the buffer is reused for all the nodes
+	private char[] lastContent;
+	private int lastContentLength;
 
 	// the current row which the program is adding
 	private Row currentRow;
@@ -67,10 +90,28 @@ public abstract class SheetConverter {
 	// the current number of rows
 	private int rowNum = 0;
 
+	// the cells of the rows which are complete, and the last
+	// row created, whose cells are counted when it is complete
+	private long cellCount = 0;
+	private Row lastRow;
+
 	// the sheet which is created with buildSheet()
 	private Sheet sheet;
 
-	private CellStyle style;
+	// the sheet which is written directly in the output, if the converter
+	// was built with buildSheet(WorkbookOutput, String) instead of a workbook
+	private SheetOutput sheetOutput;
+
+	private String sheetName;  // the name given to buildSheet()
+
+	private volatile CellStyle style;  // the style of the date cells
+
+	// the converter which owns the sheet, if this converter
+	// creates detached rows (see buildDetached)
+	private SheetConverter parent;
+
+	// the rows created by a detached converter
+	private ArrayList<Row> detachedRows;
 
 	/**
 	 * Convert a xml file into an xml sheet
@@ -83,7 +124,8 @@ public abstract class SheetConverter {
 
 		this.inputFilename = inputFilename;
 		this.rootNode = rootNode;
-		lastContent = new StringBuilder();
+		this.rootNodeId = XmlSymbols.getId( rootNode );
+		lastContent = new char[256];
 	}
 
 	/**
@@ -102,6 +144,14 @@ public abstract class SheetConverter {
 		return rootNode;
 	}
 
+	/**
+	 * Get the id of the root node (see {@link XmlSymbols})
+	 * @return
+	 */
+	public int getRootNodeId() {
+		return rootNodeId;
+	}
+
 	/**
 	 * Check if we are parsing a root node or not
 	 * @return
@@ -115,13 +165,20 @@ public abstract class SheetConverter {
 	 * to the previous cell value
 	 * @param row
 	 * @param name
-	 * @return
+	 * @return the cell, null if the column is negative or if the row
+	 * is written directly in the output (see {@link XlsxRow})
 	 */
 	public static Cell createCell ( int columnIndex, Row row, String value ) {
 
 		if ( columnIndex < 0 )
 			return null;
 
+		// no cell object for the rows written directly in the output
+		if ( row instanceof XlsxRow ) {
+			( (XlsxRow) row ).setString( columnIndex, value );
+			return null;
+		}
+
 		Cell cell = row.createCell( columnIndex );
 		cell.setCellValue( value );
 		return cell;
@@ -145,9 +202,7 @@ public abstract class SheetConverter {
 		}
 
 		// otherwise create the cell
-		Cell cell = row.createCell( header.getColumnIndex() );
-		cell.setCellValue( value );
-		return cell;
+		return createCell( header.getColumnIndex(), row, value );
 	}
 
 	/**
@@ -169,31 +224,263 @@ public abstract class SheetConverter {
 		}
 
 		// otherwise create the cell
-		Cell cell = row.createCell( header.getColumnIndex() );
-		
-		// create the data cell style if needed
-		if ( style == null ) {
-			style = sheet.getWorkbook().createCellStyle();
-			short df = sheet.getWorkbook().createDataFormat().getFormat("yyyy/MM/dd");
-			style.setDataFormat(df);
+		LocalDate date = null;
+		if ( value != null )
+			date = value.toInstant().atZone( ZoneId.systemDefault() ).toLocalDate();
+
+		return createDateCell( header.getColumnIndex(), row, date );
+	}
+
+	/**
+	 * Create a cell using the id of the xml node (see {@link XmlSymbols}).
+	 * The column is found in an array, without hashing the node name
+	 * @param nodeId
+	 * @param row
+	 * @param value
+	 * @return
+	 */
+	public Cell createNodeCell ( int nodeId, Row row, String value ) {
+		return createCell( getNodeColumn( nodeId ), row, value );
+	}
+
+	/**
+	 * Create a cell using the id of the xml node if it is known, otherwise
+	 * using the node name as in {@link #createCell(String, Row, String)}
+	 * @param nodeId
+	 * @param nodeName
+	 * @param row
+	 * @param value
+	 * @return
+	 */
+	public Cell createNodeCell ( int nodeId, String nodeName, Row row, String value ) {
+
+		if ( nodeId == XmlSymbols.UNKNOWN )
+			return createCell( nodeName, row, value );
+
+		return createNodeCell( nodeId, row, value );
+	}
+
+	/**
+	 * Create a date cell using the id of the xml node (see {@link XmlSymbols})
+	 * @param nodeId
+	 * @param row
+	 * @param value the date, null to create an empty date cell
+	 * @return
+	 */
+	public Cell createNodeCell ( int nodeId, Row row, LocalDate value ) {
+
+		int columnIndex = getNodeColumn( nodeId );
+
+		if ( columnIndex < 0 )
+			return null;
+
+		return createDateCell( columnIndex, row, value );
+	}
+
+	/**
+	 * Get the column of an xml node
+	 * @param nodeId the id of the node (see {@link XmlSymbols})
+	 * @return the column index, -1 if the node is not a header
+	 */
+	public int getNodeColumn ( int nodeId ) {
+
+		if ( nodeId < 0 || nodeId >= nodeColumns.length )
+			return -1;
+
+		return nodeColumns[nodeId];
+	}
+
+	/**
+	 * Create a numeric excel date cell
+	 * @param columnIndex
+	 * @param row
+	 * @param value the date, null to leave the cell empty
+	 * @return
+	 */
+	private Cell createDateCell ( int columnIndex, Row row, LocalDate value ) {
+
+		// the output decides how the date is written
+		if ( row instanceof XlsxRow ) {
+			( (XlsxRow) row ).setDate( columnIndex, value );
+			return null;
 		}
 
+		Cell cell = row.createCell( columnIndex );
+		
 		// set the cell style
-		cell.setCellStyle( style );
+		cell.setCellStyle( getDateStyle() );
 		
 		// set the date value
-		cell.setCellValue( DateTrimmer.dateToString( value ) );
+		if ( value != null )
+			cell.setCellValue( DateTrimmer.toExcelDate( value ) );
 		
 		return cell;
 	}
 
+	/**
+	 * Get the style of the date cells, create it if needed. All the
+	 * sheets of the workbook use the same style.
+	 * @return
+	 */
+	private CellStyle getDateStyle() {
+
+		// detached converters use the style of the sheet owner
+		if ( parent != null )
+			return parent.getDateStyle();
+
+		if ( style != null )
+			return style;
+
+		Workbook workbook = sheet.getWorkbook();
+
+		// the styles are shared by all the sheets of the workbook
+		synchronized ( workbook ) {
+
+			short df = workbook.createDataFormat().getFormat( DATE_FORMAT );
+
+			// use the style created by another sheet, if any
+			for ( int i = 0; i < workbook.getNumCellStyles() && style == null; i++ ) {
+
+				CellStyle cellStyle = workbook.getCellStyleAt( i );
+
+				if ( cellStyle.getDataFormat() == df )
+					style = cellStyle;
+			}
+
+			// create the data cell style if needed
+			if ( style == null ) {
+				style = workbook.createCellStyle();
+				style.setDataFormat( df );
+			}
+		}
+
+		return style;
+	}
+
 	/**
 	 * Create a new row in the selected sheet
 	 * @param sheet
 	 * @return
 	 */
 	public Row createRow( Sheet sheet ) {
-		return sheet.createRow( rowNum++ );
+
+		// detached rows are not added to the sheet, the owner
+		// of the sheet will append them with appendRows. They only
+		// keep the values, the owner creates the cells once
+		if ( detachedRows != null ) {
+			rowNum++;
+			XlsxRow row = new XlsxRow();
+			detachedRows.add( row );
+			return row;
+		}
+
+		countLastRow();
+
+		// the previous row is written in the output
+		if ( sheetOutput != null ) {
+			rowNum++;
+			lastRow = sheetOutput.createRow();
+			return lastRow;
+		}
+
+		lastRow = sheet.createRow( rowNum++ );
+		return lastRow;
+	}
+
+	/**
+	 * Count the cells of the last row created, call it
+	 * before the row is written in the output
+	 */
+	private void countLastRow() {
+
+		if ( lastRow == null )
+			return;
+
+		cellCount += lastRow.getPhysicalNumberOfCells();
+		lastRow = null;
+	}
+
+	/**
+	 * Prepare the converter to convert a part of the xml of another converter,
+	 * in parallel with it. The rows are not added to the sheet but are kept
+	 * in {@link #getDetachedRows()} as {@link XlsxRow}, which hold only the values,
+	 * the headers of the other converter are used.
+	 * Call this instead of {@link #buildSheet(Workbook, String)}.
+	 * @param parent the converter which owns the sheet, it should be built with
+	 * {@link #buildSheet(Workbook, String)} on a streaming workbook or with
+	 * {@link #buildSheet(WorkbookOutput, String)}
+	 */
+	public void buildDetached( SheetConverter parent ) {
+		this.parent = parent;
+		this.headers = parent.headers;
+		this.nodeColumns = parent.nodeColumns;
+		this.sheet = parent.sheet;
+		this.sheetOutput = parent.sheetOutput;
+		this.detachedRows = new ArrayList<>();
+	}
+
+	/**
+	 * Check if the sheet rows can be converted in parallel with
+	 * {@link #buildDetached(SheetConverter)}
+	 * @return
+	 */
+	public boolean canBeDetached() {
+		return sheet instanceof SXSSFSheet || sheetOutput != null;
+	}
+
+	/**
+	 * Get the rows created after {@link #buildDetached(SheetConverter)}
+	 * @return
+	 */
+	public ArrayList<Row> getDetachedRows() {
+		return detachedRows;
+	}
+
+	/**
+	 * Append to the sheet the rows created by a detached converter
+	 * @param rows
+	 */
+	public void appendRows( List<Row> rows ) {
+
+		if ( sheetOutput != null ) {
+
+			countLastRow();
+
+			for ( Row detached : rows ) {
+				rowNum++;
+				cellCount += detached.getPhysicalNumberOfCells();
+				sheetOutput.appendRow( (XlsxRow) detached );
+			}
+
+			printProgress();
+			return;
+		}
+
+		// streaming sheet, create the cells of the detached values
+		for ( Row detached : rows ) {
+
+			XlsxRow values = (XlsxRow) detached;
+			Row row = createRow( sheet );
+
+			for ( int column = 0; column <= values.getLastColumn(); column++ ) {
+
+				switch ( values.getType( column ) ) {
+				case XlsxRow.STRING:
+					createCell( column, row, values.getString( column ) );
+					break;
+				case XlsxRow.NUMBER:
+					row.createCell( column ).setCellValue( values.getNumber( column ) );
+					break;
+				case XlsxRow.DATE:
+					createDateCell( column, row, values.getDate( column ) );
+					break;
+				default:
+					break;
+				}
+			}
+		}
+
+		printProgress();
 	}
 
 
@@ -203,8 +490,12 @@ public abstract class SheetConverter {
 	 */
 	public Sheet buildSheet( Workbook workbook, String sheetName ) {
 
-		// create the sheet
-		sheet = workbook.createSheet( sheetName );
+		this.sheetName = sheetName;
+
+		// create the sheet (sheets can be built in parallel)
+		synchronized ( workbook ) {
+			sheet = workbook.createSheet( sheetName );
+		}
 
 		// insert the headers into the sheet
 		insertHeaders( sheet );
@@ -212,14 +503,72 @@ public abstract class SheetConverter {
 		return sheet;
 	}
 
+	/**
+	 * Create a new sheet which is written directly in the output (e.g. the
+	 * xlsx or a csv file) and insert the headers. The rows are written as soon
+	 * as the next row is created, no POI sheet is created (i.e. {@link #getSheet()}
+	 * returns null).
+	 * @param output
+	 * @param sheetName
+	 * @return the new sheet
+	 */
+	public SheetOutput buildSheet( WorkbookOutput output, String sheetName ) {
+
+		this.sheetName = sheetName;
+
+		sheetOutput = output.createSheet( sheetName );
+
+		insertHeaders( null );
+
+		return sheetOutput;
+	}
+
+	/**
+	 * Write the last row of a sheet built with {@link #buildSheet(WorkbookOutput, String)},
+	 * no row can be added after this. It is called at the end of the xml sent to
+	 * {@link #getHandler()}, it does nothing for the other sheets.
+	 */
+	public void finishSheet() {
+
+		// detached converters do not own the sheet
+		if ( sheetOutput != null && parent == null ) {
+			countLastRow();
+			sheetOutput.finish();
+		}
+	}
+
 
 	/**
 	 * Populate the sheet with data, start the parsing procedure
+	 * @throws SAXException if the xml is malformed
+	 * @throws IOException
 	 */
-	public void parse () {
+	public void parse () throws SAXException, IOException {
+
+		File input = new File ( inputFilename );
+
+		PhaseEvent event = PhaseEvent.begin( Phase.PARSE, sheetName );
 
 		// insert the data into the sheet
-		insertData( sheet, rootNode );
+		insertData( sheet, new InputSource( input.toURI().toString() ) );
+
+		event.setRows( rowNum ).setBytes( input.length() ).commit();
+	}
+
+	/**
+	 * Populate the sheet with the data read from the stream
+	 * instead of the input filename
+	 * @param input the xml data, it is not closed
+	 * @throws SAXException if the xml is malformed
+	 * @throws IOException
+	 */
+	public void parse ( InputStream input ) throws SAXException, IOException {
+
+		PhaseEvent event = PhaseEvent.begin( Phase.PARSE, sheetName );
+
+		insertData( sheet, new InputSource( input ) );
+
+		event.setRows( rowNum ).commit();
 	}
 
 	/**
@@ -230,6 +579,7 @@ public abstract class SheetConverter {
 
 		// get the headers
 		this.headers = getHeaders();
+		this.nodeColumns = getNodeColumns( headers );
 
 		// prepare empty sheet with headers
 		Row row = createRow( sheet );
@@ -240,30 +590,84 @@ public abstract class SheetConverter {
 	}
 
 
+	/**
+	 * Index the columns of the headers whose key is an xml node
+	 * @param headers
+	 * @return the column of each node id, -1 if the node is not a header
+	 */
+	private static int[] getNodeColumns ( HashMap<String, SheetHeader> headers ) {
+
+		int[] columns = new int[ XmlSymbols.count() ];
+		Arrays.fill( columns, -1 );
+
+		for ( String key : headers.keySet() ) {
+
+			int nodeId = XmlSymbols.getId( key );
+
+			if ( nodeId != XmlSymbols.UNKNOWN )
+				columns[nodeId] = headers.get( key ).getColumnIndex();
+		}
+
+		return columns;
+	}
+
 	/**
 	 * Insert the data into the excel sheet. In particular we start the parsing action
 	 * and we analyze the xml nodes
-	 * @param rootNode
-	 * @param headers
+	 * @param sheet
+	 * @param source the xml to parse
+	 * @throws SAXException if the xml is malformed, the sheet is incomplete
+	 * @throws IOException
 	 */
-	private void insertData( final Sheet sheet, final String rootNode ) {
+	private void insertData( final Sheet sheet, final InputSource source ) throws SAXException, IOException {
 
 		// instantiate the SAX parser
-		SAXParserFactory factory = SAXParserFactory.newInstance();
 		javax.xml.parsers.SAXParser saxParser = null;
 		try {
-			saxParser = factory.newSAXParser();
-		} catch (ParserConfigurationException | SAXException e) {
-			LOGGER.error("Cannot insert data", e);
-			e.printStackTrace();
+			saxParser = SaxParsers.newSAXParser();
+		} catch (ParserConfigurationException e) {
+			throw new SAXException( "Cannot create the xml parser", e );
 		}
 
 		// create the parser handler
-		DefaultHandler handler = new DefaultHandler() {
+		DefaultHandler handler = getHandler();
+
+		// Parse the xml document
+		try {
+
+			saxParser.parse( source, handler );
+
+		} catch ( SAXParseException e ) {
+
+			// sheet with no data => an empty xml, an exception is thrown
+			if ( !hasParsedNodes ) {
+				LOGGER.info("Sheet with no data found");
+				return;
+			}
+
+			// a malformed or truncated xml stops the conversion
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Get a SAX handler which forwards the xml events to this converter.
+	 * Use it to feed the converter from an external parse instead of
+	 * parsing the input filename with {@link #parse()}. Call
+	 * {@link #buildSheet(Workbook, String)} before sending any event.
+	 * @return
+	 */
+	public DefaultHandler getHandler() {
+
+		return new DefaultHandler() {
+
+			private int depth = 0;
 
 			// when a node is encountered
 			public void startElement(String uri, String localName,String qName, 
 					Attributes attributes) throws SAXException {
+				depth++;
 				startAnalyzingNode( qName, attributes );
 			}
 
@@ -271,6 +675,10 @@ public abstract class SheetConverter {
 			// when the end of a node is encountered
 			public void endElement(String uri, String localName, String qName) throws SAXException {
 				endAnalyzingNode ( qName );
+
+				// end of the xml, no more rows
+				if ( --depth == 0 )
+					finishSheet();
 			}
 
 			@Override
@@ -279,35 +687,76 @@ public abstract class SheetConverter {
 				// ADD CONTENT TO LAST CONTENT! because the parser sometimes gives only
 				// a small piece of the value and not the entire value in a single call!!!
 
-				String newPiece = new String(ch, start, length);
-
 				// add the new piece if it is not the new line
-				// get the data only if we are in a root node
-				if ( !newPiece.equals( "\n" ) )//&& isRootNode )
-					lastContent.append( newPiece );
+				if ( length != 1 || ch[start] != '\n' )
+					appendContent( ch, start, length );
 			}
 		};
+	}
 
-		// Parse the xml document
-		try {
+	/**
+	 * Add a piece of text to the content of the current node
+	 * @param ch
+	 * @param start
+	 * @param length
+	 */
+	private void appendContent( char[] ch, int start, int length ) {
 
-			File file = new File ( inputFilename ); 
+		if ( lastContentLength + length > lastContent.length )
+			lastContent = Arrays.copyOf( lastContent,
+					Math.max( lastContent.length * 2, lastContentLength + length ) );
 
-			saxParser.parse( file, handler );
+		System.arraycopy( ch, start, lastContent, lastContentLength, length );
+		lastContentLength += length;
+	}
 
-		} catch ( SAXParseException e ) {
-			//e.printStackTrace();
-			// sheet with no data => an exception is thrown
-			LOGGER.info("Sheet with no data found");
-		} catch (IOException e) {
-			LOGGER.error("IO", e);
-			e.printStackTrace();
-		} catch (SAXException e) {
-			LOGGER.error("SAX", e);
-			e.printStackTrace();
+	/**
+	 * Get the content of the current node, as it is in the xml
+	 * @return
+	 */
+	private String getContent() {
+		return new String( lastContent, 0, lastContentLength );
+	}
+
+	/**
+	 * Check if the content of the current node is a text, without creating
+	 * a string. Use it in {@link #addElement(Row, int, String, String)} for
+	 * the nodes whose content is not needed (see {@link #needsContent(int, String)})
+	 * @param text
+	 * @return
+	 */
+	protected boolean isContent( char[] text ) {
+
+		if ( text.length != lastContentLength )
+			return false;
+
+		for ( int i = 0; i < lastContentLength; i++ ) {
+			if ( lastContent[i] != text[i] )
+				return false;
 		}
+
+		return true;
 	}
 
+	/**
+	 * Get the hash code of the content of the current node, without creating
+	 * a string. It is the {@link String#hashCode()} of the content, so that
+	 * the content can be looked up in tables keyed by strings
+	 * @return
+	 */
+	protected int getContentHash() {
+
+		int hash = 0;
+
+		for ( int i = 0; i < lastContentLength; i++ )
+			hash = 31 * hash + lastContent[i];
+
+		return hash;
+	}
+
+	private void resetContent() {
+		lastContentLength = 0;
+	}
 
 	/**
 	 * Analyze an xml node at its opening (e.g. <term> ... </term> => we invoke this
@@ -315,21 +764,25 @@ public abstract class SheetConverter {
 	 * @param qName
 	 */
 	void startAnalyzingNode( String qName, Attributes attr ) {
+
+		hasParsedNodes = true;
+
+		int nodeId = XmlSymbols.getId( qName );
 		
 		// if we have a root node then create a new row
 		// and set that we have to parse the entire node
-		if ( qName.equals( rootNode ) ) {
+		if ( isRoot( nodeId, qName ) ) {
 			isRootNode = true;
 			currentRow = createRow( sheet );
 			
 			// reset the content
-			lastContent.setLength(0);
+			resetContent();
 		}
 
 		// if we are inside a root node tell to the child class to start
 		// processing the current node
 		//if ( isRootNode )
-		SheetConverter.this.startElement( currentRow, qName, attr );
+		SheetConverter.this.startElement( currentRow, nodeId, qName, attr );
 	}
 	
 	/**
@@ -344,25 +797,69 @@ public abstract class SheetConverter {
 		if ( currentRow == null  )
 			return;
 
+		int nodeId = XmlSymbols.getId( qName );
+
 		// if we find a root node then we have finished parsing
 		// therefore we set that we ended parsing the current root node
-		if ( qName.equals( rootNode ) ) {
+		if ( isRoot( nodeId, qName ) ) {
 			isRootNode = false;
 		}
 
 		// process the node and add the element to the excel
-		SheetConverter.this.addElement( currentRow, qName, lastContent.toString() );
+		SheetConverter.this.addElement( currentRow, nodeId, qName,
+				needsContent( nodeId, qName ) ? getContent() : null );
 
 		// reset contents
-		lastContent.setLength(0);
+		resetContent();
+
+		// detached rows are counted when appended
+		if ( parent == null )
+			printProgress();
+	}
+
+	/**
+	 * Check if a node is the root node
+	 * @param nodeId
+	 * @param qName
+	 * @return
+	 */
+	private boolean isRoot( int nodeId, String qName ) {
+
+		if ( rootNodeId != XmlSymbols.UNKNOWN )
+			return nodeId == rootNodeId;
+
+		return qName.equals( rootNode );
+	}
+
+	/**
+	 * Diagnostic: print every printRowCount rows
+	 */
+	private void printProgress() {
 
-		// Diagnostic: print every printRowCount rows
 		if ( rowNum >= printCount + printRowCount ) {
 			printCount = rowNum;
 			LOGGER.info ( "Processed " + rowNum + " " + rootNode );
 		}
 	}
 
+	/**
+	 * Get the number of rows of the sheet, the headers included.
+	 * The rows of the detached converters are counted when appended.
+	 * @return
+	 */
+	public int getRowCount() {
+		return rowNum;
+	}
+
+	/**
+	 * Get the number of cells of the sheet, the headers included.
+	 * Call it when the sheet is complete.
+	 * @return
+	 */
+	public long getCellCount() {
+		return cellCount + ( lastRow != null ? lastRow.getPhysicalNumberOfCells() : 0 );
+	}
+
 	/**
 	 * Get the sheet we are creating with this converter
 	 * @return
@@ -459,6 +956,53 @@ public abstract class SheetConverter {
 	 */
 	public abstract void addElement ( Row row, String nodeName, String value );
 
+	/**
+	 * Start processing the current node, called for each xml node instead of
+	 * {@link #startElement(Row, String, Attributes)}. Override it to dispatch
+	 * the nodes with their id, by default it calls the method with the node name
+	 * @param row
+	 * @param nodeId the id of the node (see {@link XmlSymbols}), {@link XmlSymbols#UNKNOWN}
+	 * if the node is not a catalogue node
+	 * @param nodeName
+	 * @param attr the attribute related to the xml node
+	 */
+	public void startElement ( Row row, int nodeId, String nodeName, Attributes attr ) {
+		startElement( row, nodeName, attr );
+	}
+
+	/**
+	 * Add the current node, called for each xml node instead of
+	 * {@link #addElement(Row, String, String)}. Override it to dispatch
+	 * the nodes with their id, by default it calls the method with the node name
+	 * @param row
+	 * @param nodeId the id of the node (see {@link XmlSymbols}), {@link XmlSymbols#UNKNOWN}
+	 * if the node is not a catalogue node
+	 * @param nodeName
+	 * @param value
+	 */
+	public void addElement ( Row row, int nodeId, String nodeName, String value ) {
+		addElement( row, nodeName, value );
+	}
+
+	/**
+	 * Check if the content of a node is passed as string to
+	 * {@link #addElement(Row, int, String, String)}, otherwise no string is
+	 * created and the value is null (e.g. for the nodes which contain other nodes).
+	 * By default only the nodes which are a column of the sheet are passed,
+	 * override it to add the nodes which are read without a column of their own
+	 * (e.g. the values which are grouped in a single cell)
+	 * @param nodeId the id of the node (see {@link XmlSymbols})
+	 * @param nodeName
+	 * @return
+	 */
+	protected boolean needsContent( int nodeId, String nodeName ) {
+
+		if ( nodeId == XmlSymbols.UNKNOWN )
+			return headers.containsKey( nodeName );
+
+		return getNodeColumn( nodeId ) >= 0;
+	}
+
 	/**
 	 * Get the sheet headers, we need to implement this method to choose which 
 	 * columns we want to insert into the sheet. Note that for terms this is
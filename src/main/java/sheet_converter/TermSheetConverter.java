@@ -1,19 +1,19 @@
 package sheet_converter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
 import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
 import org.xml.sax.Attributes;
 
+import catalogue_metadata.AttributeInfo;
+import catalogue_metadata.CatalogueMetadata;
 import data_transformation.BooleanConverter;
 import data_transformation.HierarchyAssignment;
 import data_transformation.ValuesGrouper;
 import naming_convention.Headers;
-import naming_convention.SpecialValues;
 import sheet_header.SheetHeader;
 
 /**
@@ -23,31 +23,28 @@ import sheet_header.SheetHeader;
  */
 public class TermSheetConverter extends ExtendedSheetConverter {
 
-	private static final Logger LOGGER = LogManager.getLogger(TermSheetConverter.class);
-	
 	private String masterHierarchyCode;     // which is the hierarchy code of the master hierarchy?
 	private boolean isHierarchyAssignment;  // true if we are processing a hierarchy assignment node
 	private boolean isImplicitAttribute;    // true if we are processing an implicit attribute node
 	private HierarchyAssignment assignment; // the current hierarchy assignment (only set if isHierarchyAssignment = true)
-	private Sheet hierarchySheet;           // the hierarchy sheet (used to retrieve hierarchy codes and compute term columns)
-	private Sheet attributeSheet;           // the attribute sheet (used to retrieve attributes names and compute term columns)
+	private CatalogueMetadata metadata;     // the hierarchies and the attributes (used to compute term columns)
 	private ValuesGrouper groups;           // group to group multiple value related to the repeatable attributes
+	private AssignmentColumns[] hierarchyTable;    // open addressing table of the hierarchy columns by code (built with the headers)
+	private AssignmentColumns assignmentColumns;   // the columns of the current hierarchy assignment
 	
 	/**
 	 * Initialize the converter
 	 * @param inputFilename
 	 * @param rootNode
-	 * @param hierarchySheet
-	 * @param attributeSheet
+	 * @param metadata the catalogue data, the hierarchies and the attributes
 	 */
 	public TermSheetConverter(String inputFilename, String rootNode, 
-			Sheet hierarchySheet, Sheet attributeSheet ) {
+			CatalogueMetadata metadata ) {
 		super(inputFilename, rootNode );
 		
 		isHierarchyAssignment = false;
 		isImplicitAttribute = false;
-		this.hierarchySheet = hierarchySheet;
-		this.attributeSheet = attributeSheet;
+		this.metadata = metadata;
 		this.assignment = new HierarchyAssignment();
 		this.groups = new ValuesGrouper();
 		
@@ -55,82 +52,88 @@ public class TermSheetConverter extends ExtendedSheetConverter {
 
 	@Override
 	public void startElement(Row row, String nodeName, Attributes attr) {
+		startElement( row, XmlSymbols.getId( nodeName ), nodeName, attr );
+	}
+
+	@Override
+	public void startElement(Row row, int nodeId, String nodeName, Attributes attr) {
 		
 		// if a node hierarchy assignment starts (i.e. a node which says if the term is
 		// contained in the hierarchy or not)
-		if ( nodeName.equals( XmlNodes.HIER_ASSIGNMENT ) ) {
+		if ( nodeId == XmlSymbols.HIER_ASSIGNMENT ) {
 			isHierarchyAssignment = true;
 			assignment.reset();
 		}
 		
 		// if implicit attribute node start analyzing its data
 		// i.e. a node which says which attributes the term has
-		else if ( nodeName.equals( XmlNodes.IMPLICIT_ATTR ) ) {
+		else if ( nodeId == XmlSymbols.IMPLICIT_ATTR ) {
 			isImplicitAttribute = true;
 			groups.reset();
 		}
 	}
 
 	@Override
-	public void addElement(Row row, String nodeName, String value) {
+	public void addElement(Row row, int nodeId, String nodeName, String value) {
 
 		// call parent add element
-		super.addElement( row, nodeName, value );
+		super.addElement( row, nodeId, nodeName, value );
 		
 		// these nodes were already processed by the parent call
-		switch ( nodeName ) {
-		case XmlNodes.VALID_FROM:
-		case XmlNodes.VALID_TO:
-		case XmlNodes.LAST_UPDATE:
-		case XmlNodes.STATUS:
+		switch ( nodeId ) {
+		case XmlSymbols.VALID_FROM:
+		case XmlSymbols.VALID_TO:
+		case XmlSymbols.LAST_UPDATE:
+		case XmlSymbols.STATUS:
 			return;
 		}
 		
-		// switch on the xml node name
-		switch ( nodeName ) {
+		// switch on the xml node id
+		switch ( nodeId ) {
 		
 		// if we are closing an hierarchy assignment field then we
 		// have to add the retrieved hierarchy assignment data to the excel
-		case XmlNodes.HIER_ASSIGNMENT:
+		case XmlSymbols.HIER_ASSIGNMENT:
 			
 			// create the cells for the current hierarchy assignment in the right columns
-			createCell( assignment.getFlagColumn(), row, assignment.getFlag() );
-			createCell( assignment.getParentCodeColumn(), row, assignment.getParentCode() );
-			createCell( assignment.getOrderColumn(), row, assignment.getOrder() );
-			createCell( assignment.getReportableColumn(), row, assignment.getReportable() );
+			// (no cell if the hierarchy is not in the hierarchy sheet)
+			if ( assignmentColumns != null ) {
+				createCell( assignmentColumns.flag, row, assignment.getFlag() );
+				createCell( assignmentColumns.parentCode, row, assignment.getParentCode() );
+				createCell( assignmentColumns.order, row, assignment.getOrder() );
+				createCell( assignmentColumns.reportable, row, assignment.getReportable() );
+			}
 			
 			isHierarchyAssignment = false;
 			assignment.reset();
+			assignmentColumns = null;
 			break;
 		
 			// if hierarchy code and we are inside a hierarchy assignment node =>
 			// we start collecting the data related to the term hierarchy assignment
-		case  XmlNodes.ASS_HIER_CODE:
+		case XmlSymbols.ASS_HIER_CODE:
 			if ( isHierarchyAssignment ) {
 				
-				// if we have set a master hierarchy code and the hierarchy code is 
-				// actually the master hierarchy code, we set as code "master"
-				if ( masterHierarchyCode != null && masterHierarchyCode.equals( value ) )
-					assignment.setHierarchyCode( Headers.PREFIX_MASTER_CODE );
-				else
-					assignment.setHierarchyCode( value );
+				// the columns of the hierarchy were computed with the headers
+				// (the master hierarchy code is already mapped to the master columns)
+				assignmentColumns = findAssignmentColumns();
 			}
 			break;
 			
 			// same as above
-		case XmlNodes.ASS_PARENT_CODE:
+		case XmlSymbols.ASS_PARENT_CODE:
 			if ( isHierarchyAssignment )
 				assignment.setParentCode( value );
 			break;
 			
 			// same as above
-		case XmlNodes.ASS_ORDER:
+		case XmlSymbols.ASS_ORDER:
 			if ( isHierarchyAssignment )
 				assignment.setOrder( value );
 			break;
 			
 			// same as above
-		case XmlNodes.ASS_REPORT:
+		case XmlSymbols.ASS_REPORT:
 			if ( isHierarchyAssignment ) {
 				
 				// convert boolean true false into 1/0
@@ -143,7 +146,7 @@ public class TermSheetConverter extends ExtendedSheetConverter {
 			// if we are closing an implicit attribute node => finish analyzing data and save values
 			// we get the attribute code from the groups data
 			// we get all the attribute values from the groups getGroups
-		case XmlNodes.IMPLICIT_ATTR:
+		case XmlSymbols.IMPLICIT_ATTR:
 			
 			if ( isImplicitAttribute ) {
 				createCell( (String) groups.getData(), row, groups.getCompactValues() );
@@ -154,13 +157,13 @@ public class TermSheetConverter extends ExtendedSheetConverter {
 			
 			// if we are in the implicit attribute node and we found the attribute
 			// code field then we save the code into the groups
-		case XmlNodes.IMPLICIT_CODE:
+		case XmlSymbols.IMPLICIT_CODE:
 			if (isImplicitAttribute )
 				groups.setData( value );
 			break;
 			
 			// if attribute value save the value in the groups
-		case XmlNodes.IMPLICIT_VALUE:
+		case XmlSymbols.IMPLICIT_VALUE:
 			if (isImplicitAttribute )
 				groups.addValue( value );
 			break;
@@ -170,7 +173,7 @@ public class TermSheetConverter extends ExtendedSheetConverter {
 			// we use this only for xml nodes which are unique
 		default:
 			
-			createCell( nodeName, row, value );
+			createNodeCell( nodeId, nodeName, row, value );
 			break;
 		}
 	}
@@ -187,51 +190,116 @@ public class TermSheetConverter extends ExtendedSheetConverter {
 		this.masterHierarchyCode = masterHierarchyCode;
 	}
 
+	/**
+	 * The fields of the assignments and of the implicit attributes are
+	 * needed, besides the columns. The hierarchy code of an assignment
+	 * is only compared with the hierarchy codes, no string is needed
+	 */
+	@Override
+	protected boolean needsContent( int nodeId, String nodeName ) {
+
+		switch ( nodeId ) {
+		case XmlSymbols.ASS_HIER_CODE:
+			return false;
+		case XmlSymbols.ASS_PARENT_CODE:
+		case XmlSymbols.ASS_ORDER:
+		case XmlSymbols.ASS_REPORT:
+		case XmlSymbols.IMPLICIT_CODE:
+		case XmlSymbols.IMPLICIT_VALUE:
+			return true;
+		default:
+			return super.needsContent( nodeId, nodeName );
+		}
+	}
+
+	/**
+	 * Get the columns of the hierarchy of the current assignment, looking up
+	 * the content of the hierarchy code node in the hierarchy table, without
+	 * creating a string
+	 * @return the columns, null if the hierarchy is not in the hierarchy sheet
+	 */
+	private AssignmentColumns findAssignmentColumns() {
+
+		int mask = hierarchyTable.length - 1;
+		int slot = getSlot( getContentHash(), mask );
+
+		while ( true ) {
+
+			AssignmentColumns candidate = hierarchyTable[slot];
+
+			if ( candidate == null || isContent( candidate.code ) )
+				return candidate;
+
+			slot = ( slot + 1 ) & mask;
+		}
+	}
+
+	/**
+	 * Create the open addressing table of the hierarchy columns, keyed by
+	 * hierarchy code. The table is at most half full, so that a lookup
+	 * usually compares the code of a single hierarchy
+	 * @param columns the columns of each hierarchy
+	 * @return
+	 */
+	private static AssignmentColumns[] createHierarchyTable( List<AssignmentColumns> columns ) {
+
+		int size = Integer.highestOneBit( columns.size() * 4 + 1 );
+
+		AssignmentColumns[] table = new AssignmentColumns[size];
+		int mask = size - 1;
+
+		for ( AssignmentColumns column : columns ) {
+
+			int slot = getSlot( column.hash, mask );
+
+			// a repeated code keeps the columns of its first hierarchy
+			while ( table[slot] != null && !Arrays.equals( table[slot].code, column.code ) )
+				slot = ( slot + 1 ) & mask;
+
+			if ( table[slot] == null )
+				table[slot] = column;
+		}
+
+		return table;
+	}
+
+	private static int getSlot( int hash, int mask ) {
+		return ( hash ^ ( hash >>> 16 ) ) & mask;
+	}
+
+	@Override
+	public void buildDetached( SheetConverter parent ) {
+		super.buildDetached( parent );
+
+		// use the hierarchy columns computed by the sheet owner
+		if ( parent instanceof TermSheetConverter )
+			this.hierarchyTable = ( (TermSheetConverter) parent ).hierarchyTable;
+	}
+
 	/**
 	 * Get all the attributes codes and names which are not facet categories
-	 * @param sheet
-	 * @param field
 	 * @return
 	 */
-	private HashMap<String, String> getSimpleAttributes ( Sheet attrSheet, Sheet hierSheet ) {
+	private HashMap<String, String> getSimpleAttributes () {
 
 		HashMap<String, String> attrs = new HashMap<>();
 		
-		ArrayList<String> hierCodes = SheetConverter.getSheetColumn( hierSheet, Headers.CODE );
-		
-		// get the names and the types of the attributes
-		ArrayList<String> codes = SheetConverter.getSheetColumn( attrSheet, Headers.CODE );
-		ArrayList<String> names = SheetConverter.getSheetColumn( attrSheet, Headers.NAME );
-		ArrayList<String> types = SheetConverter.getSheetColumn( attrSheet, Headers.ATTR_TYPE );
-		ArrayList<String> catCodes = SheetConverter.getSheetColumn( attrSheet, Headers.ATTR_CAT_CODE );
-		
-		if ( codes.size() != names.size() || names.size() != types.size() ) {
-			LOGGER.error( "Wrong number of rows for attribute sheet" );
-			return null;
-		}
-		
-		// For each pair of name and type
-		for ( int i = 0; i < names.size(); i++ ) {
+		// For each attribute
+		for ( AttributeInfo attribute : metadata.getAttributes() ) {
 			
 			boolean addIt = false;
 			
 			// if catalogue attribute
-			if ( types.get(i).equals( SpecialValues.ATTR_CAT_TYPE ) ) {
+			if ( attribute.isCatalogueAttribute() ) {
 				
-				// check if hierarchy is present into the catalogue
-				String[] split = catCodes.get(i).split("\\.");
+				// get hierarchy code from the composite code
+				String hierarchyCode = attribute.getCatalogueHierarchyCode();
 				
-				if ( split.length > 1 ) {
-					
-					// get hierarchy code from the composite code
-					String hierarchyCode = split[1];
-					
-					// add the attribute just if we have a catalogue
-					// attribute with a hierarchy that does not belong 
-					// to the current catalogue
-					if ( !hierCodes.contains( hierarchyCode ) )
-						addIt = true;
-				}
+				// add the attribute just if we have a catalogue
+				// attribute with a hierarchy that does not belong 
+				// to the current catalogue
+				if ( hierarchyCode != null && !metadata.hasHierarchy( hierarchyCode ) )
+					addIt = true;
 			}
 			else {
 				addIt = true;
@@ -240,7 +308,7 @@ public class TermSheetConverter extends ExtendedSheetConverter {
 			// if the type is not a catalogue type add the name
 			// to the list identified by the code
 			if ( addIt ) {
-				attrs.put( codes.get(i), names.get(i) );
+				attrs.put( attribute.getCode(), attribute.getName() );
 			}
 		}
 		
@@ -276,7 +344,7 @@ public class TermSheetConverter extends ExtendedSheetConverter {
 		// but their excel column name actually is the attribute name
 		//
 		
-		HashMap<String, String> attributes = getSimpleAttributes( attributeSheet, hierarchySheet );
+		HashMap<String, String> attributes = getSimpleAttributes();
 		
 		for ( String key : attributes.keySet() ) {
 			headers.put( key, new SheetHeader( columnIndex++, attributes.get( key ) ) );
@@ -286,8 +354,10 @@ public class TermSheetConverter extends ExtendedSheetConverter {
 		// Add Hierarchies columns headers to the term sheet
 		//
 		
+		List<AssignmentColumns> hierarchyColumns = new ArrayList<>();
+
 		// for each hierarchy code we put columns to the term sheet
-		for ( String code : getSheetColumn( hierarchySheet, Headers.CODE ) ) {
+		for ( String code : metadata.getHierarchyCodes() ) {
 			
 			// we create a hierarchy assignment in order to automatically
 			// get the right headers column names starting from the hierarchy code
@@ -312,8 +382,43 @@ public class TermSheetConverter extends ExtendedSheetConverter {
 			
 			headers.put( assignment.getReportableColumn(), 
 					new SheetHeader( columnIndex++, assignment.getReportableColumn() ) );
+
+			// the assignments of the hierarchy are written in the last four columns
+			hierarchyColumns.add( new AssignmentColumns( code, columnIndex - 4 ) );
 		}
+
+		hierarchyTable = createHierarchyTable( hierarchyColumns );
 		
 		return headers;
 	}
+
+	/**
+	 * The columns of the assignments of a hierarchy
+	 * @author avonva
+	 *
+	 */
+	private static class AssignmentColumns {
+
+		private final char[] code;    // the hierarchy code
+		private final int hash;       // the hash code of the hierarchy code
+		private final int flag;
+		private final int parentCode;
+		private final int order;
+		private final int reportable;
+
+		/**
+		 * Create the columns of a hierarchy
+		 * @param code the hierarchy code
+		 * @param firstColumn the flag column, followed by parent code,
+		 * order and reportable columns
+		 */
+		public AssignmentColumns( String code, int firstColumn ) {
+			this.code = code.toCharArray();
+			this.hash = code.hashCode();
+			this.flag = firstColumn;
+			this.parentCode = firstColumn + 1;
+			this.order = firstColumn + 2;
+			this.reportable = firstColumn + 3;
+		}
+	}
 }
@@ -12,6 +12,13 @@ public class XmlNodes {
 	public static final String ATTRIBUTE_ROOT_NODE = "attribute";
 	public static final String TERM_ROOT_NODE = "term";
 	
+	// sections of the catalogue xml (one for each sheet)
+	public static final String CATALOGUE_DESC = "catalogueDesc";
+	public static final String CATALOGUE_VERSION = "catalogueVersion";
+	public static final String CATALOGUE_HIERARCHIES = "catalogueHierarchies";
+	public static final String CATALOGUE_ATTRIBUTES = "catalogueAttributes";
+	public static final String CATALOGUE_TERMS = "catalogueTerms";
+	
 	public static final String CODE = "code";
 	public static final String NAME = "name";
 	public static final String LABEL = "label";
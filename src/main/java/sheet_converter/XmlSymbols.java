@@ -0,0 +1,234 @@
+package sheet_converter;
+
+/**
+ * Symbol table of the xml nodes of a catalogue (see {@link XmlNodes}). Each
+ * node name has an integer id, so that the converters can dispatch the nodes
+ * with an int switch and find the column of a node in an array instead of
+ * comparing and hashing the node names for each xml event.
+ * The SAX parser interns the node names, therefore the lookup of a name
+ * usually needs only a reference comparison.
+ * @author avonva
+ *
+ */
+public class XmlSymbols {
+
+	// id of the names which are not xml nodes of a catalogue
+	public static final int UNKNOWN = -1;
+
+	public static final int CATALOGUE_ROOT_NODE = 0;
+	public static final int HIERARCHY_ROOT_NODE = 1;
+	public static final int ATTRIBUTE_ROOT_NODE = 2;
+	public static final int TERM_ROOT_NODE = 3;
+	public static final int CATALOGUE_DESC = 4;
+	public static final int CATALOGUE_VERSION = 5;
+	public static final int CATALOGUE_HIERARCHIES = 6;
+	public static final int CATALOGUE_ATTRIBUTES = 7;
+	public static final int CATALOGUE_TERMS = 8;
+	public static final int CODE = 9;
+	public static final int NAME = 10;
+	public static final int LABEL = 11;
+	public static final int SCOPENOTE = 12;
+	public static final int LAST_UPDATE = 13;
+	public static final int VALID_FROM = 14;
+	public static final int VALID_TO = 15;
+	public static final int STATUS = 16;
+	public static final int DEPRECATED = 17;
+	public static final int VERSION = 18;
+	public static final int CAT_CODE_MASK = 19;
+	public static final int CAT_CODE_LENGTH = 20;
+	public static final int CAT_MIN_CODE = 21;
+	public static final int CAT_ACCEPT_NOT_STD = 22;
+	public static final int CAT_GEN_MISSING = 23;
+	public static final int CAT_GROUPS = 24;
+	public static final int CAT_GROUP = 25;
+	public static final int RELEASE_NOTES = 26;
+	public static final int NOTES_DESCRIPTION = 27;
+	public static final int NOTES_DATE = 28;
+	public static final int NOTES_VERSION = 29;
+	public static final int NOTES_NOTE = 30;
+	public static final int NOTES_VERSION_ATTRIBUTE_NAME = 31;
+	public static final int HIER_APPL = 32;
+	public static final int HIER_ORDER = 33;
+	public static final int HIER_GROUPS = 34;
+	public static final int HIER_GROUP = 35;
+	public static final int HIER_VERSION = 36;
+	public static final int HIER_ASSIGNMENT = 37;
+	public static final int ASS_PARENT_CODE = 38;
+	public static final int ASS_ORDER = 39;
+	public static final int ASS_REPORT = 40;
+	public static final int ASS_HIER_CODE = 41;
+	public static final int ATTR_REPORT = 42;
+	public static final int ATTR_VISIB = 43;
+	public static final int ATTR_SEARCH = 44;
+	public static final int ATTR_ORDER = 45;
+	public static final int ATTR_TYPE = 46;
+	public static final int ATTR_MAX_LENGTH = 47;
+	public static final int ATTR_PRECISION = 48;
+	public static final int ATTR_SCALE = 49;
+	public static final int ATTR_CAT_CODE = 50;
+	public static final int ATTR_SR = 51;
+	public static final int ATTR_INHERIT = 52;
+	public static final int ATTR_UNIQUE = 53;
+	public static final int ATTR_ALIAS = 54;
+	public static final int IMPLICIT_ATTR = 55;
+	public static final int IMPLICIT_CODE = 56;
+	public static final int IMPLICIT_VALUE = 57;
+	public static final int TERM_CODE = 58;
+	public static final int TERM_EXT_NAME = 59;
+	public static final int TERM_SHORT_NAME = 60;
+	public static final int TERM_SCOPENOTE = 61;
+	public static final int OP_INFO = 62;
+	public static final int OP_NAME = 63;
+	public static final int OP_DATE = 64;
+	public static final int OP_GROUP = 65;
+	public static final int OP_DETAIL = 66;
+	public static final int NOTES_VERSION_DATE = 67;
+
+	// the node names, in order of id
+	private static final String[] NAMES = new String[] {
+		XmlNodes.CATALOGUE_ROOT_NODE,
+		XmlNodes.HIERARCHY_ROOT_NODE,
+		XmlNodes.ATTRIBUTE_ROOT_NODE,
+		XmlNodes.TERM_ROOT_NODE,
+		XmlNodes.CATALOGUE_DESC,
+		XmlNodes.CATALOGUE_VERSION,
+		XmlNodes.CATALOGUE_HIERARCHIES,
+		XmlNodes.CATALOGUE_ATTRIBUTES,
+		XmlNodes.CATALOGUE_TERMS,
+		XmlNodes.CODE,
+		XmlNodes.NAME,
+		XmlNodes.LABEL,
+		XmlNodes.SCOPENOTE,
+		XmlNodes.LAST_UPDATE,
+		XmlNodes.VALID_FROM,
+		XmlNodes.VALID_TO,
+		XmlNodes.STATUS,
+		XmlNodes.DEPRECATED,
+		XmlNodes.VERSION,
+		XmlNodes.CAT_CODE_MASK,
+		XmlNodes.CAT_CODE_LENGTH,
+		XmlNodes.CAT_MIN_CODE,
+		XmlNodes.CAT_ACCEPT_NOT_STD,
+		XmlNodes.CAT_GEN_MISSING,
+		XmlNodes.CAT_GROUPS,
+		XmlNodes.CAT_GROUP,
+		XmlNodes.RELEASE_NOTES,
+		XmlNodes.NOTES_DESCRIPTION,
+		XmlNodes.NOTES_DATE,
+		XmlNodes.NOTES_VERSION,
+		XmlNodes.NOTES_NOTE,
+		XmlNodes.NOTES_VERSION_ATTRIBUTE_NAME,
+		XmlNodes.HIER_APPL,
+		XmlNodes.HIER_ORDER,
+		XmlNodes.HIER_GROUPS,
+		XmlNodes.HIER_GROUP,
+		XmlNodes.HIER_VERSION,
+		XmlNodes.HIER_ASSIGNMENT,
+		XmlNodes.ASS_PARENT_CODE,
+		XmlNodes.ASS_ORDER,
+		XmlNodes.ASS_REPORT,
+		XmlNodes.ASS_HIER_CODE,
+		XmlNodes.ATTR_REPORT,
+		XmlNodes.ATTR_VISIB,
+		XmlNodes.ATTR_SEARCH,
+		XmlNodes.ATTR_ORDER,
+		XmlNodes.ATTR_TYPE,
+		XmlNodes.ATTR_MAX_LENGTH,
+		XmlNodes.ATTR_PRECISION,
+		XmlNodes.ATTR_SCALE,
+		XmlNodes.ATTR_CAT_CODE,
+		XmlNodes.ATTR_SR,
+		XmlNodes.ATTR_INHERIT,
+		XmlNodes.ATTR_UNIQUE,
+		XmlNodes.ATTR_ALIAS,
+		XmlNodes.IMPLICIT_ATTR,
+		XmlNodes.IMPLICIT_CODE,
+		XmlNodes.IMPLICIT_VALUE,
+		XmlNodes.TERM_CODE,
+		XmlNodes.TERM_EXT_NAME,
+		XmlNodes.TERM_SHORT_NAME,
+		XmlNodes.TERM_SCOPENOTE,
+		XmlNodes.OP_INFO,
+		XmlNodes.OP_NAME,
+		XmlNodes.OP_DATE,
+		XmlNodes.OP_GROUP,
+		XmlNodes.OP_DETAIL,
+		XmlNodes.NOTES_VERSION_DATE
+	};
+
+	// open addressing hash table of the names
+	private static final String[] TABLE_NAMES;
+	private static final int[] TABLE_IDS;
+	private static final int MASK;
+
+	static {
+
+		int size = Integer.highestOneBit( NAMES.length * 4 - 1 ) << 1;
+
+		TABLE_NAMES = new String[size];
+		TABLE_IDS = new int[size];
+		MASK = size - 1;
+
+		for ( int id = 0; id < NAMES.length; id++ ) {
+
+			int slot = hash( NAMES[id] );
+
+			while ( TABLE_NAMES[slot] != null )
+				slot = ( slot + 1 ) & MASK;
+
+			TABLE_NAMES[slot] = NAMES[id];
+			TABLE_IDS[slot] = id;
+		}
+	}
+
+	private static int hash( String name ) {
+		int hash = name.hashCode();
+		return ( hash ^ ( hash >>> 16 ) ) & MASK;
+	}
+
+	/**
+	 * Get the id of a node name
+	 * @param name
+	 * @return the id, {@link #UNKNOWN} if the name is not a node of {@link XmlNodes}
+	 */
+	public static int getId( String name ) {
+
+		if ( name == null )
+			return UNKNOWN;
+
+		int slot = hash( name );
+
+		while ( true ) {
+
+			String candidate = TABLE_NAMES[slot];
+
+			if ( candidate == name )
+				return TABLE_IDS[slot];
+
+			if ( candidate == null )
+				return UNKNOWN;
+
+			if ( candidate.equals( name ) )
+				return TABLE_IDS[slot];
+
+			slot = ( slot + 1 ) & MASK;
+		}
+	}
+
+	/**
+	 * Get the node name of an id
+	 * @param id
+	 * @return
+	 */
+	public static String getName( int id ) {
+		return NAMES[id];
+	}
+
+	/**
+	 * Get the number of node names
+	 * @return
+	 */
+	public static int count() {
+		return NAMES.length;
+	}
+}
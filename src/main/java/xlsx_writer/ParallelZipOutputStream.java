@@ -0,0 +1,436 @@
+package xlsx_writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Zip output stream which deflates the entries on several threads. The data
+ * of an entry is split in blocks which are deflated in parallel (each block
+ * uses the end of the previous one as dictionary, as pigz does) and written
+ * in order, therefore the entry is a single standard deflate stream.
+ * The sizes and the crc of the entries are written after their data (data
+ * descriptor), so the output does not need to be seekable.
+ * General notes:
+ * the level 0 (store) writes the data in stored deflate blocks, i.e. without
+ * compression, since the stored entries need the sizes before the data.
+ * The entries and the whole zip should be smaller than 4 GB (no zip64).
+ * @author avonva
+ *
+ */
+public class ParallelZipOutputStream extends OutputStream {
+
+	// the uncompressed size of a block
+	private static final int BLOCK_SIZE = 1 << 17;
+
+	// the dictionary of a block, i.e. the end of the previous block
+	private static final int DICTIONARY_SIZE = 1 << 15;
+
+	private static final long MAX_SIZE = 0xFFFFFFFFL;
+
+	// the general purpose flags: data descriptor and utf-8 names
+	private static final int FLAGS = 1 << 3 | 1 << 11;
+
+	private OutputStream out;
+	private int level;
+	private ThreadPoolExecutor pool;   // null to deflate in the writing thread
+	private int maxPendingBlocks;
+
+	private long written = 0;          // bytes written in the output
+	private ArrayList<Entry> entries;
+	private Entry entry;               // the current entry, null if closed
+
+	private byte[] block;              // the data of the current block
+	private int blockLength;
+	private byte[] previousBlock;      // the data of the last submitted block
+	private ArrayDeque<Future<byte[]>> pending;  // the blocks being deflated, in order
+	private CRC32 crc;
+
+	private byte[] header;             // reused to encode the headers
+
+	/**
+	 * Initialize the stream
+	 * @param out the stream which receives the zip
+	 * @param level the compression level from 0 (store) to 9,
+	 * or {@link Deflater#DEFAULT_COMPRESSION}
+	 * @param threads the threads which deflate the blocks, 1 to
+	 * deflate them in the writing thread
+	 */
+	public ParallelZipOutputStream( OutputStream out, int level, int threads ) {
+
+		if ( level != Deflater.DEFAULT_COMPRESSION && ( level < 0 || level > 9 ) )
+			throw new IllegalArgumentException( "Wrong compression level " + level );
+
+		this.out = out;
+		this.level = level;
+		this.entries = new ArrayList<>();
+		this.pending = new ArrayDeque<>();
+		this.crc = new CRC32();
+		this.header = new byte[64];
+
+		if ( threads > 1 ) {
+
+			// the idle threads stop, also if the stream is not finished
+			pool = new ThreadPoolExecutor( threads, threads, 1, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+				@Override
+				public Thread newThread( Runnable runnable ) {
+					Thread thread = new Thread( runnable, "zip-deflater" );
+					thread.setDaemon( true );
+					return thread;
+				}
+			} );
+
+			pool.allowCoreThreadTimeOut( true );
+		}
+
+		this.maxPendingBlocks = 2 * Math.max( threads, 1 );
+	}
+
+	/**
+	 * Start a new entry, the previous entry is closed
+	 * @param name the name of the entry (e.g. xl/workbook.xml)
+	 * @throws IOException
+	 */
+	public void putNextEntry( String name ) throws IOException {
+
+		if ( entry != null )
+			closeEntry();
+
+		entry = new Entry( name, written );
+
+		// local file header, the sizes are in the data descriptor
+		byte[] encodedName = entry.name;
+
+		int length = 0;
+		length = putInt( length, 0x04034b50 );
+		length = putShort( length, 20 );                // version needed to extract
+		length = putShort( length, FLAGS );
+		length = putShort( length, Deflater.DEFLATED );
+		length = putInt( length, entry.dosTime );
+		length = putInt( length, 0 );                   // crc
+		length = putInt( length, 0 );                   // compressed size
+		length = putInt( length, 0 );                   // size
+		length = putShort( length, encodedName.length );
+		length = putShort( length, 0 );                 // extra field length
+
+		writeOut( header, 0, length );
+		writeOut( encodedName, 0, encodedName.length );
+
+		block = new byte[BLOCK_SIZE];
+		blockLength = 0;
+		previousBlock = null;
+		crc.reset();
+	}
+
+	@Override
+	public void write( int b ) throws IOException {
+		write( new byte[] { (byte) b }, 0, 1 );
+	}
+
+	@Override
+	public void write( byte[] b, int off, int len ) throws IOException {
+
+		if ( entry == null )
+			throw new IOException( "No zip entry" );
+
+		crc.update( b, off, len );
+		entry.size += len;
+
+		while ( len > 0 ) {
+
+			int copied = Math.min( len, BLOCK_SIZE - blockLength );
+			System.arraycopy( b, off, block, blockLength, copied );
+			blockLength += copied;
+			off += copied;
+			len -= copied;
+
+			if ( blockLength == BLOCK_SIZE )
+				submitBlock( false );
+		}
+	}
+
+	/**
+	 * Deflate the current block
+	 * @param isLast true to end the deflate stream of the entry
+	 * @throws IOException
+	 */
+	private void submitBlock( boolean isLast ) throws IOException {
+
+		Callable<byte[]> task = new DeflateTask( block, blockLength, previousBlock, level, isLast );
+
+		if ( pool != null ) {
+			pending.add( pool.submit( task ) );
+		}
+		else {
+			FutureTask<byte[]> future = new FutureTask<>( task );
+			future.run();
+			pending.add( future );
+		}
+
+		previousBlock = block;
+		block = isLast ? null : new byte[BLOCK_SIZE];
+		blockLength = 0;
+
+		writeBlocks( isLast );
+	}
+
+	/**
+	 * Write the deflated blocks in order
+	 * @param waitAll true to wait until all the blocks are deflated, otherwise
+	 * wait only if too many blocks are pending
+	 * @throws IOException
+	 */
+	private void writeBlocks( boolean waitAll ) throws IOException {
+
+		while ( !pending.isEmpty() && ( waitAll || pending.size() > maxPendingBlocks
+				|| pending.peek().isDone() ) ) {
+
+			byte[] deflated;
+			try {
+				deflated = pending.poll().get();
+			} catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				throw new IOException( "Interrupted while deflating " + entry.getName(), e );
+			} catch ( ExecutionException e ) {
+				throw new IOException( "Cannot deflate " + entry.getName(), e.getCause() );
+			}
+
+			writeOut( deflated, 0, deflated.length );
+			entry.compressedSize += deflated.length;
+		}
+	}
+
+	/**
+	 * Complete the current entry
+	 * @throws IOException
+	 */
+	public void closeEntry() throws IOException {
+
+		if ( entry == null )
+			return;
+
+		submitBlock( true );
+
+		entry.crc = crc.getValue();
+
+		if ( entry.size > MAX_SIZE || entry.compressedSize > MAX_SIZE )
+			throw new IOException( entry.getName() + " is larger than 4 GB, zip64 is not supported" );
+
+		// data descriptor
+		int length = 0;
+		length = putInt( length, 0x08074b50 );
+		length = putInt( length, (int) entry.crc );
+		length = putInt( length, (int) entry.compressedSize );
+		length = putInt( length, (int) entry.size );
+		writeOut( header, 0, length );
+
+		entries.add( entry );
+		entry = null;
+		previousBlock = null;
+	}
+
+	/**
+	 * Close the current entry and write the central directory.
+	 * The output stream is not closed.
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+
+		try {
+
+			closeEntry();
+
+			long start = written;
+
+			for ( Entry entry : entries ) {
+
+				int length = 0;
+				length = putInt( length, 0x02014b50 );
+				length = putShort( length, 20 );              // version made by
+				length = putShort( length, 20 );              // version needed to extract
+				length = putShort( length, FLAGS );
+				length = putShort( length, Deflater.DEFLATED );
+				length = putInt( length, entry.dosTime );
+				length = putInt( length, (int) entry.crc );
+				length = putInt( length, (int) entry.compressedSize );
+				length = putInt( length, (int) entry.size );
+				length = putShort( length, entry.name.length );
+				length = putShort( length, 0 );               // extra field length
+				length = putShort( length, 0 );               // comment length
+				length = putShort( length, 0 );               // disk number
+				length = putShort( length, 0 );               // internal attributes
+				length = putInt( length, 0 );                 // external attributes
+				length = putInt( length, (int) entry.offset );
+
+				writeOut( header, 0, length );
+				writeOut( entry.name, 0, entry.name.length );
+			}
+
+			if ( written > MAX_SIZE || entries.size() > 0xFFFF )
+				throw new IOException( "The zip is larger than 4 GB, zip64 is not supported" );
+
+			// end of central directory
+			int length = 0;
+			length = putInt( length, 0x06054b50 );
+			length = putShort( length, 0 );                   // disk number
+			length = putShort( length, 0 );                   // disk of the central directory
+			length = putShort( length, entries.size() );
+			length = putShort( length, entries.size() );
+			length = putInt( length, (int) ( written - start ) );
+			length = putInt( length, (int) start );
+			length = putShort( length, 0 );                   // comment length
+			writeOut( header, 0, length );
+
+			out.flush();
+
+		} finally {
+			if ( pool != null )
+				pool.shutdown();
+		}
+	}
+
+	/**
+	 * Finish the zip and close the output stream
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	private void writeOut( byte[] b, int off, int len ) throws IOException {
+		out.write( b, off, len );
+		written += len;
+	}
+
+	private int putShort( int pos, int value ) {
+		header[pos] = (byte) value;
+		header[pos + 1] = (byte) ( value >> 8 );
+		return pos + 2;
+	}
+
+	private int putInt( int pos, int value ) {
+		pos = putShort( pos, value );
+		return putShort( pos, value >> 16 );
+	}
+
+	/**
+	 * Deflate a block of an entry
+	 * @author avonva
+	 *
+	 */
+	private static class DeflateTask implements Callable<byte[]> {
+
+		private byte[] data;
+		private int length;
+		private byte[] previous;
+		private int level;
+		private boolean isLast;
+
+		public DeflateTask( byte[] data, int length, byte[] previous, int level, boolean isLast ) {
+			this.data = data;
+			this.length = length;
+			this.previous = previous;
+			this.level = level;
+			this.isLast = isLast;
+		}
+
+		@Override
+		public byte[] call() {
+
+			// raw deflate, the zip has its own headers
+			Deflater deflater = new Deflater( level, true );
+
+			try {
+
+				// keep the matches with the end of the previous block
+				if ( previous != null && level != 0 )
+					deflater.setDictionary( previous, previous.length - DICTIONARY_SIZE, DICTIONARY_SIZE );
+
+				deflater.setInput( data, 0, length );
+
+				if ( isLast )
+					deflater.finish();
+
+				byte[] output = new byte[ length + ( length >> 3 ) + 64 ];
+				int size = 0;
+
+				// a sync flush ends the block on a byte boundary, so that the
+				// next block can be appended
+				while ( true ) {
+
+					if ( size == output.length )
+						output = Arrays.copyOf( output, output.length * 2 );
+
+					size += deflater.deflate( output, size, output.length - size,
+							isLast ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH );
+
+					if ( isLast ? deflater.finished() : size < output.length )
+						break;
+				}
+
+				return Arrays.copyOf( output, size );
+
+			} finally {
+				deflater.end();
+			}
+		}
+	}
+
+	/**
+	 * An entry of the zip
+	 * @author avonva
+	 *
+	 */
+	private static class Entry {
+
+		private byte[] name;
+		private long offset;          // the offset of the local header
+		private int dosTime;
+		private long size = 0;
+		private long compressedSize = 0;
+		private long crc;
+
+		public Entry( String name, long offset ) {
+			this.name = name.getBytes( StandardCharsets.UTF_8 );
+			this.offset = offset;
+			this.dosTime = toDosTime( LocalDateTime.now() );
+		}
+
+		public String getName() {
+			return new String( name, StandardCharsets.UTF_8 );
+		}
+
+		private static int toDosTime( LocalDateTime time ) {
+
+			int date = ( time.getYear() - 1980 ) << 9 | time.getMonthValue() << 5 | time.getDayOfMonth();
+			int hour = time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+
+			return date << 16 | hour;
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package xlsx_writer;
+
+/**
+ * A sheet which receives its rows directly, without POI objects (e.g. the
+ * xml of an xlsx sheet or a delimited text file). The rows are written in
+ * order: a row cannot be changed after the next row is created.
+ * @author avonva
+ *
+ */
+public interface SheetOutput {
+
+	/**
+	 * Create a new row. The previous row is written and it cannot be changed anymore.
+	 * @return the row, the same object can be returned for all the rows
+	 */
+	public XlsxRow createRow();
+
+	/**
+	 * Write a row created outside the sheet (e.g. in another thread) after
+	 * the current rows
+	 * @param detached
+	 */
+	public void appendRow( XlsxRow detached );
+
+	/**
+	 * Write the last row and complete the sheet. No row can be added after this.
+	 */
+	public void finish();
+
+	public String getName();
+}
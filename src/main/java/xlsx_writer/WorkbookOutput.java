@@ -0,0 +1,32 @@
+package xlsx_writer;
+
+import java.io.IOException;
+
+/**
+ * Receives the sheets which are written directly (see {@link SheetOutput}),
+ * instead of a POI workbook
+ * @author avonva
+ *
+ */
+public interface WorkbookOutput {
+
+	/**
+	 * Create a new sheet, after the other sheets
+	 * @param sheetName
+	 * @return
+	 */
+	public SheetOutput createSheet( String sheetName );
+
+	/**
+	 * Move a sheet to a position of the workbook
+	 * @param sheetName
+	 * @param pos
+	 */
+	public void setSheetOrder( String sheetName, int pos );
+
+	/**
+	 * Finish all the sheets and complete the output
+	 * @throws IOException if the output could not be written
+	 */
+	public void finish() throws IOException;
+}
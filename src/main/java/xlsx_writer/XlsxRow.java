@@ -0,0 +1,281 @@
+package xlsx_writer;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+/**
+ * Row of a sheet written directly in the output (see {@link SheetOutput}).
+ * The values are kept in arrays indexed by column, no cell object is created,
+ * therefore the cells are set with {@link #setString(int, String)},
+ * {@link #setNumber(int, double)} and {@link #setDate(int, LocalDate)}
+ * instead of {@link #createCell(int)}.
+ * General notes:
+ * the row of a sheet is reused for all the rows, it is cleared when it
+ * is written.
+ * @author avonva
+ *
+ */
+public class XlsxRow implements Row {
+
+	// the types of the cells, see getType()
+	public static final byte NONE = 0;    // no cell in the column
+	public static final byte STRING = 1;
+	public static final byte NUMBER = 2;
+	public static final byte DATE = 3;    // the output decides how the date is written
+
+	private static final String BY_VALUE = "The cells of a direct xlsx row are set by value";
+	private static final String DEFAULT_FORMAT = "The rows of a direct xlsx have the default format";
+
+	private byte[] types;
+	private String[] strings;
+	private double[] numbers;
+	private LocalDate[] dates;
+	private int lastColumn = -1;   // the last column with a cell, -1 if empty
+	private int rowNum = -1;
+
+	public XlsxRow() {
+		types = new byte[16];
+		strings = new String[16];
+		numbers = new double[16];
+		dates = new LocalDate[16];
+	}
+
+	/**
+	 * Set a string cell
+	 * @param column
+	 * @param value
+	 */
+	public void setString( int column, String value ) {
+		set( column, STRING );
+		strings[column] = value;
+	}
+
+	/**
+	 * Set a numeric cell
+	 * @param column
+	 * @param value
+	 */
+	public void setNumber( int column, double value ) {
+		set( column, NUMBER );
+		numbers[column] = value;
+	}
+
+	/**
+	 * Set a date cell
+	 * @param column
+	 * @param value the date, null for an empty cell with the date format
+	 */
+	public void setDate( int column, LocalDate value ) {
+		set( column, DATE );
+		dates[column] = value;
+	}
+
+	private void set( int column, byte type ) {
+
+		if ( column >= types.length ) {
+			int length = Math.max( types.length * 2, column + 1 );
+			types = Arrays.copyOf( types, length );
+			strings = Arrays.copyOf( strings, length );
+			numbers = Arrays.copyOf( numbers, length );
+			dates = Arrays.copyOf( dates, length );
+		}
+
+		types[column] = type;
+		strings[column] = null;
+		dates[column] = null;
+
+		if ( column > lastColumn )
+			lastColumn = column;
+	}
+
+	/**
+	 * Remove all the cells
+	 */
+	public void clear() {
+		Arrays.fill( types, 0, lastColumn + 1, NONE );
+		Arrays.fill( strings, 0, lastColumn + 1, null );
+		Arrays.fill( dates, 0, lastColumn + 1, null );
+		lastColumn = -1;
+	}
+
+	/**
+	 * Get the last column with a cell, -1 if the row is empty
+	 * @return
+	 */
+	public int getLastColumn() {
+		return lastColumn;
+	}
+
+	/**
+	 * Get the type of a cell (e.g. {@link #STRING})
+	 * @param column a column up to {@link #getLastColumn()}
+	 * @return
+	 */
+	public byte getType( int column ) {
+		return types[column];
+	}
+
+	public String getString( int column ) {
+		return strings[column];
+	}
+
+	public double getNumber( int column ) {
+		return numbers[column];
+	}
+
+	public LocalDate getDate( int column ) {
+		return dates[column];
+	}
+
+	@Override
+	public void setRowNum( int rowNum ) {
+		this.rowNum = rowNum;
+	}
+
+	/**
+	 * Get the index of the row, -1 if the row was not written yet
+	 */
+	@Override
+	public int getRowNum() {
+		return rowNum;
+	}
+
+	@Override
+	public short getFirstCellNum() {
+
+		for ( int i = 0; i <= lastColumn; i++ ) {
+			if ( types[i] != NONE )
+				return (short) i;
+		}
+
+		return -1;
+	}
+
+	@Override
+	public short getLastCellNum() {
+		return (short) ( lastColumn < 0 ? -1 : lastColumn + 1 );
+	}
+
+	@Override
+	public int getPhysicalNumberOfCells() {
+
+		int count = 0;
+
+		for ( int i = 0; i <= lastColumn; i++ ) {
+			if ( types[i] != NONE )
+				count++;
+		}
+
+		return count;
+	}
+
+	@Override
+	public Cell createCell( int column ) {
+		throw new UnsupportedOperationException( BY_VALUE );
+	}
+
+	@Override
+	public Cell createCell( int column, CellType type ) {
+		throw new UnsupportedOperationException( BY_VALUE );
+	}
+
+	@Override
+	public void removeCell( Cell cell ) {
+		throw new UnsupportedOperationException( BY_VALUE );
+	}
+
+	@Override
+	public Cell getCell( int column ) {
+		throw new UnsupportedOperationException( BY_VALUE );
+	}
+
+	@Override
+	public Cell getCell( int column, MissingCellPolicy policy ) {
+		throw new UnsupportedOperationException( BY_VALUE );
+	}
+
+	@Override
+	public Iterator<Cell> cellIterator() {
+		throw new UnsupportedOperationException( BY_VALUE );
+	}
+
+	@Override
+	public Iterator<Cell> iterator() {
+		return cellIterator();
+	}
+
+	@Override
+	public void setHeight( short height ) {
+		throw new UnsupportedOperationException( DEFAULT_FORMAT );
+	}
+
+	@Override
+	public void setZeroHeight( boolean zHeight ) {
+		throw new UnsupportedOperationException( DEFAULT_FORMAT );
+	}
+
+	@Override
+	public boolean getZeroHeight() {
+		return false;
+	}
+
+	@Override
+	public void setHeightInPoints( float height ) {
+		throw new UnsupportedOperationException( DEFAULT_FORMAT );
+	}
+
+	@Override
+	public short getHeight() {
+		return -1;
+	}
+
+	@Override
+	public float getHeightInPoints() {
+		return -1;
+	}
+
+	@Override
+	public boolean isFormatted() {
+		return false;
+	}
+
+	@Override
+	public CellStyle getRowStyle() {
+		return null;
+	}
+
+	@Override
+	public void setRowStyle( CellStyle style ) {
+		throw new UnsupportedOperationException( DEFAULT_FORMAT );
+	}
+
+	/**
+	 * The sheet is not a POI sheet, null is returned
+	 */
+	@Override
+	public Sheet getSheet() {
+		return null;
+	}
+
+	@Override
+	public int getOutlineLevel() {
+		return 0;
+	}
+
+	@Override
+	public void shiftCellsRight( int firstShiftColumnIndex, int lastShiftColumnIndex, int step ) {
+		throw new UnsupportedOperationException( BY_VALUE );
+	}
+
+	@Override
+	public void shiftCellsLeft( int firstShiftColumnIndex, int lastShiftColumnIndex, int step ) {
+		throw new UnsupportedOperationException( BY_VALUE );
+	}
+}
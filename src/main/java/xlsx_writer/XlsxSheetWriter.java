@@ -0,0 +1,442 @@
+package xlsx_writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.poi.ss.util.CellReference;
+
+import data_transformation.DateTrimmer;
+
+/**
+ * Write the xml of a sheet (xl/worksheets/sheetN.xml) row by row. The xml is
+ * encoded in a buffer which is either kept in memory, until the xlsx can
+ * receive the sheet, or flushed directly into the zip entry of the sheet
+ * (see {@link XlsxWriter}). A sheet starts writing in the zip once its
+ * buffer is big enough and no other sheet is using the zip.
+ * General notes:
+ * a sheet should be written by one thread at a time. An error of the output
+ * is logged once and stops the sheet, it is thrown by {@link XlsxWriter#finish()}.
+ * @author avonva
+ *
+ */
+public class XlsxSheetWriter implements SheetOutput {
+
+	private static final Logger LOGGER = LogManager.getLogger(XlsxSheetWriter.class);
+
+	// the buffered xml which is needed to start writing the sheet in the zip
+	private static final int STREAM_SIZE = 1 << 20;
+
+	// the buffer is written in the zip each time it reaches this size
+	private static final int FLUSH_SIZE = 1 << 16;
+
+	private static final byte[] HEADER = ascii( "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+			+ "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>" );
+	private static final byte[] FOOTER = ascii( "</sheetData></worksheet>" );
+	private static final byte[] ROW_START = ascii( "<row r=\"" );
+	private static final byte[] ROW_END = ascii( "</row>" );
+	private static final byte[] CELL_START = ascii( "<c r=\"" );
+	private static final byte[] DATE_STYLE = ascii( "\" s=\"" + XlsxWriter.DATE_STYLE );
+	private static final byte[] INLINE_STRING = ascii( "\" t=\"inlineStr\"><is><t>" );
+	private static final byte[] INLINE_STRING_SPACES = ascii( "\" t=\"inlineStr\"><is><t xml:space=\"preserve\">" );
+	private static final byte[] INLINE_STRING_END = ascii( "</t></is></c>" );
+	private static final byte[] VALUE = ascii( "\"><v>" );
+	private static final byte[] VALUE_END = ascii( "</v></c>" );
+	private static final byte[] EMPTY_CELL = ascii( "\"/>" );
+
+	private XlsxWriter writer;
+	private String name;
+	private int id;                  // the number of the sheet part, from 1
+
+	private byte[] buffer;
+	private int length;
+	private OutputStream output;     // the zip entry of the sheet, null while the xml is buffered
+	private int nextStreamSize = STREAM_SIZE;
+	private boolean isFinished = false;
+	private IOException error;
+
+	private XlsxRow row;             // the current row, reused for all the rows
+	private boolean hasRow = false;  // true if the current row was created and not written
+	private int rowNum = 0;
+
+	private byte[][] columnNames;    // the encoded names of the columns (A, B...)
+
+	/**
+	 * Create the sheet, use {@link XlsxWriter#createSheet(String)}
+	 * @param writer
+	 * @param name
+	 * @param id
+	 */
+	XlsxSheetWriter( XlsxWriter writer, String name, int id ) {
+		this.writer = writer;
+		this.name = name;
+		this.id = id;
+		this.buffer = new byte[FLUSH_SIZE];
+		this.row = new XlsxRow();
+		this.columnNames = new byte[0][];
+		put( HEADER );
+	}
+
+	/**
+	 * Create a new row. The previous row is written and it cannot be changed anymore.
+	 * @return the row, the same object is returned for all the rows
+	 */
+	@Override
+	public XlsxRow createRow() {
+
+		writeCurrentRow();
+
+		hasRow = true;
+		row.setRowNum( rowNum );
+
+		return row;
+	}
+
+	/**
+	 * Write a row created outside the sheet (e.g. in another thread) after
+	 * the current rows
+	 * @param detached
+	 */
+	@Override
+	public void appendRow( XlsxRow detached ) {
+
+		writeCurrentRow();
+
+		detached.setRowNum( rowNum );
+		writeRow( detached );
+	}
+
+	/**
+	 * Write the last row and complete the xml of the sheet. No row
+	 * can be added after this.
+	 */
+	@Override
+	public void finish() {
+
+		if ( isFinished )
+			return;
+
+		writeCurrentRow();
+		put( FOOTER );
+
+		isFinished = true;
+
+		writer.finishSheet( this );
+	}
+
+	private void writeCurrentRow() {
+
+		if ( isFinished )
+			throw new IllegalStateException( "The sheet " + name + " is already finished" );
+
+		if ( !hasRow )
+			return;
+
+		writeRow( row );
+		row.clear();
+		hasRow = false;
+	}
+
+	/**
+	 * Encode a row in the xml of the sheet
+	 * @param row
+	 */
+	private void writeRow( XlsxRow row ) {
+
+		// excel rows start from 1
+		rowNum++;
+
+		put( ROW_START );
+		putInt( rowNum );
+		put( (byte) '"' );
+		put( (byte) '>' );
+
+		for ( int column = 0; column <= row.getLastColumn(); column++ ) {
+
+			byte type = row.getType( column );
+
+			if ( type == XlsxRow.NONE )
+				continue;
+
+			put( CELL_START );
+			put( getColumnName( column ) );
+			putInt( rowNum );
+
+			switch ( type ) {
+			case XlsxRow.STRING:
+				String value = row.getString( column );
+				put( hasBorderSpaces( value ) ? INLINE_STRING_SPACES : INLINE_STRING );
+				putEscaped( value );
+				put( INLINE_STRING_END );
+				break;
+
+			case XlsxRow.NUMBER:
+				put( VALUE );
+				putNumber( row.getNumber( column ) );
+				put( VALUE_END );
+				break;
+
+			case XlsxRow.DATE:
+				// the dates are numeric cells with the date style
+				put( DATE_STYLE );
+				LocalDate date = row.getDate( column );
+				if ( date != null ) {
+					put( VALUE );
+					putNumber( DateTrimmer.toExcelDate( date ) );
+					put( VALUE_END );
+				}
+				else {
+					put( EMPTY_CELL );
+				}
+				break;
+			}
+		}
+
+		put( ROW_END );
+
+		flush();
+	}
+
+	/**
+	 * Send the buffer to the zip if the sheet is written in the zip,
+	 * otherwise check if the sheet can start writing in the zip
+	 */
+	private void flush() {
+
+		// the xml is discarded after an error
+		if ( error != null ) {
+			length = 0;
+			return;
+		}
+
+		try {
+
+			if ( output == null && length >= nextStreamSize ) {
+
+				output = writer.claimZip( this );
+
+				// try again when the buffer is doubled
+				if ( output == null )
+					nextStreamSize = length * 2;
+			}
+
+			if ( output != null && length >= FLUSH_SIZE ) {
+				output.write( buffer, 0, length );
+				length = 0;
+			}
+
+		} catch ( IOException e ) {
+			LOGGER.error( "Cannot write the sheet " + name, e );
+			e.printStackTrace();
+			error = e;
+			length = 0;
+		}
+	}
+
+	/**
+	 * Write in the zip the xml which was not written yet
+	 * @param output the zip entry of the sheet
+	 * @throws IOException
+	 */
+	void writeRemaining( OutputStream output ) throws IOException {
+
+		if ( error != null )
+			throw error;
+
+		output.write( buffer, 0, length );
+		length = 0;
+		buffer = null;
+	}
+
+	public boolean isFinished() {
+		return isFinished;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the number of the sheet part, from 1
+	 * @return
+	 */
+	int getId() {
+		return id;
+	}
+
+	/**
+	 * Get the name of the sheet part in the zip
+	 * @return
+	 */
+	String getPartName() {
+		return "xl/worksheets/sheet" + id + ".xml";
+	}
+
+	/**
+	 * Get the encoded name of a column (e.g. 0 = A)
+	 * @param column
+	 * @return
+	 */
+	private byte[] getColumnName( int column ) {
+
+		if ( column >= columnNames.length )
+			columnNames = Arrays.copyOf( columnNames, Math.max( columnNames.length * 2, column + 1 ) );
+
+		if ( columnNames[column] == null )
+			columnNames[column] = ascii( CellReference.convertNumToColString( column ) );
+
+		return columnNames[column];
+	}
+
+	/**
+	 * Check if a string starts or ends with a white space
+	 * (they are kept only with xml:space="preserve")
+	 * @param value
+	 * @return
+	 */
+	private static boolean hasBorderSpaces( String value ) {
+
+		if ( value.isEmpty() )
+			return false;
+
+		return Character.isWhitespace( value.charAt( 0 ) )
+				|| Character.isWhitespace( value.charAt( value.length() - 1 ) );
+	}
+
+	private void putNumber( double value ) {
+
+		long integer = (long) value;
+
+		if ( integer == value && Math.abs( value ) < 1e15 )
+			putLong( integer );
+		else
+			put( ascii( Double.toString( value ) ) );
+	}
+
+	private void putInt( int value ) {
+		putLong( value );
+	}
+
+	private void putLong( long value ) {
+
+		if ( value < 0 ) {
+			put( (byte) '-' );
+			value = -value;
+		}
+
+		ensure( 20 );
+
+		// write the digits from the end
+		int start = length;
+		do {
+			buffer[length++] = (byte) ( '0' + value % 10 );
+			value /= 10;
+		} while ( value > 0 );
+
+		for ( int i = start, j = length - 1; i < j; i++, j-- ) {
+			byte digit = buffer[i];
+			buffer[i] = buffer[j];
+			buffer[j] = digit;
+		}
+	}
+
+	/**
+	 * Encode a string in utf-8, escaping the xml characters. The characters
+	 * which are not allowed in xml are replaced with ?
+	 * @param value
+	 */
+	private void putEscaped( String value ) {
+
+		int size = value.length();
+
+		for ( int i = 0; i < size; i++ ) {
+
+			char c = value.charAt( i );
+
+			// at most 6 bytes for each char (&quot;)
+			ensure( 6 );
+
+			if ( c >= 0x80 ) {
+
+				if ( c < 0x800 ) {
+					buffer[length++] = (byte) ( 0xC0 | c >> 6 );
+					buffer[length++] = (byte) ( 0x80 | c & 0x3F );
+				}
+				else if ( Character.isHighSurrogate( c ) && i + 1 < size
+						&& Character.isLowSurrogate( value.charAt( i + 1 ) ) ) {
+
+					int code = Character.toCodePoint( c, value.charAt( ++i ) );
+					buffer[length++] = (byte) ( 0xF0 | code >> 18 );
+					buffer[length++] = (byte) ( 0x80 | code >> 12 & 0x3F );
+					buffer[length++] = (byte) ( 0x80 | code >> 6 & 0x3F );
+					buffer[length++] = (byte) ( 0x80 | code & 0x3F );
+				}
+				else if ( Character.isSurrogate( c ) || c >= 0xFFFE ) {
+					buffer[length++] = '?';
+				}
+				else {
+					buffer[length++] = (byte) ( 0xE0 | c >> 12 );
+					buffer[length++] = (byte) ( 0x80 | c >> 6 & 0x3F );
+					buffer[length++] = (byte) ( 0x80 | c & 0x3F );
+				}
+
+				continue;
+			}
+
+			switch ( c ) {
+			case '<':
+				putAscii( "&lt;" );
+				break;
+			case '>':
+				putAscii( "&gt;" );
+				break;
+			case '&':
+				putAscii( "&amp;" );
+				break;
+			case '"':
+				putAscii( "&quot;" );
+				break;
+			case '\r':
+				putAscii( "&#xd;" );
+				break;
+			case '\t':
+			case '\n':
+				buffer[length++] = (byte) c;
+				break;
+			default:
+				buffer[length++] = (byte) ( c < 0x20 ? '?' : c );
+				break;
+			}
+		}
+	}
+
+	private void putAscii( String value ) {
+		for ( int i = 0; i < value.length(); i++ )
+			buffer[length++] = (byte) value.charAt( i );
+	}
+
+	private void put( byte value ) {
+		ensure( 1 );
+		buffer[length++] = value;
+	}
+
+	private void put( byte[] value ) {
+		ensure( value.length );
+		System.arraycopy( value, 0, buffer, length, value.length );
+		length += value.length;
+	}
+
+	private void ensure( int size ) {
+		if ( length + size > buffer.length )
+			buffer = Arrays.copyOf( buffer, Math.max( buffer.length * 2, length + size ) );
+	}
+
+	private static byte[] ascii( String value ) {
+		return value.getBytes( StandardCharsets.US_ASCII );
+	}
+}
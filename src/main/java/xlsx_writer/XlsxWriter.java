@@ -0,0 +1,288 @@
+package xlsx_writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.zip.Deflater;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Write an xlsx directly into a stream, without POI workbooks and without
+ * temporary files. The rows of the sheets are encoded in xml as soon as they
+ * are complete (see {@link XlsxSheetWriter}) and only one sheet at a time can
+ * write its zip entry: the other sheets keep their xml in memory until the zip
+ * is free. Therefore use it when only one sheet is big (e.g. the terms), the
+ * small sheets can be written at any time.
+ * The xlsx contains only the parts needed by excel: the content types, the
+ * relationships, the workbook, the styles and the sheets. The strings are
+ * written inline, the only style is the date style {@link #DATE_STYLE}.
+ * @author avonva
+ *
+ */
+public class XlsxWriter implements WorkbookOutput {
+
+	private static final Logger LOGGER = LogManager.getLogger(XlsxWriter.class);
+
+	// the index of the style of the date cells
+	public static final int DATE_STYLE = 1;
+
+	// the first id of the custom number formats
+	private static final int DATE_FORMAT_ID = 164;
+
+	private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+	private static final String MAIN_NAMESPACE = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+	private static final String RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+	private ParallelZipOutputStream zip;
+	private String dateFormat;
+
+	private ArrayList<XlsxSheetWriter> sheets;    // the sheets in order of workbook
+	private ArrayList<XlsxSheetWriter> waiting;   // finished sheets which wait the zip
+	private XlsxSheetWriter zipOwner;             // the sheet which is writing its zip entry
+	private IOException error;
+
+	/**
+	 * Initialize the writer, the xlsx is deflated with the default
+	 * level in the writing thread
+	 * @param output the stream which receives the xlsx, it is not closed
+	 * @param dateFormat the format of the date cells (e.g. yyyy/MM/dd)
+	 */
+	public XlsxWriter( OutputStream output, String dateFormat ) {
+		this( output, dateFormat, Deflater.DEFAULT_COMPRESSION, 1 );
+	}
+
+	/**
+	 * Initialize the writer
+	 * @param output the stream which receives the xlsx, it is not closed
+	 * @param dateFormat the format of the date cells (e.g. yyyy/MM/dd)
+	 * @param compressionLevel the level of the zip (see {@link ParallelZipOutputStream})
+	 * @param compressionThreads the threads which deflate the zip
+	 */
+	public XlsxWriter( OutputStream output, String dateFormat, int compressionLevel, int compressionThreads ) {
+		this.zip = new ParallelZipOutputStream( output, compressionLevel, compressionThreads );
+		this.dateFormat = dateFormat;
+		this.sheets = new ArrayList<>();
+		this.waiting = new ArrayList<>();
+	}
+
+	/**
+	 * Create a new sheet, after the other sheets
+	 * @param sheetName
+	 * @return
+	 */
+	@Override
+	public synchronized XlsxSheetWriter createSheet( String sheetName ) {
+
+		for ( XlsxSheetWriter sheet : sheets ) {
+			if ( sheet.getName().equalsIgnoreCase( sheetName ) )
+				throw new IllegalArgumentException( "The workbook already contains a sheet named " + sheetName );
+		}
+
+		XlsxSheetWriter sheet = new XlsxSheetWriter( this, sheetName, sheets.size() + 1 );
+		sheets.add( sheet );
+
+		return sheet;
+	}
+
+	/**
+	 * Move a sheet to a position of the workbook
+	 * @param sheetName
+	 * @param pos
+	 */
+	@Override
+	public synchronized void setSheetOrder( String sheetName, int pos ) {
+
+		for ( int i = 0; i < sheets.size(); i++ ) {
+			if ( sheets.get(i).getName().equals( sheetName ) ) {
+				sheets.add( pos, sheets.remove(i) );
+				return;
+			}
+		}
+
+		throw new IllegalArgumentException( "Sheet not found: " + sheetName );
+	}
+
+	/**
+	 * Start the zip entry of a sheet, if no other sheet is writing in the zip
+	 * @param sheet
+	 * @return the stream of the entry, null if the zip is used by another sheet
+	 * @throws IOException
+	 */
+	synchronized OutputStream claimZip( XlsxSheetWriter sheet ) throws IOException {
+
+		if ( zipOwner != null )
+			return null;
+
+		zip.putNextEntry( sheet.getPartName() );
+		zipOwner = sheet;
+
+		LOGGER.info( sheet.getName() + ": Writing the sheet directly in the xlsx" );
+
+		return zip;
+	}
+
+	/**
+	 * Write the sheet if the zip is free, otherwise wait until the
+	 * sheet which is using the zip is finished
+	 * @param sheet a finished sheet
+	 */
+	synchronized void finishSheet( XlsxSheetWriter sheet ) {
+
+		try {
+
+			if ( sheet == zipOwner ) {
+				sheet.writeRemaining( zip );
+				zip.closeEntry();
+				zipOwner = null;
+			}
+			else {
+				waiting.add( sheet );
+			}
+
+			// the zip is free, write the sheets which were waiting
+			if ( zipOwner == null ) {
+				for ( XlsxSheetWriter finished : waiting )
+					writeSheet( finished );
+				waiting.clear();
+			}
+
+		} catch ( IOException e ) {
+			LOGGER.error( "Cannot write the sheet " + sheet.getName(), e );
+			e.printStackTrace();
+			if ( error == null )
+				error = e;
+		}
+	}
+
+	/**
+	 * Write a finished sheet in its zip entry
+	 * @param sheet
+	 * @throws IOException
+	 */
+	private void writeSheet( XlsxSheetWriter sheet ) throws IOException {
+		zip.putNextEntry( sheet.getPartName() );
+		sheet.writeRemaining( zip );
+		zip.closeEntry();
+	}
+
+	/**
+	 * Finish all the sheets and write the parts of the workbook.
+	 * The output stream is not closed.
+	 * @throws IOException if the xlsx could not be written
+	 */
+	@Override
+	public synchronized void finish() throws IOException {
+
+		for ( XlsxSheetWriter sheet : sheets )
+			sheet.finish();
+
+		if ( error != null )
+			throw error;
+
+		putEntry( "[Content_Types].xml", getContentTypes() );
+		putEntry( "_rels/.rels", XML_DECLARATION
+				+ "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+				+ "<Relationship Id=\"rId1\" Type=\"" + RELATIONSHIPS + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+				+ "</Relationships>" );
+		putEntry( "xl/workbook.xml", getWorkbook() );
+		putEntry( "xl/_rels/workbook.xml.rels", getWorkbookRelationships() );
+		putEntry( "xl/styles.xml", getStyles() );
+
+		zip.finish();
+	}
+
+	private void putEntry( String name, String content ) throws IOException {
+		zip.putNextEntry( name );
+		zip.write( content.getBytes( StandardCharsets.UTF_8 ) );
+		zip.closeEntry();
+	}
+
+	private String getContentTypes() {
+
+		StringBuilder xml = new StringBuilder( XML_DECLARATION );
+
+		xml.append( "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">" )
+			.append( "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>" )
+			.append( "<Default Extension=\"xml\" ContentType=\"application/xml\"/>" )
+			.append( "<Override PartName=\"/xl/workbook.xml\" "
+					+ "ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>" )
+			.append( "<Override PartName=\"/xl/styles.xml\" "
+					+ "ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>" );
+
+		for ( XlsxSheetWriter sheet : sheets ) {
+			xml.append( "<Override PartName=\"/" ).append( sheet.getPartName() )
+				.append( "\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>" );
+		}
+
+		return xml.append( "</Types>" ).toString();
+	}
+
+	private String getWorkbook() {
+
+		StringBuilder xml = new StringBuilder( XML_DECLARATION );
+
+		xml.append( "<workbook xmlns=\"" ).append( MAIN_NAMESPACE )
+			.append( "\" xmlns:r=\"" ).append( RELATIONSHIPS ).append( "\"><sheets>" );
+
+		// the sheets are listed in order of workbook, the parts in order of creation
+		for ( XlsxSheetWriter sheet : sheets ) {
+			xml.append( "<sheet name=\"" ).append( escape( sheet.getName() ) )
+				.append( "\" sheetId=\"" ).append( sheet.getId() )
+				.append( "\" r:id=\"rId" ).append( sheet.getId() ).append( "\"/>" );
+		}
+
+		return xml.append( "</sheets></workbook>" ).toString();
+	}
+
+	private String getWorkbookRelationships() {
+
+		StringBuilder xml = new StringBuilder( XML_DECLARATION );
+
+		xml.append( "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">" );
+
+		for ( XlsxSheetWriter sheet : sheets ) {
+			xml.append( "<Relationship Id=\"rId" ).append( sheet.getId() )
+				.append( "\" Type=\"" ).append( RELATIONSHIPS ).append( "/worksheet\" Target=\"worksheets/sheet" )
+				.append( sheet.getId() ).append( ".xml\"/>" );
+		}
+
+		xml.append( "<Relationship Id=\"rId" ).append( sheets.size() + 1 )
+			.append( "\" Type=\"" ).append( RELATIONSHIPS ).append( "/styles\" Target=\"styles.xml\"/>" );
+
+		return xml.append( "</Relationships>" ).toString();
+	}
+
+	/**
+	 * The styles: the default one and the date style
+	 * @return
+	 */
+	private String getStyles() {
+		return XML_DECLARATION
+				+ "<styleSheet xmlns=\"" + MAIN_NAMESPACE + "\">"
+				+ "<numFmts count=\"1\"><numFmt numFmtId=\"" + DATE_FORMAT_ID
+				+ "\" formatCode=\"" + escape( dateFormat ) + "\"/></numFmts>"
+				+ "<fonts count=\"1\"><font><sz val=\"11\"/><name val=\"Calibri\"/><family val=\"2\"/></font></fonts>"
+				+ "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill>"
+				+ "<fill><patternFill patternType=\"gray125\"/></fill></fills>"
+				+ "<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>"
+				+ "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+				+ "<cellXfs count=\"2\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"
+				+ "<xf numFmtId=\"" + DATE_FORMAT_ID + "\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" "
+				+ "applyNumberFormat=\"1\"/></cellXfs>"
+				+ "<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>"
+				+ "</styleSheet>";
+	}
+
+	/**
+	 * Escape a string for an xml attribute
+	 * @param value
+	 * @return
+	 */
+	private static String escape( String value ) {
+		return value.replace( "&", "&amp;" ).replace( "<", "&lt;" )
+				.replace( ">", "&gt;" ).replace( "\"", "&quot;" );
+	}
+}
@@ -0,0 +1,477 @@
+package xml_to_excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Convert many catalogues in the same jvm, so that the jvm startup, the
+ * class loading and the jit warm up are paid only once. The compiled xslt
+ * and the SAX parser factories are shared by all the conversions. The
+ * catalogues are converted in parallel by a fixed number of workers.
+ * The catalogues can be specified with:
+ * - a folder: all the .xml, .gz and .zip files of the folder
+ * - a glob: e.g. D:\catalogues\*.xml.gz
+ * - a manifest: a text file with a catalogue for each line, optionally
+ *   followed by a tab or ; and the output xlsx
+ * @author avonva
+ *
+ */
+public class BatchConverter {
+
+	private static final Logger LOGGER = LogManager.getLogger(BatchConverter.class);
+
+	private static final String[] CATALOGUE_EXTENSIONS = new String[] { ".xml", ".gz", ".zip" };
+
+	private List<Job> jobs;
+	private HashMap<Path, Job> outputs;  // the job of each output, to find the duplicates
+	private int threads;
+	private boolean useXsltFilters = false;
+	private ConversionCache cache;
+	private WorkbookOptions workbookOptions = new WorkbookOptions();
+
+	/**
+	 * Start the batch from command line
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+
+		BatchConverter batch = new BatchConverter();
+		List<String> paths = new ArrayList<>();
+
+		String cacheFolder = null;
+		long cacheSize = 10L * 1024 * 1048576;
+		boolean useHardLinks = false;
+		WorkbookOptions options = new WorkbookOptions();
+		int used;
+
+		for (int i = 0; i < args.length; i++) {
+
+			if (args[i].equals("-threads") && i + 1 < args.length)
+				batch.setThreads(Integer.parseInt(args[++i]));
+			else if (args[i].equals("-xslt"))
+				batch.setUseXsltFilters(true);
+			else if (args[i].equals("-cache") && i + 1 < args.length)
+				cacheFolder = args[++i];
+			else if (args[i].equals("-cacheSize") && i + 1 < args.length)
+				cacheSize = Long.parseLong(args[++i]) * 1048576;
+			else if (args[i].equals("-links"))
+				useHardLinks = true;
+			else if ((used = options.parse(args, i)) > 0)
+				i += used - 1;
+			else
+				paths.add(args[i]);
+		}
+
+		if (paths.isEmpty() || paths.size() > 2) {
+
+			LOGGER.error("Wrong arguments. Please specify the catalogues (a folder, a glob or a manifest file) "
+					+ "and the output folder (example: java -cp xmlToExcel.jar xml_to_excel.BatchConverter "
+					+ "-threads 4 D:\\catalogues D:\\output). The manifest contains a catalogue for each line, "
+					+ "optionally followed by a tab or ; and the output xlsx. Options: -xslt, -cache folder "
+					+ "(skip the catalogues already converted), -cacheSize MB (default 10240), -links (hard link "
+					+ "the cached xlsx instead of copying them), " + WorkbookOptions.getUsage() + ".");
+
+			return;
+		}
+
+		batch.setWorkbookOptions(options);
+
+		if (cacheFolder != null) {
+			ConversionCache cache = new ConversionCache(cacheFolder, cacheSize);
+			cache.setUseHardLinks(useHardLinks);
+			batch.setCache(cache);
+		}
+
+		try {
+			batch.addCatalogues(paths.get(0), paths.size() > 1 ? paths.get(1) : null);
+		} catch (IOException e) {
+			LOGGER.error("Cannot find the catalogues", e);
+			e.printStackTrace();
+			return;
+		}
+
+		batch.run();
+
+		System.out.println(batch.getSummary());
+	}
+
+	/**
+	 * Create an empty batch, which uses a worker for each processor
+	 */
+	public BatchConverter() {
+		this.jobs = new ArrayList<>();
+		this.outputs = new HashMap<>();
+		this.threads = Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Set how many catalogues are converted at the same time
+	 *
+	 * @param threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * See {@link XmlCatalogueToExcel#setUseXsltFilters(boolean)}
+	 *
+	 * @param useXsltFilters
+	 */
+	public void setUseXsltFilters(boolean useXsltFilters) {
+		this.useXsltFilters = useXsltFilters;
+	}
+
+	/**
+	 * See {@link XmlCatalogueToExcel#setCache(ConversionCache)}
+	 *
+	 * @param cache
+	 */
+	public void setCache(ConversionCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * See {@link XmlCatalogueToExcel#setWorkbookOptions(WorkbookOptions)}
+	 *
+	 * @param workbookOptions
+	 */
+	public void setWorkbookOptions(WorkbookOptions workbookOptions) {
+		this.workbookOptions = workbookOptions;
+	}
+
+	/**
+	 * Add a catalogue to the batch. If another catalogue of the batch has the
+	 * same output (e.g. a.xml and a.xml.gz in the same folder), the catalogue
+	 * is not converted and it is reported as {@link Job#DUPLICATE}, so that
+	 * the output of the first catalogue is not overwritten.
+	 *
+	 * @param inputXml   the catalogue (see {@link CatalogueInput})
+	 * @param outputXlsx the xlsx to create
+	 */
+	public void addCatalogue(String inputXml, String outputXlsx) {
+
+		Job job = new Job(inputXml, outputXlsx);
+
+		Path output = new File(outputXlsx).getAbsoluteFile().toPath().normalize();
+
+		Job first = outputs.get(output);
+		if (first != null)
+			job.duplicateOf = first;
+		else
+			outputs.put(output, job);
+
+		jobs.add(job);
+	}
+
+	/**
+	 * Add the catalogues of a folder, of a glob or of a manifest file
+	 *
+	 * @param catalogues   the folder, the glob or the manifest
+	 * @param outputFolder the folder of the xlsx, optional for the manifest
+	 * @throws IOException
+	 */
+	public void addCatalogues(String catalogues, String outputFolder) throws IOException {
+
+		File file = new File(catalogues);
+
+		if (file.isFile() && !isCatalogue(file.getName())) {
+			addManifest(file, outputFolder);
+			return;
+		}
+
+		if (outputFolder == null)
+			throw new IOException("Output folder not specified");
+
+		List<String> inputs = new ArrayList<>();
+
+		if (file.isDirectory()) {
+			for (File child : file.listFiles()) {
+				if (child.isFile() && isCatalogue(child.getName()))
+					inputs.add(child.getPath());
+			}
+		} else if (file.isFile()) {
+			inputs.add(file.getPath());
+		} else {
+			inputs.addAll(findGlob(catalogues));
+		}
+
+		Collections.sort(inputs);
+
+		if (inputs.isEmpty())
+			throw new IOException("No catalogue found in " + catalogues);
+
+		for (String input : inputs)
+			addWithOutputFolder(input, outputFolder);
+	}
+
+	/**
+	 * Add the catalogues listed in a manifest
+	 *
+	 * @param manifest
+	 * @param outputFolder used for the catalogues without output xlsx
+	 * @throws IOException
+	 */
+	private void addManifest(File manifest, String outputFolder) throws IOException {
+
+		for (String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+
+			line = line.trim();
+
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+
+			int separator = line.indexOf('\t');
+			if (separator < 0)
+				separator = line.indexOf(';');
+
+			if (separator > 0)
+				addCatalogue(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+			else if (outputFolder != null)
+				addWithOutputFolder(line, outputFolder);
+			else
+				throw new IOException("Output xlsx not specified for " + line + " in " + manifest);
+		}
+	}
+
+	/**
+	 * Add a catalogue with the xlsx (or the folder of the text files, see
+	 * {@link WorkbookOptions#getOutputName(String)}) in the output folder. Each catalogue
+	 * of a zip file is converted separately.
+	 *
+	 * @param input
+	 * @param outputFolder
+	 * @throws IOException
+	 */
+	private void addWithOutputFolder(String input, String outputFolder) throws IOException {
+
+		for (String catalogue : CatalogueInput.getCatalogues(input))
+			addCatalogue(catalogue,
+					new File(outputFolder, workbookOptions.getOutputName(CatalogueInput.getBaseName(catalogue))).getPath());
+	}
+
+	/**
+	 * Find the files which match the glob
+	 *
+	 * @param glob e.g. D:\catalogues\*.xml
+	 * @return
+	 * @throws IOException
+	 */
+	private static List<String> findGlob(String glob) throws IOException {
+
+		// search from the last folder which does not contain wildcards
+		int wildcard = glob.length();
+		for (char c : new char[] { '*', '?', '[', '{' }) {
+			int index = glob.indexOf(c);
+			if (index >= 0)
+				wildcard = Math.min(wildcard, index);
+		}
+
+		String prefix = glob.substring(0, wildcard);
+		int separator = Math.max(prefix.lastIndexOf('/'), prefix.lastIndexOf(File.separatorChar));
+		Path folder = Paths.get(separator >= 0 ? prefix.substring(0, separator + 1) : ".");
+
+		// the pattern is matched against the paths relative to the folder
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob.substring(separator + 1));
+
+		List<String> files = new ArrayList<>();
+
+		if (!Files.isDirectory(folder))
+			return files;
+
+		try (Stream<Path> paths = Files.walk(folder)) {
+
+			Iterator<Path> iterator = paths.iterator();
+
+			while (iterator.hasNext()) {
+
+				Path path = iterator.next();
+
+				if (Files.isRegularFile(path) && matcher.matches(folder.relativize(path)))
+					files.add(path.toString());
+			}
+		}
+
+		return files;
+	}
+
+	private static boolean isCatalogue(String filename) {
+
+		String name = filename.toLowerCase(Locale.ROOT);
+
+		for (String extension : CATALOGUE_EXTENSIONS) {
+			if (name.endsWith(extension))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Convert all the catalogues and wait until they are finished
+	 */
+	public void run() {
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+		// start from the biggest catalogues, so that the workers finish together
+		List<Job> ordered = new ArrayList<>(jobs);
+		Collections.sort(ordered, new Comparator<Job>() {
+
+			@Override
+			public int compare(Job job1, Job job2) {
+				return Long.compare(job2.getInputSize(), job1.getInputSize());
+			}
+		});
+
+		for (final Job job : ordered)
+			pool.execute(job);
+
+		pool.shutdown();
+
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Get the time of each conversion
+	 *
+	 * @return
+	 */
+	public String getSummary() {
+
+		StringBuilder summary = new StringBuilder();
+		long total = 0;
+		int failed = 0;
+
+		summary.append(String.format("%-10s %10s %10s  %s%n", "STATUS", "MB", "SECONDS", "CATALOGUE"));
+
+		for (Job job : jobs) {
+
+			summary.append(String.format(Locale.ROOT, "%-10s %10.1f %10.2f  %s%n", job.status,
+					job.getInputSize() / 1048576.0, job.time / 1000.0, job.inputXml));
+
+			total += job.time;
+
+			if (!Job.OK.equals(job.status))
+				failed++;
+		}
+
+		summary.append(String.format(Locale.ROOT, "%d catalogues, %d failed, %.2f seconds of conversion on %d threads",
+				jobs.size(), failed, total / 1000.0, threads));
+
+		return summary.toString();
+	}
+
+	/**
+	 * The conversion of a catalogue
+	 *
+	 * @author avonva
+	 *
+	 */
+	private class Job implements Runnable {
+
+		private static final String OK = "OK";
+		private static final String FAILED = "FAILED";
+		private static final String NOT_RUN = "NOT RUN";
+		private static final String DUPLICATE = "DUPLICATE";
+
+		private String inputXml;
+		private String outputXlsx;
+		private String status = NOT_RUN;
+		private long time;
+		private Job duplicateOf;  // the job with the same output, null if none
+
+		public Job(String inputXml, String outputXlsx) {
+			this.inputXml = inputXml;
+			this.outputXlsx = outputXlsx;
+		}
+
+		/**
+		 * Get the size of the catalogue file (of the zip for zip entries)
+		 *
+		 * @return
+		 */
+		private long getInputSize() {
+
+			int separator = inputXml.indexOf(CatalogueInput.ZIP_ENTRY_SEPARATOR);
+
+			return new File(separator > 0 ? inputXml.substring(0, separator) : inputXml).length();
+		}
+
+		@Override
+		public void run() {
+
+			if (duplicateOf != null) {
+				status = DUPLICATE;
+				LOGGER.error("Cannot convert " + inputXml + ", its output " + outputXlsx + " is the output of "
+						+ duplicateOf.inputXml);
+				return;
+			}
+
+			long start = System.currentTimeMillis();
+
+			XmlCatalogueToExcel converter = new XmlCatalogueToExcel(inputXml, outputXlsx);
+			converter.setUseXsltFilters(useXsltFilters);
+			converter.setCache(cache);
+			converter.setWorkbookOptions(workbookOptions);
+
+			// the catalogues are already converted in parallel
+			if (threads > 1)
+				converter.setTermChunkSize(0);
+
+			try {
+
+				File output = new File(outputXlsx);
+
+				File parent = output.getAbsoluteFile().getParentFile();
+				if (parent != null)
+					parent.mkdirs();
+
+				// a stale xlsx of a previous run is not left if the conversion fails
+				// (the files of a folder output are replaced by the conversion)
+				if (output.isFile())
+					Files.delete(output.toPath());
+
+				// the conversion throws if it fails
+				converter.convertXmlToExcel();
+
+				status = OK;
+
+			} catch (Exception e) {
+				status = FAILED;
+				LOGGER.error("Cannot convert " + inputXml, e);
+				e.printStackTrace();
+			}
+
+			time = System.currentTimeMillis() - start;
+
+			LOGGER.info(status + " " + inputXml + " in " + time + " ms");
+		}
+	}
+}
@@ -0,0 +1,609 @@
+package xml_to_excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import conversion_events.Phase;
+import conversion_events.PhaseEvent;
+import sheet_converter.ChunkedSheetHandler;
+import sheet_converter.SaxParsers;
+import sheet_converter.SheetConverter;
+import sheet_converter.XmlNodes;
+import xlsx_writer.WorkbookOutput;
+
+/**
+ * Parse the catalogue xml only once and send the events of each section
+ * (catalogueHierarchies, catalogueAttributes, catalogueTerms, releaseNotes...)
+ * directly to the converter of the related sheet. This replaces the xslt
+ * filters, since no intermediate file is written and no tree of the whole
+ * document is built.
+ * General notes:
+ * the document section receives all the events which are not contained in an
+ * exclusive section (as the catalogue.xslt did). Text nodes which contain
+ * only white spaces are stripped (as the xsl:strip-space did).
+ * A section can be streamed only if the nodes it requires were already closed
+ * (e.g. the term headers need the complete hierarchy and attribute sheets).
+ * If this does not happen, the section is skipped during the parse and it is
+ * converted at the end with its xslt filter.
+ * The terms of a plain xml file can be read from the byte ranges found by a
+ * {@link CatalogueOffsetScanner} instead of being parsed with the rest of
+ * the xml (see {@link #setTermOffsets(CatalogueOffsetScanner)}).
+ * @author avonva
+ *
+ */
+public class CatalogueDemultiplexer extends DefaultHandler {
+
+	private static final Logger LOGGER = LogManager.getLogger(CatalogueDemultiplexer.class);
+
+	private Workbook workbook;
+	private WorkbookOutput workbookOutput;
+	private String inputXml;
+
+	private Section document;                // the section which receives the nodes outside the exclusive sections
+	private ArrayList<Section> sections;     // the sections in order of sheet
+	private ArrayList<Listener> listeners;   // the handlers which receive the events without a sheet
+	private HashSet<String> closedNodes;     // the required nodes which were already closed
+
+	private Section exclusive;          // the exclusive section we are parsing (null if none)
+	private ArrayList<Section> active;  // the sections which receive the current events
+	private int depth;                  // the depth of the current node
+	private CountingInputStream counter;  // the bytes of the xml parsed
+	private CatalogueOffsetScanner termOffsets;  // the offsets of the terms, null to parse them with the xml
+	private long termBytes;             // the bytes of the terms read from their offsets
+	private long sectionBytes;          // the bytes of the sections, without the document section
+
+	// white spaces are not forwarded until we know that the text is not only white spaces
+	private char[] text;
+	private int textLength;
+	private boolean isBlank;
+
+	/**
+	 * Initialize the demultiplexer
+	 * @param workbook the workbook in which the sheets are created
+	 * @param inputXml the catalogue in .xml format (also compressed, see {@link CatalogueInput}),
+	 * null if it is read from a stream with {@link #convert(InputSource)}
+	 */
+	public CatalogueDemultiplexer( Workbook workbook, String inputXml ) {
+		this( inputXml );
+		this.workbook = workbook;
+	}
+
+	/**
+	 * Initialize the demultiplexer for sheets which are written directly in
+	 * the output (see {@link ConversionPerformer#setWorkbookOutput(WorkbookOutput)})
+	 * @param workbookOutput the output in which the sheets are created
+	 * @param inputXml the catalogue in .xml format, null if it is read from a stream
+	 */
+	public CatalogueDemultiplexer( WorkbookOutput workbookOutput, String inputXml ) {
+		this( inputXml );
+		this.workbookOutput = workbookOutput;
+	}
+
+	private CatalogueDemultiplexer( String inputXml ) {
+		this.inputXml = inputXml;
+		this.sections = new ArrayList<>();
+		this.listeners = new ArrayList<>();
+		this.closedNodes = new HashSet<>();
+		this.active = new ArrayList<>();
+		this.text = new char[256];
+	}
+
+	/**
+	 * Set the performer which receives all the nodes which are not contained
+	 * in an exclusive section (i.e. the catalogue sheet)
+	 * @param performer
+	 * @param sheetName
+	 */
+	public void setDocumentSection ( ConversionPerformer performer, String sheetName ) {
+		document = new Section( null, false, performer, sheetName, new String[0] );
+		sections.add( 0, document );
+	}
+
+	/**
+	 * Add a section of the catalogue. The sheets are ordered in the workbook
+	 * following the order in which the sections are added.
+	 * @param node the xml node which contains the section data
+	 * @param exclusive true if the nodes of the section should not be sent to
+	 * the document section
+	 * @param performer the performer which creates the sheet
+	 * @param sheetName the name of the sheet
+	 * @param requiredNodes the xml nodes which should be closed before starting
+	 * the section
+	 */
+	public void addSection ( String node, boolean exclusive, ConversionPerformer performer,
+			String sheetName, String... requiredNodes ) {
+		sections.add( new Section( node, exclusive, performer, sheetName, requiredNodes ) );
+	}
+
+	/**
+	 * Send the events of a node also to a handler which does not create a
+	 * sheet (e.g. to write the terms in another format). The handler receives
+	 * the events in order of parse, also if the node is in an exclusive section
+	 * or in a section which is converted at the end.
+	 * @param node the xml node whose events (node included) are sent to the handler
+	 * @param handler
+	 */
+	public void addListener ( String node, DefaultHandler handler ) {
+		listeners.add( new Listener( node, handler ) );
+	}
+
+	/**
+	 * Convert the root nodes of a section in parallel, in chunks of contiguous
+	 * nodes (see {@link ChunkedSheetHandler}). The section should be already added.
+	 * @param node the xml node which contains the section data
+	 * @param chunkSize the number of root nodes of each chunk
+	 * @param executor the executor which converts the chunks
+	 */
+	public void partitionSection ( String node, int chunkSize, Executor executor ) {
+
+		for ( Section section : sections ) {
+			if ( node.equals( section.node ) ) {
+				section.chunkSize = chunkSize;
+				section.executor = executor;
+			}
+		}
+	}
+
+	/**
+	 * Read the terms from the byte ranges found by the scanner, instead of
+	 * parsing them with the rest of the xml. The xml parsed by {@link #convert()}
+	 * is the scanned file without the terms, the chunks of terms are parsed in
+	 * parallel directly from the file. The terms section should be partitioned
+	 * (see {@link #partitionSection(String, int, Executor)}), otherwise the
+	 * offsets are not used. The listeners of the terms (see
+	 * {@link #addListener(String, DefaultHandler)}) do not receive the terms
+	 * read from the offsets.
+	 * @param termOffsets the scanner of the input xml, already scanned
+	 */
+	public void setTermOffsets ( CatalogueOffsetScanner termOffsets ) {
+		this.termOffsets = termOffsets;
+	}
+
+	/**
+	 * Parse the input xml and populate all the sheets
+	 * @throws TransformerException
+	 */
+	public void convert () throws TransformerException {
+
+		if ( termOffsets != null && !isTermSectionPartitioned() ) {
+			LOGGER.warn( "The terms are not partitioned, the term offsets are not used" );
+			termOffsets = null;
+		}
+
+		InputSource source;
+
+		if ( termOffsets != null ) {
+
+			// parse the mapped file without the terms
+			source = new InputSource( termOffsets.openWithoutTerms() );
+			source.setSystemId( new File( inputXml ).toURI().toString() );
+		}
+		else {
+			try {
+				source = CatalogueInput.openSource( inputXml );
+			} catch (IOException e) {
+				throw new TransformerException( "Cannot read " + inputXml, e );
+			}
+		}
+
+		try {
+			convert( source );
+		} finally {
+			try {
+				source.getByteStream().close();
+			} catch (IOException e) {
+				LOGGER.error( "Cannot close " + inputXml, e );
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Parse the xml of the source and populate all the sheets. If the input xml
+	 * of the demultiplexer is null, the sections which are not ordered cannot be
+	 * converted, since the source cannot be read again.
+	 * @param source the catalogue xml, it is not closed
+	 * @throws TransformerException
+	 */
+	public void convert ( InputSource source ) throws TransformerException {
+
+		// the document section is opened at the beginning
+		if ( document != null ) {
+			document.open();
+			document.startTime = System.nanoTime();
+			document.event = PhaseEvent.begin( Phase.PARSE, document.sheetName );
+			updateActiveSections();
+		}
+
+		if ( source.getByteStream() != null ) {
+
+			// the bytes of each section are measured within a kilobyte
+			counter = new CountingInputStream( source.getByteStream(), 1024 );
+			source.setByteStream( counter );
+		}
+
+		// a malformed or truncated xml stops the conversion, the sheets are incomplete
+		try {
+			SaxParsers.newSAXParser().parse( source, this );
+		} catch (ParserConfigurationException | SAXException | IOException e) {
+			throw new TransformerException( "Cannot parse "
+					+ ( inputXml != null ? inputXml : "input stream" ) + ": " + e.getMessage(), e );
+		}
+
+		// the document section receives the events of the whole parse
+		if ( document != null ) {
+			document.performer.addParseTime( System.nanoTime() - document.startTime );
+
+			// the bytes of the nodes outside the other sections, so that
+			// the bytes of the sheets add up to the bytes of the xml
+			document.performer.addBytesRead( getBytesRead() - sectionBytes );
+			document.event.setRows( document.converter.getRowCount() )
+				.setBytes( getBytesRead() ).commit();
+		}
+
+		// create the sheets which were not found and convert with the
+		// xslt filter the sections which were skipped
+		for ( Section section : sections ) {
+
+			if ( section.skipped && inputXml == null ) {
+				throw new TransformerException( section.sheetName
+						+ ": Section not ordered, it cannot be converted from a stream" );
+			}
+			else if ( section.skipped ) {
+				LOGGER.info( section.sheetName + ": Section not ordered, using the xslt filter" );
+				section.performer.convert( section.sheetName );
+			}
+			else if ( section.converter == null ) {
+				section.open();
+			}
+		}
+
+		// keep the sheets ordered as the sections
+		for ( int i = 0; i < sections.size(); i++ ) {
+			if ( workbookOutput != null )
+				workbookOutput.setSheetOrder( sections.get(i).sheetName, i );
+			else
+				workbook.setSheetOrder( sections.get(i).sheetName, i );
+		}
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName,
+			Attributes attributes) throws SAXException {
+
+		flushText();
+
+		depth++;
+
+		Section started = null;
+
+		// check if a new section starts (sections are not nested)
+		if ( exclusive == null ) {
+			for ( Section section : sections ) {
+				if ( section.depth < 0 && qName.equals( section.node ) ) {
+					section.start( depth );
+					started = section;
+					updateActiveSections();
+					break;
+				}
+			}
+		}
+
+		for ( Section section : active )
+			section.handler.startElement( uri, localName, qName, attributes );
+
+		// the terms were removed from the parsed xml, convert them from the file
+		if ( started != null && termOffsets != null && started.node.equals( XmlNodes.CATALOGUE_TERMS ) )
+			started.submitTermRanges();
+
+		for ( Listener listener : listeners ) {
+
+			if ( listener.depth < 0 && qName.equals( listener.node ) )
+				listener.depth = depth;
+
+			if ( listener.depth >= 0 )
+				listener.handler.startElement( uri, localName, qName, attributes );
+		}
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+
+		flushText();
+
+		for ( Section section : active )
+			section.handler.endElement( uri, localName, qName );
+
+		for ( Listener listener : listeners ) {
+
+			if ( listener.depth < 0 )
+				continue;
+
+			listener.handler.endElement( uri, localName, qName );
+
+			if ( listener.depth == depth )
+				listener.depth = -1;
+		}
+
+		boolean isSkipped = false;
+
+		// close the section if we reached its end
+		for ( Section section : sections ) {
+			if ( section.depth == depth ) {
+				section.depth = -1;
+				if ( !section.skipped ) {
+					long bytes = getBytesRead() - section.startBytes;
+					section.performer.addParseTime( System.nanoTime() - section.startTime );
+					section.performer.addBytesRead( bytes );
+					sectionBytes += bytes;
+					section.event.setRows( section.converter.getRowCount() )
+						.setBytes( bytes ).commit();
+				}
+				isSkipped = section.skipped;
+				if ( section == exclusive )
+					exclusive = null;
+				updateActiveSections();
+			}
+		}
+
+		// the nodes required by the sections are outside the exclusive sections
+		// a skipped section is not completed, so it cannot be required
+		if ( exclusive == null && !isSkipped )
+			closedNodes.add( qName );
+
+		depth--;
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+
+		// the parser can split the text in several pieces, we
+		// need the whole text to know if it is only white spaces
+		if ( textLength + length > text.length ) {
+			char[] newText = new char[ Math.max( text.length * 2, textLength + length ) ];
+			System.arraycopy( text, 0, newText, 0, textLength );
+			text = newText;
+		}
+
+		System.arraycopy( ch, start, text, textLength, length );
+
+		if ( textLength == 0 )
+			isBlank = true;
+
+		for ( int i = start; isBlank && i < start + length; i++ ) {
+			char c = ch[i];
+			isBlank = c == ' ' || c == '\t' || c == '\n' || c == '\r';
+		}
+
+		textLength += length;
+	}
+
+	/**
+	 * Get the bytes of the xml parsed by {@link #convert(InputSource)}
+	 * (the uncompressed xml, if the input is compressed)
+	 * @return
+	 */
+	public long getBytesRead() {
+		return ( counter != null ? counter.getCount() : 0 ) + termBytes;
+	}
+
+	/**
+	 * Check if the terms section is converted in chunks
+	 * @return
+	 */
+	private boolean isTermSectionPartitioned() {
+
+		for ( Section section : sections ) {
+			if ( XmlNodes.CATALOGUE_TERMS.equals( section.node ) )
+				return section.chunkSize > 0;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Send the buffered text to the active sections, if it
+	 * does not contain only white spaces
+	 * @throws SAXException
+	 */
+	private void flushText() throws SAXException {
+
+		if ( textLength > 0 && !isBlank ) {
+
+			for ( Section section : active )
+				section.handler.characters( text, 0, textLength );
+
+			for ( Listener listener : listeners ) {
+				if ( listener.depth >= 0 )
+					listener.handler.characters( text, 0, textLength );
+			}
+		}
+
+		textLength = 0;
+	}
+
+	/**
+	 * Compute the sections which should receive the next events.
+	 * Call this each time a section starts or ends.
+	 */
+	private void updateActiveSections() {
+
+		active.clear();
+
+		// nodes in exclusive sections are sent only to the section
+		if ( exclusive != null ) {
+			if ( exclusive.handler != null )
+				active.add( exclusive );
+			return;
+		}
+
+		for ( Section section : sections ) {
+			if ( section.handler != null && ( section == document || section.depth >= 0 ) )
+				active.add( section );
+		}
+	}
+
+	/**
+	 * A handler which receives the events of a node
+	 * @author avonva
+	 *
+	 */
+	private static class Listener {
+
+		private String node;
+		private DefaultHandler handler;
+		private int depth = -1;   // depth of the node, -1 if closed
+
+		public Listener( String node, DefaultHandler handler ) {
+			this.node = node;
+			this.handler = handler;
+		}
+	}
+
+	/**
+	 * A part of the catalogue xml which is converted into a sheet
+	 * @author avonva
+	 *
+	 */
+	private class Section {
+
+		private String node;
+		private boolean isExclusive;
+		private ConversionPerformer performer;
+		private String sheetName;
+		private String[] requiredNodes;
+
+		private SheetConverter converter;
+		private DefaultHandler handler;
+		private int depth = -1;          // depth of the section node, -1 if closed
+		private boolean skipped = false; // true if the required nodes were not closed in time
+		private int chunkSize = 0;       // root nodes of each chunk, 0 if not partitioned
+		private Executor executor;       // converts the chunks
+		private long startTime;          // when the section node started, in nanoseconds
+		private long startBytes;         // the bytes parsed when the section node started
+		private PhaseEvent event;        // the flight recorder event of the section
+
+		public Section( String node, boolean isExclusive, ConversionPerformer performer,
+				String sheetName, String[] requiredNodes ) {
+			this.node = node;
+			this.isExclusive = isExclusive;
+			this.performer = performer;
+			this.sheetName = sheetName;
+			this.requiredNodes = requiredNodes;
+		}
+
+		/**
+		 * Create the sheet and the converter of the section
+		 */
+		private void open() {
+
+			LOGGER.info ( "Creating " + sheetName + " sheet..." );
+
+			converter = performer.open( inputXml, sheetName );
+
+			if ( chunkSize <= 0 || !converter.canBeDetached() ) {
+				handler = converter.getHandler();
+				return;
+			}
+
+			// each chunk is converted by a new converter
+			handler = new ChunkedSheetHandler( converter, new Supplier<SheetConverter>() {
+
+				@Override
+				public SheetConverter get() {
+					return performer.getConverter( inputXml );
+				}
+			}, chunkSize, executor );
+		}
+
+		/**
+		 * Start parsing the section node
+		 * @param depth the depth of the section node
+		 */
+		private void start( int depth ) {
+
+			this.depth = depth;
+			this.startTime = System.nanoTime();
+
+			if ( isExclusive )
+				exclusive = this;
+
+			// the section was already skipped once
+			if ( skipped )
+				return;
+
+			if ( converter == null ) {
+
+				for ( String required : requiredNodes ) {
+					if ( !closedNodes.contains( required ) ) {
+						skipped = true;
+						handler = null;
+						return;
+					}
+				}
+
+				open();
+			}
+
+			startBytes = getBytesRead();
+			event = PhaseEvent.begin( Phase.PARSE, sheetName );
+		}
+
+		/**
+		 * Convert in chunks the terms of the section from their offsets
+		 * in the file (see {@link #setTermOffsets(CatalogueOffsetScanner)}).
+		 * Call this when the section node starts.
+		 * @throws SAXException
+		 */
+		private void submitTermRanges() throws SAXException {
+
+			// a skipped section is converted with the xslt filter from the whole file
+			if ( handler == null )
+				return;
+
+			int count = termOffsets.getTermsCount();
+
+			// the converter cannot be detached, convert the terms in this thread
+			if ( !( handler instanceof ChunkedSheetHandler ) ) {
+				LOGGER.warn( sheetName + ": The rows cannot be converted in parallel, parsing the terms in one chunk" );
+				ChunkedSheetHandler.parseNodes( termOffsets.openTerms( 0, count ), handler );
+				termBytes += termOffsets.getTermsBytes();
+				return;
+			}
+
+			for ( int first = 0; first < count; first += chunkSize ) {
+
+				final int start = first;
+				final int end = (int) Math.min( (long) first + chunkSize, count );
+
+				( (ChunkedSheetHandler) handler ).submitXml( new Supplier<InputStream>() {
+
+					@Override
+					public InputStream get() {
+						return termOffsets.openTerms( start, end );
+					}
+				} );
+			}
+
+			termBytes += termOffsets.getTermsBytes();
+
+			LOGGER.info( sheetName + ": " + count + " terms read from their offsets in chunks of " + chunkSize );
+		}
+	}
+}
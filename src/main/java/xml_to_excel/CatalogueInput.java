@@ -0,0 +1,249 @@
+package xml_to_excel;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.xml.sax.InputSource;
+
+/**
+ * Open the catalogue files. A catalogue can be a plain .xml file, a .gz
+ * file or an entry of a .zip file, which is identified as archive.zip!/entry.xml
+ * (see {@link #getCatalogues(String)}). Compressed catalogues are never
+ * decompressed to disk: they are inflated in a separate thread while they
+ * are read (see {@link ReadAheadInputStream}).
+ * @author avonva
+ *
+ */
+public class CatalogueInput {
+
+	// separates the zip file name from the entry name
+	public static final String ZIP_ENTRY_SEPARATOR = "!/";
+
+	private static final String GZIP_EXTENSION = ".gz";
+	private static final String ZIP_EXTENSION = ".zip";
+	private static final String XML_EXTENSION = ".xml";
+
+	/**
+	 * Get the catalogues contained in a file. If the file is a zip, one
+	 * catalogue for each .xml entry is returned (or for each entry, if there
+	 * are no .xml entries), otherwise the file itself.
+	 * @param filename
+	 * @return
+	 * @throws IOException
+	 */
+	public static List<String> getCatalogues( String filename ) throws IOException {
+
+		List<String> catalogues = new ArrayList<>();
+
+		if ( !isZip( filename ) ) {
+			catalogues.add( filename );
+			return catalogues;
+		}
+
+		List<String> others = new ArrayList<>();
+
+		try ( ZipFile zip = new ZipFile( filename ) ) {
+
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+
+			while ( entries.hasMoreElements() ) {
+
+				ZipEntry entry = entries.nextElement();
+
+				if ( entry.isDirectory() )
+					continue;
+
+				String catalogue = filename + ZIP_ENTRY_SEPARATOR + entry.getName();
+
+				if ( hasExtension( entry.getName(), XML_EXTENSION ) )
+					catalogues.add( catalogue );
+				else
+					others.add( catalogue );
+			}
+		}
+
+		if ( catalogues.isEmpty() )
+			catalogues = others;
+
+		if ( catalogues.isEmpty() )
+			throw new IOException( "No catalogue found in " + filename );
+
+		return catalogues;
+	}
+
+	/**
+	 * Open a catalogue returned by {@link #getCatalogues(String)}
+	 * @param catalogue
+	 * @return
+	 * @throws IOException
+	 */
+	public static InputStream open( String catalogue ) throws IOException {
+
+		int separator = getZipSeparator( catalogue );
+
+		// entry of a zip file
+		if ( separator > 0 ) {
+
+			final ZipFile zip = new ZipFile( catalogue.substring( 0, separator ) );
+
+			ZipEntry entry = zip.getEntry( catalogue.substring( separator + ZIP_ENTRY_SEPARATOR.length() ) );
+
+			if ( entry == null ) {
+				zip.close();
+				throw new FileNotFoundException( "Catalogue not found: " + catalogue );
+			}
+
+			// close the zip file with the entry
+			InputStream stream = new FilterInputStream( zip.getInputStream( entry ) ) {
+
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						zip.close();
+					}
+				}
+			};
+
+			return new ReadAheadInputStream( stream, "Inflater " + entry.getName() );
+		}
+
+		InputStream stream = new FileInputStream( catalogue );
+
+		if ( hasExtension( catalogue, GZIP_EXTENSION ) ) {
+			try {
+				return new ReadAheadInputStream( new GZIPInputStream( stream, 1 << 16 ),
+						"Inflater " + new File( catalogue ).getName() );
+			} catch ( IOException e ) {
+				stream.close();
+				throw e;
+			}
+		}
+
+		return new BufferedInputStream( stream, 1 << 16 );
+	}
+
+	/**
+	 * Prepare a stream which contains a catalogue for the parse. If the stream
+	 * is compressed with gzip, it is inflated in a separate thread.
+	 * @param input the catalogue, plain or gzip
+	 * @return
+	 * @throws IOException
+	 */
+	public static InputStream open( InputStream input ) throws IOException {
+
+		BufferedInputStream stream = new BufferedInputStream( input, 1 << 16 );
+
+		// check the gzip magic number
+		stream.mark( 2 );
+		int first = stream.read();
+		int second = stream.read();
+		stream.reset();
+
+		if ( first == ( GZIPInputStream.GZIP_MAGIC & 0xFF ) && second == ( GZIPInputStream.GZIP_MAGIC >> 8 ) )
+			return new ReadAheadInputStream( new GZIPInputStream( stream, 1 << 16 ), "Inflater input stream" );
+
+		return stream;
+	}
+
+	/**
+	 * Open a catalogue as SAX input source. The system id is set
+	 * to resolve the relative paths of the xml.
+	 * @param catalogue
+	 * @return
+	 * @throws IOException
+	 */
+	public static InputSource openSource( String catalogue ) throws IOException {
+
+		InputSource source = new InputSource( open( catalogue ) );
+
+		if ( isPlainFile( catalogue ) )
+			source.setSystemId( new File( catalogue ).toURI().toString() );
+
+		return source;
+	}
+
+	/**
+	 * Get the name of the catalogue without the folders,
+	 * the zip file and the extensions (e.g. MTX from D:\MTX.xml.gz)
+	 * @param catalogue
+	 * @return
+	 */
+	public static String getBaseName( String catalogue ) {
+
+		int separator = getZipSeparator( catalogue );
+
+		String name = separator > 0 ? catalogue.substring( separator + ZIP_ENTRY_SEPARATOR.length() )
+				: catalogue;
+
+		name = new File( name ).getName();
+
+		for ( String extension : new String[] { GZIP_EXTENSION, ZIP_EXTENSION, XML_EXTENSION } ) {
+			if ( hasExtension( name, extension ) )
+				name = name.substring( 0, name.length() - extension.length() );
+		}
+
+		return name;
+	}
+
+	/**
+	 * Get the file which contains the catalogue: the zip
+	 * file for the entries of a zip, otherwise the catalogue
+	 * @param catalogue
+	 * @return
+	 */
+	public static File getFile( String catalogue ) {
+
+		int separator = getZipSeparator( catalogue );
+
+		return new File( separator > 0 ? catalogue.substring( 0, separator ) : catalogue );
+	}
+
+	/**
+	 * Check if the catalogue is a plain xml file, which
+	 * can be read directly from the disk
+	 * @param catalogue
+	 * @return
+	 */
+	public static boolean isPlainFile( String catalogue ) {
+		return !hasExtension( catalogue, GZIP_EXTENSION ) && !isZip( catalogue )
+				&& getZipSeparator( catalogue ) < 0;
+	}
+
+	/**
+	 * Get the position of the separator between the zip file
+	 * and the entry name, -1 if the catalogue is not a zip entry
+	 * @param catalogue
+	 * @return
+	 */
+	private static int getZipSeparator( String catalogue ) {
+
+		int separator = catalogue.indexOf( ZIP_ENTRY_SEPARATOR );
+
+		while ( separator > 0 && !isZip( catalogue.substring( 0, separator ) ) )
+			separator = catalogue.indexOf( ZIP_ENTRY_SEPARATOR, separator + 1 );
+
+		return separator;
+	}
+
+	private static boolean isZip( String filename ) {
+		return hasExtension( filename, ZIP_EXTENSION );
+	}
+
+	private static boolean hasExtension( String filename, String extension ) {
+		return filename.toLowerCase( Locale.ROOT ).endsWith( extension );
+	}
+}
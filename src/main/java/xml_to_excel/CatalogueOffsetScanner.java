@@ -0,0 +1,692 @@
+package xml_to_excel;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import sheet_converter.XmlNodes;
+
+/**
+ * Find the byte offsets of the terms and of the sections of a catalogue xml
+ * without parsing it. The file is memory mapped and scanned byte by byte,
+ * therefore it is not copied onto the heap. Comments, CDATA sections,
+ * processing instructions and quoted attribute values are skipped, so their
+ * content is never taken as markup. The xml markup is ascii, therefore
+ * the scan works with UTF-8 and with single byte encodings (not UTF-16).
+ * The offsets can be used to parse ranges of terms independently
+ * and in parallel (see {@link #openTerms(int, int)}), while the rest of
+ * the xml is parsed without them (see {@link #openWithoutTerms()}).
+ * General notes:
+ * the ranges do not carry the DOCTYPE of the file, therefore they can be
+ * parsed alone only if the file has none (see {@link #hasDoctype()}).
+ * @author avonva
+ *
+ */
+public class CatalogueOffsetScanner {
+
+	private static final Logger LOGGER = LogManager.getLogger(CatalogueOffsetScanner.class);
+
+	// a single mapped buffer cannot be larger than 2GB
+	private static final int SEGMENT_BITS = 30;
+	private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+	private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	// the xml nodes whose offsets are saved
+	private static final String[] SECTIONS = new String[] { XmlNodes.CATALOGUE_DESC,
+			XmlNodes.CATALOGUE_VERSION, XmlNodes.CATALOGUE_HIERARCHIES,
+			XmlNodes.CATALOGUE_ATTRIBUTES, XmlNodes.CATALOGUE_TERMS, XmlNodes.RELEASE_NOTES };
+	private static final byte[][] SECTION_BYTES = toBytes( SECTIONS );
+	private static final byte[] TERM_BYTES = XmlNodes.TERM_ROOT_NODE.getBytes( StandardCharsets.US_ASCII );
+
+	private static final byte[] COMMENT_START = toBytes( "<!--" );
+	private static final byte[] COMMENT_END = toBytes( "-->" );
+	private static final byte[] CDATA_START = toBytes( "<![CDATA[" );
+	private static final byte[] CDATA_END = toBytes( "]]>" );
+	private static final byte[] PI_START = toBytes( "<?" );
+	private static final byte[] PI_END = toBytes( "?>" );
+	private static final byte[] XML_DECLARATION = toBytes( "<?xml" );
+
+	private String inputXml;
+	private MappedByteBuffer[] segments;
+	private long size;
+	private String encoding = "UTF-8";
+	private boolean hasDoctype = false;
+
+	private HashMap<String, Range> sections;
+	private long[] termStarts;
+	private long[] termEnds;
+	private int termsCount;
+
+	// state of the scan
+	private Range terms;     // the catalogue terms section, if open
+	private int termDepth;   // > 0 if we are inside a term
+	private long termStart;
+
+	/**
+	 * Initialize the scanner
+	 * @param inputXml the catalogue in .xml format
+	 */
+	public CatalogueOffsetScanner( String inputXml ) {
+		this.inputXml = inputXml;
+		this.sections = new HashMap<>();
+		this.termStarts = new long[1024];
+		this.termEnds = new long[1024];
+	}
+
+	/**
+	 * Map the file and find the offsets of the terms and of the sections
+	 * @throws IOException if the file cannot be read or the markup is not terminated
+	 */
+	public void scan() throws IOException {
+
+		long start = System.currentTimeMillis();
+
+		// the mapping remains valid after the channel is closed
+		try ( FileChannel channel = FileChannel.open( Paths.get( inputXml ), StandardOpenOption.READ ) ) {
+
+			size = channel.size();
+			segments = new MappedByteBuffer[ (int) ( ( size + SEGMENT_SIZE - 1 ) >>> SEGMENT_BITS ) ];
+
+			for ( int i = 0; i < segments.length; i++ ) {
+				long offset = (long) i << SEGMENT_BITS;
+				segments[i] = channel.map( FileChannel.MapMode.READ_ONLY, offset,
+						Math.min( SEGMENT_SIZE, size - offset ) );
+			}
+		}
+
+		scanMarkup();
+
+		LOGGER.info( "Found " + termsCount + " terms in " + inputXml + " in "
+				+ ( System.currentTimeMillis() - start ) + " ms" );
+	}
+
+	/**
+	 * Scan all the markup of the file
+	 * @throws IOException
+	 */
+	private void scanMarkup() throws IOException {
+
+		long pos = 0;
+
+		// skip the UTF-8 byte order mark
+		if ( size >= 3 && byteAt(0) == (byte) 0xEF && byteAt(1) == (byte) 0xBB && byteAt(2) == (byte) 0xBF )
+			pos = 3;
+		else if ( size >= 2 && ( ( byteAt(0) == (byte) 0xFE && byteAt(1) == (byte) 0xFF )
+				|| ( byteAt(0) == (byte) 0xFF && byteAt(1) == (byte) 0xFE ) ) )
+			throw new IOException( "UTF-16 catalogues cannot be scanned: " + inputXml );
+
+		if ( startsWith( pos, XML_DECLARATION ) )
+			readEncoding( pos );
+
+		while ( true ) {
+
+			long open = indexOf( (byte) '<', pos );
+
+			if ( open < 0 )
+				break;
+
+			if ( open + 1 >= size )
+				checkFound( -1, open );
+
+			if ( startsWith( open, COMMENT_START ) )
+				pos = skipTo( open + COMMENT_START.length, COMMENT_END );
+			else if ( startsWith( open, CDATA_START ) )
+				pos = skipTo( open + CDATA_START.length, CDATA_END );
+			else if ( startsWith( open, PI_START ) )
+				pos = skipTo( open + PI_START.length, PI_END );
+			else if ( byteAt( open + 1 ) == '!' )
+				pos = skipDeclaration( open );
+			else if ( byteAt( open + 1 ) == '/' ) {
+
+				// end tag
+				long nameEnd = nameEnd( open + 2 );
+				long close = indexOf( (byte) '>', nameEnd );
+				checkFound( close, open );
+				endTag( open + 2, nameEnd, open, close + 1 );
+				pos = close + 1;
+			}
+			else {
+
+				// start tag or empty tag
+				long nameEnd = nameEnd( open + 1 );
+				long close = tagEnd( nameEnd, open );
+				boolean isEmpty = byteAt( close - 1 ) == '/';
+				startTag( open + 1, nameEnd, open, close + 1, isEmpty );
+				pos = close + 1;
+			}
+		}
+	}
+
+	/**
+	 * Process a start tag
+	 * @param nameStart offset of the node name
+	 * @param nameEnd offset after the node name
+	 * @param start offset of the tag
+	 * @param end offset after the tag
+	 * @param isEmpty true if empty tag (e.g. <term/>)
+	 */
+	private void startTag( long nameStart, long nameEnd, long start, long end, boolean isEmpty ) {
+
+		if ( terms != null && nameEquals( nameStart, nameEnd, TERM_BYTES ) ) {
+
+			if ( termDepth == 0 )
+				termStart = start;
+
+			if ( isEmpty ) {
+				if ( termDepth == 0 )
+					addTerm( termStart, end );
+			}
+			else
+				termDepth++;
+
+			return;
+		}
+
+		int section = sectionIndex( nameStart, nameEnd );
+
+		// only the first occurrence of each section is saved
+		if ( section < 0 || sections.containsKey( SECTIONS[section] ) )
+			return;
+
+		Range range = new Range( start, end );
+
+		if ( isEmpty )
+			range.close( end, end );
+		else if ( SECTIONS[section].equals( XmlNodes.CATALOGUE_TERMS ) )
+			terms = range;
+
+		sections.put( SECTIONS[section], range );
+	}
+
+	/**
+	 * Process an end tag
+	 * @param nameStart offset of the node name
+	 * @param nameEnd offset after the node name
+	 * @param start offset of the tag
+	 * @param end offset after the tag
+	 */
+	private void endTag( long nameStart, long nameEnd, long start, long end ) {
+
+		if ( termDepth > 0 && nameEquals( nameStart, nameEnd, TERM_BYTES ) ) {
+
+			termDepth--;
+
+			if ( termDepth == 0 )
+				addTerm( termStart, end );
+
+			return;
+		}
+
+		int section = sectionIndex( nameStart, nameEnd );
+
+		if ( section < 0 )
+			return;
+
+		Range range = sections.get( SECTIONS[section] );
+
+		if ( range != null && range.getEnd() < 0 ) {
+
+			range.close( start, end );
+
+			if ( range == terms )
+				terms = null;
+		}
+	}
+
+	/**
+	 * Save the offsets of a term
+	 * @param start
+	 * @param end
+	 */
+	private void addTerm( long start, long end ) {
+
+		if ( termsCount == termStarts.length ) {
+			termStarts = Arrays.copyOf( termStarts, termsCount * 2 );
+			termEnds = Arrays.copyOf( termEnds, termsCount * 2 );
+		}
+
+		termStarts[termsCount] = start;
+		termEnds[termsCount] = end;
+		termsCount++;
+	}
+
+	/**
+	 * Read the encoding from the xml declaration
+	 * @param pos offset of the declaration
+	 * @throws IOException
+	 */
+	private void readEncoding( long pos ) throws IOException {
+
+		long end = skipTo( pos, PI_END );
+
+		byte[] bytes = new byte[ (int) Math.min( end - pos, 1024 ) ];
+		for ( int i = 0; i < bytes.length; i++ )
+			bytes[i] = byteAt( pos + i );
+
+		String declaration = new String( bytes, StandardCharsets.US_ASCII );
+
+		int index = declaration.indexOf( "encoding" );
+
+		if ( index < 0 )
+			return;
+
+		int quote = declaration.indexOf( '"', index );
+		if ( quote < 0 )
+			quote = declaration.indexOf( '\'', index );
+
+		if ( quote < 0 )
+			return;
+
+		int close = declaration.indexOf( declaration.charAt( quote ), quote + 1 );
+
+		if ( close > quote )
+			encoding = declaration.substring( quote + 1, close );
+	}
+
+	/**
+	 * Skip a declaration as <!DOCTYPE ... [ ... ]>
+	 * @param open offset of the declaration
+	 * @return the offset after the declaration
+	 * @throws IOException
+	 */
+	private long skipDeclaration( long open ) throws IOException {
+
+		hasDoctype = true;
+
+		int brackets = 0;
+
+		for ( long pos = open + 2; pos < size; pos++ ) {
+
+			byte b = byteAt( pos );
+
+			if ( b == '[' )
+				brackets++;
+			else if ( b == ']' )
+				brackets--;
+			else if ( b == '>' && brackets <= 0 )
+				return pos + 1;
+			else if ( b == '"' || b == '\'' ) {
+				pos = indexOf( b, pos + 1 );
+				checkFound( pos, open );
+			}
+			else if ( brackets > 0 && startsWith( pos, COMMENT_START ) )
+				pos = skipTo( pos + COMMENT_START.length, COMMENT_END ) - 1;
+		}
+
+		throw new IOException( "Declaration not terminated at offset " + open + " of " + inputXml );
+	}
+
+	/**
+	 * Get the offset of the '>' which closes a tag, skipping
+	 * the attribute values
+	 * @param from
+	 * @param open offset of the tag
+	 * @return
+	 * @throws IOException
+	 */
+	private long tagEnd( long from, long open ) throws IOException {
+
+		for ( long pos = from; pos < size; pos++ ) {
+
+			byte b = byteAt( pos );
+
+			if ( b == '>' )
+				return pos;
+
+			if ( b == '"' || b == '\'' ) {
+				pos = indexOf( b, pos + 1 );
+				checkFound( pos, open );
+			}
+		}
+
+		throw new IOException( "Tag not terminated at offset " + open + " of " + inputXml );
+	}
+
+	/**
+	 * Get the offset after a node name
+	 * @param from
+	 * @return
+	 */
+	private long nameEnd( long from ) {
+
+		long pos = from;
+
+		while ( pos < size ) {
+
+			byte b = byteAt( pos );
+
+			if ( b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r' )
+				break;
+
+			pos++;
+		}
+
+		return pos;
+	}
+
+	/**
+	 * Get the index of the section which has the node name, -1 if none
+	 * @param nameStart
+	 * @param nameEnd
+	 * @return
+	 */
+	private int sectionIndex( long nameStart, long nameEnd ) {
+
+		for ( int i = 0; i < SECTION_BYTES.length; i++ ) {
+			if ( nameEquals( nameStart, nameEnd, SECTION_BYTES[i] ) )
+				return i;
+		}
+
+		return -1;
+	}
+
+	private boolean nameEquals( long nameStart, long nameEnd, byte[] name ) {
+		return nameEnd - nameStart == name.length && startsWith( nameStart, name );
+	}
+
+	/**
+	 * Get the offset after the pattern
+	 * @param from
+	 * @param pattern
+	 * @return
+	 * @throws IOException if the pattern is not found
+	 */
+	private long skipTo( long from, byte[] pattern ) throws IOException {
+
+		long pos = from;
+
+		while ( true ) {
+
+			pos = indexOf( pattern[0], pos );
+			checkFound( pos, from );
+
+			if ( startsWith( pos, pattern ) )
+				return pos + pattern.length;
+
+			pos++;
+		}
+	}
+
+	private void checkFound( long pos, long from ) throws IOException {
+		if ( pos < 0 )
+			throw new IOException( "Markup not terminated at offset " + from + " of " + inputXml );
+	}
+
+	private long indexOf( byte b, long from ) {
+
+		for ( long pos = from; pos < size; pos++ ) {
+			if ( byteAt( pos ) == b )
+				return pos;
+		}
+
+		return -1;
+	}
+
+	private boolean startsWith( long pos, byte[] pattern ) {
+
+		if ( pos + pattern.length > size )
+			return false;
+
+		for ( int i = 0; i < pattern.length; i++ ) {
+			if ( byteAt( pos + i ) != pattern[i] )
+				return false;
+		}
+
+		return true;
+	}
+
+	private byte byteAt( long pos ) {
+		return segments[ (int) ( pos >>> SEGMENT_BITS ) ].get( (int) ( pos & SEGMENT_MASK ) );
+	}
+
+	/**
+	 * Get the number of terms found
+	 * @return
+	 */
+	public int getTermsCount() {
+		return termsCount;
+	}
+
+	/**
+	 * Get the offset of the start tag of a term
+	 * @param index
+	 * @return
+	 */
+	public long getTermStart( int index ) {
+		return termStarts[index];
+	}
+
+	/**
+	 * Get the offset after the end tag of a term
+	 * @param index
+	 * @return
+	 */
+	public long getTermEnd( int index ) {
+		return termEnds[index];
+	}
+
+	/**
+	 * Get the offsets of a section (e.g. catalogueTerms), null if not found
+	 * @param sectionNode
+	 * @return
+	 */
+	public Range getSection( String sectionNode ) {
+		return sections.get( sectionNode );
+	}
+
+	/**
+	 * Get the encoding of the xml
+	 * @return
+	 */
+	public String getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * Check if the xml has a declaration as <!DOCTYPE ...>, whose
+	 * entities could be used by the terms
+	 * @return
+	 */
+	public boolean hasDoctype() {
+		return hasDoctype;
+	}
+
+	/**
+	 * Get the bytes of the file from the first term to the last one
+	 * (included), 0 if there are no terms
+	 * @return
+	 */
+	public long getTermsBytes() {
+		return termsCount > 0 ? termEnds[termsCount - 1] - termStarts[0] : 0;
+	}
+
+	/**
+	 * Open a stream which reads the bytes of the file between the two
+	 * offsets, directly from the mapped file
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public InputStream openRange( long start, long end ) {
+		return new RangeInputStream( start, end );
+	}
+
+	/**
+	 * Open a well formed xml which contains the terms from first
+	 * (included) to last (excluded) inside a catalogueTerms node.
+	 * It can be parsed with the handler of the term sheet.
+	 * @param first
+	 * @param last
+	 * @return
+	 * @throws IndexOutOfBoundsException if the range is not
+	 * within the terms found
+	 */
+	public InputStream openTerms( int first, int last ) {
+
+		if ( first < 0 || last > termsCount || first > last )
+			throw new IndexOutOfBoundsException( "Terms from " + first + " to " + last
+					+ " requested, " + termsCount + " found in " + inputXml );
+
+		String start = "<?xml version=\"1.0\" encoding=\"" + encoding + "\"?><"
+				+ XmlNodes.CATALOGUE_TERMS + ">";
+		String end = "</" + XmlNodes.CATALOGUE_TERMS + ">";
+
+		InputStream terms = first < last ? openRange( termStarts[first], termEnds[last - 1] )
+				: new ByteArrayInputStream( new byte[0] );
+
+		return new SequenceInputStream( new SequenceInputStream(
+				new ByteArrayInputStream( start.getBytes( StandardCharsets.US_ASCII ) ), terms ),
+				new ByteArrayInputStream( end.getBytes( StandardCharsets.US_ASCII ) ) );
+	}
+
+	/**
+	 * Open the whole file without the bytes from the first term to
+	 * the last one, i.e. with an empty catalogueTerms node
+	 * @return
+	 */
+	public InputStream openWithoutTerms() {
+
+		if ( termsCount == 0 )
+			return openRange( 0, size );
+
+		return new SequenceInputStream( openRange( 0, termStarts[0] ),
+				openRange( termEnds[termsCount - 1], size ) );
+	}
+
+	private static byte[] toBytes( String value ) {
+		return value.getBytes( StandardCharsets.US_ASCII );
+	}
+
+	private static byte[][] toBytes( String[] values ) {
+
+		byte[][] bytes = new byte[values.length][];
+
+		for ( int i = 0; i < values.length; i++ )
+			bytes[i] = toBytes( values[i] );
+
+		return bytes;
+	}
+
+	/**
+	 * The offsets of a section of the xml
+	 * @author avonva
+	 *
+	 */
+	public static class Range {
+
+		private long start;
+		private long contentStart;
+		private long contentEnd = -1;
+		private long end = -1;
+
+		public Range( long start, long contentStart ) {
+			this.start = start;
+			this.contentStart = contentStart;
+		}
+
+		private void close( long contentEnd, long end ) {
+			this.contentEnd = contentEnd;
+			this.end = end;
+		}
+
+		/**
+		 * Offset of the start tag
+		 * @return
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		/**
+		 * Offset after the start tag
+		 * @return
+		 */
+		public long getContentStart() {
+			return contentStart;
+		}
+
+		/**
+		 * Offset of the end tag, -1 if not closed
+		 * @return
+		 */
+		public long getContentEnd() {
+			return contentEnd;
+		}
+
+		/**
+		 * Offset after the end tag, -1 if not closed
+		 * @return
+		 */
+		public long getEnd() {
+			return end;
+		}
+
+		@Override
+		public String toString() {
+			return "RANGE: start=" + start + ";contentStart=" + contentStart
+					+ ";contentEnd=" + contentEnd + ";end=" + end;
+		}
+	}
+
+	/**
+	 * Read a range of the mapped file
+	 * @author avonva
+	 *
+	 */
+	private class RangeInputStream extends InputStream {
+
+		private long pos;
+		private long end;
+
+		public RangeInputStream( long start, long end ) {
+			this.pos = start;
+			this.end = end;
+		}
+
+		@Override
+		public int read() throws IOException {
+
+			if ( pos >= end )
+				return -1;
+
+			return byteAt( pos++ ) & 0xFF;
+		}
+
+		@Override
+		public int read( byte[] b, int off, int len ) throws IOException {
+
+			if ( pos >= end )
+				return -1;
+
+			// read at most until the end of the current segment
+			int segment = (int) ( pos >>> SEGMENT_BITS );
+			int index = (int) ( pos & SEGMENT_MASK );
+			int count = (int) Math.min( len, Math.min( end - pos, segments[segment].limit() - index ) );
+
+			ByteBuffer buffer = segments[segment].duplicate();
+			buffer.position( index );
+			buffer.get( b, off, count );
+
+			pos += count;
+
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min( Integer.MAX_VALUE, end - pos );
+		}
+	}
+}
@@ -0,0 +1,240 @@
+package xml_to_excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Cache of the converted catalogues on disk. Each xlsx is stored with the
+ * hash of the catalogue bytes, of the converter version and of the conversion
+ * options, so an unchanged catalogue is not converted again: the stored xlsx
+ * is copied (or hard linked) to the output. When the cache exceeds its size,
+ * the least recently used files are deleted.
+ * @author avonva
+ *
+ */
+public class ConversionCache {
+
+	private static final Logger LOGGER = LogManager.getLogger(ConversionCache.class);
+
+	private static final String EXTENSION = ".xlsx";
+	private static final String TEMP_EXTENSION = ".tmp";
+
+	private File folder;
+	private long maxSize;
+	private boolean useHardLinks = false;
+	private String version;
+
+	/**
+	 * Create the cache
+	 * @param folder the folder which contains the cached xlsx
+	 * @param maxSize the maximum size of the cached files in bytes
+	 */
+	public ConversionCache( String folder, long maxSize ) {
+		this.folder = new File( folder );
+		this.maxSize = maxSize;
+		this.version = getConverterVersion();
+	}
+
+	/**
+	 * Hard link the cached xlsx to the output instead of copying it. The output
+	 * should not be modified in place, otherwise the cached file changes too
+	 * (the converter writes a new file and renames it as the output).
+	 * If the link cannot be created (e.g. different disks) the file is copied.
+	 * @param useHardLinks
+	 */
+	public void setUseHardLinks( boolean useHardLinks ) {
+		this.useHardLinks = useHardLinks;
+	}
+
+	/**
+	 * Get the key of a conversion
+	 * @param catalogue the catalogue (see {@link CatalogueInput})
+	 * @param options the conversion options which change the xlsx
+	 * @return
+	 * @throws IOException
+	 */
+	public String getKey( String catalogue, String options ) throws IOException {
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance( "SHA-256" );
+		} catch ( NoSuchAlgorithmException e ) {
+			throw new IOException( "Cannot hash " + catalogue, e );
+		}
+
+		digest.update( ( version + "\n" + options + "\n" ).getBytes( StandardCharsets.UTF_8 ) );
+
+		// hash the bytes on the disk (also if compressed), the
+		// entries of a zip file are hashed after the inflation
+		if ( new File( catalogue ).isFile() )
+			hashFile( digest, Paths.get( catalogue ) );
+		else
+			hashStream( digest, catalogue );
+
+		StringBuilder key = new StringBuilder();
+		for ( byte b : digest.digest() )
+			key.append( String.format( "%02x", b ) );
+
+		return key.toString();
+	}
+
+	private static void hashFile( MessageDigest digest, Path file ) throws IOException {
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect( 1 << 20 );
+
+		try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) ) {
+
+			while ( channel.read( buffer ) >= 0 ) {
+				buffer.flip();
+				digest.update( buffer );
+				buffer.clear();
+			}
+		}
+	}
+
+	private static void hashStream( MessageDigest digest, String catalogue ) throws IOException {
+
+		byte[] buffer = new byte[1 << 16];
+
+		try ( InputStream input = CatalogueInput.open( catalogue ) ) {
+
+			int count;
+			while ( ( count = input.read( buffer ) ) >= 0 )
+				digest.update( buffer, 0, count );
+		}
+	}
+
+	/**
+	 * Create the output xlsx from the cache
+	 * @param key the key of the conversion
+	 * @param outputXlsx the xlsx to create
+	 * @return true if the xlsx was in the cache
+	 * @throws IOException
+	 */
+	public boolean restore( String key, String outputXlsx ) throws IOException {
+
+		File cached = new File( folder, key + EXTENSION );
+
+		if ( !cached.isFile() )
+			return false;
+
+		// mark as recently used
+		cached.setLastModified( System.currentTimeMillis() );
+
+		Path output = Paths.get( outputXlsx );
+
+		Files.deleteIfExists( output );
+
+		if ( useHardLinks ) {
+			try {
+				Files.createLink( output, cached.toPath() );
+				return true;
+			} catch ( IOException | UnsupportedOperationException e ) {
+				LOGGER.info( "Cannot link " + cached + ", copying it", e );
+			}
+		}
+
+		Files.copy( cached.toPath(), output, StandardCopyOption.REPLACE_EXISTING );
+
+		return true;
+	}
+
+	/**
+	 * Save the xlsx of a conversion in the cache
+	 * @param key the key of the conversion
+	 * @param outputXlsx the converted xlsx
+	 * @throws IOException
+	 */
+	public void store( String key, String outputXlsx ) throws IOException {
+
+		if ( !folder.isDirectory() && !folder.mkdirs() )
+			throw new IOException( "Cannot create the cache folder " + folder );
+
+		// copy and rename, so that other conversions never read a partial file
+		File temp = new File( folder, key + "_" + Thread.currentThread().getId() + TEMP_EXTENSION );
+		Files.copy( Paths.get( outputXlsx ), temp.toPath(), StandardCopyOption.REPLACE_EXISTING );
+		Files.move( temp.toPath(), new File( folder, key + EXTENSION ).toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+
+		evict();
+	}
+
+	/**
+	 * Delete the least recently used files until the cache fits its size
+	 */
+	private synchronized void evict() {
+
+		File[] files = folder.listFiles();
+
+		if ( files == null )
+			return;
+
+		long size = 0;
+		for ( File file : files )
+			size += file.length();
+
+		if ( size <= maxSize )
+			return;
+
+		Arrays.sort( files, new Comparator<File>() {
+
+			@Override
+			public int compare( File file1, File file2 ) {
+				return Long.compare( file1.lastModified(), file2.lastModified() );
+			}
+		} );
+
+		for ( File file : files ) {
+
+			if ( size <= maxSize )
+				break;
+
+			if ( !file.getName().endsWith( EXTENSION ) )
+				continue;
+
+			long length = file.length();
+
+			if ( file.delete() ) {
+				size -= length;
+				LOGGER.info( "Removed from cache " + file.getName() );
+			}
+		}
+	}
+
+	/**
+	 * Get the version of the converter, so that a new version
+	 * does not use the files converted by the old one
+	 * @return
+	 */
+	private static String getConverterVersion() {
+
+		String version = XmlCatalogueToExcel.class.getPackage().getImplementationVersion();
+
+		// the time of the build identifies the code
+		CodeSource source = XmlCatalogueToExcel.class.getProtectionDomain().getCodeSource();
+		if ( source != null && source.getLocation() != null ) {
+			File location = new File( source.getLocation().getPath() );
+			File classFile = new File( location, XmlCatalogueToExcel.class.getName().replace( '.', '/' ) + ".class" );
+			version = version + ":" + ( classFile.isFile() ? classFile.lastModified() : location.lastModified() );
+		}
+
+		return version;
+	}
+}
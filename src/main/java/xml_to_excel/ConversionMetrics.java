@@ -0,0 +1,419 @@
+package xml_to_excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import json_writer.TermJsonWriter;
+
+/**
+ * The measures of the conversion of a catalogue and of each of its sheets,
+ * to follow the performance of the conversions (e.g. across nightly runs).
+ * The phases are:
+ * - xslt: the time spent by the xslt filters, summed over the sheets (they
+ *   run in parallel). When the filtered xml is sent directly to the sheet,
+ *   it includes the conversion of the sheet
+ * - parse: the time spent to populate the sheets, i.e. the single parse of
+ *   the xml or the conversions of all the sheets with the xslt filters
+ * - write: the time spent to write the workbook after the sheets are complete
+ *   (the whole xlsx of the streaming workbook, or only the sheets which were
+ *   not written yet and the parts of the workbook by the direct writers)
+ * The bytes read are the bytes of the xml (uncompressed), read once by the
+ * single parse or once for each xslt filter. The temporary bytes are the files
+ * of the streaming workbook and the xml filtered in temporary files.
+ * The peak heap is the maximum used heap sampled with the {@link MemoryMXBean}
+ * during the conversion, it includes the garbage not collected yet.
+ * The times are in milliseconds.
+ * @author avonva
+ *
+ */
+public class ConversionMetrics {
+
+	// the interval between two samples of the heap, in milliseconds
+	private static final long HEAP_SAMPLE_INTERVAL = 50;
+
+	private String input;
+	private String output;
+	private String mode;
+	private String writer;
+	private Instant startTime;
+
+	private long totalTime;
+	private long parseTime;
+	private long writeTime;
+	private long bytesRead;
+	private long tempBytes;
+	private long outputBytes = -1;
+	private volatile long peakHeap;
+
+	private ArrayList<SheetMetrics> sheets;
+
+	private Timer heapSampler;
+
+	/**
+	 * Initialize the measures of a conversion
+	 * @param input the catalogue, null if read from a stream
+	 * @param output the output file or folder, null if it is a stream
+	 * @param mode how the xml is parsed (e.g. single parse, xslt)
+	 * @param writer the writer of the output (e.g. streaming workbook, xlsx, csv)
+	 */
+	public ConversionMetrics(String input, String output, String mode, String writer) {
+		this.input = input;
+		this.output = output;
+		this.mode = mode;
+		this.writer = writer;
+		this.sheets = new ArrayList<>();
+	}
+
+	/**
+	 * Start the conversion: start sampling the heap in a daemon thread
+	 */
+	public void start() {
+
+		startTime = Instant.now();
+
+		sampleHeap();
+
+		heapSampler = new Timer("Heap sampler", true);
+		heapSampler.schedule(new TimerTask() {
+
+			@Override
+			public void run() {
+				sampleHeap();
+			}
+		}, HEAP_SAMPLE_INTERVAL, HEAP_SAMPLE_INTERVAL);
+	}
+
+	/**
+	 * Finish the conversion: stop sampling the heap and compute the total time
+	 */
+	public void stop() {
+
+		if (heapSampler != null) {
+			heapSampler.cancel();
+			heapSampler = null;
+		}
+
+		sampleHeap();
+
+		if (startTime != null)
+			totalTime = System.currentTimeMillis() - startTime.toEpochMilli();
+	}
+
+	/**
+	 * Sample the used heap, keeping the maximum
+	 */
+	public void sampleHeap() {
+
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		long used = memory.getHeapMemoryUsage().getUsed();
+
+		if (used > peakHeap)
+			peakHeap = used;
+	}
+
+	public void addSheet(SheetMetrics sheet) {
+		sheets.add(sheet);
+		bytesRead += sheet.getBytesRead();
+		tempBytes += sheet.getTempBytes();
+	}
+
+	public void setParseTime(long parseTime) {
+		this.parseTime = parseTime;
+	}
+
+	public void setWriteTime(long writeTime) {
+		this.writeTime = writeTime;
+	}
+
+	public void addBytesRead(long bytesRead) {
+		this.bytesRead += bytesRead;
+	}
+
+	public void addTempBytes(long tempBytes) {
+		this.tempBytes += tempBytes;
+	}
+
+	/**
+	 * Set the size of the output, the sum of the files for a folder
+	 * @param outputBytes the size, -1 if unknown (e.g. a stream)
+	 */
+	public void setOutputBytes(long outputBytes) {
+		this.outputBytes = outputBytes;
+	}
+
+	public String getInput() {
+		return input;
+	}
+
+	public String getOutput() {
+		return output;
+	}
+
+	public String getMode() {
+		return mode;
+	}
+
+	public String getWriter() {
+		return writer;
+	}
+
+	public Instant getStartTime() {
+		return startTime;
+	}
+
+	public long getTotalTime() {
+		return totalTime;
+	}
+
+	/**
+	 * Get the time of the xslt filters, summed over the sheets
+	 * @return
+	 */
+	public long getXsltTime() {
+
+		long xsltTime = 0;
+
+		for (SheetMetrics sheet : sheets)
+			xsltTime += sheet.getXsltTime();
+
+		return xsltTime;
+	}
+
+	public long getParseTime() {
+		return parseTime;
+	}
+
+	public long getWriteTime() {
+		return writeTime;
+	}
+
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	public long getTempBytes() {
+		return tempBytes;
+	}
+
+	public long getOutputBytes() {
+		return outputBytes;
+	}
+
+	public long getPeakHeap() {
+		return peakHeap;
+	}
+
+	public long getRows() {
+
+		long rows = 0;
+
+		for (SheetMetrics sheet : sheets)
+			rows += sheet.getRows();
+
+		return rows;
+	}
+
+	public long getCells() {
+
+		long cells = 0;
+
+		for (SheetMetrics sheet : sheets)
+			cells += sheet.getCells();
+
+		return cells;
+	}
+
+	/**
+	 * Get the xml parsed per second, in MB
+	 * @return
+	 */
+	public double getParseThroughput() {
+		return parseTime > 0 ? bytesRead / 1048576.0 / (parseTime / 1000.0) : 0;
+	}
+
+	public List<SheetMetrics> getSheets() {
+		return sheets;
+	}
+
+	/**
+	 * Write the measures in a json file
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeJson(File file) throws IOException {
+		try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			out.write(toJson());
+		}
+	}
+
+	/**
+	 * Get the measures as a json object
+	 * @return
+	 */
+	public String toJson() {
+
+		StringBuilder json = new StringBuilder("{\n");
+
+		putField(json, "input", input);
+		putField(json, "output", output);
+		putField(json, "mode", mode);
+		putField(json, "writer", writer);
+		putField(json, "startTime", startTime != null ? startTime.toString() : null);
+		putField(json, "totalTimeMs", totalTime);
+		putField(json, "xsltTimeMs", getXsltTime());
+		putField(json, "parseTimeMs", parseTime);
+		putField(json, "writeTimeMs", writeTime);
+		putField(json, "bytesRead", bytesRead);
+		putField(json, "parseMBPerSecond", String.format(Locale.ROOT, "%.2f", getParseThroughput()), true);
+		putField(json, "tempBytes", tempBytes);
+		putField(json, "outputBytes", outputBytes);
+		putField(json, "rows", getRows());
+		putField(json, "cells", getCells());
+		putField(json, "peakHeapBytes", peakHeap);
+
+		json.append("  \"sheets\": [");
+
+		for (int i = 0; i < sheets.size(); i++) {
+
+			SheetMetrics sheet = sheets.get(i);
+
+			json.append(i > 0 ? ",\n    {" : "\n    {");
+			json.append("\"name\": ");
+			TermJsonWriter.putString(json, sheet.getName());
+			json.append(", \"rows\": ").append(sheet.getRows());
+			json.append(", \"cells\": ").append(sheet.getCells());
+			json.append(", \"xsltTimeMs\": ").append(sheet.getXsltTime());
+			json.append(", \"parseTimeMs\": ").append(sheet.getParseTime());
+			json.append(", \"bytesRead\": ").append(sheet.getBytesRead());
+			json.append(", \"tempBytes\": ").append(sheet.getTempBytes());
+			json.append("}");
+		}
+
+		return json.append("\n  ]\n}\n").toString();
+	}
+
+	private static void putField(StringBuilder json, String name, long value) {
+		putField(json, name, String.valueOf(value), true);
+	}
+
+	private static void putField(StringBuilder json, String name, String value) {
+		putField(json, name, value, false);
+	}
+
+	/**
+	 * Add a field to the json object
+	 * @param json
+	 * @param name
+	 * @param value the value, null for null
+	 * @param isLiteral true if the value is a number, false if it is a string
+	 */
+	private static void putField(StringBuilder json, String name, String value, boolean isLiteral) {
+
+		json.append("  \"").append(name).append("\": ");
+
+		if (value == null)
+			json.append("null");
+		else if (isLiteral)
+			json.append(value);
+		else
+			TermJsonWriter.putString(json, value);
+
+		json.append(",\n");
+	}
+
+	/**
+	 * The measures of a sheet
+	 * @author avonva
+	 *
+	 */
+	public static class SheetMetrics {
+
+		private String name;
+		private long rows;
+		private long cells;
+		private long xsltTime;
+		private long parseTime;
+		private long bytesRead;
+		private long tempBytes;
+
+		public SheetMetrics(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Set the rows of the sheet, the headers included
+		 * @param rows
+		 */
+		public void setRows(long rows) {
+			this.rows = rows;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		/**
+		 * Set the cells of the sheet, the headers included
+		 * @param cells
+		 */
+		public void setCells(long cells) {
+			this.cells = cells;
+		}
+
+		public long getCells() {
+			return cells;
+		}
+
+		public void setXsltTime(long xsltTime) {
+			this.xsltTime = xsltTime;
+		}
+
+		public long getXsltTime() {
+			return xsltTime;
+		}
+
+		/**
+		 * Set the time of the parse: the parse of the filtered xml, or the time
+		 * in which the sheet received the events of the single parse
+		 * @param parseTime
+		 */
+		public void setParseTime(long parseTime) {
+			this.parseTime = parseTime;
+		}
+
+		public long getParseTime() {
+			return parseTime;
+		}
+
+		public void setBytesRead(long bytesRead) {
+			this.bytesRead = bytesRead;
+		}
+
+		public long getBytesRead() {
+			return bytesRead;
+		}
+
+		public void setTempBytes(long tempBytes) {
+			this.tempBytes = tempBytes;
+		}
+
+		public long getTempBytes() {
+			return tempBytes;
+		}
+	}
+}
@@ -11,8 +11,12 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.xml.sax.SAXException;
 
+import conversion_events.Phase;
+import conversion_events.PhaseEvent;
 import sheet_converter.SheetConverter;
+import xlsx_writer.WorkbookOutput;
 
 public abstract class ConversionPerformer {
 	
@@ -25,6 +29,15 @@ public abstract class ConversionPerformer {
 	private String inputXml;
 	private String XsltFilename;
 	private Sheet sheet;
+	private SheetConverter converter;
+	private boolean useTempFile = false;
+	private WorkbookOutput workbookOutput;
+
+	// the measures of the conversion, see getMetrics()
+	private long xsltTime = 0;
+	private long parseTime = 0;
+	private long bytesRead = 0;
+	private long tempBytes = 0;
 	
 	/**
 	 * Initialize the conversion performer
@@ -48,37 +61,115 @@ public abstract class ConversionPerformer {
 	public void convert ( String sheetName ) throws TransformerException {
 		
 		LOGGER.info ( "Creating " + sheetName + " sheet..." );
+
+		PhaseEvent event = PhaseEvent.begin( Phase.CONVERSION, sheetName );
+		
+		if ( !useTempFile ) {
+
+			SheetConverter converter = open( inputXml, sheetName );
+
+			long start = System.nanoTime();
+
+			// send the filtered xml directly to the converter
+			XsltCompiler compiler = new XsltCompiler( inputXml, XsltFilename );
+			compiler.compile( converter.getHandler() );
+
+			xsltTime += System.nanoTime() - start;
+			bytesRead += compiler.getBytesRead();
+
+			sheet = converter.getSheet();
+
+			event.setRows( converter.getRowCount() ).setBytes( bytesRead ).commit();
+			return;
+		}
 		
 		// create temp folder if it does not exist
 		File folder = new File ( TEMP_FOLDER );
 		if ( !folder.exists() )
 			folder.mkdir();
 		
+		long start = System.nanoTime();
+
 		// filter the input xml to get only the data related to the catalogue
 		String outputFilename = filterXml( workbook, inputXml, 
 				XsltFilename, TEMP_FOLDER + sheetName );
 		
+		xsltTime += System.nanoTime() - start;
+		tempBytes += new File( outputFilename ).length();
+
 		LOGGER.info ( sheetName + ": Created xml in " + outputFilename );
 		
-		SheetConverter converter = getConverter( outputFilename );
-		
-		// create the empty sheet
-		sheet = converter.buildSheet( workbook, sheetName );
+		SheetConverter converter = open( outputFilename, sheetName );
 
-		makePreliminarOperations( converter, sheet );
+		start = System.nanoTime();
 
 		// parse the xml and insert the data
-		converter.parse();
-
 		try {
-			Files.delete( Paths.get(outputFilename) );
-		} catch (IOException e) {
-			LOGGER.error("Error during delete ", e);
-			e.printStackTrace();
+			converter.parse();
+		} catch (SAXException | IOException e) {
+
+			// a malformed or truncated xml stops the conversion, the sheet is incomplete
+			throw new TransformerException( "Cannot parse " + outputFilename + ": " + e.getMessage(), e );
+		} finally {
+
+			parseTime += System.nanoTime() - start;
+
+			try {
+				Files.delete( Paths.get(outputFilename) );
+			} catch (IOException e) {
+				LOGGER.error("Error during delete ", e);
+				e.printStackTrace();
+			}
 		}
 
 		// save the created sheet
 		sheet = converter.getSheet();
+
+		event.setRows( converter.getRowCount() ).setBytes( bytesRead ).commit();
+	}
+	
+	/**
+	 * Write the filtered xml in a temporary file and parse it, instead
+	 * of sending the filtered xml directly to the converter.
+	 * @param useTempFile
+	 */
+	public void setUseTempFile(boolean useTempFile) {
+		this.useTempFile = useTempFile;
+	}
+	
+	/**
+	 * Write the sheet directly in the output (e.g. the xlsx or the csv files)
+	 * instead of creating it in the workbook (see
+	 * {@link SheetConverter#buildSheet(WorkbookOutput, String)}).
+	 * The sheet of the performer is then null.
+	 * @param workbookOutput
+	 */
+	public void setWorkbookOutput(WorkbookOutput workbookOutput) {
+		this.workbookOutput = workbookOutput;
+	}
+
+	/**
+	 * Create the converter and its empty sheet (with headers) without
+	 * filtering and parsing any xml. The sheet is then populated by
+	 * sending the xml events to {@link SheetConverter#getHandler()}.
+	 * @param inputFilename the name of the file related to the converter
+	 * @param sheetName the name of the new sheet which 
+	 * will be created in the workbook
+	 * @return the converter ready to receive the xml events
+	 */
+	public SheetConverter open ( String inputFilename, String sheetName ) {
+		
+		converter = getConverter( inputFilename );
+		
+		// create the empty sheet
+		if ( workbookOutput != null )
+			converter.buildSheet( workbookOutput, sheetName );
+		else
+			sheet = converter.buildSheet( workbook, sheetName );
+
+		makePreliminarOperations( converter, sheet );
+		
+		return converter;
 	}
 	
 	/**
@@ -102,9 +193,53 @@ public abstract class ConversionPerformer {
 		
 		compiler.compile();
 
+		bytesRead += compiler.getBytesRead();
+
 		return outputFilename;
 	}
 	
+	/**
+	 * Add the time spent parsing the xml of the sheet, when the
+	 * xml is parsed outside the performer (see {@link CatalogueDemultiplexer})
+	 * @param nanos
+	 */
+	void addParseTime( long nanos ) {
+		parseTime += nanos;
+	}
+
+	/**
+	 * Add the bytes of the xml of the sheet, when the xml is
+	 * parsed outside the performer (see {@link CatalogueDemultiplexer})
+	 * @param bytes
+	 */
+	void addBytesRead( long bytes ) {
+		bytesRead += bytes;
+	}
+
+	/**
+	 * Get the measures of the sheet. Call this after the sheet is complete.
+	 * When the filtered xml is sent directly to the converter, the xslt time
+	 * includes also the conversion of the sheet.
+	 * @param sheetName
+	 * @return
+	 */
+	public ConversionMetrics.SheetMetrics getMetrics( String sheetName ) {
+
+		ConversionMetrics.SheetMetrics metrics = new ConversionMetrics.SheetMetrics( sheetName );
+
+		if ( converter != null ) {
+			metrics.setRows( converter.getRowCount() );
+			metrics.setCells( converter.getCellCount() );
+		}
+
+		metrics.setXsltTime( xsltTime / 1000000 );
+		metrics.setParseTime( parseTime / 1000000 );
+		metrics.setBytesRead( bytesRead );
+		metrics.setTempBytes( tempBytes );
+
+		return metrics;
+	}
+
 	/**
 	 * Get the created sheet. Call this after {@link #convert(String)}
 	 * otherwise get null.
@@ -114,6 +249,16 @@ public abstract class ConversionPerformer {
 		return sheet;
 	}
 	
+	/**
+	 * Get the converter which created the sheet. Call this
+	 * after {@link #convert(String)} or {@link #open(String, String)}
+	 * otherwise get null.
+	 * @return
+	 */
+	public SheetConverter getSheetConverter() {
+		return converter;
+	}
+	
 	/**
 	 * Get the converter object which is needed to 
 	 * transform the xml data into a worksheet
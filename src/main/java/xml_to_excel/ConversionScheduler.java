@@ -0,0 +1,146 @@
+package xml_to_excel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import javax.xml.transform.TransformerException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import xlsx_writer.WorkbookOutput;
+
+/**
+ * Run the conversion of the sheets in parallel. Each conversion starts
+ * as soon as the conversions it depends on are finished (e.g. the term
+ * sheet needs the hierarchy and attribute sheets to compute its columns),
+ * while independent conversions run concurrently on the executor.
+ * At the end, the sheets are ordered as the conversions were added.
+ * General notes:
+ * the sheets are written concurrently in the same workbook, only the creation
+ * of the sheets and the date style are synchronized. The shared strings table
+ * of a workbook is not thread safe: use {@link #CALLER_THREAD} to convert its
+ * sheets one after another.
+ * @author avonva
+ *
+ */
+public class ConversionScheduler {
+
+	private static final Logger LOGGER = LogManager.getLogger(ConversionScheduler.class);
+
+	// runs each conversion in the thread which adds it, in the order of the dependencies
+	public static final Executor CALLER_THREAD = new Executor() {
+
+		@Override
+		public void execute( Runnable command ) {
+			command.run();
+		}
+	};
+
+	private Workbook workbook;
+	private WorkbookOutput workbookOutput;
+	private Executor executor;
+
+	private ArrayList<String> sheetNames;
+	private HashMap<ConversionPerformer, CompletableFuture<Void>> conversions;
+
+	/**
+	 * Initialize the scheduler
+	 * @param workbook the workbook which contains the sheets
+	 * @param executor the executor which runs the conversions
+	 */
+	public ConversionScheduler( Workbook workbook, Executor executor ) {
+		this( executor );
+		this.workbook = workbook;
+	}
+
+	/**
+	 * Initialize the scheduler for sheets which are written directly in
+	 * the output (see {@link ConversionPerformer#setWorkbookOutput(WorkbookOutput)})
+	 * @param workbookOutput the output which contains the sheets
+	 * @param executor the executor which runs the conversions
+	 */
+	public ConversionScheduler( WorkbookOutput workbookOutput, Executor executor ) {
+		this( executor );
+		this.workbookOutput = workbookOutput;
+	}
+
+	private ConversionScheduler( Executor executor ) {
+		this.executor = executor;
+		this.sheetNames = new ArrayList<>();
+		this.conversions = new HashMap<>();
+	}
+
+	/**
+	 * Schedule the conversion of a sheet. The dependencies should
+	 * be added before the performers which depend on them.
+	 * @param performer the performer which creates the sheet
+	 * @param sheetName the name of the sheet
+	 * @param dependencies the performers which should complete their
+	 * sheet before starting this conversion
+	 */
+	public void add ( final ConversionPerformer performer, final String sheetName,
+			ConversionPerformer... dependencies ) {
+
+		CompletableFuture<?>[] required = new CompletableFuture<?>[dependencies.length];
+
+		for ( int i = 0; i < dependencies.length; i++ ) {
+
+			required[i] = conversions.get( dependencies[i] );
+
+			if ( required[i] == null )
+				throw new IllegalArgumentException( "The dependencies of " + sheetName
+						+ " should be added before it" );
+		}
+
+		CompletableFuture<Void> conversion = CompletableFuture.allOf( required ).thenRunAsync( new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					performer.convert( sheetName );
+				} catch (TransformerException e) {
+					throw new CompletionException( e );
+				}
+			}
+		}, executor );
+
+		sheetNames.add( sheetName );
+		conversions.put( performer, conversion );
+	}
+
+	/**
+	 * Wait until all the sheets are converted
+	 * @throws TransformerException
+	 */
+	public void run () throws TransformerException {
+
+		try {
+			CompletableFuture.allOf( conversions.values().toArray(
+					new CompletableFuture<?>[conversions.size()] ) ).join();
+		} catch ( CompletionException e ) {
+
+			LOGGER.error( "Cannot convert sheet", e.getCause() );
+
+			if ( e.getCause() instanceof TransformerException )
+				throw (TransformerException) e.getCause();
+
+			if ( e.getCause() instanceof RuntimeException )
+				throw (RuntimeException) e.getCause();
+
+			throw e;
+		}
+
+		// the sheets are created in the order in which the conversions start
+		for ( int i = 0; i < sheetNames.size(); i++ ) {
+			if ( workbookOutput != null )
+				workbookOutput.setSheetOrder( sheetNames.get(i), i );
+			else
+				workbook.setSheetOrder( sheetNames.get(i), i );
+		}
+	}
+}
@@ -0,0 +1,433 @@
+package xml_to_excel;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.xml.transform.TransformerException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Keep a jvm ready to convert catalogues, so that the conversions do not pay
+ * the jvm startup and the warm up. The server listens only on the local
+ * address:
+ * - POST /convert with the catalogue (.xml or .xml.gz) as body
+ * - GET or POST /convert?path=D:\catalogue.xml to convert a local file
+ * The response is the xlsx, sent when the conversion is complete, or 400 if
+ * the catalogue cannot be parsed or read, 404 if the local file is not found. The conversions run on a fixed number of workers
+ * with a bounded queue: if the queue is full the request is rejected with
+ * 503, if the conversion does not finish in time it is stopped with 504.
+ * @author avonva
+ *
+ */
+public class ConversionServer {
+
+	private static final Logger LOGGER = LogManager.getLogger(ConversionServer.class);
+
+	public static final String CONVERT_PATH = "/convert";
+	private static final String PATH_PARAMETER = "path";
+	private static final String XLSX_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+	private int port;
+	private int threads;
+	private int queueSize;
+	private long timeout;  // milliseconds
+	private WorkbookOptions workbookOptions = new WorkbookOptions();
+
+	private HttpServer server;
+	private ThreadPoolExecutor workers;    // convert the catalogues
+	private ExecutorService connections;   // wait the conversions and send the errors
+
+	/**
+	 * Start the server from command line
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+
+		int port = 8080;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int queueSize = 16;
+		long timeout = 600;
+		WorkbookOptions options = new WorkbookOptions();
+
+		try {
+
+			for (int i = 0; i < args.length; i++) {
+
+				int used = options.parse(args, i);
+				boolean hasValue = i + 1 < args.length;
+
+				if (used > 0)
+					i += used - 1;
+				else if (args[i].equals("-port") && hasValue)
+					port = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-threads") && hasValue)
+					threads = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-queue") && hasValue)
+					queueSize = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-timeout") && hasValue)
+					timeout = Long.parseLong(args[++i]);
+				else
+					throw new IllegalArgumentException(args[i]);
+			}
+
+			// the response is a single xlsx
+			if (options.getTextFormat() != null)
+				throw new IllegalArgumentException("-format, the server sends only xlsx");
+
+		} catch (IllegalArgumentException e) {
+
+			LOGGER.error("Wrong argument " + e.getMessage() + ". Usage: java -cp xmlToExcel.jar "
+					+ "xml_to_excel.ConversionServer [-port 8080] [-threads N] [-queue 16] [-timeout seconds] "
+					+ WorkbookOptions.getUsage());
+
+			return;
+		}
+
+		ConversionServer server = new ConversionServer(port, threads, queueSize, timeout * 1000);
+		server.setWorkbookOptions(options);
+
+		try {
+			server.start();
+		} catch (IOException e) {
+			LOGGER.error("Cannot start the server", e);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Create the server
+	 *
+	 * @param port      the local port
+	 * @param threads   the number of conversions which run at the same time
+	 * @param queueSize the number of conversions which can wait a worker
+	 * @param timeout   the maximum time of a conversion (queue included) in
+	 *                  milliseconds
+	 */
+	public ConversionServer(int port, int threads, int queueSize, long timeout) {
+		this.port = port;
+		this.threads = Math.max(1, threads);
+		this.queueSize = Math.max(1, queueSize);
+		this.timeout = timeout;
+	}
+
+	/**
+	 * See {@link XmlCatalogueToExcel#setWorkbookOptions(WorkbookOptions)}
+	 *
+	 * @param workbookOptions
+	 */
+	public void setWorkbookOptions(WorkbookOptions workbookOptions) {
+		this.workbookOptions = workbookOptions;
+	}
+
+	/**
+	 * Start listening on the local address
+	 *
+	 * @throws IOException
+	 */
+	public void start() throws IOException {
+
+		workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize));
+
+		// one thread for each request which can be accepted
+		connections = Executors.newFixedThreadPool(threads + queueSize + 1);
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext(CONVERT_PATH, new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					convert(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+
+		server.setExecutor(connections);
+		server.start();
+
+		LOGGER.warn("Listening on http://" + server.getAddress().getHostString() + ":"
+				+ server.getAddress().getPort() + CONVERT_PATH);
+	}
+
+	/**
+	 * Stop the server, waiting at most the given seconds for the running
+	 * conversions
+	 *
+	 * @param delay
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+		workers.shutdownNow();
+		connections.shutdownNow();
+	}
+
+	/**
+	 * Get the port where the server is listening
+	 *
+	 * @return
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Convert the catalogue of the request and send the xlsx. The xlsx is
+	 * written in a temporary file and sent only when the conversion succeeded,
+	 * so that an error can be always sent instead of a partial xlsx.
+	 *
+	 * @param exchange
+	 * @throws IOException
+	 */
+	private void convert(final HttpExchange exchange) throws IOException {
+
+		final long deadline = System.currentTimeMillis() + timeout;
+
+		final String path = getParameter(exchange, PATH_PARAMETER);
+
+		if (path == null && !"POST".equals(exchange.getRequestMethod())) {
+			sendError(exchange, 400, "Send the catalogue with POST or specify the " + PATH_PARAMETER + " parameter");
+			return;
+		}
+
+		// a local catalogue which cannot be read is an error of the request
+		if (path != null) {
+
+			File file = CatalogueInput.getFile(path);
+
+			if (!file.exists()) {
+				sendError(exchange, 404, "Catalogue not found: " + path);
+				return;
+			}
+
+			if (!file.isFile() || !file.canRead()) {
+				sendError(exchange, 400, "Catalogue not readable: " + path);
+				return;
+			}
+		}
+
+		final File xlsx = File.createTempFile("catalogue", ".xlsx");
+
+		try {
+
+			Future<Boolean> job;
+
+			try {
+
+				job = workers.submit(new Callable<Boolean>() {
+
+					@Override
+					public Boolean call() throws TransformerException, IOException {
+
+						// the request waited too long in the queue
+						if (System.currentTimeMillis() > deadline)
+							return false;
+
+						convert(exchange, path, xlsx);
+
+						return true;
+					}
+				});
+
+			} catch (RejectedExecutionException e) {
+				sendError(exchange, 503, "Too many conversions, retry later");
+				return;
+			}
+
+			try {
+
+				if (job.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS))
+					sendXlsx(exchange, xlsx, path != null ? CatalogueInput.getBaseName(path) + ".xlsx" : "catalogue.xlsx");
+				else
+					sendError(exchange, 504, "Conversion timeout");
+
+			} catch (TimeoutException e) {
+
+				job.cancel(true);
+
+				LOGGER.error("Conversion timeout " + (path != null ? path : "upload"));
+
+				sendError(exchange, 504, "Conversion timeout");
+
+			} catch (ExecutionException e) {
+
+				LOGGER.error("Cannot convert " + (path != null ? path : "upload"), e.getCause());
+
+				// the catalogue of the request cannot be parsed or found (e.g. a zip entry)
+				if (e.getCause() instanceof TransformerException)
+					sendError(exchange, 400, "Cannot convert the catalogue: " + e.getCause().getMessage());
+				else if (e.getCause() instanceof FileNotFoundException || e.getCause() instanceof NoSuchFileException)
+					sendError(exchange, 404, "Cannot convert the catalogue: " + e.getCause().getMessage());
+				else
+					sendError(exchange, 500, "Cannot convert the catalogue: " + e.getCause().getMessage());
+
+			} catch (InterruptedException e) {
+				job.cancel(true);
+				Thread.currentThread().interrupt();
+			}
+
+		} finally {
+
+			// a cancelled conversion can still have the file open
+			if (!xlsx.delete() && xlsx.exists())
+				xlsx.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Convert the catalogue in the worker thread
+	 *
+	 * @param exchange
+	 * @param path     the local catalogue, null to read it from the request
+	 * @param xlsx     the file which receives the xlsx
+	 * @throws TransformerException
+	 * @throws IOException
+	 */
+	private void convert(HttpExchange exchange, String path, File xlsx)
+			throws TransformerException, IOException {
+
+		long start = System.currentTimeMillis();
+
+		XmlCatalogueToExcel converter = new XmlCatalogueToExcel(path, null);
+		converter.setWorkbookOptions(workbookOptions);
+
+		// the requests are already converted in parallel
+		if (threads > 1)
+			converter.setTermChunkSize(0);
+
+		InputStream input;
+
+		if (path != null) {
+
+			List<String> catalogues = CatalogueInput.getCatalogues(path);
+
+			if (catalogues.size() != 1)
+				throw new IOException(catalogues.size() + " catalogues found in " + path);
+
+			input = CatalogueInput.open(catalogues.get(0));
+		} else {
+			input = exchange.getRequestBody();
+		}
+
+		try (InputStream stream = new InterruptibleInputStream(input);
+				OutputStream output = new BufferedOutputStream(new FileOutputStream(xlsx), 1 << 16)) {
+			converter.convertXmlToExcel(stream, output);
+		}
+
+		LOGGER.info("Converted " + (path != null ? path : "upload") + " in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Get a parameter of the query
+	 *
+	 * @param exchange
+	 * @param name
+	 * @return
+	 * @throws UnsupportedEncodingException
+	 */
+	private static String getParameter(HttpExchange exchange, String name) throws UnsupportedEncodingException {
+
+		String query = exchange.getRequestURI().getRawQuery();
+
+		if (query == null)
+			return null;
+
+		for (String parameter : query.split("&")) {
+
+			int equals = parameter.indexOf('=');
+
+			if (equals > 0 && parameter.substring(0, equals).equals(name))
+				return URLDecoder.decode(parameter.substring(equals + 1), "UTF-8");
+		}
+
+		return null;
+	}
+
+	private static void sendXlsx(HttpExchange exchange, File xlsx, String filename) throws IOException {
+
+		exchange.getResponseHeaders().set("Content-Type", XLSX_TYPE);
+		exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + filename + "\"");
+		exchange.sendResponseHeaders(200, xlsx.length());
+
+		try (OutputStream body = exchange.getResponseBody()) {
+			Files.copy(xlsx.toPath(), body);
+		}
+	}
+
+	private static void sendError(HttpExchange exchange, int code, String message) throws IOException {
+
+		byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(code, bytes.length);
+
+		try (OutputStream body = exchange.getResponseBody()) {
+			body.write(bytes);
+		}
+	}
+
+	/**
+	 * Stop reading the catalogue when the conversion is cancelled
+	 *
+	 * @author avonva
+	 *
+	 */
+	private static class InterruptibleInputStream extends FilterInputStream {
+
+		public InterruptibleInputStream(InputStream in) {
+			super(in);
+		}
+
+		private void checkInterrupted() throws InterruptedIOException {
+			if (Thread.currentThread().isInterrupted())
+				throw new InterruptedIOException("Conversion cancelled");
+		}
+
+		@Override
+		public int read() throws IOException {
+			checkInterrupted();
+			return super.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			checkInterrupted();
+			return super.read(b, off, len);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package xml_to_excel;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Count the bytes read from a stream (see {@link ConversionMetrics})
+ * @author avonva
+ *
+ */
+class CountingInputStream extends FilterInputStream {
+
+	private volatile long count;
+	private int maxRead = Integer.MAX_VALUE;
+
+	public CountingInputStream( InputStream in ) {
+		super( in );
+	}
+
+	/**
+	 * Count the bytes read from a stream, reading at most maxRead bytes
+	 * at a time. The parsers read ahead in large buffers, with a small
+	 * maxRead the count follows the position of the parser more closely.
+	 * @param in
+	 * @param maxRead
+	 */
+	public CountingInputStream( InputStream in, int maxRead ) {
+		super( in );
+		this.maxRead = maxRead;
+	}
+
+	@Override
+	public int read() throws IOException {
+
+		int value = super.read();
+
+		if ( value >= 0 )
+			count++;
+
+		return value;
+	}
+
+	@Override
+	public int read( byte[] b, int off, int len ) throws IOException {
+
+		int read = super.read( b, off, Math.min( len, maxRead ) );
+
+		if ( read > 0 )
+			count += read;
+
+		return read;
+	}
+
+	@Override
+	public long skip( long n ) throws IOException {
+
+		long skipped = super.skip( n );
+		count += skipped;
+
+		return skipped;
+	}
+
+	/**
+	 * Get the bytes read until now
+	 * @return
+	 */
+	public long getCount() {
+		return count;
+	}
+}
@@ -0,0 +1,217 @@
+package xml_to_excel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Read a stream in a separate thread, ahead of the reader. The bytes are
+ * passed to the reader through a fixed number of buffers, therefore the thread
+ * is blocked when all the buffers are full and the memory used is bounded.
+ * Used to decompress the catalogue while it is parsed.
+ * @author avonva
+ *
+ */
+public class ReadAheadInputStream extends InputStream {
+
+	// sent by the thread when the source is finished
+	private static final Buffer END = new Buffer( 0 );
+
+	private InputStream source;
+	private Thread thread;
+
+	private BlockingQueue<Buffer> free;    // buffers which can be filled by the thread
+	private BlockingQueue<Buffer> filled;  // buffers which can be read
+
+	private Buffer current;  // the buffer which is being read
+	private int position;    // next byte to read in the current buffer
+	private volatile IOException error;
+	private boolean closed;
+
+	/**
+	 * Start reading the source in a new thread
+	 * @param source the stream to read, it is closed by the thread
+	 * @param bufferSize the size of each buffer
+	 * @param buffersCount the number of buffers
+	 * @param name the name of the thread
+	 */
+	public ReadAheadInputStream( InputStream source, int bufferSize, int buffersCount, String name ) {
+
+		this.source = source;
+		this.free = new ArrayBlockingQueue<>( buffersCount );
+		this.filled = new ArrayBlockingQueue<>( buffersCount + 1 );
+
+		for ( int i = 0; i < buffersCount; i++ )
+			free.add( new Buffer( bufferSize ) );
+
+		this.thread = new Thread( new Runnable() {
+
+			@Override
+			public void run() {
+				readSource();
+			}
+		}, name );
+
+		thread.setDaemon( true );
+		thread.start();
+	}
+
+	/**
+	 * Start reading the source in a new thread with 8 buffers of 64KB
+	 * @param source
+	 * @param name
+	 */
+	public ReadAheadInputStream( InputStream source, String name ) {
+		this( source, 1 << 16, 8, name );
+	}
+
+	/**
+	 * Fill the buffers with the source, until the source is
+	 * finished or the stream is closed
+	 */
+	private void readSource() {
+
+		try {
+
+			while ( true ) {
+
+				Buffer buffer = free.take();
+
+				// fill the whole buffer to pass fewer buffers
+				buffer.length = 0;
+				int count = 0;
+				while ( buffer.length < buffer.data.length
+						&& ( count = source.read( buffer.data, buffer.length,
+								buffer.data.length - buffer.length ) ) >= 0 )
+					buffer.length += count;
+
+				if ( buffer.length > 0 )
+					filled.put( buffer );
+
+				if ( count < 0 )
+					break;
+			}
+
+		} catch ( IOException e ) {
+			error = e;
+		} catch ( InterruptedException e ) {
+			// stream closed by the reader
+			return;
+		} finally {
+
+			try {
+				source.close();
+			} catch ( IOException e ) {
+				if ( error == null )
+					error = e;
+			}
+		}
+
+		// there is always space for the end in the filled queue
+		filled.add( END );
+	}
+
+	/**
+	 * Get the buffer to read, waiting the thread if necessary
+	 * @return false if the source is finished
+	 * @throws IOException
+	 */
+	private boolean nextBuffer() throws IOException {
+
+		if ( closed )
+			throw new IOException( "Stream closed" );
+
+		if ( current == END )
+			return false;
+
+		if ( current != null && position < current.length )
+			return true;
+
+		if ( current != null )
+			free.add( current );
+
+		try {
+			current = filled.take();
+		} catch ( InterruptedException e ) {
+			current = null;
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( "Interrupted while waiting " + thread.getName() );
+		}
+
+		position = 0;
+
+		if ( current == END ) {
+
+			if ( error != null )
+				throw new IOException( "Cannot read in " + thread.getName(), error );
+
+			return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+
+		if ( !nextBuffer() )
+			return -1;
+
+		return current.data[position++] & 0xFF;
+	}
+
+	@Override
+	public int read( byte[] b, int off, int len ) throws IOException {
+
+		if ( len == 0 )
+			return 0;
+
+		if ( !nextBuffer() )
+			return -1;
+
+		int count = Math.min( len, current.length - position );
+		System.arraycopy( current.data, position, b, off, count );
+		position += count;
+
+		return count;
+	}
+
+	@Override
+	public int available() {
+
+		if ( closed || current == null || current == END )
+			return 0;
+
+		return current.length - position;
+	}
+
+	/**
+	 * Stop the thread and close the source
+	 */
+	@Override
+	public void close() throws IOException {
+
+		if ( closed )
+			return;
+
+		closed = true;
+		thread.interrupt();
+	}
+
+	/**
+	 * Bytes passed by the thread to the reader
+	 * @author avonva
+	 *
+	 */
+	private static class Buffer {
+
+		private byte[] data;
+		private int length;
+
+		public Buffer( int size ) {
+			this.data = new byte[size];
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package xml_to_excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.poi.openxml4j.util.ZipEntrySource;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.streaming.GZIPSheetDataWriter;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.streaming.SheetDataWriter;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+
+import xlsx_writer.ParallelZipOutputStream;
+
+/**
+ * Streaming workbook which creates the temporary files of the sheets in a
+ * chosen folder and keeps track of them, to know how much disk they use.
+ * The xlsx is deflated on several threads with a chosen level (see
+ * {@link ParallelZipOutputStream}). See {@link WorkbookOptions}.
+ * @author avonva
+ *
+ */
+public class StreamingWorkbook extends SXSSFWorkbook {
+
+	private File tempDirectory;
+	private List<File> tempFiles;
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	private int compressionThreads = 1;
+
+	/**
+	 * Create the workbook
+	 * @param rowAccessWindowSize the rows of each sheet kept in memory
+	 * @param compressTempFiles true to gzip the temporary files
+	 * @param useSharedStrings true to use the shared strings table
+	 * @param tempDirectory the folder of the temporary files, null for the default one
+	 */
+	public StreamingWorkbook(int rowAccessWindowSize, boolean compressTempFiles, boolean useSharedStrings,
+			File tempDirectory) {
+		super(null, rowAccessWindowSize, compressTempFiles, useSharedStrings);
+		this.tempDirectory = tempDirectory;
+		this.tempFiles = new ArrayList<>();
+	}
+
+	/**
+	 * Set how the xlsx is deflated
+	 * @param compressionLevel the level from 0 (store) to 9, or {@link Deflater#DEFAULT_COMPRESSION}
+	 * @param compressionThreads the threads which deflate the xlsx
+	 */
+	public void setCompression(int compressionLevel, int compressionThreads) {
+		this.compressionLevel = compressionLevel;
+		this.compressionThreads = compressionThreads;
+	}
+
+	/**
+	 * Write the parts of the template workbook, injecting the rows of the
+	 * temporary files into the sheets, as the streaming workbook does, but
+	 * deflating them in parallel
+	 */
+	@Override
+	protected void injectData(ZipEntrySource zipEntrySource, OutputStream out) throws IOException {
+
+		try {
+
+			// the sheets by name of their part in the template
+			HashMap<String, SXSSFSheet> sheets = new HashMap<>();
+			for (Sheet sheet : this) {
+				XSSFSheet xssfSheet = getXSSFWorkbook().getSheet(sheet.getSheetName());
+				sheets.put(xssfSheet.getPackagePart().getPartName().getName().substring(1), (SXSSFSheet) sheet);
+			}
+
+			ParallelZipOutputStream zip = new ParallelZipOutputStream(out, compressionLevel, compressionThreads);
+
+			Enumeration<? extends ZipArchiveEntry> entries = zipEntrySource.getEntries();
+			while (entries.hasMoreElements()) {
+
+				ZipArchiveEntry entry = entries.nextElement();
+				zip.putNextEntry(entry.getName());
+
+				try (InputStream input = zipEntrySource.getInputStream(entry)) {
+
+					SXSSFSheet sheet = sheets.get(entry.getName());
+
+					if (sheet != null)
+						injectWorksheet(input, zip, sheet);
+					else
+						IOUtils.copy(input, zip);
+				}
+
+				zip.closeEntry();
+			}
+
+			zip.finish();
+
+		} finally {
+			zipEntrySource.close();
+		}
+	}
+
+	/**
+	 * Write the xml of a sheet of the template with the rows of its temporary file
+	 * @param template the xml of the sheet in the template, with empty sheet data
+	 * @param out
+	 * @param sheet
+	 * @throws IOException
+	 */
+	private static void injectWorksheet(InputStream template, OutputStream out, SXSSFSheet sheet) throws IOException {
+
+		String xml = new String(IOUtils.toByteArray(template), StandardCharsets.UTF_8);
+
+		// the sheet data is empty in the template (<sheetData/> or <sheetData></sheetData>)
+		int start = xml.indexOf("<sheetData");
+		int end = start;
+		if (start >= 0) {
+			int empty = xml.indexOf("/>", start);
+			int close = xml.indexOf("</sheetData>", start);
+			end = close >= 0 && (empty < 0 || close < empty) ? close + "</sheetData>".length() : empty + 2;
+		} else {
+			start = end = xml.lastIndexOf("</worksheet>");
+		}
+
+		out.write(xml.substring(0, start).getBytes(StandardCharsets.UTF_8));
+		out.write("<sheetData>\n".getBytes(StandardCharsets.UTF_8));
+
+		try (InputStream rows = sheet.getWorksheetXMLInputStream()) {
+			IOUtils.copy(rows, out);
+		}
+
+		out.write("</sheetData>".getBytes(StandardCharsets.UTF_8));
+		out.write(xml.substring(end).getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Override
+	protected SheetDataWriter createSheetDataWriter() throws IOException {
+
+		if (isCompressTempFiles())
+			return new GzipTempFileWriter(getSharedStringSource());
+
+		return new TempFileWriter(getSharedStringSource());
+	}
+
+	/**
+	 * Create a temporary file of a sheet
+	 * @param suffix
+	 * @return
+	 * @throws IOException
+	 */
+	private synchronized File createTempFile(String suffix) throws IOException {
+
+		File file;
+		if (tempDirectory != null)
+			file = File.createTempFile("poi-sxssf-sheet", suffix, tempDirectory);
+		else
+			file = TempFile.createTempFile("poi-sxssf-sheet", suffix);
+
+		tempFiles.add(file);
+
+		return file;
+	}
+
+	/**
+	 * Write all the rows of the sheets into the temporary files
+	 * @throws IOException
+	 */
+	public void flushAllRows() throws IOException {
+		for (Sheet sheet : this)
+			((SXSSFSheet) sheet).flushRows();
+	}
+
+	/**
+	 * Get the size of the temporary files of the sheets. After
+	 * {@link #flushAllRows()} this is the maximum disk used by them.
+	 * @return the size in bytes
+	 */
+	public synchronized long getTempFilesSize() {
+
+		long size = 0;
+
+		for (File file : tempFiles)
+			size += file.length();
+
+		return size;
+	}
+
+	/**
+	 * Get the folder of the temporary files
+	 * @return
+	 */
+	public String getTempDirectory() {
+		return tempDirectory != null ? tempDirectory.getPath()
+				: new File(System.getProperty(TempFile.JAVA_IO_TMPDIR), "poifiles").getPath();
+	}
+
+	private class TempFileWriter extends SheetDataWriter {
+
+		public TempFileWriter(SharedStringsTable sharedStringsTable) throws IOException {
+			super(sharedStringsTable);
+		}
+
+		@Override
+		public File createTempFile() throws IOException {
+			return StreamingWorkbook.this.createTempFile(".xml");
+		}
+	}
+
+	private class GzipTempFileWriter extends GZIPSheetDataWriter {
+
+		public GzipTempFileWriter(SharedStringsTable sharedStringsTable) throws IOException {
+			super(sharedStringsTable);
+		}
+
+		@Override
+		public File createTempFile() throws IOException {
+			return StreamingWorkbook.this.createTempFile(".gz");
+		}
+	}
+}
@@ -0,0 +1,348 @@
+package xml_to_excel;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import csv_writer.DelimitedWriter;
+import naming_convention.Headers;
+
+/**
+ * Options of the streaming workbook which receives the sheets. They trade
+ * memory, disk and cpu without changing the cell values:
+ * - the row window: how many rows of each sheet are kept in memory, the
+ *   others are flushed to a temporary file
+ * - the compression of the temporary files (less disk, more cpu)
+ * - the folder of the temporary files (e.g. a tmpfs or a fast disk)
+ * - the shared strings table instead of inline strings (smaller xlsx,
+ *   but all the distinct strings are kept in memory)
+ * - the compression level of the xlsx, from 0 (store, bigger but faster,
+ *   e.g. for temporary copies) to 9, and the threads which deflate it
+ * - the direct xlsx writer instead of the streaming workbook (no temporary
+ *   files and no cell objects, the other options are not used)
+ * - the text format: a folder with a csv or tsv file for each sheet
+ *   instead of the xlsx, optionally compressed with gzip
+ * - the json lines of the terms, written next to the output
+ * - the report of the metrics of the conversion, written next to the output
+ * - the scan of the term offsets of a plain xml file, so that the chunks of
+ *   terms are parsed in parallel directly from the file
+ * @author avonva
+ *
+ */
+public class WorkbookOptions {
+
+	private int rowAccessWindowSize = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
+	private boolean compressTempFiles = false;
+	private File tempDirectory;
+	private boolean useSharedStrings = false;
+	private boolean directXlsx = false;
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	private int compressionThreads = Runtime.getRuntime().availableProcessors();
+	private DelimitedWriter.Format textFormat;
+	private boolean gzipText = false;
+	private boolean termJsonLines = false;
+	private boolean metricsReport = false;
+	private boolean termOffsets = false;
+
+	/**
+	 * Read an option from the command line
+	 * @param args
+	 * @param i the index of the argument
+	 * @return the number of arguments used by the option, 0 if
+	 * the argument is not a workbook option
+	 */
+	public int parse(String[] args, int i) {
+
+		boolean hasValue = i + 1 < args.length;
+
+		if (args[i].equals("-window") && hasValue) {
+			setRowAccessWindowSize(Integer.parseInt(args[i + 1]));
+			return 2;
+		} else if (args[i].equals("-tempDir") && hasValue) {
+			setTempDirectory(new File(args[i + 1]));
+			return 2;
+		} else if (args[i].equals("-compressTemp")) {
+			setCompressTempFiles(true);
+			return 1;
+		} else if (args[i].equals("-sharedStrings")) {
+			setUseSharedStrings(true);
+			return 1;
+		} else if (args[i].equals("-compression") && hasValue) {
+			setCompressionLevel(args[i + 1].equals("store") ? 0 : Integer.parseInt(args[i + 1]));
+			return 2;
+		} else if (args[i].equals("-compressionThreads") && hasValue) {
+			setCompressionThreads(Integer.parseInt(args[i + 1]));
+			return 2;
+		} else if (args[i].equals("-direct")) {
+			setDirectXlsx(true);
+			return 1;
+		} else if (args[i].equals("-format") && hasValue) {
+			setTextFormat(args[i + 1].equals("xlsx") ? null : DelimitedWriter.Format.fromExtension(args[i + 1]));
+			return 2;
+		} else if (args[i].equals("-gzip")) {
+			setGzipText(true);
+			return 1;
+		} else if (args[i].equals("-jsonl")) {
+			setTermJsonLines(true);
+			return 1;
+		} else if (args[i].equals("-metrics")) {
+			setMetricsReport(true);
+			return 1;
+		} else if (args[i].equals("-termOffsets")) {
+			setTermOffsets(true);
+			return 1;
+		}
+
+		return 0;
+	}
+
+	/**
+	 * The usage of the command line options
+	 * @return
+	 */
+	public static String getUsage() {
+		return "[-window rows] [-compressTemp] [-tempDir folder] [-sharedStrings] [-compression store|0-9] [-compressionThreads n] [-direct] [-format xlsx|csv|tsv] [-gzip] [-jsonl] [-metrics] [-termOffsets]";
+	}
+
+	/**
+	 * Create an empty workbook with these options
+	 * @return
+	 */
+	public StreamingWorkbook createWorkbook() {
+
+		if (tempDirectory != null)
+			tempDirectory.mkdirs();
+
+		StreamingWorkbook workbook = new StreamingWorkbook(rowAccessWindowSize, compressTempFiles, useSharedStrings,
+				tempDirectory);
+
+		workbook.setCompression(compressionLevel, compressionThreads);
+
+		return workbook;
+	}
+
+	/**
+	 * Set how many rows of each sheet are kept in memory (default 100),
+	 * -1 to keep all of them
+	 * @param rowAccessWindowSize
+	 */
+	public void setRowAccessWindowSize(int rowAccessWindowSize) {
+		this.rowAccessWindowSize = rowAccessWindowSize;
+	}
+
+	public int getRowAccessWindowSize() {
+		return rowAccessWindowSize;
+	}
+
+	/**
+	 * Compress the temporary files of the flushed rows with gzip
+	 * @param compressTempFiles
+	 */
+	public void setCompressTempFiles(boolean compressTempFiles) {
+		this.compressTempFiles = compressTempFiles;
+	}
+
+	public boolean isCompressTempFiles() {
+		return compressTempFiles;
+	}
+
+	/**
+	 * Set the folder of the temporary files of the flushed rows,
+	 * null to use the default temporary folder
+	 * @param tempDirectory
+	 */
+	public void setTempDirectory(File tempDirectory) {
+		this.tempDirectory = tempDirectory;
+	}
+
+	public File getTempDirectory() {
+		return tempDirectory;
+	}
+
+	/**
+	 * Write the strings in the shared strings table instead of in the cells.
+	 * The table is shared by all the sheets and it is not thread safe, therefore
+	 * the sheets converted with the xslt filters are converted one after another
+	 * @param useSharedStrings
+	 */
+	public void setUseSharedStrings(boolean useSharedStrings) {
+		this.useSharedStrings = useSharedStrings;
+	}
+
+	public boolean isUseSharedStrings() {
+		return useSharedStrings;
+	}
+
+	/**
+	 * Write the sheets directly in the xlsx with {@link xlsx_writer.XlsxWriter}
+	 * instead of using the streaming workbook. The rows are encoded in the zip
+	 * as soon as they are complete, without temporary files. Used only if
+	 * the xml is parsed once (not with the xslt filters).
+	 * @param directXlsx
+	 */
+	public void setDirectXlsx(boolean directXlsx) {
+		this.directXlsx = directXlsx;
+	}
+
+	public boolean isDirectXlsx() {
+		return directXlsx;
+	}
+
+	/**
+	 * Set the compression level of the xlsx, from 0 (store: no compression) to 9,
+	 * or {@link Deflater#DEFAULT_COMPRESSION}
+	 * @param compressionLevel
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+
+		if (compressionLevel != Deflater.DEFAULT_COMPRESSION && (compressionLevel < 0 || compressionLevel > 9))
+			throw new IllegalArgumentException("Wrong compression level " + compressionLevel);
+
+		this.compressionLevel = compressionLevel;
+	}
+
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/**
+	 * Set how many threads deflate the xlsx (default one for each processor)
+	 * @param compressionThreads
+	 */
+	public void setCompressionThreads(int compressionThreads) {
+		this.compressionThreads = compressionThreads;
+	}
+
+	public int getCompressionThreads() {
+		return compressionThreads;
+	}
+
+	/**
+	 * Write a folder with a delimited text file for each sheet instead of
+	 * the xlsx (see {@link DelimitedWriter})
+	 * @param textFormat the format of the files, null to write the xlsx
+	 */
+	public void setTextFormat(DelimitedWriter.Format textFormat) {
+		this.textFormat = textFormat;
+	}
+
+	public DelimitedWriter.Format getTextFormat() {
+		return textFormat;
+	}
+
+	/**
+	 * Compress the text files with gzip, used only with {@link #setTextFormat(DelimitedWriter.Format)}
+	 * and {@link #setTermJsonLines(boolean)}
+	 * @param gzipText
+	 */
+	public void setGzipText(boolean gzipText) {
+		this.gzipText = gzipText;
+	}
+
+	public boolean isGzipText() {
+		return gzipText;
+	}
+
+	/**
+	 * Write also the terms in the JSON Lines format (see {@link json_writer.TermJsonWriter}),
+	 * in the file {@link #getTermJsonLinesName(String)}. Used only if the xml is parsed
+	 * once (not with the xslt filters) and the output is a file.
+	 * @param termJsonLines
+	 */
+	public void setTermJsonLines(boolean termJsonLines) {
+		this.termJsonLines = termJsonLines;
+	}
+
+	public boolean isTermJsonLines() {
+		return termJsonLines;
+	}
+
+	/**
+	 * Get the name of the json lines of the terms: next to the xlsx (e.g.
+	 * catalogue.xlsx gives catalogue.jsonl) or in the folder of the text files
+	 * @param output the xlsx or the folder of the text files
+	 * @return
+	 */
+	public String getTermJsonLinesName(String output) {
+
+		String extension = gzipText ? ".jsonl.gz" : ".jsonl";
+
+		if (textFormat != null)
+			return new File(output, Headers.TERM_SHEET_NAME + extension).getPath();
+
+		if (output.toLowerCase(Locale.ROOT).endsWith(".xlsx"))
+			output = output.substring(0, output.length() - 5);
+
+		return output + extension;
+	}
+
+	/**
+	 * Write the measures of the conversion (see {@link ConversionMetrics}) in a
+	 * json file, {@link #getMetricsReportName(String)}. Used only if the output
+	 * is a file.
+	 * @param metricsReport
+	 */
+	public void setMetricsReport(boolean metricsReport) {
+		this.metricsReport = metricsReport;
+	}
+
+	public boolean isMetricsReport() {
+		return metricsReport;
+	}
+
+	/**
+	 * Get the name of the metrics report: next to the xlsx (e.g. catalogue.xlsx
+	 * gives catalogue.metrics.json) or in the folder of the text files
+	 * @param output the xlsx or the folder of the text files
+	 * @return
+	 */
+	public String getMetricsReportName(String output) {
+
+		if (textFormat != null)
+			return new File(output, "metrics.json").getPath();
+
+		if (output.toLowerCase(Locale.ROOT).endsWith(".xlsx"))
+			output = output.substring(0, output.length() - 5);
+
+		return output + ".metrics.json";
+	}
+
+	/**
+	 * Find the offsets of the terms of a plain xml file with {@link CatalogueOffsetScanner}
+	 * and parse the chunks of terms in parallel from the mapped file, instead of parsing
+	 * the terms with the rest of the xml. Used only if the xml is parsed once (not with
+	 * the xslt filters), the terms are converted in chunks and the json lines of the
+	 * terms are not written.
+	 * @param termOffsets
+	 */
+	public void setTermOffsets(boolean termOffsets) {
+		this.termOffsets = termOffsets;
+	}
+
+	public boolean isTermOffsets() {
+		return termOffsets;
+	}
+
+	/**
+	 * Get the options which change the bytes of the xlsx, to identify the
+	 * conversions in the cache (see {@link ConversionCache#getKey(String, String)}).
+	 * The row window, the temporary files and the compression threads do
+	 * not change the xlsx.
+	 * @return
+	 */
+	public String getOutputKey() {
+		return "sharedStrings=" + useSharedStrings + ";direct=" + directXlsx + ";compression=" + compressionLevel;
+	}
+
+	/**
+	 * Get the name of the output of a catalogue: the xlsx or the
+	 * folder of the text files
+	 * @param baseName the name of the catalogue without extension
+	 * @return
+	 */
+	public String getOutputName(String baseName) {
+		return textFormat != null ? baseName : baseName + ".xlsx";
+	}
+}
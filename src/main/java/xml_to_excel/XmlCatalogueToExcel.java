@@ -1,7 +1,29 @@
 package xml_to_excel;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
 
 import javax.xml.transform.TransformerException;
 
@@ -9,8 +31,13 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.poi.openxml4j.util.ZipSecureFile;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.xml.sax.InputSource;
 
+import catalogue_metadata.CatalogueMetadata;
+import conversion_events.Phase;
+import conversion_events.PhaseEvent;
+import csv_writer.DelimitedWriter;
+import json_writer.TermJsonWriter;
 import naming_convention.Headers;
 import sheet_converter.AttributeSheetConverter;
 import sheet_converter.CatalogueSheetConverter;
@@ -19,6 +46,8 @@ import sheet_converter.NotesSheetConverter;
 import sheet_converter.SheetConverter;
 import sheet_converter.TermSheetConverter;
 import sheet_converter.XmlNodes;
+import xlsx_writer.WorkbookOutput;
+import xlsx_writer.XlsxWriter;
 
 /**
  * Convert a catalogue from XML format to excel format. The excel contains 5
@@ -52,12 +81,39 @@ public class XmlCatalogueToExcel {
 	// input xml
 	public static final String NOTES_XSLT_NAME = "releaseNotes.xslt";
 
+	// file name which identifies the standard input or output
+	public static final String STANDARD_STREAM = "-";
+
 	// the xml file which has to be converted
 	private String inputXml;
 
 	// the xlsx file which has to be created
 	private String outputXlsx;
 
+	// true to filter the sections of the xml with the xslt files
+	// instead of parsing the xml only once
+	private boolean useXsltFilters = false;
+
+	// true to write the xml filtered by the xslt files in temporary files
+	private boolean useXsltTempFiles = false;
+
+	// runs the conversions of the sheets which do not depend on each other in parallel
+	// and the chunks of terms
+	private ExecutorService executor;
+
+	// number of terms converted together by a thread, 0 to convert all the terms
+	// in the parsing thread
+	private int termChunkSize = 1000;
+
+	// the excel files of the catalogues already converted, null to always convert
+	private ConversionCache cache;
+
+	// the options of the streaming workbook
+	private WorkbookOptions workbookOptions = new WorkbookOptions();
+
+	// the measures of the conversions, one for each converted catalogue
+	private ArrayList<ConversionMetrics> metrics = new ArrayList<>();
+
 	/**
 	 * Start the converter from command line
 	 * 
@@ -65,25 +121,99 @@ public class XmlCatalogueToExcel {
 	 */
 	public static void main(String[] args) {
 
+		// the options come before the input and the output
+		WorkbookOptions options = new WorkbookOptions();
+		boolean wrongOptions = false;
+		int first = 0;
+		try {
+			int used;
+			while (first < args.length && (used = options.parse(args, first)) > 0)
+				first += used;
+		} catch (IllegalArgumentException e) {
+			wrongOptions = true;
+		}
+
+		args = Arrays.copyOfRange(args, first, args.length);
+
+		// the excel is written in the standard output, keep it clean
+		PrintStream stdout = System.out;
+		if (args.length == 2 && args[1].equals(STANDARD_STREAM))
+			System.setOut(System.err);
+
 		LOGGER.info(
 				"#### Remember to increase the RAM max limit if you are converting big catalogues! (e.g. -Xms1024m) ####");
 
-		if (args.length != 2) {
+		if (wrongOptions || args.length != 2) {
 
 			LOGGER.error(
 					"Wrong number of arguments. Please specify the input catalogue xml and the output xlsx file path "
-							+ "(example: java -jar xmlToExcel.jar D:\\catalogue.xml D:\\output.xlsx)");
+							+ "(example: java -jar xmlToExcel.jar D:\\catalogue.xml D:\\output.xlsx). "
+							+ "The catalogue can be also a .xml.gz file or a .zip file. If the zip contains "
+							+ "more catalogues, the output is a folder which will contain an xlsx for each of them. "
+							+ "Use - to read the catalogue from the standard input or to write the xlsx into the "
+							+ "standard output (example: gunzip -c catalogue.xml.gz | java -jar xmlToExcel.jar - - > output.xlsx). "
+							+ "With -format csv or tsv the output is a folder which will contain a file for each sheet. "
+							+ "Options of the workbook before the input: " + WorkbookOptions.getUsage());
 
 			return;
 		}
 
 		// convert the xml to excel
 		XmlCatalogueToExcel converter = new XmlCatalogueToExcel(args[0], args[1]);
+		converter.setWorkbookOptions(options);
 		try {
-			converter.convertXmlToExcel();
-		} catch (TransformerException e) {	
+
+			if (args[0].equals(STANDARD_STREAM) || args[1].equals(STANDARD_STREAM))
+				converter.convertStandardStreams(stdout);
+			else
+				converter.convertXmlToExcel();
+
+		} catch (TransformerException | IOException e) {	
 			LOGGER.error("Cannot convert xml to xlsx", e);
 			e.printStackTrace();
+
+			// let the scripts know that the conversion failed
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Convert reading the catalogue from the standard input and/or writing the
+	 * excel into the standard output, if the related file name is -
+	 * 
+	 * @param stdout the standard output
+	 * @throws TransformerException
+	 * @throws IOException
+	 */
+	private void convertStandardStreams(PrintStream stdout) throws TransformerException, IOException {
+
+		boolean isStdout = outputXlsx.equals(STANDARD_STREAM);
+
+		if (isStdout && workbookOptions.getTextFormat() != null)
+			throw new IOException("The " + workbookOptions.getTextFormat().getExtension()
+					+ " files cannot be written in the standard output, specify a folder");
+
+		// the input is the standard input, the output a file (or the folder of
+		// the text files), which is replaced only if the conversion succeeds
+		if (!isStdout) {
+			convertXmlToExcel(System.in, outputXlsx, null);
+			return;
+		}
+
+		try (OutputStream output = new BufferedOutputStream(stdout, 1 << 16)) {
+
+			if (inputXml.equals(STANDARD_STREAM)) {
+				convertXmlToExcel(System.in, output);
+				return;
+			}
+
+			List<String> catalogues = CatalogueInput.getCatalogues(inputXml);
+
+			if (catalogues.size() != 1)
+				throw new IOException("Only one catalogue can be written in the standard output, "
+						+ catalogues.size() + " found in " + inputXml);
+
+			convertXmlToExcel(catalogues.get(0), null, null, output);
 		}
 	}
 
@@ -99,136 +229,829 @@ public class XmlCatalogueToExcel {
 	}
 
 	/**
-	 * Convert the xml catalogue file into an excel file with 4 sheet
+	 * Filter each section of the xml with its xslt before converting it
+	 * (one parse of the whole xml for each sheet). By default the xml
+	 * is parsed only once and each section is sent to its sheet.
+	 * 
+	 * @param useXsltFilters
+	 */
+	public void setUseXsltFilters(boolean useXsltFilters) {
+		this.useXsltFilters = useXsltFilters;
+	}
+
+	/**
+	 * Write the xml filtered by each xslt in a temporary file and parse it
+	 * again, instead of sending it directly to the sheet converter. Used only
+	 * if {@link #setUseXsltFilters(boolean)} is set.
+	 * 
+	 * @param useXsltTempFiles
+	 */
+	public void setUseXsltTempFiles(boolean useXsltTempFiles) {
+		this.useXsltTempFiles = useXsltTempFiles;
+	}
+
+	/**
+	 * Set the executor which converts the sheets (with
+	 * {@link #setUseXsltFilters(boolean)}) or the chunks of terms in parallel.
+	 * If not set, a pool with one thread for each processor is used (at most
+	 * one for each sheet). The sheets of a workbook with the shared strings
+	 * (see {@link WorkbookOptions#setUseSharedStrings(boolean)}) are converted
+	 * one after another, since its shared strings table is not thread safe.
+	 * 
+	 * @param executor
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Set how many contiguous terms are converted together by a thread of
+	 * the executor. Set 0 to convert the terms only in the parsing thread.
+	 * The terms are converted in parallel only if the xml is parsed once
+	 * (see {@link #setUseXsltFilters(boolean)}) and if more than one processor
+	 * is available or an executor is set.
+	 * 
+	 * @param termChunkSize
+	 */
+	public void setTermChunkSize(int termChunkSize) {
+		this.termChunkSize = termChunkSize;
+	}
+
+	/**
+	 * Set the cache of the converted catalogues. If set, the catalogues which
+	 * were already converted with the same options are not converted again.
+	 * The cache is not used when converting streams.
+	 * 
+	 * @param cache
+	 */
+	public void setCache(ConversionCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Set the options of the streaming workbook (row window, temporary files
+	 * and shared strings)
+	 * 
+	 * @param workbookOptions
+	 */
+	public void setWorkbookOptions(WorkbookOptions workbookOptions) {
+		this.workbookOptions = workbookOptions;
+	}
+
+	/**
+	 * Get the measures of the catalogues converted until now (the catalogues
+	 * taken from the cache are not converted), see {@link ConversionMetrics}
+	 * 
+	 * @return
+	 */
+	public List<ConversionMetrics> getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Convert the xml catalogue file into an excel file with 4 sheet. If the
+	 * input is a zip file with more catalogues, the output is a folder which
+	 * contains an excel file for each catalogue.
 	 * 
 	 * @author shahaal
 	 * @author avonva
-	 * @throws TransformerException
+	 * @throws TransformerException if the conversion failed, also if the
+	 *                              input cannot be read or the output written
 	 */
 	public void convertXmlToExcel() throws TransformerException {
 
-		// create a new workbook
-		try (SXSSFWorkbook workbook = new SXSSFWorkbook()) {
+		try {
 
-			// convert catalogue sheet
-			final ConversionPerformer cat = new ConversionPerformer(workbook, inputXml, CATALOGUE_XSLT_NAME) {
+			List<String> catalogues = CatalogueInput.getCatalogues(inputXml);
 
-				@Override
-				public SheetConverter getConverter(String filename) {
-					// create a catalogue sheet converter to parse the xml file
-					CatalogueSheetConverter catConverter = new CatalogueSheetConverter(filename,
-							XmlNodes.CATALOGUE_ROOT_NODE);
-					return catConverter;
-				}
+			if (catalogues.size() == 1) {
+				convertCached(catalogues.get(0), outputXlsx);
+				return;
+			}
 
-				@Override
-				public void makePreliminarOperations(SheetConverter converter, Sheet sheet) {
-				}
-			};
+			File folder = new File(outputXlsx);
+			if (!folder.isDirectory() && !folder.mkdirs())
+				throw new IOException("Cannot create the output folder " + outputXlsx);
+
+			for (String catalogue : catalogues) {
+				LOGGER.info("Converting " + catalogue);
+				convertCached(catalogue,
+						new File(folder, workbookOptions.getOutputName(CatalogueInput.getBaseName(catalogue))).getPath());
+			}
+
+		} catch (IOException e) {
+			throw new TransformerException("Cannot convert " + inputXml + ": " + e.getMessage(), e);
+		}
+	}
 
-			cat.convert(Headers.CAT_SHEET_NAME);
+	/**
+	 * Convert a single catalogue into an excel file, taking the excel from the
+	 * cache if the catalogue was already converted
+	 * 
+	 * @param inputXml   the catalogue (see {@link CatalogueInput})
+	 * @param outputXlsx the excel file to create
+	 * @throws TransformerException
+	 * @throws IOException
+	 */
+	private void convertCached(String inputXml, String outputXlsx) throws TransformerException, IOException {
 
-			// convert hierarchy sheet
-			final ConversionPerformer hier = new ConversionPerformer(workbook, inputXml, HIERARCHY_XSLT_NAME) {
+		String key = null;
 
-				@Override
-				public SheetConverter getConverter(String inputFilename) {
-					// create a hierarchy sheet converter to parse the xml file
-					HierarchySheetConverter hierarchyConverter = new HierarchySheetConverter(inputFilename,
-							XmlNodes.HIERARCHY_ROOT_NODE);
-					return hierarchyConverter;
-				}
+		// the cache contains only xlsx
+		if (cache != null && workbookOptions.getTextFormat() == null && !workbookOptions.isTermJsonLines()) {
+			try {
 
-				@Override
-				public void makePreliminarOperations(SheetConverter converter, Sheet sheet) {
+				key = cache.getKey(inputXml, "xslt=" + useXsltFilters + ";" + workbookOptions.getOutputKey());
 
-					if (converter instanceof HierarchySheetConverter)
-						((HierarchySheetConverter) converter).addMasterHierarchy(cat.getSheet());
+				if (cache.restore(key, outputXlsx)) {
+					LOGGER.info("Excel of " + inputXml + " taken from the cache");
+					return;
 				}
-			};
 
-			hier.convert(Headers.HIER_SHEET_NAME);
+			} catch (IOException e) {
+				LOGGER.error("Cannot use the cache for " + inputXml, e);
+				e.printStackTrace();
+			}
+		}
 
-			// convert attr sheet
-			final ConversionPerformer attr = new ConversionPerformer(workbook, inputXml, ATTRIBUTE_XSLT_NAME) {
+		// it throws if the conversion fails, so only complete xlsx are stored
+		convertXmlToExcel(inputXml, null, outputXlsx, null);
 
-				@Override
-				public SheetConverter getConverter(String inputFilename) {
+		if (key == null)
+			return;
 
-					// create a attribute sheet converter to parse the xml file
-					AttributeSheetConverter attrConverter = new AttributeSheetConverter(inputFilename,
-							XmlNodes.ATTRIBUTE_ROOT_NODE);
+		try {
+			cache.store(key, outputXlsx);
+		} catch (IOException e) {
+			LOGGER.error("Cannot store " + outputXlsx + " in the cache", e);
+			e.printStackTrace();
+		}
+	}
 
-					return attrConverter;
-				}
+	/**
+	 * Convert a catalogue read from a stream and write the excel into the output
+	 * stream. The input can be also compressed with gzip. The streams are not
+	 * closed. If {@link #setUseXsltFilters(boolean)} is set, the input is copied
+	 * into a temporary file, since each xslt needs to read it again.
+	 * 
+	 * @param input  the catalogue xml
+	 * @param output the stream which receives the xlsx
+	 * @throws TransformerException if the catalogue cannot be parsed or filtered
+	 * @throws IOException          if the input cannot be read or the output
+	 *                              written, the output can be incomplete
+	 */
+	public void convertXmlToExcel(InputStream input, OutputStream output) throws TransformerException, IOException {
+		convertXmlToExcel(input, null, output);
+	}
 
-				@Override
-				public void makePreliminarOperations(SheetConverter converter, Sheet sheet) {
-				}
-			};
+	/**
+	 * Convert a catalogue read from a stream into the output file or stream (see
+	 * {@link #convertXmlToExcel(InputStream, OutputStream)})
+	 * 
+	 * @param input      the catalogue xml
+	 * @param outputXlsx the excel file (or the folder of the text files), null to
+	 *                   write the excel into the output stream
+	 * @param output     the stream which receives the xlsx if outputXlsx is null
+	 * @throws TransformerException
+	 * @throws IOException
+	 */
+	private void convertXmlToExcel(InputStream input, String outputXlsx, OutputStream output)
+			throws TransformerException, IOException {
 
-			attr.convert(Headers.ATTR_SHEET_NAME);
+		// the input is owned by the caller
+		InputStream stream = CatalogueInput.open(new FilterInputStream(input) {
+			@Override
+			public void close() {
+			}
+		});
 
-			// convert term sheet
-			ConversionPerformer term = new ConversionPerformer(workbook, inputXml, TERM_XSLT_NAME) {
+		try {
 
-				@Override
-				public SheetConverter getConverter(String inputFilename) {
+			if (!useXsltFilters) {
+				convertXmlToExcel(null, new InputSource(stream), outputXlsx, output);
+				return;
+			}
 
-					// create a term converter, we need the hierarchy and attribute sheet to
-					// create the term sheet
-					TermSheetConverter termConverter = new TermSheetConverter(inputFilename, XmlNodes.TERM_ROOT_NODE,
-							hier.getSheet(), attr.getSheet());
+			File temp = File.createTempFile("catalogue", ".xml");
 
-					// set as master hierarchy code the catalogue code
-					termConverter
-							.setMasterHierarchyCode(SheetConverter.getSheetColumn(cat.getSheet(), Headers.CODE).get(0));
+			try {
+				Files.copy(stream, temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				convertXmlToExcel(temp.getPath(), null, outputXlsx, output);
+			} finally {
+				Files.delete(temp.toPath());
+			}
 
-					return termConverter;
-				}
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Convert a catalogue read from a channel and write the excel into the
+	 * output stream (see {@link #convertXmlToExcel(InputStream, OutputStream)})
+	 * 
+	 * @param input  the catalogue xml
+	 * @param output the stream which receives the xlsx
+	 * @throws TransformerException if the catalogue cannot be parsed or filtered
+	 * @throws IOException          if the input cannot be read or the output
+	 *                              written, the output can be incomplete
+	 */
+	public void convertXmlToExcel(ReadableByteChannel input, OutputStream output)
+			throws TransformerException, IOException {
+		convertXmlToExcel(Channels.newInputStream(input), output);
+	}
+
+	/**
+	 * Get the json lines file of the terms, if requested (see
+	 * {@link WorkbookOptions#setTermJsonLines(boolean)})
+	 * 
+	 * @param outputXlsx the output of the conversion, null if it is a stream
+	 * @return the file, null if the json lines are not written
+	 */
+	private File getTermJsonLinesFile(String outputXlsx) {
+
+		if (!workbookOptions.isTermJsonLines())
+			return null;
+
+		if (useXsltFilters) {
+			LOGGER.warn("The json lines of the terms need the xml parsed once, they are not written with the xslt filters");
+			return null;
+		}
+
+		if (outputXlsx == null) {
+			LOGGER.warn("The json lines of the terms are not written when the output is a stream");
+			return null;
+		}
+
+		return new File(workbookOptions.getTermJsonLinesName(outputXlsx));
+	}
+
+	/**
+	 * Open the json lines file of the terms
+	 * 
+	 * @param file the file, null if the json lines are not written
+	 * @return the writer of the file, null if the json lines are not written
+	 * @throws IOException
+	 */
+	private Writer openTermJsonLines(File file) throws IOException {
+
+		if (file == null)
+			return null;
+
+		// the folder of the text files is created with the files
+		if (file.getParentFile() != null)
+			file.getParentFile().mkdirs();
+
+		OutputStream out = new FileOutputStream(file);
+
+		if (workbookOptions.isGzipText())
+			out = new GZIPOutputStream(out, 1 << 16);
+
+		LOGGER.info("Writing the json lines of the terms in " + file);
+
+		return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+	}
 
-				@Override
-				public void makePreliminarOperations(SheetConverter converter, Sheet sheet) {
+	/**
+	 * Convert a single catalogue into an excel file
+	 * 
+	 * @param inputXml   the catalogue (see {@link CatalogueInput}), null if it is
+	 *                   read from the source
+	 * @param source     the catalogue, used only if inputXml is null
+	 * @param outputXlsx the excel file to create (or the folder of the text files,
+	 *                   see {@link WorkbookOptions#setTextFormat}), null to write
+	 *                   the excel into the output stream
+	 * @param output     the stream which receives the excel if outputXlsx is null,
+	 *                   it is not closed
+	 * @throws TransformerException if the catalogue cannot be parsed or filtered
+	 * @throws IOException          if the output cannot be written
+	 */
+	private void convertXmlToExcel(String inputXml, InputSource source, String outputXlsx, OutputStream output)
+			throws TransformerException, IOException {
+
+		DelimitedWriter.Format textFormat = workbookOptions.getTextFormat();
+
+		// the direct writer needs the xml parsed once, since the sheets
+		// converted in parallel by the xslt filters would compete for the zip
+		boolean isDirect = textFormat == null && workbookOptions.isDirectXlsx() && !useXsltFilters;
+
+		if (textFormat == null && workbookOptions.isDirectXlsx() && useXsltFilters)
+			LOGGER.warn("The direct xlsx writer cannot be used with the xslt filters, using the streaming workbook");
+
+		long conversionStart = System.currentTimeMillis();
+
+		ConversionMetrics conversionMetrics = new ConversionMetrics(inputXml, outputXlsx,
+				useXsltFilters ? "xslt" : "single parse", textFormat != null ? textFormat.getExtension()
+						: isDirect ? "direct xlsx" : "streaming workbook");
+
+		conversionMetrics.start();
+
+		// the xlsx is written in a temporary file next to it and moved in place only
+		// if the conversion succeeds, so that a failed conversion does not leave a
+		// partial xlsx and an xlsx linked to the cache is replaced, not overwritten
+		File xlsxFile = textFormat == null && outputXlsx != null ? new File(outputXlsx) : null;
+		File partialXlsx = null;
+		File jsonFile = getTermJsonLinesFile(outputXlsx);
+		DelimitedWriter textWriter = null;
+		boolean completed = false;
+
+		try {
+
+			if (xlsxFile != null)
+				partialXlsx = createPartialFile(xlsxFile);
+
+			// create a new workbook or write the sheets directly in the output
+			try (StreamingWorkbook workbook = isDirect || textFormat != null ? null : workbookOptions.createWorkbook();
+					OutputStream xlsxOut = isDirect && partialXlsx != null
+							? new BufferedOutputStream(new FileOutputStream(partialXlsx), 1 << 16)
+							: null;
+					Writer jsonOut = openTermJsonLines(jsonFile)) {
+
+				WorkbookOutput direct = null;
+
+				if (textFormat != null) {
+
+					if (outputXlsx == null)
+						throw new IOException("The " + textFormat.getExtension()
+								+ " files need an output folder, they cannot be written in a stream");
+
+					direct = textWriter = new DelimitedWriter(new File(outputXlsx), textFormat, workbookOptions.isGzipText(),
+							SheetConverter.DATE_FORMAT);
+				} else if (isDirect) {
+					direct = new XlsxWriter(xlsxOut != null ? xlsxOut : output, SheetConverter.DATE_FORMAT,
+							workbookOptions.getCompressionLevel(), workbookOptions.getCompressionThreads());
 				}
-			};
 
-			term.convert(Headers.TERM_SHEET_NAME);
+				// convert catalogue sheet
+				final ConversionPerformer cat = new ConversionPerformer(workbook, inputXml, CATALOGUE_XSLT_NAME) {
+
+					@Override
+					public SheetConverter getConverter(String filename) {
+						// create a catalogue sheet converter to parse the xml file
+						CatalogueSheetConverter catConverter = new CatalogueSheetConverter(filename,
+								XmlNodes.CATALOGUE_ROOT_NODE);
+						return catConverter;
+					}
 
-			// create release notes sheet
-			ConversionPerformer notes = new ConversionPerformer(workbook, inputXml, NOTES_XSLT_NAME) {
+					@Override
+					public void makePreliminarOperations(SheetConverter converter, Sheet sheet) {
+					}
+				};
 
-				@Override
-				public SheetConverter getConverter(String inputFilename) {
-					NotesSheetConverter notesConverter = new NotesSheetConverter(inputFilename, XmlNodes.OP_INFO);
+				// convert hierarchy sheet
+				final ConversionPerformer hier = new ConversionPerformer(workbook, inputXml, HIERARCHY_XSLT_NAME) {
 
-					return notesConverter;
+					@Override
+					public SheetConverter getConverter(String inputFilename) {
+						// create a hierarchy sheet converter to parse the xml file
+						HierarchySheetConverter hierarchyConverter = new HierarchySheetConverter(inputFilename,
+								XmlNodes.HIERARCHY_ROOT_NODE);
+						return hierarchyConverter;
+					}
+
+					@Override
+					public void makePreliminarOperations(SheetConverter converter, Sheet sheet) {
+
+						if (converter instanceof HierarchySheetConverter)
+							((HierarchySheetConverter) converter).addMasterHierarchy(
+									((CatalogueSheetConverter) cat.getSheetConverter()).getCatalogueInfo());
+					}
+				};
+
+				// convert attr sheet
+				final ConversionPerformer attr = new ConversionPerformer(workbook, inputXml, ATTRIBUTE_XSLT_NAME) {
+
+					@Override
+					public SheetConverter getConverter(String inputFilename) {
+
+						// create a attribute sheet converter to parse the xml file
+						AttributeSheetConverter attrConverter = new AttributeSheetConverter(inputFilename,
+								XmlNodes.ATTRIBUTE_ROOT_NODE);
+
+						return attrConverter;
+					}
+
+					@Override
+					public void makePreliminarOperations(SheetConverter converter, Sheet sheet) {
+					}
+				};
+
+				// convert term sheet
+				ConversionPerformer term = new ConversionPerformer(workbook, inputXml, TERM_XSLT_NAME) {
+
+					// collected once, the converters of the term chunks share it
+					private CatalogueMetadata metadata;
+
+					@Override
+					public SheetConverter getConverter(String inputFilename) {
+
+						if (metadata == null) {
+							metadata = new CatalogueMetadata(
+									((CatalogueSheetConverter) cat.getSheetConverter()).getCatalogueInfo(),
+									((HierarchySheetConverter) hier.getSheetConverter()).getHierarchyCodes(),
+									((AttributeSheetConverter) attr.getSheetConverter()).getAttributes());
+						}
+
+						// create a term converter, we need the hierarchies and the attributes to
+						// create the term sheet
+						TermSheetConverter termConverter = new TermSheetConverter(inputFilename, XmlNodes.TERM_ROOT_NODE,
+								metadata);
+
+						// set as master hierarchy code the catalogue code
+						if (metadata.getCatalogue() != null)
+							termConverter.setMasterHierarchyCode(metadata.getCatalogue().getCode());
+
+						return termConverter;
+					}
+
+					@Override
+					public void makePreliminarOperations(SheetConverter converter, Sheet sheet) {
+					}
+				};
+
+				// create release notes sheet
+				ConversionPerformer notes = new ConversionPerformer(workbook, inputXml, NOTES_XSLT_NAME) {
+
+					@Override
+					public SheetConverter getConverter(String inputFilename) {
+						NotesSheetConverter notesConverter = new NotesSheetConverter(inputFilename, XmlNodes.OP_INFO);
+
+						return notesConverter;
+					}
+
+					@Override
+					public void makePreliminarOperations(SheetConverter converter, Sheet sheet) {
+					}
+				};
+
+				ConversionPerformer[] performers = new ConversionPerformer[] { cat, hier, attr, term, notes };
+				String[] sheetNames = new String[] { Headers.CAT_SHEET_NAME, Headers.HIER_SHEET_NAME,
+						Headers.ATTR_SHEET_NAME, Headers.TERM_SHEET_NAME, Headers.NOTES_SHEET_NAME };
+
+				long parseStart = System.currentTimeMillis();
+
+				if (useXsltFilters) {
+
+					for (ConversionPerformer performer : performers) {
+						performer.setUseTempFile(useXsltTempFiles);
+						performer.setWorkbookOutput(direct);
+					}
+
+					// the shared strings table of the workbook is not thread safe,
+					// the sheets which write in it are converted one after another
+					boolean isSerial = direct == null && workbookOptions.isUseSharedStrings();
+
+					ExecutorService pool = isSerial ? null : executor;
+
+					if (!isSerial && pool == null)
+						pool = Executors.newFixedThreadPool(Math.min(5, Runtime.getRuntime().availableProcessors()));
+
+					try {
+
+						Executor sheetExecutor = isSerial ? ConversionScheduler.CALLER_THREAD : pool;
+
+						ConversionScheduler scheduler = direct != null ? new ConversionScheduler(direct, sheetExecutor)
+								: new ConversionScheduler(workbook, sheetExecutor);
+
+						scheduler.add(cat, Headers.CAT_SHEET_NAME);
+
+						// the master hierarchy is created with the catalogue data
+						scheduler.add(hier, Headers.HIER_SHEET_NAME, cat);
+						scheduler.add(attr, Headers.ATTR_SHEET_NAME);
+
+						// the term columns depend on the hierarchies and on the attributes
+						scheduler.add(term, Headers.TERM_SHEET_NAME, cat, hier, attr);
+						scheduler.add(notes, Headers.NOTES_SHEET_NAME);
+
+						scheduler.run();
+
+					} finally {
+
+						// shutdown only the pool we created
+						if (pool != null && pool != executor)
+							pool.shutdown();
+					}
+
+					LOGGER.info("Compiled xslt cache: " + XsltCompiler.getCacheHits() + " hits, "
+							+ XsltCompiler.getCacheMisses() + " misses");
+				} else {
+
+					// the sheets can be written directly in the output
+					for (ConversionPerformer performer : performers)
+						performer.setWorkbookOutput(direct);
+
+					// parse the xml only once, sending each section to its sheet
+					CatalogueDemultiplexer demux = direct != null ? new CatalogueDemultiplexer(direct, inputXml)
+							: new CatalogueDemultiplexer(workbook, inputXml);
+
+					demux.setDocumentSection(cat, Headers.CAT_SHEET_NAME);
+
+					// the master hierarchy is created with the catalogue data
+					demux.addSection(XmlNodes.CATALOGUE_HIERARCHIES, true, hier, Headers.HIER_SHEET_NAME,
+							XmlNodes.CATALOGUE_DESC, XmlNodes.CATALOGUE_VERSION);
+
+					demux.addSection(XmlNodes.CATALOGUE_ATTRIBUTES, true, attr, Headers.ATTR_SHEET_NAME);
+
+					// the term columns depend on the hierarchies and on the attributes
+					demux.addSection(XmlNodes.CATALOGUE_TERMS, true, term, Headers.TERM_SHEET_NAME,
+							XmlNodes.CATALOGUE_DESC, XmlNodes.CATALOGUE_HIERARCHIES, XmlNodes.CATALOGUE_ATTRIBUTES);
+
+					// release notes are also part of the catalogue sheet
+					demux.addSection(XmlNodes.RELEASE_NOTES, false, notes, Headers.NOTES_SHEET_NAME);
+
+					// the terms are also written as json lines, from the same events
+					TermJsonWriter termJson = null;
+					if (jsonOut != null) {
+						termJson = new TermJsonWriter(jsonOut);
+						demux.addListener(XmlNodes.CATALOGUE_TERMS, termJson);
+					}
+
+					ExecutorService pool = executor;
+
+					// convert the terms in parallel only if it is worth it
+					if (pool == null && termChunkSize > 0 && Runtime.getRuntime().availableProcessors() > 1)
+						pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+					if (pool != null && termChunkSize > 0) {
+
+						demux.partitionSection(XmlNodes.CATALOGUE_TERMS, termChunkSize, pool);
+
+						// read the chunks of terms directly from the file
+						if (workbookOptions.isTermOffsets())
+							setTermOffsets(demux, inputXml, termJson != null);
+					}
+
+					try {
+						if (inputXml != null)
+							demux.convert();
+						else
+							demux.convert(source);
+					} finally {
+
+						// shutdown only the pool we created
+						if (pool != null && pool != executor)
+							pool.shutdown();
+					}
+
+					if (termJson != null) {
+						termJson.finish();
+						LOGGER.info(termJson.getTermCount() + " terms written in json lines");
+					}
 				}
 
-				@Override
-				public void makePreliminarOperations(SheetConverter converter, Sheet sheet) {
+				conversionMetrics.setParseTime(System.currentTimeMillis() - parseStart);
+
+				for (int i = 0; i < performers.length; i++)
+					conversionMetrics.addSheet(performers[i].getMetrics(sheetNames[i]));
+
+				conversionMetrics.sampleHeap();
+
+				// the sheets are already in the output, write the other parts
+				if (direct != null) {
+
+					long start = System.currentTimeMillis();
+					PhaseEvent event = PhaseEvent.begin(Phase.WRITE, null);
+
+					direct.finish();
+
+					if (isDirect && xlsxOut == null)
+						output.flush();
+
+					conversionMetrics.setWriteTime(System.currentTimeMillis() - start);
+					commitWriteEvent(event, conversionMetrics, isDirect ? null : outputXlsx);
+
+					LOGGER.info(String.format(Locale.ROOT, "Done, %s written directly in %d ms",
+							textFormat != null ? textFormat.getExtension() + " files" : "xlsx",
+							System.currentTimeMillis() - conversionStart));
+				} else {
+					writeWorkbook(workbook, partialXlsx, output, conversionMetrics);
 				}
-			};
+			}
+
+			// all the files are closed, the xlsx is complete
+			if (partialXlsx != null)
+				Files.move(partialXlsx.toPath(), xlsxFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+			completed = true;
+
+		} finally {
 
-			notes.convert(Headers.NOTES_SHEET_NAME);
+			// the output is closed, measure it
+			conversionMetrics.stop();
 
-			LOGGER.info("Writing the excel file...");
+			if (completed)
+				reportMetrics(conversionMetrics, outputXlsx);
+			else
+				discardOutput(partialXlsx, textWriter, jsonFile);
+		}
+	}
+
+	/**
+	 * Scan the offsets of the terms of the catalogue, so that the demultiplexer
+	 * reads the chunks of terms from the file (see
+	 * {@link CatalogueDemultiplexer#setTermOffsets(CatalogueOffsetScanner)}).
+	 * If the offsets cannot be used, the terms are parsed with the rest of the xml.
+	 * 
+	 * @param demux
+	 * @param inputXml        the catalogue, null if it is read from a stream
+	 * @param hasTermListener true if the terms are also sent to a listener
+	 */
+	private static void setTermOffsets(CatalogueDemultiplexer demux, String inputXml, boolean hasTermListener) {
+
+		if (inputXml == null || !CatalogueInput.isPlainFile(inputXml)) {
+			LOGGER.warn("The term offsets are scanned only in plain xml files, parsing the terms with the xml");
+			return;
+		}
+
+		if (hasTermListener) {
+			LOGGER.warn("The json lines of the terms need the terms parsed with the xml, the term offsets are not used");
+			return;
+		}
+
+		CatalogueOffsetScanner scanner = new CatalogueOffsetScanner(inputXml);
+
+		try {
+			scanner.scan();
+		} catch (IOException e) {
+
+			// the parse reports the malformed xml
+			LOGGER.warn("Cannot scan the term offsets of " + inputXml + ", parsing the terms with the xml: "
+					+ e.getMessage());
+			return;
+		}
+
+		if (scanner.hasDoctype()) {
+			LOGGER.warn("The terms of an xml with a DOCTYPE cannot be parsed alone, parsing the terms with the xml");
+			return;
+		}
+
+		demux.setTermOffsets(scanner);
+	}
+
+	/**
+	 * Write the streaming workbook, once all the sheets are complete
+	 * 
+	 * @param workbook
+	 * @param outputXlsx        the excel file, null to write into the output stream
+	 * @param output            the stream which receives the excel if outputXlsx is
+	 *                          null, it is not closed
+	 * @param conversionMetrics the measures of the conversion
+	 * @throws IOException
+	 */
+	private static void writeWorkbook(StreamingWorkbook workbook, File outputXlsx, OutputStream output,
+			ConversionMetrics conversionMetrics) throws IOException {
+
+		LOGGER.info("Writing the excel file...");
+
+		long start = System.currentTimeMillis();
+		PhaseEvent event = PhaseEvent.begin(Phase.WRITE, null);
+
+		// the temporary files are complete, measure the disk they use
+		workbook.flushAllRows();
+		long tempSize = workbook.getTempFilesSize();
+
+		// remove limits of dimensions for the workbook
+		ZipSecureFile.setMinInflateRatio(0);
+
+		if (outputXlsx == null) {
+			workbook.write(output);
+			output.flush();
+		} else {
 
 			// solve memory leak, save the results into the excel file
 			try (FileOutputStream fileOut = new FileOutputStream(outputXlsx)) {
 
-				// remove limits of dimensions for the workbook
-				ZipSecureFile.setMinInflateRatio(0);
-
 				workbook.write(fileOut);
-				LOGGER.info("Done");
 
 				fileOut.flush();
 				fileOut.close();
 			}
+		}
+
+		conversionMetrics.setWriteTime(System.currentTimeMillis() - start);
+		conversionMetrics.addTempBytes(tempSize);
+		commitWriteEvent(event, conversionMetrics, outputXlsx != null ? outputXlsx.getPath() : null);
+
+		LOGGER.info(String.format(Locale.ROOT, "Done, written in %d ms, temporary files %.1f MB in %s",
+				System.currentTimeMillis() - start, tempSize / 1048576.0, workbook.getTempDirectory()));
+
+		workbook.dispose();
+	}
+
+	/**
+	 * Create the temporary file of an xlsx, in its folder so that it
+	 * can be renamed as the xlsx when complete
+	 * 
+	 * @param xlsxFile
+	 * @return
+	 * @throws IOException
+	 */
+	private static File createPartialFile(File xlsxFile) throws IOException {
+		return File.createTempFile(xlsxFile.getName() + ".", ".part", xlsxFile.getAbsoluteFile().getParentFile());
+	}
+
+	/**
+	 * Delete the files written by a failed conversion. Errors are
+	 * only logged, since the conversion is already failing.
+	 * 
+	 * @param partialXlsx the temporary file of the xlsx, null if not written
+	 * @param textWriter  the writer of the text files, null if not used
+	 * @param jsonFile    the json lines of the terms, null if not written
+	 */
+	private static void discardOutput(File partialXlsx, DelimitedWriter textWriter, File jsonFile) {
+
+		try {
+
+			if (partialXlsx != null)
+				Files.deleteIfExists(partialXlsx.toPath());
+
+			if (textWriter != null)
+				textWriter.discard();
+
+			if (jsonFile != null)
+				Files.deleteIfExists(jsonFile.toPath());
 
 		} catch (IOException e) {
-			LOGGER.error("Cannot convert xml to xlsx", e);
+			LOGGER.error("Cannot delete the output of the failed conversion", e);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Record the write of the workbook in the flight recorder
+	 * @param event
+	 * @param conversionMetrics the measures of the conversion, with the sheets
+	 * @param outputXlsx the output file or folder, null if unknown or still open
+	 */
+	private static void commitWriteEvent(PhaseEvent event, ConversionMetrics conversionMetrics, String outputXlsx) {
+
+		if (!event.isEnabled())
+			return;
+
+		event.setRows(conversionMetrics.getRows());
+
+		if (outputXlsx != null)
+			event.setBytes(getSize(new File(outputXlsx)));
+
+		event.commit();
+	}
+
+	/**
+	 * Keep the measures of a completed conversion and write
+	 * the report, if requested
+	 * 
+	 * @param conversionMetrics
+	 * @param outputXlsx the output of the conversion, null if it is a stream
+	 */
+	private void reportMetrics(ConversionMetrics conversionMetrics, String outputXlsx) {
+
+		if (outputXlsx != null)
+			conversionMetrics.setOutputBytes(getSize(new File(outputXlsx)));
+
+		metrics.add(conversionMetrics);
+
+		LOGGER.info(String.format(Locale.ROOT,
+				"Metrics: %d ms (parse %d ms, write %d ms), %d rows, %d cells, %.1f MB/s, peak heap %.1f MB",
+				conversionMetrics.getTotalTime(), conversionMetrics.getParseTime(), conversionMetrics.getWriteTime(),
+				conversionMetrics.getRows(), conversionMetrics.getCells(), conversionMetrics.getParseThroughput(),
+				conversionMetrics.getPeakHeap() / 1048576.0));
+
+		if (!workbookOptions.isMetricsReport())
+			return;
+
+		if (outputXlsx == null) {
+			LOGGER.warn("The metrics report is not written when the output is a stream");
+			return;
+		}
+
+		File report = new File(workbookOptions.getMetricsReportName(outputXlsx));
+
+		try {
+			conversionMetrics.writeJson(report);
+			LOGGER.info("Metrics written in " + report);
+		} catch (IOException e) {
+			LOGGER.error("Cannot write the metrics report " + report, e);
 			e.printStackTrace();
 		}
 	}
+
+	/**
+	 * Get the size of a file, or of the files of a folder
+	 * 
+	 * @param file
+	 * @return
+	 */
+	private static long getSize(File file) {
+
+		File[] children = file.listFiles();
+
+		if (children == null)
+			return file.length();
+
+		long size = 0;
+		for (File child : children)
+			size += getSize(child);
+
+		return size;
+	}
 }
@@ -3,24 +3,40 @@ package xml_to_excel;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.xml.transform.Result;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXResult;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.xml.sax.ContentHandler;
+
+import conversion_events.Phase;
+import conversion_events.PhaseEvent;
 
 public class XsltCompiler {
 
 	private static final Logger LOGGER = LogManager.getLogger(XsltCompiler.class);
 
+	// compiled xslt files, shared by all the conversions of the jvm
+	private static final ConcurrentHashMap<String, Templates> TEMPLATES = new ConcurrentHashMap<>();
+	private static final AtomicLong CACHE_HITS = new AtomicLong();
+	private static final AtomicLong CACHE_MISSES = new AtomicLong();
+
 	private String inputFilename;
+	private InputStream input;
 	private String xsltFilename;
 	private String outputFilename;
+	private CountingInputStream counter;  // the bytes of the xml read by the transformation
 
 	/**
 	 * Apply a XSLT transformation to the XLM input file. The created XML output
@@ -38,6 +54,31 @@ public class XsltCompiler {
 		this.outputFilename = outputFilename;
 	}
 
+	/**
+	 * Apply a XSLT transformation to the XML input file. The output is sent
+	 * to a SAX handler with {@link #compile(ContentHandler)}, therefore no
+	 * output file is created.
+	 * 
+	 * @param inputFilename
+	 * @param xsltFilename
+	 */
+	public XsltCompiler(String inputFilename, String xsltFilename) {
+		this(inputFilename, xsltFilename, null);
+	}
+
+	/**
+	 * Apply a XSLT transformation to the XML read from the stream. The output
+	 * is sent to a SAX handler with {@link #compile(ContentHandler)}. The
+	 * stream can be transformed only once and it is not closed.
+	 * 
+	 * @param input
+	 * @param xsltFilename
+	 */
+	public XsltCompiler(InputStream input, String xsltFilename) {
+		this((String) null, xsltFilename, null);
+		this.input = input;
+	}
+
 	/**
 	 * Transform the input xml file using the xslt file
 	 * 
@@ -45,27 +86,138 @@ public class XsltCompiler {
 	 */
 	public void compile() throws TransformerException {
 
+		// set the transformer (the templates are thread safe, the transformer is not)
+		Transformer transformer = getTemplates(xsltFilename).newTransformer();
+
+		// transform the input with the xslt and create the output
+		StreamResult output = new StreamResult(new File(outputFilename));
+		transform(transformer, output);
+	}
+
+	/**
+	 * Transform the input xml file using the xslt file and send the
+	 * resulting xml events directly to the handler
+	 * 
+	 * @param handler the SAX handler which receives the transformed xml
+	 * @throws TransformerException
+	 */
+	public void compile(ContentHandler handler) throws TransformerException {
+
+		Transformer transformer = getTemplates(xsltFilename).newTransformer();
+
+		transform(transformer, new SAXResult(handler));
+	}
+
+	/**
+	 * Transform the input xml, which can be also compressed (see
+	 * {@link CatalogueInput})
+	 * 
+	 * @param transformer
+	 * @param output
+	 * @throws TransformerException
+	 */
+	private void transform(Transformer transformer, Result output) throws TransformerException {
+
+		// the sheet is not known here, the event shows the xslt
+		PhaseEvent event = PhaseEvent.begin(Phase.XSLT, xsltFilename);
+
+		if (input != null) {
+			counter = new CountingInputStream(input);
+			transformer.transform(new StreamSource(counter), output);
+			event.setBytes(counter.getCount()).commit();
+			return;
+		}
+
+		try (InputStream input = counter = new CountingInputStream(CatalogueInput.open(inputFilename))) {
+
+			StreamSource text = new StreamSource(input);
+
+			if (CatalogueInput.isPlainFile(inputFilename))
+				text.setSystemId(new File(inputFilename));
+
+			transformer.transform(text, output);
+
+			event.setBytes(counter.getCount()).commit();
+
+		} catch (IOException e) {
+			throw new TransformerException("Cannot read " + inputFilename, e);
+		}
+	}
+
+	/**
+	 * Get the bytes of the xml read by the last transformation (the
+	 * uncompressed xml, if the input is compressed)
+	 *
+	 * @return
+	 */
+	public long getBytesRead() {
+		return counter != null ? counter.getCount() : 0;
+	}
+
+	/**
+	 * Get the compiled xslt related to the resource name. The xslt is compiled
+	 * only the first time it is requested, then it is taken from the cache.
+	 * 
+	 * @param xsltFilename the name of the xslt resource
+	 * @return
+	 * @throws TransformerException
+	 */
+	public static Templates getTemplates(String xsltFilename) throws TransformerException {
+
+		Templates templates = TEMPLATES.get(xsltFilename);
+
+		if (templates != null) {
+			CACHE_HITS.incrementAndGet();
+			return templates;
+		}
+
+		CACHE_MISSES.incrementAndGet();
+
 		// prepare xslt source file
 		InputStream stream = XsltCompiler.class.getClassLoader().getResourceAsStream(xsltFilename);
 		Source xslt = new StreamSource(stream);
 
-		// Get a factory instance to apply the xslt
+		// Get a factory instance to compile the xslt
 		TransformerFactory factory = TransformerFactory.newInstance();
+		templates = factory.newTemplates(xslt);
 
-		// set the transformer
-		Transformer transformer = factory.newTransformer(xslt);
-
-		// transform the input with the xslt and create the output
-		StreamSource text = new StreamSource(new File(inputFilename));
-		StreamResult output = new StreamResult(new File(outputFilename));
-		transformer.transform(text, output);
+		LOGGER.info("Compiled " + xsltFilename);
 
 		try {
-			transformer.reset();
 			stream.close();
 		} catch (IOException e) {
-			LOGGER.error("Cannot apply xslt", e);
+			LOGGER.error("Cannot close xslt", e);
 			e.printStackTrace();
 		}
+
+		// if another thread compiled it in the meantime keep the first one
+		Templates previous = TEMPLATES.putIfAbsent(xsltFilename, templates);
+
+		return previous != null ? previous : templates;
+	}
+
+	/**
+	 * Get how many times a compiled xslt was taken from the cache
+	 * 
+	 * @return
+	 */
+	public static long getCacheHits() {
+		return CACHE_HITS.get();
+	}
+
+	/**
+	 * Get how many times an xslt had to be compiled
+	 * 
+	 * @return
+	 */
+	public static long getCacheMisses() {
+		return CACHE_MISSES.get();
+	}
+
+	/**
+	 * Remove all the compiled xslt from the cache
+	 */
+	public static void clearCache() {
+		TEMPLATES.clear();
 	}
 }
@@ -0,0 +1,29 @@
+package conversion_events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * The fields of the events of the phases of a conversion
+ * @author avonva
+ *
+ */
+@Category({"Catalogue", "Conversion"})
+abstract class CatalogueEvent extends Event {
+
+	@Label("Sheet")
+	@Description("The sheet of the phase (the xslt for the xslt filters), null for the whole workbook")
+	String sheet;
+
+	@Label("Rows")
+	@Description("The rows of the sheets, the headers included")
+	long rows;
+
+	@Label("Bytes")
+	@Description("The bytes read or written by the phase")
+	@DataAmount
+	long bytes;
+}
@@ -0,0 +1,15 @@
+package conversion_events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The conversion of a sheet with the xslt filter
+ * @author avonva
+ *
+ */
+@Name("catalogue.Conversion")
+@Label("Sheet Conversion")
+@Description("The conversion of a sheet with the xslt filter")
+class ConversionEvent extends CatalogueEvent {}
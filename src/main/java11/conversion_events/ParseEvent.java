@@ -0,0 +1,15 @@
+package conversion_events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The parse of the xml of a sheet
+ * @author avonva
+ *
+ */
+@Name("catalogue.Parse")
+@Label("Sheet Parse")
+@Description("The parse of the xml of a sheet")
+class ParseEvent extends CatalogueEvent {}
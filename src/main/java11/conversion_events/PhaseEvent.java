@@ -0,0 +1,100 @@
+package conversion_events;
+
+/**
+ * A phase of a conversion, recorded as an event of the Java Flight Recorder
+ * (e.g. catalogue.Parse) to see which phase of a slow conversion is running.
+ * This is the version for Java 11 or later of the multi-release jar. The
+ * events are recorded only if they are enabled in a recording, otherwise they
+ * cost an allocation for each phase, so they can be left on.
+ * @author avonva
+ *
+ */
+public class PhaseEvent {
+
+	private static final PhaseEvent DISABLED = new PhaseEvent(null);
+
+	private CatalogueEvent event;
+
+	private PhaseEvent(CatalogueEvent event) {
+		this.event = event;
+	}
+
+	/**
+	 * Start a phase
+	 * @param phase
+	 * @param sheetName the sheet of the phase, null if the phase is
+	 * related to the whole workbook
+	 * @return the event of the phase, commit it at the end of the phase
+	 */
+	public static PhaseEvent begin(Phase phase, String sheetName) {
+
+		CatalogueEvent event = newEvent(phase);
+
+		if (!event.isEnabled())
+			return DISABLED;
+
+		event.sheet = sheetName;
+		event.begin();
+
+		return new PhaseEvent(event);
+	}
+
+	private static CatalogueEvent newEvent(Phase phase) {
+
+		switch (phase) {
+		case CONVERSION:
+			return new ConversionEvent();
+		case XSLT:
+			return new XsltEvent();
+		case PARSE:
+			return new ParseEvent();
+		default:
+			return new WriteEvent();
+		}
+	}
+
+	/**
+	 * Check if the event is recorded. Use it to avoid computing
+	 * values which are only needed by the event.
+	 * @return
+	 */
+	public boolean isEnabled() {
+		return event != null;
+	}
+
+	/**
+	 * Set the rows of the sheets, the headers included
+	 * @param rows
+	 * @return
+	 */
+	public PhaseEvent setRows(long rows) {
+
+		if (event != null)
+			event.rows = rows;
+
+		return this;
+	}
+
+	/**
+	 * Set the bytes read or written by the phase
+	 * @param bytes
+	 * @return
+	 */
+	public PhaseEvent setBytes(long bytes) {
+
+		if (event != null)
+			event.bytes = bytes;
+
+		return this;
+	}
+
+	/**
+	 * End the phase and record the event, if it lasted more
+	 * than the threshold of the recording
+	 */
+	public void commit() {
+
+		if (event != null)
+			event.commit();
+	}
+}
@@ -0,0 +1,15 @@
+package conversion_events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The final write of the workbook
+ * @author avonva
+ *
+ */
+@Name("catalogue.Write")
+@Label("Workbook Write")
+@Description("The final write of the workbook")
+class WriteEvent extends CatalogueEvent {}
@@ -0,0 +1,15 @@
+package conversion_events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The xslt filter of the catalogue
+ * @author avonva
+ *
+ */
+@Name("catalogue.Xslt")
+@Label("Xslt Filter")
+@Description("The xslt filter of the catalogue")
+class XsltEvent extends CatalogueEvent {}
@@ -0,0 +1,108 @@
+package csv_writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import xlsx_writer.SheetOutput;
+import xlsx_writer.XlsxRow;
+
+/**
+ * Write the rows of the sheets in csv and tsv files
+ * @author avonva
+ *
+ */
+public class DelimitedWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Write a header row and a row with all the kinds of fields
+	 * @param writer
+	 * @throws Exception
+	 */
+	private static void writeSheet( DelimitedWriter writer ) throws Exception {
+
+		SheetOutput sheet = writer.createSheet( "term" );
+
+		XlsxRow headers = sheet.createRow();
+		headers.setString( 0, "code" );
+		headers.setString( 1, "name" );
+		headers.setString( 2, "order" );
+		headers.setString( 3, "validFrom" );
+		headers.setString( 4, "notes" );
+
+		XlsxRow row = sheet.createRow();
+		row.setString( 0, "A0B1" );
+		row.setString( 1, "say \"cheese\", please" );
+		row.setNumber( 2, 12 );
+		row.setDate( 3, LocalDate.of( 2017, 3, 9 ) );
+		row.setString( 4, "one\ttwo\nthree" );
+
+		// the missing fields are empty
+		XlsxRow partial = new XlsxRow();
+		partial.setNumber( 2, 1.5 );
+		sheet.appendRow( partial );
+
+		writer.finish();
+	}
+
+	@Test
+	public void csvFieldsAreQuotedOnlyIfNeeded() throws Exception {
+
+		File output = folder.newFolder( "csv" );
+		writeSheet( new DelimitedWriter( output, DelimitedWriter.Format.CSV, false, "yyyy/MM/dd" ) );
+
+		String csv = new String( Files.readAllBytes( new File( output, "term.csv" ).toPath() ),
+				StandardCharsets.UTF_8 );
+
+		assertEquals( "code,name,order,validFrom,notes\r\n"
+				+ "A0B1,\"say \"\"cheese\"\", please\",12,2017/03/09,\"one\ttwo\nthree\"\r\n"
+				+ ",,1.5,,\r\n", csv );
+	}
+
+	@Test
+	public void tsvFieldsAreQuotedOnlyIfNeeded() throws Exception {
+
+		File output = folder.newFolder( "tsv" );
+		writeSheet( new DelimitedWriter( output, DelimitedWriter.Format.TSV, true, "yyyy-MM-dd" ) );
+
+		assertFalse( new File( output, "term.tsv" ).exists() );
+
+		String tsv;
+		try ( InputStream in = new GZIPInputStream( Files.newInputStream(
+				new File( output, "term.tsv.gz" ).toPath() ) ) ) {
+
+			byte[] bytes = new byte[1 << 12];
+			int length = 0;
+			int read;
+			while ( ( read = in.read( bytes, length, bytes.length - length ) ) > 0 )
+				length += read;
+
+			tsv = new String( bytes, 0, length, StandardCharsets.UTF_8 );
+		}
+
+		assertEquals( "code\tname\torder\tvalidFrom\tnotes\n"
+				+ "A0B1\t\"say \"\"cheese\"\", please\"\t12\t2017-03-09\t\"one\ttwo\nthree\"\n"
+				+ "\t\t1.5\t\t\n", tsv );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void sheetsHaveDifferentNames() throws Exception {
+
+		DelimitedWriter writer = new DelimitedWriter( folder.getRoot(), DelimitedWriter.Format.CSV, false, "yyyy/MM/dd" );
+		writer.createSheet( "term" );
+		writer.createSheet( "Term" );
+	}
+}
@@ -0,0 +1,72 @@
+package json_writer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.junit.Test;
+
+/**
+ * Write the terms of a catalogue in the JSON Lines format
+ * @author avonva
+ *
+ */
+public class TermJsonWriterTest {
+
+	private static final String CATALOGUE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<message><catalogueDesc><code>C</code><status>APPROVED</status></catalogueDesc>\n"
+			+ "<catalogueTerms>\n"
+			+ "<term><termDesc><termCode>A0B9Z</termCode><termExtendedName>Say \"cheese\"\\\n\t</termExtendedName>"
+			+ "<lastUpdate>2020-01-31T10:15:00</lastUpdate><status>DEPRECATED</status></termDesc>"
+			+ "<hierarchyAssignments>"
+			+ "<hierarchyAssignment><hierarchyCode>report</hierarchyCode><parentCode>A0B9Y</parentCode>"
+			+ "<order>3</order><reportable>1</reportable></hierarchyAssignment>"
+			+ "<hierarchyAssignment><hierarchyCode>master</hierarchyCode><parentCode>root</parentCode>"
+			+ "<order>n/a</order><reportable>0</reportable></hierarchyAssignment>"
+			+ "</hierarchyAssignments>"
+			+ "<implicitAttributes>"
+			+ "<implicitAttribute><attributeCode>implicitFacets</attributeCode>"
+			+ "<attributeValues><attributeValue>F01.A0</attributeValue></attributeValues></implicitAttribute>"
+			+ "<implicitAttribute><attributeCode>implicitFacets</attributeCode>"
+			+ "<attributeValues><attributeValue>F02.B0</attributeValue></attributeValues></implicitAttribute>"
+			+ "</implicitAttributes></term>\n"
+			+ "<term><termDesc><termCode>A0C00</termCode><status>APPROVED</status></termDesc></term>\n"
+			+ "</catalogueTerms></message>";
+
+	@Test
+	public void eachTermIsAJsonLine() throws Exception {
+
+		StringWriter output = new StringWriter();
+		TermJsonWriter writer = new TermJsonWriter( output );
+
+		SAXParserFactory.newInstance().newSAXParser().parse(
+				new ByteArrayInputStream( CATALOGUE.getBytes( StandardCharsets.UTF_8 ) ), writer );
+
+		writer.finish();
+
+		// the nodes out of the terms are not written
+		assertEquals( 2, writer.getTermCount() );
+
+		assertEquals( "{\"termCode\":\"A0B9Z\",\"termExtendedName\":\"Say \\\"cheese\\\"\\\\\\n\\t\","
+				+ "\"lastUpdate\":\"2020-01-31\",\"status\":\"DEPRECATED\",\"deprecated\":true,"
+				+ "\"hierarchyAssignments\":["
+				+ "{\"hierarchyCode\":\"report\",\"parentCode\":\"A0B9Y\",\"order\":3,\"reportable\":true},"
+				+ "{\"hierarchyCode\":\"master\",\"parentCode\":\"root\",\"order\":\"n/a\",\"reportable\":false}],"
+				+ "\"implicitAttributes\":{\"implicitFacets\":[\"F01.A0\",\"F02.B0\"]}}\n"
+				+ "{\"termCode\":\"A0C00\",\"status\":\"APPROVED\",\"deprecated\":false,"
+				+ "\"hierarchyAssignments\":[],\"implicitAttributes\":{}}\n", output.toString() );
+	}
+
+	@Test
+	public void controlCharactersAreEscaped() {
+
+		StringBuilder json = new StringBuilder();
+		TermJsonWriter.putString( json, "a\u0001b\rc" );
+
+		assertEquals( "\"a\\u0001b\\rc\"", json.toString() );
+	}
+}
@@ -0,0 +1,310 @@
+package sheet_converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xml.sax.helpers.DefaultHandler;
+
+import catalogue_generator.CatalogueGenerator;
+import catalogue_metadata.AttributeInfo;
+import catalogue_metadata.CatalogueInfo;
+import catalogue_metadata.CatalogueMetadata;
+import naming_convention.Headers;
+import sheet_header.SheetHeader;
+import xlsx_writer.SheetOutput;
+import xlsx_writer.WorkbookOutput;
+import xlsx_writer.XlsxRow;
+
+/**
+ * Convert terms with the SAX handler of the {@link TermSheetConverter}
+ * @author avonva
+ *
+ */
+public class TermSheetConverterTest {
+
+	private static final int TERMS = 2000;
+	private static final int HIERARCHIES = 5;
+	private static final int ATTRIBUTES = 10;
+
+	private static byte[] catalogue;
+	private static CatalogueMetadata metadata;
+
+	@BeforeClass
+	public static void generateCatalogue() throws Exception {
+
+		CatalogueGenerator generator = new CatalogueGenerator();
+		generator.setTerms( TERMS );
+		generator.setHierarchies( HIERARCHIES );
+		generator.setAttributes( ATTRIBUTES );
+
+		ByteArrayOutputStream xml = new ByteArrayOutputStream();
+		generator.generate( xml );
+		catalogue = xml.toByteArray();
+
+		// the metadata which the other converters collect
+		ArrayList<String> hierarchyCodes = new ArrayList<>();
+		hierarchyCodes.add( CatalogueGenerator.CATALOGUE_CODE );
+		for ( int i = 0; i < HIERARCHIES; i++ )
+			hierarchyCodes.add( CatalogueGenerator.getHierarchyCode( i ) );
+
+		ArrayList<AttributeInfo> attributes = new ArrayList<>();
+		for ( int i = 0; i < ATTRIBUTES; i++ )
+			attributes.add( new AttributeInfo( CatalogueGenerator.getAttributeCode( i ), "Attribute " + i,
+					generator.getAttributeType( i ), generator.getAttributeCatalogueCode( i ) ) );
+
+		metadata = new CatalogueMetadata( new CatalogueInfo( CatalogueGenerator.CATALOGUE_CODE,
+				"Synthetic catalogue", "Synthetic", "", "1.0", "2020-05-01", "2019-01-01", "PUBLISHED MAJOR" ),
+				hierarchyCodes, attributes );
+	}
+
+	private static TermSheetConverter newConverter( CatalogueMetadata metadata ) {
+		TermSheetConverter converter = new TermSheetConverter( null, XmlNodes.TERM_ROOT_NODE, metadata );
+		converter.setMasterHierarchyCode( CatalogueGenerator.CATALOGUE_CODE );
+		return converter;
+	}
+
+	private static void parse( byte[] xml, DefaultHandler handler ) throws Exception {
+		SaxParsers.newSAXParser().parse( new ByteArrayInputStream( xml ), handler );
+	}
+
+	/**
+	 * Get the bytes allocated by the current thread to parse the catalogue
+	 * @param handler
+	 * @return
+	 * @throws Exception
+	 */
+	private static long getAllocatedBytes( DefaultHandler handler ) throws Exception {
+
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+		long threadId = Thread.currentThread().getId();
+		long start = threads.getThreadAllocatedBytes( threadId );
+
+		parse( catalogue, handler );
+
+		return threads.getThreadAllocatedBytes( threadId ) - start;
+	}
+
+	/**
+	 * The converter allocates per term only the strings of the values
+	 * which are written in a column, the rest is parser allocation.
+	 * The bytes are reported in the output of the test.
+	 * @throws Exception
+	 */
+	@Test
+	public void allocatedBytesPerTerm() throws Exception {
+
+		assumeTrue( ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean );
+
+		long parser = Long.MAX_VALUE;
+		long converter = Long.MAX_VALUE;
+		long cells = 0;
+
+		// the first runs warm up the parser and the converter
+		for ( int i = 0; i < 5; i++ ) {
+
+			parser = Math.min( parser, getAllocatedBytes( new DefaultHandler() ) );
+
+			RowsOutput output = new RowsOutput( false );
+			TermSheetConverter termConverter = newConverter( metadata );
+			termConverter.buildSheet( output, "term" );
+
+			converter = Math.min( converter, getAllocatedBytes( termConverter.getHandler() ) );
+			cells = output.cells;
+		}
+
+		long perTerm = ( converter - parser ) / TERMS;
+		long perCell = ( converter - parser ) / cells;
+
+		System.out.println( String.format( "Term conversion: %d bytes per term (parser excluded), "
+				+ "%d bytes per cell, parser %d bytes per term", perTerm, perCell, parser / TERMS ) );
+
+		// a string of a short value is about 50 bytes,
+		// the converter should not allocate much more than that per cell
+		assertTrue( "Allocated " + perCell + " bytes per cell", perCell < 150 );
+	}
+
+	/**
+	 * The values with only white spaces are kept as they are
+	 * @throws Exception
+	 */
+	@Test
+	public void blankValuesAreKept() throws Exception {
+
+		String xml = "<message><catalogue><catalogueTerms>\n"
+				+ "<term>\n"
+				+ "<termDesc><termCode>A0001</termCode><termExtendedName> </termExtendedName>"
+				+ "<termShortName/><termScopeNote>\t</termScopeNote></termDesc>\n"
+				+ "</term>\n"
+				+ "</catalogueTerms></catalogue></message>";
+
+		CatalogueMetadata emptyMetadata = new CatalogueMetadata( null,
+				new ArrayList<String>(), new ArrayList<AttributeInfo>() );
+
+		TermSheetConverter converter = newConverter( emptyMetadata );
+		RowsOutput output = new RowsOutput( true );
+		converter.buildSheet( output, "term" );
+		parse( xml.getBytes( StandardCharsets.UTF_8 ), converter.getHandler() );
+
+		assertEquals( 2, output.rows.size() );
+
+		String[] term = output.rows.get( 1 );
+		assertEquals( "A0001", term[getColumn( converter, Headers.TERM_CODE )] );
+		assertEquals( " ", term[getColumn( converter, Headers.TERM_EXT_NAME )] );
+		assertEquals( "", term[getColumn( converter, Headers.TERM_SHORT_NAME )] );
+		assertEquals( "\t", term[getColumn( converter, Headers.TERM_SCOPENOTE )] );
+	}
+
+	/**
+	 * The assignments are written in the columns of their hierarchy,
+	 * whatever their order, and the unknown hierarchies are skipped
+	 * @throws Exception
+	 */
+	@Test
+	public void assignmentsAreWrittenInTheirHierarchy() throws Exception {
+
+		String xml = "<message><catalogue><catalogueTerms>\n"
+				+ "<term><termDesc><termCode>A0001</termCode></termDesc><hierarchyAssignments>"
+				+ getAssignment( "expo", "P1" )
+				+ getAssignment( "unknown", "P2" )
+				+ getAssignment( "MTX", "P3" )
+				+ getAssignment( "report", "P4" )
+				+ "</hierarchyAssignments></term>\n"
+				+ "</catalogueTerms></catalogue></message>";
+
+		ArrayList<String> hierarchyCodes = new ArrayList<>();
+		hierarchyCodes.add( "MTX" );
+		hierarchyCodes.add( "report" );
+		hierarchyCodes.add( "expo" );
+		hierarchyCodes.add( "feedex" );
+
+		TermSheetConverter converter = new TermSheetConverter( null, XmlNodes.TERM_ROOT_NODE,
+				new CatalogueMetadata( null, hierarchyCodes, new ArrayList<AttributeInfo>() ) );
+		converter.setMasterHierarchyCode( "MTX" );
+
+		RowsOutput output = new RowsOutput( true );
+		converter.buildSheet( output, "term" );
+		parse( xml.getBytes( StandardCharsets.UTF_8 ), converter.getHandler() );
+
+		String[] term = output.getRows().get( 1 );
+		assertEquals( "P1", term[getColumn( converter, "expo" + Headers.SUFFIX_PARENT_CODE )] );
+		assertEquals( "P3", term[getColumn( converter, Headers.PREFIX_MASTER_CODE + Headers.SUFFIX_PARENT_CODE )] );
+		assertEquals( "P4", term[getColumn( converter, "report" + Headers.SUFFIX_PARENT_CODE )] );
+		assertEquals( "1", term[getColumn( converter, "report" + Headers.SUFFIX_FLAG )] );
+
+		int feedex = getColumn( converter, "feedex" + Headers.SUFFIX_FLAG );
+		assertTrue( feedex >= term.length || term[feedex] == null );
+
+		for ( String value : term )
+			assertTrue( !"P2".equals( value ) );
+	}
+
+	private static String getAssignment( String hierarchyCode, String parentCode ) {
+		return "<hierarchyAssignment><hierarchyCode>" + hierarchyCode + "</hierarchyCode>"
+				+ "<parentCode>" + parentCode + "</parentCode><order>1</order>"
+				+ "<reportable>true</reportable></hierarchyAssignment>";
+	}
+
+	/**
+	 * Get the column of a header of the sheet
+	 * @param converter
+	 * @param columnName
+	 * @return
+	 */
+	static int getColumn( SheetConverter converter, String columnName ) {
+
+		for ( SheetHeader header : converter.getHeaders().values() ) {
+			if ( header.getColumnName().equals( columnName ) )
+				return header.getColumnIndex();
+		}
+
+		throw new IllegalArgumentException( "No column " + columnName );
+	}
+
+	/**
+	 * An output which counts the cells of the rows and optionally keeps
+	 * their string values
+	 * @author avonva
+	 *
+	 */
+	static class RowsOutput implements WorkbookOutput, SheetOutput {
+
+		private XlsxRow row = new XlsxRow();
+		private boolean hasRow = false;   // false until the first row is created
+		private boolean keepRows;
+		private ArrayList<String[]> rows = new ArrayList<>();
+		private long cells = 0;
+
+		RowsOutput( boolean keepRows ) {
+			this.keepRows = keepRows;
+		}
+
+		/**
+		 * Get the string values of the rows, the headers included
+		 * @return
+		 */
+		ArrayList<String[]> getRows() {
+			return rows;
+		}
+
+		private void add( XlsxRow values ) {
+
+			cells += values.getPhysicalNumberOfCells();
+
+			if ( !keepRows )
+				return;
+
+			String[] strings = new String[values.getLastColumn() + 1];
+			for ( int i = 0; i < strings.length; i++ )
+				strings[i] = values.getType( i ) == XlsxRow.STRING ? values.getString( i ) : null;
+
+			rows.add( strings );
+		}
+
+		@Override
+		public SheetOutput createSheet( String sheetName ) {
+			return this;
+		}
+
+		@Override
+		public XlsxRow createRow() {
+
+			if ( hasRow )
+				add( row );
+
+			hasRow = true;
+			row.clear();
+			return row;
+		}
+
+		@Override
+		public void appendRow( XlsxRow detached ) {
+			add( detached );
+		}
+
+		@Override
+		public void setSheetOrder( String sheetName, int pos ) {
+		}
+
+		@Override
+		public void finish() {
+			createRow();
+			hasRow = false;
+		}
+
+		@Override
+		public String getName() {
+			return "term";
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package xml_to_excel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import catalogue_generator.CatalogueGenerator;
+import csv_writer.DelimitedWriter;
+import sheet_converter.ChunkedSheetHandler;
+import sheet_converter.XmlNodes;
+
+/**
+ * Find the terms of a catalogue with the {@link CatalogueOffsetScanner}
+ * and convert them from their offsets
+ * @author avonva
+ *
+ */
+public class CatalogueOffsetScannerTest {
+
+	// the markup in comments, CDATA, processing instructions and attribute values is not a term
+	private static final String CATALOGUE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<catalogue><!-- <term> --><catalogueDesc><code>C</code></catalogueDesc>\n"
+			+ "<catalogueTerms>\n"
+			+ "<term a=\"x>y\" b='/term>'><termDesc><termCode><![CDATA[</term><term>]]></termCode></termDesc>"
+			+ "<?pi <term>?></term>\n"
+			+ "<!-- </term> --><term/>\n"
+			+ "<term ><termDesc><termCode>\u00e0\u00e9\u4e2d</termCode></termDesc></term>\n"
+			+ "</catalogueTerms></catalogue>";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private CatalogueOffsetScanner scan( String xml ) throws Exception {
+
+		File file = folder.newFile( "catalogue.xml" );
+		Files.write( file.toPath(), xml.getBytes( StandardCharsets.UTF_8 ) );
+
+		CatalogueOffsetScanner scanner = new CatalogueOffsetScanner( file.getPath() );
+		scanner.scan();
+
+		return scanner;
+	}
+
+	/**
+	 * Get the codes of the terms of an xml opened by the scanner
+	 * @param xml
+	 * @return
+	 * @throws Exception
+	 */
+	private static ArrayList<String> getTermCodes( InputStream xml ) throws Exception {
+
+		final ArrayList<String> codes = new ArrayList<>();
+
+		ChunkedSheetHandler.parseNodes( xml, new DefaultHandler() {
+
+			private StringBuilder code;
+
+			@Override
+			public void startElement( String uri, String localName, String qName, Attributes attributes ) {
+				if ( qName.equals( XmlNodes.TERM_CODE ) )
+					code = new StringBuilder();
+			}
+
+			@Override
+			public void characters( char[] ch, int start, int length ) {
+				if ( code != null )
+					code.append( ch, start, length );
+			}
+
+			@Override
+			public void endElement( String uri, String localName, String qName ) {
+				if ( qName.equals( XmlNodes.TERM_CODE ) ) {
+					codes.add( code.toString() );
+					code = null;
+				}
+			}
+		} );
+
+		return codes;
+	}
+
+	@Test
+	public void termsAreFoundOutsideCommentsAndCdata() throws Exception {
+
+		CatalogueOffsetScanner scanner = scan( CATALOGUE );
+
+		assertEquals( 3, scanner.getTermsCount() );
+		assertEquals( "UTF-8", scanner.getEncoding() );
+
+		assertEquals( Arrays.asList( "</term><term>", "\u00e0\u00e9\u4e2d" ),
+				getTermCodes( scanner.openTerms( 0, scanner.getTermsCount() ) ) );
+		assertEquals( Arrays.asList( "\u00e0\u00e9\u4e2d" ), getTermCodes( scanner.openTerms( 2, 3 ) ) );
+		assertEquals( Arrays.asList(), getTermCodes( scanner.openTerms( 1, 1 ) ) );
+
+		// the offsets are in bytes
+		assertEquals( getByteOffset( "<term a=" ), scanner.getTermStart( 0 ) );
+		assertEquals( getByteOffset( "\n</catalogueTerms>" ), scanner.getTermEnd( 2 ) );
+		assertEquals( getByteOffset( "<catalogueDesc>" ),
+				scanner.getSection( XmlNodes.CATALOGUE_DESC ).getStart() );
+	}
+
+	private static long getByteOffset( String text ) {
+		return CATALOGUE.substring( 0, CATALOGUE.indexOf( text ) ).getBytes( StandardCharsets.UTF_8 ).length;
+	}
+
+	@Test
+	public void termsOutOfRangeCannotBeOpened() throws Exception {
+
+		CatalogueOffsetScanner scanner = scan( CATALOGUE );
+
+		int[][] ranges = new int[][] { { -1, 1 }, { 0, 4 }, { 2, 1 } };
+
+		for ( int[] range : ranges ) {
+			try {
+				scanner.openTerms( range[0], range[1] );
+				fail( "Terms from " + range[0] + " to " + range[1] + " opened" );
+			} catch ( IndexOutOfBoundsException e ) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * The terms read from their offsets give the same sheets
+	 * as the terms parsed with the xml
+	 * @throws Exception
+	 */
+	@Test
+	public void termOffsetsGiveTheSameSheets() throws Exception {
+
+		CatalogueGenerator generator = new CatalogueGenerator();
+		generator.setTerms( 1000 );
+		generator.setHierarchies( 4 );
+		generator.setAttributes( 6 );
+
+		File xml = folder.newFile( "generated.xml" );
+		generator.generate( xml.getPath() );
+
+		File parsed = convert( xml, folder.newFolder( "parsed" ), false );
+		File offsets = convert( xml, folder.newFolder( "offsets" ), true );
+
+		String[] files = parsed.list();
+		Arrays.sort( files );
+		String[] offsetFiles = offsets.list();
+		Arrays.sort( offsetFiles );
+
+		assertArrayEquals( files, offsetFiles );
+
+		for ( String file : files ) {
+			assertArrayEquals( file, Files.readAllBytes( new File( parsed, file ).toPath() ),
+					Files.readAllBytes( new File( offsets, file ).toPath() ) );
+		}
+	}
+
+	private static File convert( File xml, File output, boolean termOffsets ) throws Exception {
+
+		WorkbookOptions options = new WorkbookOptions();
+		options.setTextFormat( DelimitedWriter.Format.CSV );
+		options.setTermOffsets( termOffsets );
+
+		ExecutorService executor = Executors.newFixedThreadPool( 2 );
+
+		try {
+			XmlCatalogueToExcel converter = new XmlCatalogueToExcel( xml.getPath(), output.getPath() );
+			converter.setWorkbookOptions( options );
+			converter.setExecutor( executor );
+			converter.setTermChunkSize( 64 );
+			converter.convertXmlToExcel();
+		} finally {
+			executor.shutdown();
+		}
+
+		return output;
+	}
+}
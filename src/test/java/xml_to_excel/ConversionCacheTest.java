@@ -0,0 +1,108 @@
+package xml_to_excel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Store and restore the converted catalogues with the {@link ConversionCache}
+ * @author avonva
+ *
+ */
+public class ConversionCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File write( String name, String content ) throws Exception {
+		File file = new File( folder.getRoot(), name );
+		Files.write( file.toPath(), content.getBytes( StandardCharsets.UTF_8 ) );
+		return file;
+	}
+
+	@Test
+	public void keyDependsOnTheBytesAndTheOptions() throws Exception {
+
+		ConversionCache cache = new ConversionCache( folder.newFolder( "cache" ).getPath(), 1 << 20 );
+
+		File catalogue = write( "catalogue.xml", "<message><catalogueDesc/></message>" );
+		File copy = write( "copy.xml", "<message><catalogueDesc/></message>" );
+		File changed = write( "changed.xml", "<message><catalogueDesc></catalogueDesc></message>" );
+
+		String key = cache.getKey( catalogue.getPath(), "xlsx" );
+
+		// the name of the file does not matter
+		assertEquals( key, cache.getKey( copy.getPath(), "xlsx" ) );
+		assertEquals( 64, key.length() );
+
+		assertNotEquals( key, cache.getKey( changed.getPath(), "xlsx" ) );
+		assertNotEquals( key, cache.getKey( catalogue.getPath(), "csv" ) );
+	}
+
+	@Test
+	public void storedFileIsRestored() throws Exception {
+
+		File cacheFolder = folder.newFolder( "cache" );
+		ConversionCache cache = new ConversionCache( cacheFolder.getPath(), 1 << 20 );
+
+		File catalogue = write( "catalogue.xml", "<message/>" );
+		File xlsx = write( "catalogue.xlsx", "converted" );
+		File restored = new File( folder.getRoot(), "restored.xlsx" );
+
+		String key = cache.getKey( catalogue.getPath(), "xlsx" );
+
+		assertFalse( cache.restore( key, restored.getPath() ) );
+		assertFalse( restored.exists() );
+
+		cache.store( key, xlsx.getPath() );
+
+		// no temporary file is left
+		assertArrayEquals( new String[] { key + ".xlsx" }, cacheFolder.list() );
+
+		// the restored file replaces an existing output
+		write( "restored.xlsx", "old" );
+		assertTrue( cache.restore( key, restored.getPath() ) );
+		assertArrayEquals( Files.readAllBytes( xlsx.toPath() ), Files.readAllBytes( restored.toPath() ) );
+
+		cache.setUseHardLinks( true );
+		File linked = new File( folder.getRoot(), "linked.xlsx" );
+		assertTrue( cache.restore( key, linked.getPath() ) );
+		assertArrayEquals( Files.readAllBytes( xlsx.toPath() ), Files.readAllBytes( linked.toPath() ) );
+	}
+
+	@Test
+	public void leastRecentlyUsedFilesAreEvicted() throws Exception {
+
+		File cacheFolder = folder.newFolder( "cache" );
+
+		// room for two files
+		ConversionCache cache = new ConversionCache( cacheFolder.getPath(), 20 );
+
+		File xlsx = write( "catalogue.xlsx", "0123456789" );
+		File restored = new File( folder.getRoot(), "restored.xlsx" );
+
+		cache.store( "first", xlsx.getPath() );
+		new File( cacheFolder, "first.xlsx" ).setLastModified( System.currentTimeMillis() - 60000 );
+		cache.store( "second", xlsx.getPath() );
+		new File( cacheFolder, "second.xlsx" ).setLastModified( System.currentTimeMillis() - 30000 );
+
+		// the first file is used again, the second becomes the least recently used
+		assertTrue( cache.restore( "first", restored.getPath() ) );
+
+		cache.store( "third", xlsx.getPath() );
+
+		assertTrue( cache.restore( "first", restored.getPath() ) );
+		assertFalse( cache.restore( "second", restored.getPath() ) );
+		assertTrue( cache.restore( "third", restored.getPath() ) );
+	}
+}
@@ -0,0 +1,213 @@
+package xml_to_excel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.transform.TransformerException;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import catalogue_generator.CatalogueGenerator;
+
+/**
+ * Convert a generated catalogue with the different modes of the converter
+ * @author avonva
+ *
+ */
+public class XmlCatalogueToExcelTest {
+
+	@ClassRule
+	public static TemporaryFolder folder = new TemporaryFolder();
+
+	private static File catalogue;
+	private static ArrayList<String> expected;
+	private static int outputs;
+
+	@BeforeClass
+	public static void generateCatalogue() throws Exception {
+
+		CatalogueGenerator generator = new CatalogueGenerator();
+		generator.setTerms( 300 );
+		generator.setHierarchies( 4 );
+		generator.setAttributes( 6 );
+
+		catalogue = folder.newFile( "catalogue.xml" );
+		generator.generate( catalogue.getPath() );
+
+		// the xml parsed once, the terms in the parsing thread
+		XmlCatalogueToExcel converter = newConverter();
+		converter.setTermChunkSize( 0 );
+		expected = convert( converter );
+	}
+
+	/**
+	 * Create a converter of the catalogue into a new xlsx
+	 * @return
+	 */
+	private static XmlCatalogueToExcel newConverter() {
+		File xlsx = new File( folder.getRoot(), "catalogue_" + ( ++outputs ) + ".xlsx" );
+		return new XmlCatalogueToExcel( catalogue.getPath(), xlsx.getPath() );
+	}
+
+	/**
+	 * Convert the catalogue and get the values of the workbook
+	 * @param converter a converter created with {@link #newConverter()}
+	 * @return
+	 * @throws Exception
+	 */
+	private static ArrayList<String> convert( XmlCatalogueToExcel converter ) throws Exception {
+		converter.convertXmlToExcel();
+		return getValues( new File( folder.getRoot(), "catalogue_" + outputs + ".xlsx" ) );
+	}
+
+	/**
+	 * Get the values of all the cells of a workbook, with the sheet, the row and the type
+	 * @param xlsx
+	 * @return
+	 * @throws Exception
+	 */
+	private static ArrayList<String> getValues( File xlsx ) throws Exception {
+
+		ArrayList<String> values = new ArrayList<>();
+
+		try ( Workbook workbook = new XSSFWorkbook( xlsx ) ) {
+
+			for ( Sheet sheet : workbook ) {
+
+				values.add( "sheet " + sheet.getSheetName() );
+
+				for ( Row row : sheet ) {
+					for ( Cell cell : row ) {
+
+						String value;
+						switch ( cell.getCellType() ) {
+						case NUMERIC:
+							value = String.valueOf( cell.getNumericCellValue() );
+							break;
+						case BOOLEAN:
+							value = String.valueOf( cell.getBooleanCellValue() );
+							break;
+						case STRING:
+							value = cell.getStringCellValue();
+							break;
+						default:
+							value = "";
+							break;
+						}
+
+						// the writers can leave empty cells or omit them
+						if ( !value.isEmpty() )
+							values.add( cell.getAddress() + " " + cell.getCellType() + " " + value );
+					}
+				}
+			}
+		}
+
+		return values;
+	}
+
+	private static void assertSameWorkbook( ArrayList<String> values ) {
+
+		assertEquals( expected.size(), values.size() );
+
+		for ( int i = 0; i < expected.size(); i++ )
+			assertEquals( expected.get( i ), values.get( i ) );
+	}
+
+	@Test
+	public void chunkedTermsGiveTheSameWorkbook() throws Exception {
+
+		ExecutorService executor = Executors.newFixedThreadPool( 2 );
+
+		try {
+			XmlCatalogueToExcel converter = newConverter();
+			converter.setExecutor( executor );
+			converter.setTermChunkSize( 16 );
+			assertSameWorkbook( convert( converter ) );
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void directXlsxGivesTheSameWorkbook() throws Exception {
+
+		WorkbookOptions options = new WorkbookOptions();
+		options.setDirectXlsx( true );
+
+		XmlCatalogueToExcel converter = newConverter();
+		converter.setWorkbookOptions( options );
+		assertSameWorkbook( convert( converter ) );
+	}
+
+	@Test
+	public void xsltFiltersGiveTheSameWorkbook() throws Exception {
+
+		XmlCatalogueToExcel converter = newConverter();
+		converter.setUseXsltFilters( true );
+		assertSameWorkbook( convert( converter ) );
+	}
+
+	@Test
+	public void serialSheetsWithSharedStringsGiveTheSameWorkbook() throws Exception {
+
+		WorkbookOptions options = new WorkbookOptions();
+		options.setUseSharedStrings( true );
+
+		XmlCatalogueToExcel converter = newConverter();
+		converter.setUseXsltFilters( true );
+		converter.setWorkbookOptions( options );
+		assertSameWorkbook( convert( converter ) );
+	}
+
+	/**
+	 * A truncated catalogue fails the conversion and does not leave an xlsx
+	 * @throws Exception
+	 */
+	@Test
+	public void truncatedCatalogueFails() throws Exception {
+
+		File truncated = folder.newFile( "truncated.xml" );
+		Files.copy( catalogue.toPath(), truncated.toPath(), StandardCopyOption.REPLACE_EXISTING );
+
+		try ( RandomAccessFile file = new RandomAccessFile( truncated, "rw" ) ) {
+			file.setLength( file.length() / 2 );
+		}
+
+		File xlsx = new File( folder.getRoot(), "truncated.xlsx" );
+
+		for ( boolean useXsltFilters : new boolean[] { false, true } ) {
+
+			XmlCatalogueToExcel converter = new XmlCatalogueToExcel( truncated.getPath(), xlsx.getPath() );
+			converter.setUseXsltFilters( useXsltFilters );
+
+			try {
+				converter.convertXmlToExcel();
+				fail( "Truncated catalogue converted, xslt " + useXsltFilters );
+			} catch ( TransformerException e ) {
+				// expected
+			}
+
+			assertFalse( xlsx.exists() );
+			assertTrue( converter.getMetrics().isEmpty() );
+		}
+	}
+}